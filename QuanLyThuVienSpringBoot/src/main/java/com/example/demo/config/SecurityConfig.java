@@ -52,7 +52,7 @@ public class SecurityConfig {
                 "/css/**", "/js/**", "/images/**", "/webjars/**", "/favicon.ico",
                 "/uploads/**", "/thumbnails/**", "/qr.png"
             ).permitAll()
-            .requestMatchers("/books", "/books/**", "/category/**", "/search").permitAll()
+            .requestMatchers("/books", "/books/**", "/category/**", "/search", "/api/search/suggest", "/api/search/facets", "/api/books/*/eta").permitAll()
             .requestMatchers("/membership/vnpay-return", "/membership/return").permitAll()
             .requestMatchers("/payment/ipn").permitAll()
             .requestMatchers("/admin/**").hasRole("ADMIN")
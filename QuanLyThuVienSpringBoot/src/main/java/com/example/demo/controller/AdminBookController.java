@@ -3,13 +3,19 @@ package com.example.demo.controller;
 import com.example.demo.model.Book;
 import com.example.demo.model.Category;
 import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.BookRepositoryCustom.BookFilter;
+import com.example.demo.repository.BookRepositoryCustom.KeysetOrder;
 import com.example.demo.repository.CategoryRepository;
+import com.example.demo.service.BookService;
+import com.example.demo.service.HoldQueueService;
 import com.example.demo.service.UploadService;
 import com.example.demo.repository.BorrowRepository;
+import com.example.demo.util.PageLinks;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -31,15 +37,20 @@ public class AdminBookController {
     private final CategoryRepository categoryRepo;
     private final BorrowRepository borrowRepo;
     private final UploadService uploadService;
+    private final BookService bookService;
+    private final HoldQueueService holdQueue;
 
     // (Lưu ý dưới cùng về upload dir)
     private static final Path STATIC_UPLOAD_DIR = Paths.get("src/main/resources/static/uploads");
 
-    public AdminBookController(BookRepository bookRepo, CategoryRepository categoryRepo, BorrowRepository borrowRepo, UploadService uploadService) {
+    public AdminBookController(BookRepository bookRepo, CategoryRepository categoryRepo, BorrowRepository borrowRepo,
+                               UploadService uploadService, BookService bookService, HoldQueueService holdQueue) {
         this.bookRepo = bookRepo;
         this.categoryRepo = categoryRepo;
         this.borrowRepo = borrowRepo;
         this.uploadService = uploadService;
+        this.bookService = bookService;
+        this.holdQueue = holdQueue;
     }
 
     @GetMapping("/add")
@@ -86,26 +97,28 @@ public class AdminBookController {
             book.setImagePath(webPath);
         }
 
-        bookRepo.save(book);
+        Book saved = bookRepo.save(book);   // chỉ mục tìm kiếm/gợi ý/facet cập nhật qua CatalogChangeFeed
+        bookService.saveDescription(saved.getId(), book.getDescription());
         ra.addFlashAttribute("message", "Đã thêm sách mới thành công.");
         return "redirect:/admin/books/add";
     }
 
     @GetMapping("/edit")
-    public String editPage(@RequestParam(value = "page", defaultValue = "0") int page,
+    public String editPage(@RequestParam(value = "after", required = false) String after,
+                           @RequestParam(value = "before", required = false) String before,
                            @RequestParam(value = "editId", required = false) Long editId,
+                           HttpServletRequest request,
                            Model model) {
 
-        page = Math.max(page, 0);
-        Pageable pageable = PageRequest.of(page, 6);
-        Page<Book> pageBooks = bookRepo.findAll(pageable);
+        BookService.KeysetPage kp = bookService.keysetPage(BookFilter.none(), KeysetOrder.ID,
+                after, before, 6, false);
 
-        model.addAttribute("books", pageBooks.getContent());
-        model.addAttribute("totalPages", pageBooks.getTotalPages());
-        model.addAttribute("page", page);
+        model.addAttribute("books", kp.content());
+        model.addAttribute("prevUrl", PageLinks.prev(request, kp.prevCursor()));
+        model.addAttribute("nextUrl", PageLinks.next(request, kp.nextCursor()));
 
         if (editId != null) {
-            bookRepo.findById(editId).ifPresent(b -> model.addAttribute("book", b));
+            bookRepo.findById(editId).ifPresent(b -> model.addAttribute("book", bookService.withDescription(b)));
         } else if (!model.containsAttribute("book")) {
             model.addAttribute("book", new Book());
         }
@@ -122,10 +135,10 @@ public class AdminBookController {
         Book existing = bookRepo.findById(form.getId())
                 .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy sách có id = " + form.getId()));
 
+        int before = existing.getQuantity();
         existing.setTitle(form.getTitle());
         existing.setAuthor(form.getAuthor());
         existing.setQuantity(form.getQuantity());
-        existing.setDescription(form.getDescription());
 
         if (form.getCategory() != null && form.getCategory().getId() != null) {
             categoryRepo.findById(form.getCategory().getId()).ifPresent(existing::setCategory);
@@ -141,33 +154,42 @@ public class AdminBookController {
         }
 
         bookRepo.save(existing);
+        bookService.saveDescription(existing.getId(), form.getDescription());
+        int after = existing.getQuantity();
+        if (after > before) holdQueue.promote(existing.getId(), after - before);   // nhập thêm sách -> giữ cho hàng chờ
         ra.addFlashAttribute("message", "Đã cập nhật sách.");
         return "redirect:/admin/books/edit?editId=" + existing.getId();
     }
 
     @GetMapping("/delete")
-    public String listForDelete(@RequestParam(defaultValue = "0") int page,
+    public String listForDelete(@RequestParam(required = false) String after,
+                                @RequestParam(required = false) String before,
                                 @RequestParam(required = false) String keyword,
                                 @RequestParam(required = false) String author,
                                 @RequestParam(required = false) Long categoryId,
+                                HttpServletRequest request,
                                 Model model) {
 
-        Pageable pageable = PageRequest.of(Math.max(page,0), 10, Sort.by("id").descending());
-
         // rỗng -> null để query gọn
         String k = (keyword == null || keyword.isBlank()) ? null : keyword.trim();
         String a = (author  == null || author.isBlank())  ? null : author.trim();
 
-        Page<Book> books = bookRepo.searchBooksForDelete(k, a, categoryId, pageable);
+        BookService.KeysetPage kp = bookService.keysetPage(new BookFilter(categoryId, k, a, null),
+                KeysetOrder.ID, after, before, 10, true);
+        long total = Math.max(kp.approxTotal(), kp.content().size());
+        Page<Book> books = new PageImpl<>(kp.content(), PageRequest.of(0, 10), total);
 
         model.addAttribute("books", books);
+        model.addAttribute("after", after);     // form xoá gửi lại để quay về đúng trang
+        model.addAttribute("prevUrl", PageLinks.prev(request, kp.prevCursor()));
+        model.addAttribute("nextUrl", PageLinks.next(request, kp.nextCursor()));
         model.addAttribute("categories", categoryRepo.findAll());
         return "admin/books/delete_book";
     }
 
     @PostMapping("/delete/{id}")
     public String doDelete(@PathVariable Long id,
-                           @RequestParam(required = false) Integer page,
+                           @RequestParam(required = false) String after,
                            @RequestParam(required = false) String keyword,
                            @RequestParam(required = false) String author,
                            @RequestParam(required = false) Long categoryId,
@@ -187,7 +209,7 @@ public class AdminBookController {
 
         // redirect về lại đúng trang + bộ lọc cũ
         String url = UriComponentsBuilder.fromPath("/admin/books/delete")
-                .queryParam("page", page)
+                .queryParam("after", after)
                 .queryParam("keyword", keyword)
                 .queryParam("author", author)
                 .queryParam("categoryId", categoryId)
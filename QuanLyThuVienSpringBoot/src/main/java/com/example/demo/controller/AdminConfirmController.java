@@ -1,12 +1,15 @@
 package com.example.demo.controller;
 
 import com.example.demo.service.ConfirmService;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
+
 @Controller
 @RequestMapping("/admin/confirm")
 @PreAuthorize("hasRole('ADMIN')")
@@ -64,4 +67,20 @@ public class AdminConfirmController {
         }
         return "redirect:/admin/confirm";
     }
+
+    /**
+     * Quét hàng loạt (máy quét ở quầy / thùng trả sách): body là mảng JSON các mã thô (URL trong QR
+     * hoặc token), trả về kết quả từng mã theo đúng thứ tự. Gửi kèm header CSRF như form.
+     */
+    @PostMapping(value = "/batch/lend", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<ConfirmService.BatchItem> confirmLendBatch(@RequestBody List<String> codes) {
+        return confirmService.confirmLendBatch(codes);
+    }
+
+    @PostMapping(value = "/batch/return", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<ConfirmService.BatchItem> confirmReturnBatch(@RequestBody List<String> codes) {
+        return confirmService.confirmReturnBatch(codes);
+    }
 }
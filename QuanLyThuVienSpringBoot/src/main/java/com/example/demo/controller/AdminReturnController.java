@@ -1,6 +1,7 @@
 package com.example.demo.controller;
 
 import com.example.demo.repository.UserRepository;
+import com.example.demo.service.ConfirmRetryExecutor;
 import com.example.demo.service.ReturnTicketService;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
@@ -12,9 +13,10 @@ import org.springframework.web.bind.annotation.*;
 public class AdminReturnController {
   private final ReturnTicketService service;
   private final UserRepository userRepo;
+  private final ConfirmRetryExecutor retry;
 
-  public AdminReturnController(ReturnTicketService s, UserRepository ur) {
-    this.service=s; this.userRepo=ur;
+  public AdminReturnController(ReturnTicketService s, UserRepository ur, ConfirmRetryExecutor retry) {
+    this.service=s; this.userRepo=ur; this.retry=retry;
   }
 
   @GetMapping("/scan")
@@ -28,7 +30,7 @@ public class AdminReturnController {
                         @AuthenticationPrincipal org.springframework.security.core.userdetails.User principal,
                         Model model) {
     var admin = userRepo.findByEmail(principal.getUsername()).orElseThrow();
-    var b = service.confirmByAdmin(token, admin);
+    var b = retry.execute(() -> service.confirmByAdmin(token, admin));
     model.addAttribute("message", "Đã xác nhận trả: " + b.getBook().getTitle() + " từ " + b.getUser().getEmail());
     return "admin_return_scan_result";
   }
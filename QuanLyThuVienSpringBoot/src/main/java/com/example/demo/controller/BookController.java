@@ -2,6 +2,7 @@ package com.example.demo.controller;
 
 import com.example.demo.model.Book;
 import com.example.demo.repository.BookRepository;
+import com.example.demo.service.BookService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -16,9 +17,11 @@ import org.springframework.web.server.ResponseStatusException;
 public class BookController {
 
     private final BookRepository bookRepo;
+    private final BookService bookService;
 
-    public BookController(BookRepository bookRepo) {
+    public BookController(BookRepository bookRepo, BookService bookService) {
         this.bookRepo = bookRepo;
+        this.bookService = bookService;
     }
 
     /** Danh sách sách (công khai) — có tìm kiếm & phân trang cơ bản */
@@ -48,7 +51,7 @@ public class BookController {
     public String detail(@PathVariable Long id, Model model) {
         Book b = bookRepo.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found"));
-        model.addAttribute("book", b);
+        model.addAttribute("book", bookService.withDescription(b));   // chỉ trang chi tiết mới nạp mô tả
         return "user/book_detail"; // giữ đúng tên template bạn đang dùng
     }
 
@@ -1,5 +1,6 @@
 package com.example.demo.controller;
 
+import com.example.demo.filter.IdempotencyFilter;
 import com.example.demo.model.Borrow;
 import com.example.demo.model.BorrowTicket;
 import com.example.demo.model.User;
@@ -110,10 +111,8 @@ public class BorrowTicketController {
         List<Borrow> borrowed = Collections.emptyList();
         if (user != null) {
             borrowed = borrowRepo.findOpenByUserFetchBookOrderByDue(user.getId());
-            for (Borrow b : borrowed) {
-                try { borrowService.calculateOverdue(b); } catch (Exception ignore) {}
-                try { borrowService.annotateExtendability(b, isMember); } catch (Exception ignore) {}
-            }
+            try { borrowService.calculateOverdue(borrowed); } catch (Exception ignore) {}
+            try { borrowService.annotateExtendability(borrowed, isMember); } catch (Exception ignore) {}
         }
         model.addAttribute("borrowedBooks", borrowed);
 
@@ -144,6 +143,7 @@ public class BorrowTicketController {
         try {
             var tv = borrowTicketService.createTicket(user, bookId, amount, days);
             reservationService.markFulfilledIfAny(bookId, user.getId());
+            IdempotencyFilter.markSucceeded();
             return "redirect:/ticket/borrow/" + tv.ticket().getId() + "?back=/borrow";
         } catch (Exception ex) {
             ra.addFlashAttribute("error", ex.getMessage());
@@ -152,6 +152,62 @@ public class BorrowTicketController {
     }
 
 
+    /** Giỏ mượn: bookId[i] đi cùng amount[i]; 1 mã QR cho cả giỏ. */
+    @PostMapping("/ticket/borrow/cart")
+    public String createCart(@RequestParam(name="bookId") List<Long> bookIds,
+                             @RequestParam(name="amount", required=false) List<Integer> amounts,
+                             @RequestParam(name="days",   defaultValue="1") int days,
+                             Authentication auth, RedirectAttributes ra) {
+        if (auth == null) return "redirect:/signin";
+        User user = userRepo.findByUsername(auth.getName());
+        if (user == null) user = userRepo.findByEmail(auth.getName()).orElse(null);
+        if (user == null) return "redirect:/signin";
+
+        List<BorrowTicketService.CartLine> lines = new ArrayList<>();
+        for (int i = 0; i < bookIds.size(); i++) {
+            Long bookId = bookIds.get(i);
+            var gate = reservationService.assertBorrowAllowed(bookId, user.getId());
+            if (!gate.allowed()) {
+                ra.addFlashAttribute("error", gate.reason());
+                return "redirect:/borrow";
+            }
+            int amount = (amounts != null && i < amounts.size() && amounts.get(i) != null) ? amounts.get(i) : 1;
+            lines.add(new BorrowTicketService.CartLine(bookId, amount));
+        }
+        if (days < 1) days = 1;
+
+        try {
+            var cv = borrowTicketService.createCart(user, lines, days);
+            for (var t : cv.lines()) reservationService.markFulfilledIfAny(t.getBook().getId(), user.getId());
+            IdempotencyFilter.markSucceeded();
+            return "redirect:/ticket/borrow/cart/" + cv.cartToken();
+        } catch (Exception ex) {
+            ra.addFlashAttribute("error", ex.getMessage());
+            return "redirect:/borrow";
+        }
+    }
+
+    @GetMapping("/ticket/borrow/cart/{cartToken}")
+    public String viewCart(@PathVariable String cartToken, Authentication auth, Model model, RedirectAttributes ra) {
+        if (auth == null) return "redirect:/signin";
+        User user = userRepo.findByUsername(auth.getName());
+        if (user == null) user = userRepo.findByEmail(auth.getName()).orElse(null);
+        if (user == null) return "redirect:/signin";
+
+        List<BorrowTicket> lines = borrowTicketService.findCart(user, cartToken);
+        if (lines.isEmpty()) {
+            ra.addFlashAttribute("error", "Vé không tồn tại.");
+            return "redirect:/user/qr_history";
+        }
+        model.addAttribute("cartToken", cartToken);
+        model.addAttribute("lines", lines);
+        model.addAttribute("first", lines.get(0));
+        model.addAttribute("totalAmount", lines.stream().mapToInt(BorrowTicket::getAmount).sum());
+        model.addAttribute("qr", borrowTicketService.cartQr(cartToken));
+        model.addAttribute("viewerFullName", user.getFullName());
+        return "user/ticket_cart";
+    }
+
     // ✅ chỉ nhận số cho {id} để tránh /ticket/borrow/borrow khớp nhầm
     @GetMapping("/ticket/borrow/{id:\\d+}")
     public String viewBorrowTicket(@PathVariable Long id,
@@ -174,8 +230,7 @@ public class BorrowTicketController {
             return "redirect:/user/qr_history";
         }
 
-        String scanUrl = normalizeBaseUrl(baseUrl) + "/admin/ticket/scan?token=" + t.getToken();
-        String qr = qrService.toDataUriPng(scanUrl, 280);
+        String qr = borrowTicketService.qrOf(t);
 
         model.addAttribute("ticket", t);
         model.addAttribute("qr", qr);
@@ -229,6 +284,7 @@ public class BorrowTicketController {
         try {
             borrowService.extendBorrow(id, days, user.getId(), Boolean.TRUE.equals(user.isMember()));
             ra.addFlashAttribute("message", "Gia hạn thành công +" + days + " ngày.");
+            IdempotencyFilter.markSucceeded();
         } catch (Exception e) {
             ra.addFlashAttribute("error", e.getMessage());
         }
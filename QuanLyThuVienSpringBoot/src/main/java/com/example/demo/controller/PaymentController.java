@@ -1,5 +1,6 @@
 package com.example.demo.controller;
 
+import com.example.demo.filter.IdempotencyFilter;
 import com.example.demo.model.Borrow;
 import com.example.demo.model.User;
 import com.example.demo.repository.BorrowRepository;
@@ -59,6 +60,7 @@ public class PaymentController {
 	
 	try {
 	String checkoutUrl = paymentService.createPaymentForFine(borrowId, request); // service sẽ nhúng borrowId vào TxnRef/OrderInfo
+	IdempotencyFilter.markSucceeded();
 	return "redirect:" + checkoutUrl;
 	} catch (IllegalStateException ex) {
 	String msg = ex.getMessage();
@@ -102,6 +104,7 @@ public class PaymentController {
         if (months > 12) months = 12;
 
         String url = paymentService.createPaymentForMembershipMonths(me.getId(), months, request);
+        IdempotencyFilter.markSucceeded();
         return "redirect:" + url;
     }
 
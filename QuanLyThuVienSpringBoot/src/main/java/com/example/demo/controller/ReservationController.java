@@ -1,6 +1,8 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.User;
+import com.example.demo.service.AvailabilityEtaService;
+import com.example.demo.service.HoldQueueService;
 import com.example.demo.service.ReservationService;
 import com.example.demo.repository.UserRepository;
 import org.springframework.security.core.Authentication;
@@ -15,10 +17,15 @@ public class ReservationController {
 
     private final ReservationService reservationService;
     private final UserRepository userRepo;
+    private final HoldQueueService holdQueue;
+    private final AvailabilityEtaService availability;
 
-    public ReservationController(ReservationService reservationService, UserRepository userRepo) {
+    public ReservationController(ReservationService reservationService, UserRepository userRepo,
+                                 HoldQueueService holdQueue, AvailabilityEtaService availability) {
         this.reservationService = reservationService;
         this.userRepo = userRepo;
+        this.holdQueue = holdQueue;
+        this.availability = availability;
     }
 
     private User currentUser(Authentication auth) {
@@ -70,7 +77,7 @@ public class ReservationController {
         User me = currentUser(auth);
         if (me == null) { resp.put("status", "UNAUTHORIZED"); return resp; }
 
-        var readyOpt = reservationService.getOrPromoteReadyForUser(me.getId());
+        var readyOpt = reservationService.findReadyNotice(me.getId());
         if (readyOpt.isEmpty()) {
             resp.put("status", "NONE");
             return resp;
@@ -83,4 +90,29 @@ public class ReservationController {
         resp.put("expireAt", r.expireAt());
         return resp;
     }
+
+    // ===== API dự kiến có sách cho trang chi tiết (HTML trang sách được cache chung, phần này tách riêng) =====
+    // Khách / người chưa đặt chỗ: mốc của người xếp tiếp theo; người đã đặt chỗ: vị trí + mốc của chính họ.
+    @GetMapping("/api/books/{bookId}/eta")
+    @ResponseBody
+    public Map<String, Object> eta(@PathVariable Long bookId, Authentication auth) {
+        Map<String, Object> resp = new HashMap<>();
+        int waiting = holdQueue.waitingCount(bookId);
+        resp.put("bookId", bookId);
+        resp.put("waiting", waiting);
+
+        User me = currentUser(auth);
+        int position = (me == null) ? -1 : holdQueue.positionOfUser(bookId, me.getId());
+        if (position == 0) {
+            resp.put("status", "READY");
+            return resp;
+        }
+        resp.put("reserved", position > 0);
+        resp.put("position", position > 0 ? position : waiting + 1);
+
+        var at = availability.eta(bookId, position > 0 ? position : waiting + 1);
+        resp.put("status", at == null ? "UNKNOWN" : "ESTIMATE");
+        if (at != null) resp.put("expectedAt", at);
+        return resp;
+    }
 }
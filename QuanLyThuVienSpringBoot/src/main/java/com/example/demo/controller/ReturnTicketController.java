@@ -142,8 +142,7 @@ public class ReturnTicketController {
       return "redirect:/user/qr_history";
     }
 
-    String scanUrl = normalizeBaseUrl(baseUrl) + "/admin/return/scan?token=" + t.getToken();
-    String qr = qrService.toDataUriPng(scanUrl, 280);
+    String qr = service.qrOf(t);
 
     model.addAttribute("requestedEpoch", toEpochMillis(t.getRequestedAt()));
     model.addAttribute("expiresEpoch",   toEpochMillis(t.getExpiresAt()));
@@ -1,8 +1,10 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.Book;
-import com.example.demo.repository.BookRepository;
+import com.example.demo.service.AutocompleteService;
 import com.example.demo.service.CategoryService;
+import com.example.demo.service.FacetService;
+import com.example.demo.service.SearchService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -10,22 +12,50 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
 
 @Controller
 public class SearchController {
 
-    private final BookRepository bookRepo;
+    private final SearchService searchService;
     private final CategoryService categoryService;
+    private final AutocompleteService autocompleteService;
+    private final FacetService facetService;
 
-    public SearchController(BookRepository bookRepo, CategoryService categoryService) {
-        this.bookRepo = bookRepo;
+    public SearchController(SearchService searchService, CategoryService categoryService,
+                            AutocompleteService autocompleteService, FacetService facetService) {
+        this.searchService = searchService;
         this.categoryService = categoryService;
+        this.autocompleteService = autocompleteService;
+        this.facetService = facetService;
+    }
+
+    // ===== API facet: lọc danh mục (OR) x còn/hết x tác giả (OR), kèm số đếm từng facet =====
+    @GetMapping("/api/search/facets")
+    @ResponseBody
+    public FacetService.FacetResult facets(@RequestParam(name = "categoryId", required = false) List<Long> categoryIds,
+                                           @RequestParam(required = false) Boolean available,
+                                           @RequestParam(name = "author", required = false) List<String> authors,
+                                           @RequestParam(defaultValue = "10") int authorLimit) {
+        return facetService.facets(new FacetService.FacetQuery(categoryIds, available, authors),
+                Math.min(Math.max(authorLimit, 0), 50));
+    }
+
+    // ===== API gợi ý khi gõ: chỉ đọc trie trong bộ nhớ, không chạm DB =====
+    @GetMapping("/api/search/suggest")
+    @ResponseBody
+    public List<AutocompleteService.Completion> suggest(@RequestParam(name = "q", required = false) String q,
+                                                        @RequestParam(defaultValue = "8") int limit) {
+        return autocompleteService.complete(q, limit);
     }
 
     @GetMapping("/search")
     public String search(@RequestParam(name = "q", required = false) String q,
                          @RequestParam(defaultValue = "1") int page,
                          @RequestParam(defaultValue = "6") int size,
+                         @RequestParam(defaultValue = "false") boolean fuzzy,
                          Model model) {
 
         String keyword = (q == null) ? "" : q.trim();
@@ -38,8 +68,7 @@ public class SearchController {
         int pageSize  = Math.min(Math.max(size, 1), 6);
 
         Pageable pageable = PageRequest.of(pageIndex, pageSize);
-        Page<Book> result = bookRepo
-                .findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(keyword, keyword, pageable);
+        Page<Book> result = runSearch(keyword, pageable, fuzzy, model);
 
         model.addAttribute("categories", categoryService.findAll());
         model.addAttribute("books", result);
@@ -61,6 +90,7 @@ public class SearchController {
     public String search_ad(@RequestParam(name = "q", required = false) String q,
                             @RequestParam(defaultValue = "1") int page,
                             @RequestParam(defaultValue = "6") int size,
+                            @RequestParam(defaultValue = "false") boolean fuzzy,
                             Model model) {
 
         String keyword = (q == null) ? "" : q.trim();
@@ -73,8 +103,7 @@ public class SearchController {
         int pageSize  = Math.min(Math.max(size, 1), 6);
 
         Pageable pageable = PageRequest.of(pageIndex, pageSize);
-        Page<Book> result = bookRepo
-                .findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(keyword, keyword, pageable);
+        Page<Book> result = runSearch(keyword, pageable, fuzzy, model);
 
         model.addAttribute("categories", categoryService.findAll());
         model.addAttribute("books", result);
@@ -91,4 +120,21 @@ public class SearchController {
 
         return "admin/home_ad";
     }
+
+    /**
+     * Tìm chính xác (theo tiền tố từ); fuzzy=true hoặc không có kết quả -> tìm gần đúng,
+     * kèm gợi ý "Có phải bạn muốn tìm". Đặt 2 biến view: fuzzy, suggestion.
+     */
+    private Page<Book> runSearch(String keyword, Pageable pageable, boolean fuzzy, Model model) {
+        Page<Long> ids = fuzzy ? searchService.fuzzySearchIds(keyword, pageable)
+                               : searchService.searchIds(keyword, pageable);
+        boolean approximate = fuzzy;
+        if (!fuzzy && ids.getTotalElements() == 0) {
+            ids = searchService.fuzzySearchIds(keyword, pageable);
+            approximate = true;
+        }
+        model.addAttribute("fuzzy", approximate);
+        model.addAttribute("suggestion", approximate ? searchService.suggest(keyword) : null);
+        return searchService.hydrate(ids);
+    }
 }
@@ -4,9 +4,18 @@ import com.example.demo.dto.TopBorrowerDTO;
 import com.example.demo.model.Book;
 import com.example.demo.model.Borrow;
 import com.example.demo.model.Category;
+import com.example.demo.repository.BookRepositoryCustom.BookFilter;
+import com.example.demo.repository.BookRepositoryCustom.KeysetOrder;
+import com.example.demo.service.BookService;
+import com.example.demo.service.BorrowService;
+import com.example.demo.service.FacetService;
+import com.example.demo.service.FacetService.FacetQuery;
+import com.example.demo.util.PageLinks;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -14,10 +23,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
-import java.lang.reflect.Method;
 import java.time.*;
-import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.Collections;
 import java.util.Comparator;
@@ -27,22 +33,31 @@ import java.util.List;
 @RequestMapping("/admin/statistics")
 public class StatisticsController {
 
-    private static final int FINE_PER_DAY = 5000;
-
     @PersistenceContext
     private EntityManager em;
 
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private FacetService facetService;
+
+    @Autowired
+    private BorrowService borrowService;
+
     @GetMapping("/status")
     public String status(@RequestParam(value = "categoryId", required = false) Long categoryId,
                          @RequestParam(value = "q", required = false) String q,
-                         @RequestParam(defaultValue = "0") int page,
+                         @RequestParam(value = "available", required = false) Boolean available,
+                         @RequestParam(required = false) String after,
+                         @RequestParam(required = false) String before,
                          @RequestParam(defaultValue = "10") int size,
+                         HttpServletRequest request,
                          Model model) {
 
         Long cat = (categoryId != null && categoryId == 0L) ? null : categoryId;
         String keyword = (q == null) ? null : q.trim();
         if (keyword != null && keyword.isEmpty()) keyword = null;
-        int pageIndex = Math.max(page, 0);
         int pageSize  = Math.min(Math.max(size, 1), 60);
 
         List<Borrow> borrowed = em.createQuery("""
@@ -63,7 +78,13 @@ public class StatisticsController {
         model.addAttribute("totalBorrowedQty", totalBorrowedQty);
         model.addAttribute("totalBorrowedBooks", totalBorrowedQty);
 
-        Page<Book> bookPage = pageBooksFiltered(cat, keyword, pageIndex, pageSize);
+        // Danh sách sách: keyset theo id desc (không OFFSET/COUNT trên bảng book)
+        BookService.KeysetPage kp = bookService.keysetPage(new BookFilter(cat, null, null, keyword, available),
+                KeysetOrder.ID, after, before, pageSize, true);
+        long approxTotal = Math.max(kp.approxTotal(), kp.content().size());
+        Page<Book> bookPage = new PageImpl<>(kp.content(), PageRequest.of(0, pageSize), approxTotal);
+        model.addAttribute("prevUrl", PageLinks.prev(request, kp.prevCursor()));
+        model.addAttribute("nextUrl", PageLinks.next(request, kp.nextCursor()));
         Long totalAvailableQuantity = sumQuantityFiltered(cat, keyword);
 
         model.addAttribute("bookPage", bookPage);
@@ -75,6 +96,8 @@ public class StatisticsController {
         model.addAttribute("categories", categories);
         model.addAttribute("categoryId", cat);
         model.addAttribute("q", keyword);
+        model.addAttribute("available", available);
+        model.addAttribute("facets", facetService.facets(FacetQuery.of(cat, available), 0));
 
         return "admin/statistics/status";
     }
@@ -109,16 +132,8 @@ public class StatisticsController {
                 """, Borrow.class)
                 .setParameter("now", now)
                 .getResultList();
-        for (Borrow b : overdueList) {
-            int days = 0;
-            if (b.getDueDate() != null) {
-                days = (int) Math.max(0,
-                        ChronoUnit.DAYS.between(b.getDueDate().toLocalDate(), LocalDate.now()));
-            }
-            BigDecimal fine = (days > 0) ? BigDecimal.valueOf((long) days * FINE_PER_DAY) : BigDecimal.ZERO;
-            trySet(b, "setOverdueDays", int.class, days);
-            trySet(b, "setFineAmount",  BigDecimal.class, fine);
-        }
+        // Ngày trễ / phạt theo cùng quy tắc với thanh toán (24h, freeDays, finePerDay, số cuốn)
+        borrowService.calculateOverdue(overdueList);
         overdueList.sort(Comparator.comparing(Borrow::getDueDate,
                 Comparator.nullsLast(Comparator.naturalOrder())));
         model.addAttribute("overdueList", overdueList);
@@ -154,45 +169,6 @@ public class StatisticsController {
                 .getSingleResult();
     }
 
-    private Page<Book> pageBooksFiltered(Long categoryId, String q, int page, int size) {
-        Long total = em.createQuery("""
-                select count(bk)
-                from Book bk
-                where (:categoryId is null or bk.category.id = :categoryId)
-                  and (
-                       :q is null
-                       or lower(bk.title)  like lower(concat('%', :q, '%'))
-                       or lower(bk.author) like lower(concat('%', :q, '%'))
-                  )
-                """, Long.class)
-                .setParameter("categoryId", categoryId)
-                .setParameter("q", q)
-                .getSingleResult();
-
-        if (total == 0) {
-            return new PageImpl<>(Collections.emptyList(), PageRequest.of(page, size), 0);
-        }
-        TypedQuery<Book> tq = em.createQuery("""
-                select bk
-                from Book bk
-                left join fetch bk.category c
-                where (:categoryId is null or bk.category.id = :categoryId)
-                  and (
-                       :q is null
-                       or lower(bk.title)  like lower(concat('%', :q, '%'))
-                       or lower(bk.author) like lower(concat('%', :q, '%'))
-                  )
-                order by bk.title asc
-                """, Book.class);
-        tq.setParameter("categoryId", categoryId);
-        tq.setParameter("q", q);
-        List<Book> content = tq
-                .setFirstResult(page * size)
-                .setMaxResults(size)
-                .getResultList();
-
-        return new PageImpl<>(content, PageRequest.of(page, size), total);
-    }
     private Long sumQuantityFiltered(Long categoryId, String q) {
         return em.createQuery("""
                 select coalesce(sum(bk.quantity), 0)
@@ -245,23 +221,4 @@ public class StatisticsController {
                 where b.returnDate is null
                 """, Long.class).getSingleResult();
     }
-    private void trySet(Object target, String setter, Class<?> paramType, Object value) {
-        try {
-            Method m = target.getClass().getMethod(setter, paramType);
-            m.invoke(target, value);
-            return;
-        } catch (Exception ignore) { }
-        try {
-            if (paramType == int.class) {
-                Method m = target.getClass().getMethod(setter, Integer.class);
-                m.invoke(target, Integer.valueOf((Integer) value));
-                return;
-            }
-            if (paramType == Integer.class) {
-                Method m = target.getClass().getMethod(setter, int.class);
-                m.invoke(target, ((Integer) value).intValue());
-                return;
-            }
-        } catch (Exception ignore) { }
-    }
 }
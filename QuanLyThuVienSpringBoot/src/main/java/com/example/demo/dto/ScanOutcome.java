@@ -0,0 +1,19 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.Borrow;
+
+/** Kết quả xác nhận 1 mã trong lô quét: borrow != null = thành công, ngược lại error là lý do. */
+public record ScanOutcome(Borrow borrow, String error) {
+
+    public static ScanOutcome ok(Borrow borrow) {
+        return new ScanOutcome(borrow, null);
+    }
+
+    public static ScanOutcome fail(String error) {
+        return new ScanOutcome(null, error);
+    }
+
+    public boolean isOk() {
+        return borrow != null;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.demo.filter;
+
+import com.example.demo.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Chống gửi trùng (double-click, app di động thử lại) cho POST tạo vé mượn / giỏ, gia hạn và khởi tạo
+ * thanh toán. Khoá lấy từ header Idempotency-Key, hoặc trường form _idem (template sinh mỗi lần render).
+ * Chạy sau Spring Security (cần người dùng để tách khoá giữa các tài khoản):
+ * - lần đầu: chạy controller; chỉ lưu status + Location khi controller báo thành công (markSucceeded)
+ *   và phản hồi là redirect. Thất bại (redirect về form kèm flash lỗi...) thì nhả khoá: gửi lại được
+ *   xử lý lại và thấy thông báo lỗi, không bị phát lại 1 redirect trống;
+ * - gửi lại: phát lại đúng redirect đó (header Idempotent-Replayed), không chạm service nào;
+ * - lần đầu còn đang chạy ở node khác / quá thời gian chờ -> 409 + Retry-After;
+ * - header dùng lại cho request khác -> 422. Khoá từ form được gộp cả tham số vào phạm vi,
+ *   nên quay lại trang cũ rồi đổi số lượng sẽ là request mới.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String FORM_FIELD = "_idem";
+
+    private static final Pattern PATHS = Pattern.compile(
+            "^/ticket/borrow/create/\\d+$|^/ticket/borrow/cart$|^/borrow/\\d+/extend$"
+                    + "|^/payment/fine/\\d+$|^/payment/membership(/checkout-vnpay)?$|^/membership/checkout-vnpay$");
+    private static final Pattern KEY = Pattern.compile("^[A-Za-z0-9_-]{8,64}$");
+    private static final String SUCCEEDED = IdempotencyFilter.class.getName() + ".SUCCEEDED";
+
+    private final IdempotencyService service;
+
+    public IdempotencyFilter(IdempotencyService service) {
+        this.service = service;
+    }
+
+    /** Controller gọi ở nhánh thành công: kết quả của request hiện tại được lưu để phát lại. */
+    public static void markSucceeded() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        if (attrs != null) attrs.setAttribute(SUCCEEDED, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !service.isEnabled() || !"POST".equals(request.getMethod()) || !PATHS.matcher(path(request)).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        String user = currentUser();
+        String headerKey = req.getHeader(HEADER);
+        String key = headerKey != null ? headerKey : req.getParameter(FORM_FIELD);
+        if (user == null || key == null || !KEY.matcher(key).matches()) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        String fingerprint = fingerprint(req);
+        String scope = headerKey != null
+                ? IdempotencyService.sha256(user, key)
+                : IdempotencyService.sha256(user, key, fingerprint);
+
+        IdempotencyService.Begin begin = service.begin(scope, fingerprint);
+        switch (begin.outcome()) {
+            case REPLAY -> {
+                res.setHeader("Idempotent-Replayed", "true");
+                res.setStatus(begin.stored().status());
+                res.setHeader("Location", begin.stored().location());
+                return;
+            }
+            case IN_PROGRESS -> {
+                res.setHeader("Retry-After", "1");
+                res.sendError(HttpServletResponse.SC_CONFLICT, "Yêu cầu đang được xử lý.");
+                return;
+            }
+            case MISMATCH -> {
+                res.sendError(422, "Idempotency-Key đã dùng cho yêu cầu khác.");
+                return;
+            }
+            case PROCEED -> { }
+        }
+
+        boolean stored = false;
+        try {
+            chain.doFilter(req, res);
+            int status = res.getStatus();
+            String location = res.getHeader("Location");
+            if (Boolean.TRUE.equals(req.getAttribute(SUCCEEDED)) && status >= 300 && status < 400 && location != null) {
+                service.complete(scope, fingerprint, status, location);
+                stored = true;
+            }
+        } finally {
+            if (!stored) service.release(scope);
+        }
+    }
+
+    /** method + path + tham số đã sắp xếp (bỏ CSRF và chính khoá). */
+    static String fingerprint(HttpServletRequest req) {
+        TreeMap<String, String> params = new TreeMap<>();
+        req.getParameterMap().forEach((k, v) -> {
+            if (!k.equals(FORM_FIELD) && !k.equals("_csrf")) params.put(k, Arrays.toString(v));
+        });
+        return IdempotencyService.sha256(req.getMethod(), path(req), params.toString());
+    }
+
+    private static String currentUser() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth instanceof AnonymousAuthenticationToken || !auth.isAuthenticated()) return null;
+        return auth.getName();
+    }
+
+    private static String path(HttpServletRequest req) {
+        String uri = req.getRequestURI();
+        String ctx = req.getContextPath();
+        return (ctx != null && !ctx.isEmpty() && uri.startsWith(ctx)) ? uri.substring(ctx.length()) : uri;
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.demo.filter;
 
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.stereotype.Component;
 import java.io.IOException;
 
+/** Chặn cache trình duyệt cho mọi trang, trừ các trang catalog do PageCacheFilter đặt header (ETag). */
 @Component
 public class NoCacheFilter implements Filter {
 
@@ -12,6 +14,11 @@ public class NoCacheFilter implements Filter {
   public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
       throws IOException, ServletException {
 
+    if (PageCacheFilter.handles((HttpServletRequest) req)) {
+      chain.doFilter(req, res);
+      return;
+    }
+
     HttpServletResponse resp = (HttpServletResponse) res;
     resp.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
     resp.setHeader("Pragma", "no-cache");
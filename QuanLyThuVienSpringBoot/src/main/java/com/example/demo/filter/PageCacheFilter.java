@@ -0,0 +1,128 @@
+package com.example.demo.filter;
+
+import com.example.demo.service.PageCache;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Phục vụ /home, /search, /books/{id} từ PageCache cho khách và ROLE_USER (admin luôn render).
+ * Chạy sau Spring Security (cần biết đã đăng nhập chưa). Header:
+ * - khách: "public, no-cache" + ETag + Vary: Cookie (proxy được giữ nhưng phải hỏi lại);
+ * - đã đăng nhập: "private, no-cache" + ETag; If-None-Match khớp -> 304.
+ * Trang chỉ khác nhau giữa 2 biến thể này (menu Đăng nhập / Đăng xuất), không có token CSRF.
+ */
+@Component
+public class PageCacheFilter extends OncePerRequestFilter {
+
+    private static final Pattern BOOK_DETAIL = Pattern.compile("^/books/(\\d+)(/[^/]+)?$");
+
+    private final PageCache cache;
+
+    public PageCacheFilter(PageCache cache) {
+        this.cache = cache;
+    }
+
+    /** Request có thuộc nhóm trang được cache không (NoCacheFilter bỏ qua các trang này). */
+    public static boolean handles(HttpServletRequest req) {
+        if (!"GET".equals(req.getMethod())) return false;
+        String path = path(req);
+        return path.equals("/home") || path.equals("/search") || BOOK_DETAIL.matcher(path).matches();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !cache.isEnabled() || !handles(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        String variant = variant();
+        if (variant == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+        String path = path(req);
+        Matcher m = BOOK_DETAIL.matcher(path);
+        Long bookId = m.matches() ? Long.valueOf(m.group(1)) : null;
+        String key = PageCache.key(variant, path, req.getParameterMap());
+
+        ContentCachingResponseWrapper[] rendered = new ContentCachingResponseWrapper[1];
+        PageCache.Result r;
+        try {
+            r = cache.getOrLoad(key, () -> {
+                ContentCachingResponseWrapper w = new ContentCachingResponseWrapper(res);
+                rendered[0] = w;
+                chain.doFilter(req, w);
+                String type = w.getContentType();
+                if (w.getStatus() != HttpServletResponse.SC_OK || type == null || !type.startsWith("text/html")) {
+                    return null;
+                }
+                byte[] body = w.getContentAsByteArray();
+                return new PageCache.Page(body, type, PageCache.etag(body), bookId);
+            });
+        } catch (IOException | ServletException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ServletException(e);
+        }
+
+        if (r.leader()) {
+            if (r.page() != null) {
+                cacheHeaders(res, r.page(), variant);
+                res.setHeader("X-Page-Cache", "MISS");
+            }
+            rendered[0].copyBodyToResponse();
+            return;
+        }
+        if (r.page() == null) {   // leader không cache được / chờ quá lâu -> tự render
+            chain.doFilter(req, res);
+            return;
+        }
+
+        PageCache.Page page = r.page();
+        cacheHeaders(res, page, variant);
+        res.setHeader("X-Page-Cache", "HIT");
+        String inm = req.getHeader("If-None-Match");
+        if (inm != null && inm.contains(page.etag())) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        res.setContentType(page.contentType());
+        res.setContentLength(page.body().length);
+        res.getOutputStream().write(page.body());
+    }
+
+    /** "anon" / "user"; null = không cache (admin hoặc vai trò khác). */
+    private static String variant() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth instanceof AnonymousAuthenticationToken || !auth.isAuthenticated()) return "anon";
+        boolean admin = auth.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+        boolean user = auth.getAuthorities().stream().anyMatch(a -> "ROLE_USER".equals(a.getAuthority()));
+        return (!admin && user) ? "user" : null;
+    }
+
+    private static void cacheHeaders(HttpServletResponse res, PageCache.Page page, String variant) {
+        res.setHeader("Cache-Control", "anon".equals(variant) ? "public, no-cache" : "private, no-cache");
+        res.setHeader("ETag", page.etag());
+        res.setHeader("Vary", "Cookie");
+    }
+
+    private static String path(HttpServletRequest req) {
+        String uri = req.getRequestURI();
+        String ctx = req.getContextPath();
+        return (ctx != null && !ctx.isEmpty() && uri.startsWith(ctx)) ? uri.substring(ctx.length()) : uri;
+    }
+}
@@ -8,13 +8,19 @@ import org.hibernate.annotations.CreationTimestamp;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.JoinColumn;
 import com.example.demo.model.Category;
+import com.example.demo.service.CatalogEntityListener;
 
 @Entity
+@EntityListeners(CatalogEntityListener.class)
 public class Book {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     private String title;
     private String author;
 
@@ -24,8 +30,9 @@ public class Book {
     private LocalDateTime createdAt;
 
     private String imagePath;
-    @Lob
-    @Column(columnDefinition = "TEXT")
+    // Cột description được map ở BookDescription (nạp riêng khi cần); ở đây chỉ giữ giá trị
+    // form / trang chi tiết -> danh sách sách không kéo TEXT qua JDBC.
+    @Transient
     private String description;
 
     public String getDescription() {        // ✅ trả về String
@@ -92,6 +99,14 @@ public class Book {
         this.available = quantity > 0; // Tự động cập nhật trạng thái available
     }
 
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public LocalDateTime getUpdatedAt() {
         return updatedAt;
     }
@@ -126,4 +141,6 @@ public class Book {
 
     public Category getCategory() { return category; }
     public void setCategory(Category category) { this.category = category; }
+
+    public Long getVersion() { return version; }
 }
@@ -0,0 +1,36 @@
+package com.example.demo.model;
+
+import com.example.demo.service.CatalogEntityListener;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Cột mô tả (TEXT) của bảng book, tách thành entity riêng để các trang danh sách
+ * (Book) không kéo nội dung dài qua JDBC. Chỉ đọc/sửa mô tả của sách đã tồn tại;
+ * sửa mô tả cũng cập nhật updated_at (để snapshot chỉ mục tìm kiếm replay đúng).
+ */
+@Entity
+@Table(name = "book")
+@EntityListeners(CatalogEntityListener.class)
+public class BookDescription {
+    @Id
+    private Long id;
+
+    @Lob
+    @Column(name = "description", columnDefinition = "TEXT")
+    private String body;
+
+    @Column(nullable = false)   // cùng tên logic với Book.updatedAt (cùng cột updated_at)
+    private LocalDateTime updatedAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+
+    @PreUpdate
+    public void updateTimestamp() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -1,8 +1,8 @@
 package com.example.demo.model;
 
+import com.example.demo.util.FeeCalculator;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
-import java.time.Duration;
 import java.time.LocalDateTime;
 
 @Entity
@@ -13,6 +13,10 @@ public class Borrow {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
@@ -114,13 +118,8 @@ public class Borrow {
     @Transient
     public int calcOverdueDays24h() {
         if (getDueDate() == null) return 0;
-
         LocalDateTime end = (getReturnDate() != null) ? getReturnDate() : LocalDateTime.now();
-        if (!end.isAfter(getDueDate())) return 0;
-
-        long minutesLate = Duration.between(getDueDate(), end).toMinutes();
-        long days = minutesLate / 1440; // 1440 phút = 24h → chia lấy phần nguyên
-        return (int) Math.max(days, 0);
+        return FeeCalculator.overdueDays(FeeCalculator.epochMinute(getDueDate()), FeeCalculator.epochMinute(end), 0);
     }
 
     /**
@@ -134,11 +133,7 @@ public class Borrow {
     /** Phí phạt = ngày_trễ(24h) × số_cuốn × rate (VND). */
     @Transient
     public BigDecimal calcFineAmount(long dailyRateVnd) {
-        int qty = (getAmount() != null ? getAmount() : 1);
-        long days = calcOverdueDays24h();
-        return BigDecimal.valueOf(days)
-                .multiply(BigDecimal.valueOf(qty))
-                .multiply(BigDecimal.valueOf(dailyRateVnd));
+        return FeeCalculator.vnd(FeeCalculator.fee(calcOverdueDays24h(), getAmount() != null ? getAmount() : 1, dailyRateVnd));
     }
 
     /** Bản tương thích tham số int. */
@@ -161,4 +156,6 @@ public class Borrow {
         }
         return calcFineAmount(dailyRateVnd);
     }
+
+    public Long getVersion() { return version; }
 }
@@ -4,7 +4,8 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "borrow_ticket")
+@Table(name = "borrow_ticket",
+       indexes = @Index(name = "ix_borrow_ticket_cart", columnList = "cart_token"))
 public class BorrowTicket {
 
     public enum TicketStatus { PENDING, CONFIRMED, CANCELLED, EXPIRED }
@@ -13,9 +14,17 @@ public class BorrowTicket {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @Column(length = 64, unique = true, nullable = false)
     private String token;
 
+    // Vé giỏ: các dòng cùng 1 mã QR chung (mỗi dòng vẫn có token riêng); null = vé 1 sách
+    @Column(name = "cart_token", length = 64)
+    private String cartToken;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
@@ -128,5 +137,14 @@ public class BorrowTicket {
     public void setConfirmedAt(LocalDateTime confirmedAt) {
         this.confirmedAt = confirmedAt;
     }
-}
 
+    public String getCartToken() {
+        return cartToken;
+    }
+
+    public void setCartToken(String cartToken) {
+        this.cartToken = cartToken;
+    }
+
+    public Long getVersion() { return version; }
+}
@@ -1,8 +1,10 @@
 package com.example.demo.model;
 
+import com.example.demo.service.CatalogEntityListener;
 import jakarta.persistence.*;
 
 @Entity
+@EntityListeners(CatalogEntityListener.class)
 public class Category {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
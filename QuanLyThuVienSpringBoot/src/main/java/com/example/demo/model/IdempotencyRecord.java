@@ -0,0 +1,72 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Kết quả đã lưu của 1 POST có khoá idempotency (vé mượn, gia hạn, khởi tạo thanh toán).
+ * scopeKey = SHA-256(người dùng + khoá client [+ dấu vân tay với token form]) -> độ dài cố định, unique.
+ */
+@Entity
+@Table(
+    name = "idempotency_record",
+    indexes = {
+        @Index(name = "ux_idem_scope", columnList = "scope_key", unique = true),
+        @Index(name = "ix_idem_expires", columnList = "expires_at")
+    }
+)
+public class IdempotencyRecord {
+
+    /** IN_PROGRESS: request đầu đang chạy; DONE: đã có phản hồi để phát lại. */
+    public enum State { IN_PROGRESS, DONE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "scope_key", nullable = false, length = 64)
+    private String scopeKey;
+
+    /** SHA-256 của method + path + tham số; khoá dùng lại cho request khác -> 422. */
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private State state;
+
+    private Integer status;
+
+    @Column(length = 2048)
+    private String location;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getScopeKey() { return scopeKey; }
+    public void setScopeKey(String scopeKey) { this.scopeKey = scopeKey; }
+
+    public String getFingerprint() { return fingerprint; }
+    public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+
+    public State getState() { return state; }
+    public void setState(State state) { this.state = state; }
+
+    public Integer getStatus() { return status; }
+    public void setStatus(Integer status) { this.status = status; }
+
+    public String getLocation() { return location; }
+    public void setLocation(String location) { this.location = location; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+}
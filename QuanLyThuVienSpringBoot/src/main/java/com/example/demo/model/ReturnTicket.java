@@ -13,6 +13,10 @@ public class ReturnTicket {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @Column(length = 64, unique = true, nullable = false)
     private String token;
 
@@ -97,4 +101,6 @@ public class ReturnTicket {
     public void setConfirmedAt(LocalDateTime confirmedAt) {
         this.confirmedAt = confirmedAt;
     }
+
+    public Long getVersion() { return version; }
 }
@@ -0,0 +1,23 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.BookDescription;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface BookDescriptionRepository extends JpaRepository<BookDescription, Long> {
+
+    @Query("SELECT d.body FROM BookDescription d WHERE d.id = :id")
+    Optional<String> findBodyById(@Param("id") Long id);
+
+    // id, mô tả (nạp chỉ mục full-text)
+    @Query("SELECT d.id, d.body FROM BookDescription d WHERE d.body IS NOT NULL")
+    List<Object[]> findAllBodies();
+
+    @Query("SELECT d.id, d.body FROM BookDescription d WHERE d.id IN :ids AND d.body IS NOT NULL")
+    List<Object[]> findBodies(@Param("ids") Collection<Long> ids);
+}
@@ -5,12 +5,14 @@ import com.example.demo.model.Category;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
     Page<Book> findByCategory_Id(Long categoryId, Pageable pageable);
 
     List<Book> findByAvailable(boolean available);
@@ -28,6 +30,47 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     Page<Book> findByAuthorContainingIgnoreCase(String author, Pageable pageable);
     Page<Book> findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(String title, String author, Pageable pageable);
 
+    // Chỉ id + title + author (nạp chỉ mục gợi ý, không kéo cả entity/description)
+    @Query("SELECT b.id, b.title, b.author FROM Book b")
+    List<Object[]> findAllTitleAuthor();
+
+    // id, categoryId, quantity, author (nạp chỉ mục facet)
+    @Query("SELECT b.id, c.id, b.quantity, b.author FROM Book b LEFT JOIN b.category c")
+    List<Object[]> findAllFacetRows();
+
+    // Nạp chỉ mục từ snapshot: danh sách id còn tồn tại + sách đổi sau mốc chụp
+    @Query("SELECT b.id FROM Book b")
+    List<Long> findAllIds();
+
+    @Query("SELECT b FROM Book b LEFT JOIN FETCH b.category WHERE b.updatedAt > :since")
+    List<Book> findUpdatedSince(@Param("since") LocalDateTime since);
+
+    // Tồn kho: 1 câu UPDATE có điều kiện (không đọc-sửa-ghi), tăng version để bản entity cũ không ghi đè.
+    // Gán available TRƯỚC quantity:
+    // MySQL tính các phép gán từ trái sang phải (thấy giá trị mới), chuẩn SQL thì thấy giá trị cũ.
+    @Modifying(flushAutomatically = true)
+    @Query("""
+           update Book b
+              set b.available = case when b.quantity > :n then true else false end,
+                  b.quantity  = b.quantity - :n,
+                  b.updatedAt = :now,
+                  b.version   = b.version + 1
+            where b.id = :id
+              and b.quantity >= :n
+           """)
+    int decrementStock(@Param("id") Long id, @Param("n") int n, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+           update Book b
+              set b.available = true,
+                  b.quantity  = b.quantity + :n,
+                  b.updatedAt = :now,
+                  b.version   = b.version + 1
+            where b.id = :id
+           """)
+    int incrementStock(@Param("id") Long id, @Param("n") int n, @Param("now") LocalDateTime now);
+
     // Còn trong kho
     @Query("SELECT b FROM Book b WHERE b.quantity > 0")
     List<Book> findBooksInStock();
@@ -0,0 +1,38 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Book;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/** Phân trang keyset (seek) cho Book: không OFFSET, không COUNT. */
+public interface BookRepositoryCustom {
+
+    /** Khoá sắp xếp: (createdAt desc, id desc) hoặc (id desc). */
+    enum KeysetOrder { CREATED_AT, ID }
+
+    /** Bộ lọc tuỳ chọn (null/rỗng = bỏ qua). keyword khớp title HOẶC author; available: còn/hết sách. */
+    record BookFilter(Long categoryId, String title, String author, String keyword, Boolean available) {
+        public BookFilter(Long categoryId, String title, String author, String keyword) {
+            this(categoryId, title, author, keyword, null);
+        }
+        public static BookFilter none() { return new BookFilter(null, null, null, null); }
+        public static BookFilter category(Long categoryId) { return new BookFilter(categoryId, null, null, null); }
+
+        /** Không có điều kiện văn bản (chỉ danh mục/tồn kho) -> lọc được hoàn toàn bằng bitmap facet. */
+        public boolean facetOnly() {
+            return isBlank(title) && isBlank(author) && isBlank(keyword);
+        }
+
+        private static boolean isBlank(String s) { return s == null || s.isBlank(); }
+    }
+
+    /** Vị trí con trỏ: hàng cuối của trang trước (backward = đi lùi về trang trước). */
+    record Keyset(LocalDateTime createdAt, Long id, boolean backward) {}
+
+    /**
+     * Lấy tối đa {@code limit} sách sau (hoặc trước nếu backward) con trỏ.
+     * Kết quả theo thứ tự truy vấn: desc khi đi tới, asc khi đi lùi (người gọi tự đảo lại).
+     */
+    List<Book> seek(BookFilter filter, KeysetOrder order, Keyset from, int limit);
+}
@@ -0,0 +1,79 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Book;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Cài đặt seek bằng JPQL động; điều kiện keyset dạng (a < :a or (a = :a and id < :id)) để dùng được index. */
+public class BookRepositoryImpl implements BookRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public List<Book> seek(BookFilter filter, KeysetOrder order, Keyset from, int limit) {
+        StringBuilder where = new StringBuilder(" where 1=1 ");
+        Map<String, Object> params = new HashMap<>();
+
+        if (filter != null) {
+            if (filter.categoryId() != null) {
+                where.append(" and bk.category.id = :cat ");
+                params.put("cat", filter.categoryId());
+            }
+            if (hasText(filter.title())) {
+                where.append(" and lower(bk.title) like :title ");
+                params.put("title", like(filter.title()));
+            }
+            if (hasText(filter.author())) {
+                where.append(" and lower(bk.author) like :author ");
+                params.put("author", like(filter.author()));
+            }
+            if (hasText(filter.keyword())) {
+                where.append(" and (lower(bk.title) like :kw or lower(bk.author) like :kw) ");
+                params.put("kw", like(filter.keyword()));
+            }
+            if (filter.available() != null) {
+                where.append(filter.available() ? " and bk.quantity > 0 " : " and bk.quantity <= 0 ");
+            }
+        }
+
+        boolean backward = from != null && from.backward();
+        String cmp = backward ? ">" : "<";
+        String dir = backward ? "asc" : "desc";
+
+        if (from != null && from.id() != null) {
+            if (order == KeysetOrder.CREATED_AT && from.createdAt() != null) {
+                where.append(" and (bk.createdAt ").append(cmp).append(" :kc")
+                     .append(" or (bk.createdAt = :kc and bk.id ").append(cmp).append(" :kid)) ");
+                params.put("kc", from.createdAt());
+            } else {
+                where.append(" and bk.id ").append(cmp).append(" :kid ");
+            }
+            params.put("kid", from.id());
+        }
+
+        String orderBy = (order == KeysetOrder.CREATED_AT)
+                ? " order by bk.createdAt " + dir + ", bk.id " + dir
+                : " order by bk.id " + dir;
+
+        TypedQuery<Book> q = em.createQuery(
+                "select bk from Book bk left join fetch bk.category" + where + orderBy, Book.class);
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            q.setParameter(e.getKey(), e.getValue());
+        }
+        return q.setMaxResults(Math.max(limit, 1)).getResultList();
+    }
+
+    private static boolean hasText(String s) {
+        return s != null && !s.isBlank();
+    }
+
+    private static String like(String s) {
+        return "%" + s.trim().toLowerCase() + "%";
+    }
+}
@@ -31,14 +31,6 @@ public interface BorrowRepository extends JpaRepository<Borrow, Long> {
     
     long countByUserId(Long userId);
     
-    // Tổng số bản sách đang mượn (nếu entity Borrow có field amount)
-    @Query("select coalesce(sum(b.amount),0) from Borrow b where b.user.id = :uid and b.returnDate is null")
-    Integer sumOpenAmountByUser(@Param("uid") Long userId);
-
-    // Tổng số record Borrow đang mở (fallback nếu bạn muốn tính theo số record)
-    @Query("select count(b) from Borrow b where b.user.id = :uid and b.returnDate is null")
-    Long countOpenByUser(@Param("uid") Long userId);
-    
     @Query("select count(b) from Borrow b where b.book.id = :bookId and b.returnDate is null")
     long countOpenByBookId(@Param("bookId") Long bookId);
 
@@ -89,6 +81,14 @@ public interface BorrowRepository extends JpaRepository<Borrow, Long> {
     @Query("select coalesce(sum(b.amount), 0) from Borrow b where b.user.id = :userId and b.returnDate is null")
     int sumActiveAmount(@Param("userId") Long userId);
 
+    // Hạn trả sớm nhất còn mở (null = không mượn gì) — quá hạn <=> giá trị này đã qua
+    @Query("select min(b.dueDate) from Borrow b where b.user.id = :userId and b.returnDate is null")
+    LocalDateTime findEarliestOpenDue(@Param("userId") Long userId);
+
+    // [borrowId, bookId, dueDate, amount] của mọi phiếu chưa trả — nạp AvailabilityEtaService lúc khởi động
+    @Query("select b.id, b.book.id, b.dueDate, b.amount from Borrow b where b.returnDate is null and b.dueDate is not null")
+    List<Object[]> findOpenDueRows();
+
     // Phân trang danh sách phiếu mượn chưa trả (JOIN book để render an toàn)
     @EntityGraph(attributePaths = {"book"})
     Page<Borrow> findByReturnDateIsNull(Pageable pageable);
@@ -10,14 +10,26 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Lock;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface BorrowTicketRepository extends JpaRepository<BorrowTicket, Long> {
-	@Lock(LockModeType.PESSIMISTIC_WRITE)
-	Optional<BorrowTicket> findByToken(String token); // dùng để confirm, có khóa
+	Optional<BorrowTicket> findByToken(String token); // dùng để confirm, chống quét trùng bằng @Version
+
+	/* Vé giỏ: mọi dòng cùng mã QR chung, nạp kèm book + user (xác nhận / hiển thị) */
+	@EntityGraph(attributePaths = {"book", "user"})
+	List<BorrowTicket> findByCartTokenOrderByIdAsc(String cartToken);
+
+	/* Quét hàng loạt: nạp cả lô vé 1 truy vấn (where token in ...) */
+	@EntityGraph(attributePaths = {"book", "user"})
+	List<BorrowTicket> findByTokenIn(Collection<String> tokens);
+
+	/* Mã QR gọn đã kiểm chữ ký -> tra thẳng khoá chính */
+	@EntityGraph(attributePaths = {"book", "user"})
+	List<BorrowTicket> findByIdIn(Collection<Long> ids);
 
 	Optional<BorrowTicket> findByIdAndUserId(Long id, Long userId); // dùng cho API check status
 
@@ -64,7 +76,8 @@ public interface BorrowTicketRepository extends JpaRepository<BorrowTicket, Long
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("""
            update BorrowTicket t
-              set t.status = :newStatus
+              set t.status = :newStatus,
+                  t.version = t.version + 1
             where t.id     = :id
               and t.status = :expected
            """)
@@ -72,11 +85,53 @@ public interface BorrowTicketRepository extends JpaRepository<BorrowTicket, Long
                        @Param("expected") TicketStatus expected,
                        @Param("newStatus") TicketStatus newStatus);
 
+    /* Giữ chỗ tồn kho: tổng số cuốn của vé PENDING theo sách (nạp / đối soát sổ giữ chỗ) */
+    @Query("""
+           select t.book.id, coalesce(sum(t.amount), 0)
+             from BorrowTicket t
+            where t.status = com.example.demo.model.BorrowTicket$TicketStatus.PENDING
+            group by t.book.id
+           """)
+    List<Object[]> sumPendingAmountByBook();
+
+    /* Vé PENDING đã quá hạn: id, bookId, amount (cron hết hạn từng vé để nhả giữ chỗ) */
+    @Query("""
+           select t.id, t.book.id, t.amount
+             from BorrowTicket t
+            where t.status = com.example.demo.model.BorrowTicket$TicketStatus.PENDING
+              and t.expiresAt < CURRENT_TIMESTAMP
+           """)
+    List<Object[]> findExpiredPending();
+
+    /* Bánh xe hết hạn: nạp mốc của vé PENDING khi khởi động; hết hạn đúng 1 vé khi tới mốc */
+    @Query("""
+           select t.id, t.expiresAt
+             from BorrowTicket t
+            where t.status = com.example.demo.model.BorrowTicket$TicketStatus.PENDING
+              and t.expiresAt is not null
+           """)
+    List<Object[]> findPendingExpiries();
+
+    @Query("select t.book.id, t.amount from BorrowTicket t where t.id = :id")
+    List<Object[]> findBookAndAmount(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+           update BorrowTicket t
+              set t.status = com.example.demo.model.BorrowTicket$TicketStatus.EXPIRED,
+                  t.version = t.version + 1
+            where t.id = :id
+              and t.status = com.example.demo.model.BorrowTicket$TicketStatus.PENDING
+              and t.expiresAt <= :now
+           """)
+    int expireIfDue(@Param("id") Long id, @Param("now") LocalDateTime now);
+
     /* Hết hạn vé chờ (cron) — dùng hằng enum để an toàn với EnumType */
     @Modifying
     @Query("""
            update BorrowTicket t
-              set t.status = com.example.demo.model.BorrowTicket$TicketStatus.EXPIRED
+              set t.status = com.example.demo.model.BorrowTicket$TicketStatus.EXPIRED,
+                  t.version = t.version + 1
             where t.status   = com.example.demo.model.BorrowTicket$TicketStatus.PENDING
               and t.expiresAt < CURRENT_TIMESTAMP
            """)
@@ -0,0 +1,34 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByScopeKey(String scopeKey);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("""
+           update IdempotencyRecord r
+              set r.state = com.example.demo.model.IdempotencyRecord$State.DONE,
+                  r.status = :status, r.location = :location
+            where r.scopeKey = :scopeKey
+           """)
+    int complete(@Param("scopeKey") String scopeKey, @Param("status") int status, @Param("location") String location);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("delete from IdempotencyRecord r where r.scopeKey = :scopeKey")
+    int deleteByScopeKey(@Param("scopeKey") String scopeKey);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("delete from IdempotencyRecord r where r.expiresAt < :cutoff")
+    int deleteByExpiresAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
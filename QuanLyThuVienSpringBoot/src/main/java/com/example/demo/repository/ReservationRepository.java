@@ -2,6 +2,9 @@ package com.example.demo.repository;
 
 import com.example.demo.model.Reservation;
 import com.example.demo.model.Reservation.Status;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
@@ -28,21 +31,57 @@ public interface ReservationRepository extends JpaRepository<Reservation, Long>
 
     boolean existsByBook_IdAndStatusIn(Long bookId, Collection<Status> statuses);
 
+    /* Trang /borrow: sách nào (trong danh sách) đang có đặt chỗ ở các trạng thái cho trước — 1 truy vấn */
+    @Query("select distinct r.book.id from Reservation r where r.book.id in :bookIds and r.status in :statuses")
+    List<Long> findBookIdsWithStatusIn(@Param("bookIds") Collection<Long> bookIds,
+                                       @Param("statuses") Collection<Status> statuses);
+
     // ===== Bridge cho BorrowService: entity dùng "book", không có "bookId",
     // nhưng BorrowService gọi existsByBookIdAndStatus(bookId, status).
     // Dùng JPQL để khớp đúng chữ ký đang được gọi.
     @Query("select (count(r) > 0) from Reservation r where r.book.id = :bookId and r.status = :status")
     boolean existsByBookIdAndStatus(@Param("bookId") Long bookId, @Param("status") Status status);
 
-    // ===== Dọn READY quá hạn (chuyển sang EXPIRED và ghi thời điểm) =====
-    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    // ===== Hàng đợi giữ chỗ (HoldQueueService): nạp lúc khởi động + giành đầu hàng để promote =====
+    @Query("""
+           select r.id, r.book.id, r.user.id, r.status, r.createdAt, r.expireAt, b.title
+             from Reservation r join r.book b
+            where r.status in ('PENDING', 'READY')
+           """)
+    List<Object[]> findOpenQueueRows();
+
+    /**
+     * Khoá tối đa page.size người đầu hàng PENDING của 1 sách: SELECT ... FOR UPDATE SKIP LOCKED
+     * (timeout -2 = LockOptions.SKIP_LOCKED; MySQL 8 hỗ trợ). Node khác đang giữ dòng nào thì bỏ qua dòng đó
+     * và lấy người kế tiếp thay vì chờ. Dialect không có SKIP LOCKED (H2 khi test) thì Hibernate chỉ sinh
+     * FOR UPDATE: vẫn đúng (mỗi dòng 1 node), chỉ là phải chờ nhau.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("""
+           select r from Reservation r
+            where r.book.id = :bookId
+              and r.status = 'PENDING'
+            order by r.createdAt asc, r.id asc
+           """)
+    List<Reservation> lockPendingHeads(@Param("bookId") Long bookId, Pageable page);
+
+    // ===== Bánh xe hết hạn: mốc giữ chỗ của các READY + hết hạn đúng 1 đặt chỗ =====
+    @Query("select r.id, r.expireAt from Reservation r where r.status = 'READY' and r.expireAt is not null")
+    List<Object[]> findReadyExpiries();
+
+    @Modifying(flushAutomatically = true)
     @Query("""
            update Reservation r
               set r.status = 'EXPIRED',
                   r.expiredAt = :now
-            where r.status = 'READY'
-              and r.expireAt is not null
-              and r.expireAt < :now
+            where r.id = :id
+              and r.status = 'READY'
+              and r.expireAt <= :now
            """)
-    int expireReadyBefore(@Param("now") LocalDateTime now);
+    int expireReadyIfDue(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // ===== Dọn READY quá hạn bị sót: từng dòng đi qua ExpiryScheduler (hết hạn + chuyển suất cho người kế tiếp) =====
+    @Query("select r.id from Reservation r where r.status = 'READY' and r.expireAt is not null and r.expireAt < :now")
+    List<Long> findReadyIdsExpiredBefore(@Param("now") LocalDateTime now);
 }
@@ -10,6 +10,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Lock;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +21,13 @@ public interface ReturnTicketRepository extends JpaRepository<ReturnTicket, Long
     /* ===== Tra cứu theo token ===== */
     Optional<ReturnTicket> findByToken(String token);
 
+    /* Quét hàng loạt: nạp cả lô vé kèm borrow/book/user trong 1 truy vấn */
+    @EntityGraph(attributePaths = {"borrow", "borrow.book", "borrow.user"})
+    List<ReturnTicket> findByTokenIn(Collection<String> tokens);
+
+    @EntityGraph(attributePaths = {"borrow", "borrow.book", "borrow.user"})
+    List<ReturnTicket> findByIdIn(Collection<Long> ids);
+
     /* Khóa bản ghi theo token để chống quét 2 lần (double-scan) */
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select t from ReturnTicket t where t.token = :token")
@@ -60,7 +69,8 @@ public interface ReturnTicketRepository extends JpaRepository<ReturnTicket, Long
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("""
            update ReturnTicket t
-              set t.status = :newStatus
+              set t.status = :newStatus,
+                  t.version = t.version + 1
             where t.id     = :id
               and t.status = :expected
            """)
@@ -68,11 +78,32 @@ public interface ReturnTicketRepository extends JpaRepository<ReturnTicket, Long
                        @Param("expected") TicketStatus expected,
                        @Param("newStatus") TicketStatus newStatus);
 
+    /* ===== Bánh xe hết hạn: mốc của vé PENDING + hết hạn đúng 1 vé ===== */
+    @Query("""
+           select t.id, t.expiresAt
+             from ReturnTicket t
+            where t.status = 'PENDING'
+              and t.expiresAt is not null
+           """)
+    List<Object[]> findPendingExpiries();
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+           update ReturnTicket t
+              set t.status = 'EXPIRED',
+                  t.version = t.version + 1
+            where t.id = :id
+              and t.status = 'PENDING'
+              and t.expiresAt <= :now
+           """)
+    int expireIfDue(@Param("id") Long id, @Param("now") LocalDateTime now);
+
     /* ===== Hết hạn vé chờ ===== */
     @Modifying
     @Query("""
            update ReturnTicket t
-              set t.status = 'EXPIRED'
+              set t.status = 'EXPIRED',
+                  t.version = t.version + 1
             where t.status   = 'PENDING'
               and t.expiresAt < CURRENT_TIMESTAMP
            """)
@@ -0,0 +1,144 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.util.CompletionTrie;
+import com.example.demo.util.TextNormalizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Gợi ý khi gõ (autocomplete) cho ô tìm sách, phục vụ hoàn toàn từ bộ nhớ:
+ * - Khoá = tên sách / tác giả đã bỏ dấu, thêm cả phần đuôi bắt đầu từ mỗi từ
+ *   (gõ "kieu" vẫn ra "Truyện Kiều").
+ * - Cập nhật theo lô các sách đã lưu/xoá (CatalogChangeFeed), không nạp lại toàn bộ.
+ */
+@Service
+public class AutocompleteService {
+
+    public enum Kind { TITLE, AUTHOR }
+
+    /** 1 gợi ý trả về cho client. */
+    public record Completion(String text, Kind type) {}
+
+    public static final int MAX_LIMIT = 10;
+    /** Chỉ index phần đuôi từ tối đa N từ đầu (tên sách dài không làm phình trie). */
+    static final int MAX_SUFFIX_WORDS = 8;
+
+    private record Entry(String title, String author) {}
+
+    private final BookRepository bookRepo;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Tên sách trước tác giả; trong cùng loại: nhiều sách hơn trước, rồi ngắn hơn
+    private final CompletionTrie<Completion> trie = new CompletionTrie<>(MAX_LIMIT,
+            Comparator.comparing(Completion::type),
+            Comparator.comparingInt((Completion c) -> c.text().length())
+                    .thenComparing(Completion::text));
+    private final Map<Long, Entry> indexed = new HashMap<>();   // bookId -> title/author đã index (để gỡ khi sửa/xoá)
+
+    private volatile boolean ready;
+
+    public AutocompleteService(BookRepository bookRepo) {
+        this.bookRepo = bookRepo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Object[]> rows = bookRepo.findAllTitleAuthor();
+        lock.writeLock().lock();
+        try {
+            trie.clear();
+            indexed.clear();
+            for (Object[] r : rows) {
+                put((Long) r[0], new Entry((String) r[1], (String) r[2]));
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Gọi sau khi lưu sách (id khác null). */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) return;
+        apply(List.of(book), List.of());
+    }
+
+    public void remove(Long bookId) {
+        if (bookId == null) return;
+        apply(List.of(), List.of(bookId));
+    }
+
+    /** Áp 1 lô thay đổi dưới 1 lần giữ write lock. */
+    public void apply(Collection<Book> upserts, Collection<Long> deletes) {
+        lock.writeLock().lock();
+        try {
+            for (Long id : deletes) drop(id);
+            for (Book b : upserts) {
+                if (b.getId() == null) continue;
+                drop(b.getId());
+                put(b.getId(), new Entry(b.getTitle(), b.getAuthor()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Tối đa limit gợi ý (tên sách trước, rồi tác giả; phổ biến hơn đứng trước). */
+    public List<Completion> complete(String prefix, int limit) {
+        String key = queryKey(prefix);
+        if (key.isEmpty()) return List.of();
+        int n = Math.min(Math.max(limit, 1), MAX_LIMIT);
+        lock.readLock().lock();
+        try {
+            return trie.top(key, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ===================== Nội bộ (đang giữ write lock) ===================== */
+
+    private void put(Long id, Entry e) {
+        indexed.put(id, e);
+        forEachKey(e.title(), Kind.TITLE, (k, c) -> trie.add(k, c));
+        forEachKey(e.author(), Kind.AUTHOR, (k, c) -> trie.add(k, c));
+    }
+
+    private void drop(Long id) {
+        Entry old = indexed.remove(id);
+        if (old == null) return;
+        forEachKey(old.title(), Kind.TITLE, (k, c) -> trie.remove(k, c));
+        forEachKey(old.author(), Kind.AUTHOR, (k, c) -> trie.remove(k, c));
+    }
+
+    private static void forEachKey(String text, Kind kind,
+                                   java.util.function.BiConsumer<String, Completion> action) {
+        if (text == null || text.isBlank()) return;
+        List<String> words = TextNormalizer.tokenize(text);
+        if (words.isEmpty()) return;
+        Completion c = new Completion(text.trim(), kind);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < words.size() && i < MAX_SUFFIX_WORDS; i++) {
+            keys.add(String.join(" ", words.subList(i, words.size())));
+        }
+        for (String k : keys) action.accept(k, c);
+    }
+
+    /** "Truyện  Ki" -> "truyen ki"; giữ dấu cách cuối để "truyen " chỉ khớp từ kế tiếp. */
+    static String queryKey(String prefix) {
+        if (prefix == null) return "";
+        List<String> toks = TextNormalizer.tokenize(prefix);
+        if (toks.isEmpty()) return "";
+        String key = String.join(" ", toks);
+        return Character.isWhitespace(prefix.charAt(prefix.length() - 1)) ? key + " " : key;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Borrow;
+import com.example.demo.repository.BorrowRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dự kiến thời điểm có sách cho người đặt chỗ, chỉ đọc bộ nhớ:
+ * - Mỗi sách: các phiếu mượn đang mở xếp theo hạn trả tăng dần (min-heap dạng TreeSet, kèm số cuốn).
+ * - Người ở vị trí k trong hàng chờ nhận cuốn thứ k được trả về -> cộng dồn số cuốn theo hạn trả tới khi đủ k.
+ *   Phiếu đã quá hạn tính là "có thể về bất cứ lúc nào" (mốc = bây giờ).
+ * - Xác nhận mượn / gia hạn (upsert theo id phiếu) và xác nhận trả (bỏ phiếu) cập nhật sau commit.
+ * Khởi động và định kỳ (availability.sync-ms) nạp lại từ DB (1 truy vấn) vào bộ chỉ mục mới rồi thay cả bộ,
+ * giống HoldQueueService: phiếu mở / trả ở node khác được thấy sau tối đa 1 chu kỳ. Vị trí hàng chờ dùng
+ * cho dự kiến lấy từ HoldQueueService (cũng tự nạp lại định kỳ). Đây là ước lượng theo hạn trả,
+ * người mượn trả sớm / trễ thì thời điểm thật lệch theo.
+ */
+@Service
+public class AvailabilityEtaService {
+
+    record Loan(Long borrowId, LocalDateTime dueDate, int amount) {}
+
+    private static final Comparator<Loan> BY_DUE =
+            Comparator.comparing(Loan::dueDate).thenComparing(Loan::borrowId);
+
+    private final BorrowRepository borrowRepo;
+
+    /** Bộ chỉ mục trong bộ nhớ; rebuild() dựng bộ mới bên cạnh rồi thay tham chiếu. */
+    static final class Index {
+        final ConcurrentHashMap<Long, TreeSet<Loan>> loansByBook = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, Long> bookOf = new ConcurrentHashMap<>();   // borrowId -> bookId
+    }
+
+    private volatile Index index = new Index();
+
+    public AvailabilityEtaService(BorrowRepository borrowRepo) {
+        this.borrowRepo = borrowRepo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${availability.sync-ms:30000}", initialDelayString = "${availability.sync-ms:30000}")
+    public void rebuild() {
+        Index fresh = new Index();
+        for (Object[] r : borrowRepo.findOpenDueRows()) {
+            put(fresh, (Long) r[1], new Loan((Long) r[0], (LocalDateTime) r[2], ((Number) r[3]).intValue()));
+        }
+        index = fresh;
+    }
+
+    /* ===================== Đọc ===================== */
+
+    /**
+     * Thời điểm dự kiến cuốn thứ position (1 = người đầu hàng) được trả về; null = các phiếu đang mở
+     * không đủ số cuốn (sách mất / kho lệch) hoặc position < 1.
+     */
+    public LocalDateTime eta(Long bookId, int position) {
+        TreeSet<Loan> loans = index.loansByBook.get(bookId);
+        if (loans == null || position < 1) return null;
+        LocalDateTime now = LocalDateTime.now();
+        int copies = 0;
+        synchronized (loans) {
+            for (Loan l : loans) {
+                copies += l.amount();
+                if (copies >= position) return l.dueDate().isBefore(now) ? now : l.dueDate();
+            }
+        }
+        return null;
+    }
+
+    /** Số cuốn đang được mượn (chưa trả) của sách. */
+    public int onLoan(Long bookId) {
+        TreeSet<Loan> loans = index.loansByBook.get(bookId);
+        if (loans == null) return 0;
+        synchronized (loans) {
+            return loans.stream().mapToInt(Loan::amount).sum();
+        }
+    }
+
+    /* ===================== Ghi (gọi trong transaction của nghiệp vụ) ===================== */
+
+    /** Phiếu vừa mở / gộp thêm cuốn / đổi hạn trả. Gọi sau khi phiếu đã có id. */
+    public void onOpened(Borrow b) {
+        if (b.getId() == null || b.getBook() == null || b.getDueDate() == null) return;
+        Long bookId = b.getBook().getId();
+        Loan loan = new Loan(b.getId(), b.getDueDate(), b.getAmount());
+        afterCommit(() -> put(index, bookId, loan));
+    }
+
+    /** Phiếu đã trả. */
+    public void onClosed(Borrow b) {
+        if (b.getId() == null) return;
+        Long borrowId = b.getId();
+        afterCommit(() -> drop(index, borrowId));
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private static void put(Index idx, Long bookId, Loan loan) {
+        drop(idx, loan.borrowId());
+        TreeSet<Loan> loans = idx.loansByBook.computeIfAbsent(bookId, k -> new TreeSet<>(BY_DUE));
+        synchronized (loans) {
+            loans.add(loan);
+        }
+        idx.bookOf.put(loan.borrowId(), bookId);
+    }
+
+    private static void drop(Index idx, Long borrowId) {
+        Long bookId = idx.bookOf.remove(borrowId);
+        TreeSet<Loan> loans = (bookId == null) ? null : idx.loansByBook.get(bookId);
+        if (loans == null) return;
+        synchronized (loans) {
+            loans.removeIf(l -> l.borrowId().equals(borrowId));
+        }
+    }
+
+    private static void afterCommit(Runnable r) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    r.run();
+                }
+            });
+        } else {
+            r.run();
+        }
+    }
+}
@@ -2,14 +2,25 @@ package com.example.demo.service;
 
 import com.example.demo.model.Book;
 import com.example.demo.model.Category;
+import com.example.demo.repository.BookDescriptionRepository;
 import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.BookRepositoryCustom.BookFilter;
+import com.example.demo.repository.BookRepositoryCustom.Keyset;
+import com.example.demo.repository.BookRepositoryCustom.KeysetOrder;
 import com.example.demo.repository.BorrowRepository;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -17,13 +28,21 @@ public class BookService {
 
     private final BookRepository bookRepository;
     private final BorrowRepository borrowRepository;
+    private final BookDescriptionRepository descriptionRepository;
+    private final SearchService searchService;
+    private final FacetService facetService;
     public Page<Book> findByCategoryId(Long categoryId, Pageable pageable) {
         return bookRepository.findByCategory_Id(categoryId, pageable);
     }
 
-    public BookService(BookRepository bookRepository, BorrowRepository borrowRepository) {
+    public BookService(BookRepository bookRepository, BorrowRepository borrowRepository,
+                       BookDescriptionRepository descriptionRepository,
+                       SearchService searchService, FacetService facetService) {
         this.bookRepository = bookRepository;
         this.borrowRepository = borrowRepository;
+        this.descriptionRepository = descriptionRepository;
+        this.searchService = searchService;
+        this.facetService = facetService;
     }
 
     /** Dùng cho controller chi tiết sách (trả về Optional) */
@@ -49,8 +68,7 @@ public class BookService {
         if (keyword == null || keyword.isBlank()) {
             return Page.empty(pageable); // hoặc bookRepository.findAll(pageable)
         }
-        String kw = keyword.trim();
-        return bookRepository.findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(kw, kw, pageable);
+        return searchService.search(keyword.trim(), pageable); // chỉ mục trong bộ nhớ, không quét bảng
     }
 
     // Tìm theo tiêu đề VÀ/HOẶC tác giả (2 ô tìm riêng)
@@ -85,10 +103,33 @@ public class BookService {
         return bookRepository.findByAuthorContainingIgnoreCase(author, pageable);
     }
 
-    /** Lưu/ cập nhật: tự set available theo quantity */
+    /** Lưu/ cập nhật: tự set available theo quantity; mô tả (nếu có) lưu riêng */
     public void saveBook(Book book) {
         book.setAvailable(book.getQuantity() > 0);
-        bookRepository.save(book);
+        Book saved = bookRepository.save(book);   // chỉ mục đọc cập nhật sau commit qua CatalogChangeFeed
+        if (book.getDescription() != null) {
+            saveDescription(saved.getId(), book.getDescription());
+        }
+    }
+
+    /** Nạp mô tả (TEXT) vào sách — chỉ dùng cho trang chi tiết / form sửa. */
+    public Book withDescription(Book book) {
+        if (book != null && book.getId() != null) {
+            book.setDescription(descriptionRepository.findBodyById(book.getId()).orElse(null));
+        }
+        return book;
+    }
+
+    /** Ghi mô tả của sách đã tồn tại (không đổi thì không UPDATE). */
+    public void saveDescription(Long bookId, String body) {
+        if (bookId == null) return;
+        String value = (body == null || body.isBlank()) ? null : body.strip();
+        descriptionRepository.findById(bookId).ifPresent(d -> {
+            if (!java.util.Objects.equals(d.getBody(), value)) {
+                d.setBody(value);
+                descriptionRepository.save(d);
+            }
+        });
     }
 
     public boolean updateBook(Book updatedBook) {
@@ -120,6 +161,103 @@ public class BookService {
         return bookRepository.findAll(pageable);
     }
 
+    /* ===================== Phân trang keyset ===================== */
+
+    /**
+     * 1 trang keyset. prevCursor/nextCursor = null khi không còn trang trước/sau.
+     * approxTotal lấy từ chỉ mục trong bộ nhớ (không COUNT), -1 nếu không yêu cầu / chưa có.
+     */
+    public record KeysetPage(List<Book> content, String prevCursor, String nextCursor, long approxTotal) {
+        public boolean hasPrev() { return prevCursor != null; }
+        public boolean hasNext() { return nextCursor != null; }
+    }
+
+    /**
+     * Lấy trang sau {@code after} hoặc trước {@code before} (ưu tiên after; cả hai rỗng = trang đầu).
+     * Con trỏ hỏng/không đọc được -> coi như trang đầu.
+     */
+    public KeysetPage keysetPage(BookFilter filter, KeysetOrder order,
+                                 String after, String before, int size, boolean withApproxTotal) {
+        int limit = Math.max(size, 1);
+        Keyset from = decodeCursor(order, after, false);
+        if (from == null) from = decodeCursor(order, before, true);
+        boolean backward = from != null && from.backward();
+
+        List<Book> rows = new ArrayList<>(seek(filter, order, from, limit + 1));
+        boolean more = rows.size() > limit;           // lấy dư 1 hàng để biết còn trang hay không
+        if (more) rows = rows.subList(0, limit);
+        if (backward) Collections.reverse(rows);
+
+        boolean hasPrev = backward ? more : from != null;
+        boolean hasNext = backward || more;
+        String prev = (hasPrev && !rows.isEmpty()) ? encodeCursor(order, rows.get(0)) : null;
+        String next = (hasNext && !rows.isEmpty()) ? encodeCursor(order, rows.get(rows.size() - 1)) : null;
+
+        long total = withApproxTotal ? approxTotal(filter) : -1;
+        return new KeysetPage(rows, prev, next, total);
+    }
+
+    /**
+     * Thứ tự theo id và chỉ lọc danh mục/tồn kho -> lấy id từ bitmap facet rồi nạp theo id
+     * (không WHERE/ORDER BY trên bảng book); còn lại seek bằng JPQL.
+     */
+    private List<Book> seek(BookFilter filter, KeysetOrder order, Keyset from, int limit) {
+        BookFilter f = (filter == null) ? BookFilter.none() : filter;
+        if (order != KeysetOrder.ID || !f.facetOnly() || !facetService.isReady()) {
+            return bookRepository.seek(f, order, from, limit);
+        }
+        List<Long> ids = facetService.seekIds(FacetService.FacetQuery.of(f.categoryId(), f.available()),
+                from == null ? null : from.id(), from != null && from.backward(), limit);
+        if (ids.isEmpty()) return List.of();
+        Map<Long, Book> byId = new HashMap<>();
+        for (Book b : bookRepository.findAllById(ids)) byId.put(b.getId(), b);
+        List<Book> rows = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Book b = byId.get(id);
+            if (b != null) rows.add(b);
+        }
+        return rows;
+    }
+
+    private long approxTotal(BookFilter f) {
+        if (f == null) return searchService.count(null, null);
+        if (f.facetOnly() && facetService.isReady()) {
+            return facetService.count(FacetService.FacetQuery.of(f.categoryId(), f.available()));
+        }
+        StringBuilder kw = new StringBuilder();
+        for (String s : new String[]{f.title(), f.author(), f.keyword()}) {
+            if (s != null && !s.isBlank()) kw.append(s).append(' ');
+        }
+        return searchService.count(kw.toString(), f.categoryId());
+    }
+
+    /** CREATED_AT: "<epochMicros UTC>_<id>", ID: "<id>". */
+    static String encodeCursor(KeysetOrder order, Book b) {
+        if (order == KeysetOrder.CREATED_AT && b.getCreatedAt() != null) {
+            long micros = ChronoUnit.MICROS.between(LocalDateTime.of(1970, 1, 1, 0, 0), b.getCreatedAt());
+            return micros + "_" + b.getId();
+        }
+        return String.valueOf(b.getId());
+    }
+
+    static Keyset decodeCursor(KeysetOrder order, String cursor, boolean backward) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String c = cursor.trim();
+            int sep = c.indexOf('_');
+            if (order == KeysetOrder.CREATED_AT && sep > 0) {
+                long micros = Long.parseLong(c.substring(0, sep));
+                long id = Long.parseLong(c.substring(sep + 1));
+                LocalDateTime at = LocalDateTime.ofEpochSecond(
+                        Math.floorDiv(micros, 1_000_000L), (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+                return new Keyset(at, id, backward);
+            }
+            return new Keyset(null, Long.parseLong(sep > 0 ? c.substring(sep + 1) : c), backward);
+        } catch (NumberFormatException | java.time.DateTimeException ex) {
+            return null;
+        }
+    }
+
     /** Lọc theo danh mục (không phân trang) */
     public List<Book> findByCategory(Category category) {
         return bookRepository.findByCategory(category);
@@ -0,0 +1,159 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.User;
+import com.example.demo.repository.BorrowRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Điều kiện tạo vé mượn, kiểm tra O(1) trên trạng thái trong bộ nhớ theo từng người:
+ * số cuốn đang mượn + hạn trả sớm nhất chưa trả (khoá do quá hạn <=> hạn sớm nhất đã qua).
+ * - Nạp lười khi cần (2 truy vấn), LRU giới hạn quota.cache.max-users, sống tối đa quota.cache.ttl-ms.
+ * - Xác nhận mượn / trả / gia hạn cập nhật sau commit (rollback thì không đổi). Dòng được nạp sau khi
+ *   thay đổi đã đăng ký có thể đã thấy hoặc chưa thấy thay đổi đó -> bỏ dòng, nạp lại lần sau.
+ * Xác nhận ở quầy vẫn đếm lại trên DB trong transaction (nguồn sự thật khi nhiều quầy cùng xác nhận).
+ */
+@Service
+public class BorrowEligibilityService {
+
+    public record Decision(boolean allowed, String reason) {
+        static Decision ok() { return new Decision(true, null); }
+        static Decision deny(String reason) { return new Decision(false, reason); }
+    }
+
+    /** epoch: giá trị bộ đếm thay đổi lúc nạp, để biết dòng có thể đã gồm 1 thay đổi hay chưa. */
+    record State(int active, LocalDateTime earliestDue, long epoch, long loadedAtMs) {}
+
+    private final BorrowRepository borrowRepo;
+    private final StockHoldLedger holdLedger;
+
+    @Value("${quota.cache.max-users:10000}")
+    private int maxUsers = 10000;
+    @Value("${quota.cache.ttl-ms:300000}")
+    private long ttlMs = 300_000;
+
+    private final AtomicLong changes = new AtomicLong();
+    private final LinkedHashMap<Long, State> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, State> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    public BorrowEligibilityService(BorrowRepository borrowRepo, StockHoldLedger holdLedger) {
+        this.borrowRepo = borrowRepo;
+        this.holdLedger = holdLedger;
+    }
+
+    /** Giới hạn tổng số CUỐN theo loại tài khoản. */
+    public int limitOf(User user) {
+        return user.isMember() ? 5 : 2;
+    }
+
+    public int activeAmount(Long userId) {
+        return state(userId).active();
+    }
+
+    /** Quá hạn + hạn mức cho addingAmount cuốn mới. */
+    public Decision checkQuota(User user, int addingAmount) {
+        State s = state(user.getId());
+        if (s.earliestDue() != null && s.earliestDue().isBefore(LocalDateTime.now())) {
+            return Decision.deny("Tài khoản đang bị khóa do có sách quá hạn. "
+                    + "Hãy tạo mã trả và hoàn tất trả trước khi mượn mới.");
+        }
+        int limit = limitOf(user);
+        int allowed = limit - s.active();
+        if (allowed <= 0 || addingAmount > allowed) {
+            return Decision.deny("Bạn đang mượn " + s.active() + " cuốn. Giới hạn tối đa là " + limit + " cuốn.");
+        }
+        return Decision.ok();
+    }
+
+    /** checkQuota + số bản còn lại sau khi trừ phần các vé PENDING khác đang giữ. */
+    public Decision check(User user, Book book, int amount) {
+        Decision d = checkQuota(user, amount);
+        if (!d.allowed()) return d;
+        if (holdLedger.availableToPromise(book.getId(), book.getQuantity()) < amount) {
+            return Decision.deny("Sách đã hết — hãy dùng chức năng đặt chỗ.");
+        }
+        return Decision.ok();
+    }
+
+    /* ===================== Cập nhật sau commit ===================== */
+
+    public void onBorrowed(Long userId, int amount, LocalDateTime dueDate) {
+        afterCommit(userId, s -> new State(s.active() + amount, min(s.earliestDue(), dueDate), s.epoch(), s.loadedAtMs()));
+    }
+
+    /** Trả đúng phiếu có hạn sớm nhất -> không biết hạn kế tiếp, bỏ dòng. */
+    public void onReturned(Long userId, int amount, LocalDateTime dueDate) {
+        afterCommit(userId, s -> dueDate != null && dueDate.equals(s.earliestDue())
+                ? null
+                : new State(Math.max(0, s.active() - amount), s.earliestDue(), s.epoch(), s.loadedAtMs()));
+    }
+
+    /** Gia hạn phiếu có hạn sớm nhất -> bỏ dòng; phiếu khác chỉ lùi hạn nên hạn sớm nhất giữ nguyên. */
+    public void onExtended(Long userId, LocalDateTime oldDueDate) {
+        afterCommit(userId, s -> oldDueDate != null && oldDueDate.equals(s.earliestDue()) ? null : s);
+    }
+
+    public void evict(Long userId) {
+        synchronized (cache) {
+            cache.remove(userId);
+        }
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    State state(Long userId) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            State s = cache.get(userId);
+            if (s != null && now - s.loadedAtMs() < ttlMs) return s;
+        }
+        long epoch = changes.get();
+        State s = new State(borrowRepo.sumActiveAmount(userId), borrowRepo.findEarliestOpenDue(userId), epoch, now);
+        synchronized (cache) {
+            if (changes.get() == epoch) cache.put(userId, s);   // có thay đổi chen giữa -> không lưu
+        }
+        return s;
+    }
+
+    private void afterCommit(Long userId, UnaryOperator<State> delta) {
+        long registered = changes.incrementAndGet();
+        Runnable apply = () -> {
+            synchronized (cache) {
+                State s = cache.get(userId);
+                if (s == null) return;
+                State next = (s.epoch() >= registered) ? null : delta.apply(s);
+                if (next == null) cache.remove(userId);
+                else cache.put(userId, next);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.isBefore(b) ? a : b;
+    }
+}
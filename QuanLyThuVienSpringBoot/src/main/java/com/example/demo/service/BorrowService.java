@@ -6,16 +6,18 @@ import com.example.demo.model.Reservation;
 import com.example.demo.model.User;
 import com.example.demo.repository.BorrowRepository;
 import com.example.demo.repository.ReservationRepository;
+import com.example.demo.util.FeeCalculator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
-import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 @Service
 public class BorrowService {
@@ -42,11 +44,17 @@ public class BorrowService {
 
     private final BorrowRepository borrowRepo;
     private final ReservationRepository reservationRepo;
+    private final BorrowEligibilityService eligibility;
+    private final AvailabilityEtaService availability;
 
     public BorrowService(BorrowRepository borrowRepo,
-                         ReservationRepository reservationRepo) {
+                         ReservationRepository reservationRepo,
+                         BorrowEligibilityService eligibility,
+                         AvailabilityEtaService availability) {
         this.borrowRepo = borrowRepo;
         this.reservationRepo = reservationRepo;
+        this.eligibility = eligibility;
+        this.availability = availability;
     }
 
     // =========================================================
@@ -90,7 +98,10 @@ public class BorrowService {
         // Cập nhật trạng thái phạt theo chính sách hiện tại
         calculateOverdue(b);
 
-        return borrowRepo.save(b);
+        eligibility.onBorrowed(user.getId(), amount, due);
+        Borrow saved = borrowRepo.save(b);
+        availability.onOpened(saved);
+        return saved;
     }
 
     // =========================================================
@@ -98,61 +109,59 @@ public class BorrowService {
     // =========================================================
 
     /**
-     * Tính số ngày quá hạn & tiền phạt.
+     * Tính số ngày quá hạn & tiền phạt (FeeCalculator, dùng chung với thanh toán / vé trả / báo cáo).
      *
-     * Quy tắc mới:
-     * - Dựa trên LocalDateTime (giờ/phút/giây), không quy tròn theo lịch.
+     * Quy tắc:
+     * - Dựa trên mốc thời gian (theo phút), không quy tròn theo lịch.
      * - Số ngày quá hạn = floor( max(0, (end - due) - freeDays*24h) / 24h ).
      * - Phí phạt = overdueDays * finePerDay * amount.
      * - Cập nhật fineStatus: UNPAID / PENDING / PAID theo tổng đã trả.
      */
     public void calculateOverdue(Borrow borrow) {
         if (borrow == null) return;
+        calculateOverdue(java.util.List.of(borrow));
+    }
 
-        if (borrow.getDueDate() == null) {
-            borrow.setOverdueDays(0);
-            borrow.setFineAmount(BigDecimal.ZERO);
-            borrow.setFineStatus("PAID");
-            return;
+    /** Bản theo lô cho trang nhiều dòng (/borrow, báo cáo): 1 lần đọc "bây giờ", tính trên mảng long. */
+    public void calculateOverdue(java.util.List<Borrow> borrows) {
+        int n = borrows.size();
+        if (n == 0) return;
+        long now = FeeCalculator.epochMinute(LocalDateTime.now());
+        long[] due = new long[n];
+        long[] end = new long[n];
+        int[] qty = new int[n];
+        for (int i = 0; i < n; i++) {
+            Borrow b = borrows.get(i);
+            if (b == null || b.getDueDate() == null) continue;   // 0 phút trễ -> không phạt
+            due[i] = FeeCalculator.epochMinute(b.getDueDate());
+            // Mốc tính: nếu đã trả thì lấy thời điểm trả, chưa trả thì lấy "bây giờ"
+            end[i] = (b.getReturnDate() != null) ? FeeCalculator.epochMinute(b.getReturnDate()) : now;
+            qty[i] = (b.getAmount() != null && b.getAmount() > 0) ? b.getAmount() : 1;
         }
-
-        // Mốc tính: nếu đã trả thì lấy thời điểm trả, chưa trả thì lấy "bây giờ"
-        LocalDateTime dueDt = borrow.getDueDate();
-        LocalDateTime endDt = (borrow.getReturnDate() != null)
-                ? borrow.getReturnDate()
-                : LocalDateTime.now();
-
-        // Thời lượng trễ theo GIỜ (âm thì coi như 0)
-        long totalHoursLate = Math.max(0L, Duration.between(dueDt, endDt).toHours());
-
-        // Trừ đi số giờ miễn phạt, sau đó lấy phần nguyên theo 24h
-        long effectiveHours = Math.max(0L, totalHoursLate - (long) freeDays * 24L);
-        int overdue = (int) (effectiveHours / 24L);
-        borrow.setOverdueDays(overdue);
-
-        // Nhân theo số lượng mượn
-        int qty = (borrow.getAmount() != null && borrow.getAmount() > 0) ? borrow.getAmount() : 1;
-
-        BigDecimal fine = (overdue > 0)
-                ? BigDecimal.valueOf((long) overdue * (long) finePerDay * (long) qty)
-                : BigDecimal.ZERO;
-        borrow.setFineAmount(fine);
-
-        BigDecimal paid = (borrow.getFinePaidTotal() == null)
-                ? BigDecimal.ZERO
-                : borrow.getFinePaidTotal();
-
-        String newStatus;
-        if (fine.signum() == 0) {
-            newStatus = "PAID";
-        } else if (paid.compareTo(fine) >= 0) {
-            newStatus = "PAID";
-        } else if (paid.signum() > 0) {
-            newStatus = "PENDING";
-        } else {
-            newStatus = "UNPAID";
+        int[] days = new int[n];
+        long[] fines = new long[n];
+        FeeCalculator.fines(due, end, qty, n, finePerDay, freeDays, days, fines);
+
+        for (int i = 0; i < n; i++) {
+            Borrow b = borrows.get(i);
+            if (b == null) continue;
+            b.setOverdueDays(days[i]);
+            BigDecimal fine = FeeCalculator.vnd(fines[i]);
+            b.setFineAmount(fine);
+
+            BigDecimal paid = (b.getFinePaidTotal() == null) ? BigDecimal.ZERO : b.getFinePaidTotal();
+            String newStatus;
+            if (fine.signum() == 0) {
+                newStatus = "PAID";
+            } else if (paid.compareTo(fine) >= 0) {
+                newStatus = "PAID";
+            } else if (paid.signum() > 0) {
+                newStatus = "PENDING";
+            } else {
+                newStatus = "UNPAID";
+            }
+            b.setFineStatus(newStatus);
         }
-        borrow.setFineStatus(newStatus);
     }
 
     // =========================================================
@@ -165,40 +174,46 @@ public class BorrowService {
         return (int) ChronoUnit.DAYS.between(LocalDate.now(), b.getDueDate().toLocalDate());
     }
 
-    /**
-     * Gắn cờ cho View: b.canExtend, b.maxExtendDays, b.defaultExtendDays.
-     * Nếu entity Borrow KHÔNG có các field này, hàm sẽ cố gắng set qua reflection.
-     */
+    /** Gắn cờ cho View cho 1 phiếu (1 truy vấn đặt chỗ). Trang nhiều phiếu dùng bản danh sách bên dưới. */
     public void annotateExtendability(Borrow b, boolean isMember) {
         if (b == null || b.getBook() == null) return;
+        annotateExtendability(java.util.List.of(b), isMember);
+    }
 
-        int left = daysLeft(b);
+    /**
+     * Gắn cờ cho View: b.canExtend, b.maxExtendDays, b.defaultExtendDays cho cả danh sách.
+     * Sách nào đang có đặt chỗ PENDING: 1 truy vấn "book.id in (...)" cho mọi phiếu, không N+1.
+     */
+    public void annotateExtendability(Collection<Borrow> borrows, boolean isMember) {
+        if (borrows == null || borrows.isEmpty()) return;
 
+        Set<Long> bookIds = new HashSet<>();
+        for (Borrow b : borrows) {
+            if (b != null && b.getBook() != null) bookIds.add(b.getBook().getId());
+        }
+        if (bookIds.isEmpty()) return;
         // Có ai đặt chỗ?
-        boolean hasActiveReservation =
-                reservationRepo.existsByBook_IdAndStatusIn(
-                        b.getBook().getId(),
-                        java.util.List.of(Reservation.Status.PENDING)
-                );
-
-        // Còn hàng?
-        Integer qty = null;
-        try { qty = b.getBook().getQuantity(); } catch (Exception ignore) {}
-        boolean inStock = (qty == null) || (qty > 0); // nếu model không có quantity thì coi như còn
-
-        // ❗ Chỉ chặn khi (có người đặt chỗ) VÀ (hết hàng); các trường hợp còn lại đều OK
-        boolean blockByStockAndHold = hasActiveReservation && !inStock;
-
-        boolean can = (b.getReturnDate() == null)
-                && (left <= extendThresholdDays)
-                && !blockByStockAndHold;
+        Set<Long> reserved = new HashSet<>(reservationRepo.findBookIdsWithStatusIn(
+                bookIds, java.util.List.of(Reservation.Status.PENDING)));
 
         int max = isMember ? memberExtendMax : normalExtendMax;
         int def = Math.min(3, max);
+        for (Borrow b : borrows) {
+            if (b == null || b.getBook() == null) continue;
+
+            // Còn hàng? (quantity null thì coi như còn)
+            Integer qty = b.getBook().getQuantity();
+            boolean inStock = (qty == null) || (qty > 0);
+
+            // ❗ Chỉ chặn khi (có người đặt chỗ) VÀ (hết hàng); các trường hợp còn lại đều OK
+            boolean blockByStockAndHold = reserved.contains(b.getBook().getId()) && !inStock;
 
-        trySetTransient(b, "setCanExtend", boolean.class, can);
-        trySetTransient(b, "setMaxExtendDays", Integer.class, max);
-        trySetTransient(b, "setDefaultExtendDays", Integer.class, def);
+            b.setCanExtend(b.getReturnDate() == null
+                    && daysLeft(b) <= extendThresholdDays
+                    && !blockByStockAndHold);
+            b.setMaxExtendDays(max);
+            b.setDefaultExtendDays(def);
+        }
     }
 
     @Transactional
@@ -238,51 +253,17 @@ public class BorrowService {
         }
 
         // Tiến hành gia hạn
+        eligibility.onExtended(currentUserId, b.getDueDate());
         b.setDueDate(b.getDueDate().plusDays(addDays));
 
         // Cập nhật lại phí/phạt theo quy tắc 24h
         calculateOverdue(b);
 
+        availability.onOpened(b);
         return borrowRepo.save(b);
     }
 
     // =========================================================
     // =====================  Helpers  =========================
     // =========================================================
-
-    /** Set các thuộc tính "transient" cho View (tự thử primitive lẫn wrapper). */
-    private void trySetTransient(Borrow b, String setter, Class<?> type, Object value) {
-        // 1) thử đúng chữ ký được truyền vào
-        try {
-            Method m = b.getClass().getMethod(setter, type);
-            m.invoke(b, value);
-            return;
-        } catch (Exception ignored) {}
-
-        // 2) thử đảo primitive <-> wrapper để tăng khả năng khớp
-        try {
-            if (type == boolean.class) {
-                Method m = b.getClass().getMethod(setter, Boolean.class);
-                m.invoke(b, (Boolean) value);
-                return;
-            }
-            if (type == Boolean.class) {
-                Method m = b.getClass().getMethod(setter, boolean.class);
-                m.invoke(b, ((Boolean) value).booleanValue());
-                return;
-            }
-            if (type == int.class) {
-                Method m = b.getClass().getMethod(setter, Integer.class);
-                m.invoke(b, Integer.valueOf((Integer) value));
-                return;
-            }
-            if (type == Integer.class) {
-                Method m = b.getClass().getMethod(setter, int.class);
-                m.invoke(b, ((Integer) value).intValue());
-                return;
-            }
-        } catch (Exception ignored) {
-            // nếu entity không có các field này thì bỏ qua là được
-        }
-    }
 }
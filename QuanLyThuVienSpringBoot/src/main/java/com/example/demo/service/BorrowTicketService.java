@@ -1,5 +1,6 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ScanOutcome;
 import com.example.demo.model.Book;
 import com.example.demo.model.Borrow;
 import com.example.demo.model.BorrowTicket;
@@ -13,7 +14,16 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 public class BorrowTicketService {
@@ -23,6 +33,13 @@ public class BorrowTicketService {
   private final BookRepository bookRepo;
   private final QrService qrService;
   private final BorrowService borrowService;
+  private final InventoryService inventoryService;
+  private final StockHoldLedger holdLedger;
+  private final ExpiryScheduler expiryScheduler;
+  private final QrTokenService qrTokens;
+  private final BorrowEligibilityService eligibility;
+  private final HoldQueueService holdQueue;
+  private final AvailabilityEtaService availability;
 
   @Value("${APP_BASE_URL:}")
   private String baseUrl;
@@ -31,44 +48,53 @@ public class BorrowTicketService {
                              BorrowRepository b,
                              BookRepository br,
                              QrService qr,
-                             BorrowService borrowService) {
+                             BorrowService borrowService,
+                             InventoryService inventoryService,
+                             StockHoldLedger holdLedger,
+                             ExpiryScheduler expiryScheduler,
+                             QrTokenService qrTokens,
+                             BorrowEligibilityService eligibility,
+                             HoldQueueService holdQueue,
+                             AvailabilityEtaService availability) {
     this.ticketRepo = t;
     this.borrowRepo = b;
     this.bookRepo = br;
     this.qrService = qr;
     this.borrowService = borrowService;
+    this.inventoryService = inventoryService;
+    this.holdLedger = holdLedger;
+    this.expiryScheduler = expiryScheduler;
+    this.qrTokens = qrTokens;
+    this.eligibility = eligibility;
+    this.holdQueue = holdQueue;
+    this.availability = availability;
   }
 
+  /** Tiền tố mã QR của vé giỏ (token vé đơn là UUID không có '-') */
+  public static final String CART_PREFIX = "cart-";
+
   public record TicketView(BorrowTicket ticket, String qrDataUri) {}
 
-  /* ------------------------ Helpers ------------------------ */
+  /** 1 dòng trong giỏ mượn */
+  public record CartLine(Long bookId, int amount) {}
 
-  /** Giới hạn tổng số CUỐN theo loại tài khoản (tùy hệ thống của bạn có thể đọc từ MembershipService). */
-  private int maxBooksOf(User user) {
-    return user.isMember() ? 5 : 2;
+  public record CartView(String cartToken, List<BorrowTicket> lines, String qrDataUri) {}
+
+  public static boolean isCartToken(String token) {
+    return token != null && token.startsWith(CART_PREFIX);
   }
 
-  /** Tổng số CUỐN đang mượn (chưa trả) — đếm từ bảng BORROW. */
+  /* ------------------------ Helpers ------------------------ */
+
+  /** Tổng số CUỐN đang mượn (chưa trả) — đếm trên DB trong transaction xác nhận. */
   private int activeBorrowQty(Long userId) {
     return borrowRepo.sumActiveAmount(userId);
   }
 
-  /** Chốt chặn khi tạo vé: CHỈ dựa vào số đang mượn trong bảng borrow. */
-  private void enforceLimitForCreate(User user, int addingAmount) {
-    int active = activeBorrowQty(user.getId());
-    int limit  = maxBooksOf(user);
-    int allowed = limit - active;
-    if (allowed <= 0 || addingAmount > allowed) {
-      throw new IllegalStateException(
-          "Bạn đang mượn " + active + " cuốn. Giới hạn tối đa là " + limit +
-          " cuốn.");
-    }
-  }
-
   /** Chốt chặn khi xác nhận: CHỈ dựa vào số đang mượn trong bảng borrow. */
   private void enforceLimitForConfirm(User user, int addingAmount) {
     int active = activeBorrowQty(user.getId());
-    int limit  = maxBooksOf(user);
+    int limit  = eligibility.limitOf(user);
     int allowed = limit - active;
     if (allowed <= 0 || addingAmount > allowed) {
       throw new IllegalStateException(
@@ -87,17 +113,10 @@ public class BorrowTicketService {
 
   /* ------------------------ Create / Cancel / Confirm ------------------------ */
 
-  /** Tạo vé mượn + QR (người dùng) — kiểm tra limit chỉ theo bảng borrow. */
+  /** Tạo vé mượn + QR (người dùng) — quá hạn / hạn mức đọc từ BorrowEligibilityService (không truy vấn). */
   @Transactional
   public TicketView createTicket(User user, Long bookId, int amount, int days) {
-    // Khóa vì quá hạn?
-    if (borrowRepo.existsByUserIdAndReturnDateIsNullAndDueDateBefore(user.getId(), LocalDateTime.now())) {
-      throw new IllegalStateException(
-          "Tài khoản đang bị khóa do có sách quá hạn. Hãy tạo mã trả và hoàn tất trả trước khi mượn mới.");
-    }
-
     if (amount < 1) amount = 1;
-    enforceLimitForCreate(user, amount); // ✅ chỉ dựa vào BORROW
 
     // Giới hạn ngày theo loại tài khoản
     int maxDays = user.isMember() ? 14 : 7;
@@ -106,7 +125,13 @@ public class BorrowTicketService {
     }
 
     Book book = bookRepo.findById(bookId).orElseThrow();
-    if (book.getQuantity() < amount) {
+    var decision = eligibility.check(user, book, amount);   // khóa quá hạn, hạn mức, chỗ còn trống
+    if (!decision.allowed()) {
+      throw new IllegalStateException(decision.reason());
+    }
+
+    // Giữ chỗ mềm (CAS): chốt lại phần "chỗ còn trống" khi nhiều người tạo vé cùng lúc; rollback -> tự nhả
+    if (!holdLedger.hold(bookId, book.getQuantity(), amount)) {
       throw new IllegalStateException("Sách đã hết — hãy dùng chức năng đặt chỗ.");
     }
 
@@ -121,9 +146,88 @@ public class BorrowTicketService {
     t.setStatus(BorrowTicket.TicketStatus.PENDING);
     t.setToken(java.util.UUID.randomUUID().toString().replace("-", ""));
     ticketRepo.save(t);
+    expiryScheduler.schedule(ExpiryScheduler.Kind.BORROW_TICKET, t.getId(), t.getExpiresAt());
 
-    String scanUrl = normalizeBaseUrl(baseUrl) + "/admin/ticket/scan?token=" + t.getToken();
-    return new TicketView(t, qrService.toDataUriPng(scanUrl, 280));
+    return new TicketView(t, qrOf(t));
+  }
+
+  /**
+   * Vé giỏ: nhiều đầu sách dưới 1 mã QR. Kiểm tra quá hạn / hạn mức / số ngày MỘT lần cho cả giỏ,
+   * giữ chỗ từng dòng (thiếu 1 dòng -> rollback, các chỗ đã giữ tự nhả), mỗi dòng là 1 BorrowTicket
+   * (lịch sử, hết hạn, giữ chỗ dùng lại như vé đơn) gắn chung cartToken.
+   */
+  @Transactional
+  public CartView createCart(User user, List<CartLine> lines, int days) {
+    // Gộp dòng trùng sách
+    Map<Long, Integer> amounts = new LinkedHashMap<>();
+    for (CartLine l : lines) {
+      if (l == null || l.bookId() == null) continue;
+      amounts.merge(l.bookId(), Math.max(1, l.amount()), Integer::sum);
+    }
+    if (amounts.isEmpty()) {
+      throw new IllegalArgumentException("Giỏ mượn đang trống.");
+    }
+
+    var decision = eligibility.checkQuota(user, amounts.values().stream().mapToInt(Integer::intValue).sum());
+    if (!decision.allowed()) {
+      throw new IllegalStateException(decision.reason());
+    }
+
+    int maxDays = user.isMember() ? 14 : 7;
+    if (days < 1 || days > maxDays) {
+      throw new IllegalArgumentException("Số ngày mượn vượt quá giới hạn (" + maxDays + ").");
+    }
+
+    Map<Long, Book> books = new LinkedHashMap<>();
+    for (Book b : bookRepo.findAllById(amounts.keySet())) books.put(b.getId(), b);
+
+    LocalDateTime now = LocalDateTime.now();
+    String cartToken = CART_PREFIX + java.util.UUID.randomUUID().toString().replace("-", "");
+    List<BorrowTicket> tickets = new ArrayList<>(amounts.size());
+    for (Map.Entry<Long, Integer> e : amounts.entrySet()) {
+      Book book = books.get(e.getKey());
+      if (book == null) {
+        throw new IllegalArgumentException("Sách #" + e.getKey() + " không tồn tại.");
+      }
+      if (!holdLedger.hold(book.getId(), book.getQuantity(), e.getValue())) {
+        throw new IllegalStateException("Sách \"" + book.getTitle() + "\" đã hết — hãy bỏ khỏi giỏ hoặc đặt chỗ.");
+      }
+      BorrowTicket t = new BorrowTicket();
+      t.setUser(user);
+      t.setBook(book);
+      t.setAmount(e.getValue());
+      t.setDays(days);
+      t.setRequestedAt(now);
+      t.setExpiresAt(now.plusDays(1));
+      t.setStatus(BorrowTicket.TicketStatus.PENDING);
+      t.setToken(java.util.UUID.randomUUID().toString().replace("-", ""));
+      t.setCartToken(cartToken);
+      tickets.add(t);
+    }
+    ticketRepo.saveAll(tickets);
+    for (BorrowTicket t : tickets) {
+      expiryScheduler.schedule(ExpiryScheduler.Kind.BORROW_TICKET, t.getId(), t.getExpiresAt());
+    }
+
+    return new CartView(cartToken, tickets, qrService.toDataUriPng(scanUrlOf(cartToken), 280));
+  }
+
+  /** Giỏ của user (để hiển thị lại trang QR); rỗng nếu không phải của user. */
+  @Transactional(readOnly = true)
+  public List<BorrowTicket> findCart(User user, String cartToken) {
+    List<BorrowTicket> lines = ticketRepo.findByCartTokenOrderByIdAsc(cartToken);
+    if (lines.isEmpty() || !lines.get(0).getUser().getId().equals(user.getId())) return List.of();
+    return lines;
+  }
+
+  /** QR của vé đơn: mã gọn có chữ ký (id + hạn), vẽ lại mỗi lần xem vé. */
+  public String qrOf(BorrowTicket t) {
+    String code = qrTokens.issue(QrTokenService.Kind.BORROW, t.getId(), t.getExpiresAt());
+    return qrService.toDataUriPng(scanUrlOf(code), 280);
+  }
+
+  public String cartQr(String cartToken) {
+    return qrService.toDataUriPng(scanUrlOf(cartToken), 280);
   }
 
   /** Người dùng tự hủy vé PENDING. */
@@ -137,20 +241,22 @@ public class BorrowTicketService {
       throw new IllegalStateException("Vé không còn hiệu lực (đã xác nhận/hết hạn/đã huỷ).");
     }
     t.setStatus(BorrowTicket.TicketStatus.CANCELLED);
+    holdLedger.release(t.getBook().getId(), t.getAmount());
+    expiryScheduler.cancel(ExpiryScheduler.Kind.BORROW_TICKET, t.getId());
+    holdQueue.promote(t.getBook().getId(), t.getAmount());   // chỗ vừa nhả -> người đang chờ đặt chỗ
   }
 
   /**
    * Admin xác nhận vé khi quét QR:
-   * - Khóa vé chống double-scan
-   * - Check hết hạn/tồn kho
-   * - Check limit CHỈ theo bảng borrow
-   * - Tạo/gộp Borrow theo dueDate
-   * - Trừ kho, set CONFIRMED
+   * - Chống double-scan bằng @Version (gọi qua ConfirmRetryExecutor: xung đột -> thử lại)
+   * - Check hết hạn
+   * - Trừ kho có điều kiện (1 câu UPDATE, không bán quá khi nhiều quầy quét cùng lúc)
+   * - Tạo Borrow, set CONFIRMED
    */
   @Transactional
   public Borrow confirmByAdmin(String token, User admin) {
-      // Lấy ticket dưới khóa ghi để tránh 2 lần quét trùng
-      var t = ticketRepo.findByToken(token)
+      // Không khoá dòng: quầy thứ 2 cùng quét sẽ lỗi @Version lúc flush và đọc lại trạng thái mới
+      var t = findByScannedCode(token)
               .orElseThrow(() -> new IllegalArgumentException("Vé không tồn tại"));
 
       if (t.getStatus() != BorrowTicket.TicketStatus.PENDING) {
@@ -163,7 +269,8 @@ public class BorrowTicketService {
       }
 
       var book = t.getBook();
-      if (book.getQuantity() < t.getAmount()) {
+      // Trừ kho (rollback cả transaction nếu bước sau lỗi)
+      if (!inventoryService.tryDecrement(book.getId(), t.getAmount())) {
           throw new IllegalStateException("Sách đã hết.");
       }
 
@@ -179,25 +286,231 @@ public class BorrowTicketService {
       b.setFineStatus("UNPAID");
       b.setFinePaidTotal(java.math.BigDecimal.ZERO);
       borrowRepo.save(b);
-
-      // Trừ kho
-      book.setQuantity(book.getQuantity() - t.getAmount());
-      bookRepo.save(book);
+      eligibility.onBorrowed(t.getUser().getId(), b.getAmount(), b.getDueDate());
+      availability.onOpened(b);
 
       // Chuyển trạng thái vé
       t.setStatus(BorrowTicket.TicketStatus.CONFIRMED);
       t.setConfirmedBy(admin);
       t.setConfirmedAt(now);
       ticketRepo.saveAndFlush(t); // ❗ flush ngay để các request khác thấy trạng thái mới
+      holdLedger.release(book.getId(), t.getAmount()); // đã trừ kho thật
+      expiryScheduler.cancel(ExpiryScheduler.Kind.BORROW_TICKET, t.getId());
 
       return b;
   }
 
-  /** Cron: tự hết hạn vé PENDING quá hạn (mỗi 10 phút) */
+  /**
+   * Admin quét QR của vé giỏ: 1 transaction cho cả giỏ (gọi qua ConfirmRetryExecutor).
+   * - Hạn mức kiểm tra 1 lần trên tổng số cuốn của các dòng còn PENDING
+   * - Trừ kho cả loạt (InventoryService.tryDecrementAll): thiếu 1 đầu sách -> không dòng nào được mượn
+   * - Tạo các Borrow bằng saveAll, chuyển mọi dòng sang CONFIRMED (@Version chống 2 quầy quét trùng)
+   */
+  @Transactional
+  public List<Borrow> confirmCartByAdmin(String cartToken, User admin) {
+    List<BorrowTicket> all = ticketRepo.findByCartTokenOrderByIdAsc(cartToken);
+    if (all.isEmpty()) {
+      throw new IllegalArgumentException("Vé không tồn tại");
+    }
+    List<BorrowTicket> lines = all.stream()
+        .filter(t -> t.getStatus() == BorrowTicket.TicketStatus.PENDING)
+        .toList();
+    if (lines.isEmpty()) {
+      throw new IllegalStateException("Vé đã được xử lý (" + all.get(0).getStatus() + ")");
+    }
+
+    var now = LocalDateTime.now();
+    if (lines.get(0).getExpiresAt().isBefore(now)) {
+      lines.forEach(t -> t.setStatus(BorrowTicket.TicketStatus.EXPIRED));
+      ticketRepo.saveAllAndFlush(lines);
+      throw new IllegalStateException("Vé đã hết hạn.");
+    }
+
+    User user = lines.get(0).getUser();
+    Map<Long, Integer> amounts = new LinkedHashMap<>();
+    for (BorrowTicket t : lines) amounts.merge(t.getBook().getId(), t.getAmount(), Integer::sum);
+    enforceLimitForConfirm(user, amounts.values().stream().mapToInt(Integer::intValue).sum());
+
+    if (!inventoryService.tryDecrementAll(amounts)) {
+      throw new IllegalStateException("Một số sách trong giỏ đã hết.");
+    }
+
+    List<Borrow> borrows = new ArrayList<>(lines.size());
+    for (BorrowTicket t : lines) {
+      var b = new Borrow();
+      b.setUser(user);
+      b.setBook(t.getBook());
+      b.setBorrowDate(now);
+      b.setDueDate(now.plusDays(t.getDays()));
+      b.setAmount(t.getAmount());
+      b.setFineStatus("UNPAID");
+      b.setFinePaidTotal(java.math.BigDecimal.ZERO);
+      borrows.add(b);
+
+      t.setStatus(BorrowTicket.TicketStatus.CONFIRMED);
+      t.setConfirmedBy(admin);
+      t.setConfirmedAt(now);
+    }
+    borrowRepo.saveAll(borrows);
+    borrows.forEach(b -> {
+      eligibility.onBorrowed(user.getId(), b.getAmount(), b.getDueDate());
+      availability.onOpened(b);
+    });
+    ticketRepo.saveAllAndFlush(lines);
+    for (BorrowTicket t : lines) {
+      holdLedger.release(t.getBook().getId(), t.getAmount());
+      expiryScheduler.cancel(ExpiryScheduler.Kind.BORROW_TICKET, t.getId());
+    }
+    return borrows;
+  }
+
+  /**
+   * Quầy quét hàng loạt: xác nhận nhiều vé đơn trong 1 transaction, theo từng bước gộp:
+   * 1 truy vấn nạp cả lô -> kiểm tra trạng thái/hạn trong bộ nhớ -> hạn mức 1 truy vấn / người mượn
+   * (nhận theo thứ tự quét tới khi đầy) -> 1 UPDATE kho / đầu sách (thiếu thì xét từng vé của sách đó)
+   * -> saveAll Borrow + vé, flush 1 lần. Mã lỗi không chặn mã khác; kết quả theo đúng thứ tự tokens.
+   * Xung đột @Version với quầy khác làm hỏng cả lô -> người gọi thử lại (ConfirmRetryExecutor).
+   */
+  @Transactional
+  public Map<String, ScanOutcome> confirmBatchByAdmin(List<String> tokens, User admin) {
+    Map<String, ScanOutcome> out = new LinkedHashMap<>();
+    for (String token : tokens) out.put(token, null);
+    Map<String, BorrowTicket> byCode = loadByScannedCodes(tokens, out);
+
+    var now = LocalDateTime.now();
+    List<BorrowTicket> accepted = new ArrayList<>();
+    Map<BorrowTicket, String> codeOf = new IdentityHashMap<>();
+    for (String token : tokens) {
+      if (out.get(token) != null) continue;   // mã gọn sai / hết hạn: đã loại, không chạm DB
+      BorrowTicket t = byCode.get(token);
+      if (t == null) {
+        out.put(token, ScanOutcome.fail("Vé không tồn tại"));
+      } else if (codeOf.containsKey(t)) {
+        out.put(token, ScanOutcome.fail("Mã trùng trong lô."));
+      } else if (t.getStatus() != BorrowTicket.TicketStatus.PENDING) {
+        out.put(token, ScanOutcome.fail("Vé đã được xử lý (" + t.getStatus() + ")"));
+      } else if (t.getExpiresAt().isBefore(now)) {
+        out.put(token, ScanOutcome.fail("Vé đã hết hạn.")); // ExpiryScheduler sẽ chuyển EXPIRED
+      } else {
+        accepted.add(t);
+        codeOf.put(t, token);
+      }
+    }
+
+    // Hạn mức: số còn được mượn của từng người, đọc 1 lần
+    Map<Long, Integer> room = new HashMap<>();
+    accepted.removeIf(t -> {
+      User u = t.getUser();
+      int left = room.computeIfAbsent(u.getId(), id -> eligibility.limitOf(u) - activeBorrowQty(id));
+      if (t.getAmount() > left) {
+        out.put(codeOf.get(t), ScanOutcome.fail("Người mượn đã đạt giới hạn " + eligibility.limitOf(u) + " cuốn."));
+        return true;
+      }
+      room.put(u.getId(), left - t.getAmount());
+      return false;
+    });
+
+    // Kho: theo bookId tăng dần (cùng thứ tự khoá với vé giỏ)
+    Map<Long, List<BorrowTicket>> byBook = new TreeMap<>();
+    for (BorrowTicket t : accepted) byBook.computeIfAbsent(t.getBook().getId(), k -> new ArrayList<>()).add(t);
+    Set<BorrowTicket> outOfStock = new HashSet<>();
+    for (Map.Entry<Long, List<BorrowTicket>> e : byBook.entrySet()) {
+      int total = e.getValue().stream().mapToInt(BorrowTicket::getAmount).sum();
+      if (inventoryService.tryDecrement(e.getKey(), total)) continue;
+      for (BorrowTicket t : e.getValue()) {
+        if (!inventoryService.tryDecrement(e.getKey(), t.getAmount())) {
+          out.put(codeOf.get(t), ScanOutcome.fail("Sách đã hết."));
+          outOfStock.add(t);
+        }
+      }
+    }
+    accepted.removeAll(outOfStock);
+
+    List<Borrow> borrows = new ArrayList<>(accepted.size());
+    for (BorrowTicket t : accepted) {
+      var b = new Borrow();
+      b.setUser(t.getUser());
+      b.setBook(t.getBook());
+      b.setBorrowDate(now);
+      b.setDueDate(now.plusDays(t.getDays()));
+      b.setAmount(t.getAmount());
+      b.setFineStatus("UNPAID");
+      b.setFinePaidTotal(java.math.BigDecimal.ZERO);
+      borrows.add(b);
+
+      t.setStatus(BorrowTicket.TicketStatus.CONFIRMED);
+      t.setConfirmedBy(admin);
+      t.setConfirmedAt(now);
+    }
+    borrowRepo.saveAll(borrows);
+    borrows.forEach(b -> {
+      eligibility.onBorrowed(b.getUser().getId(), b.getAmount(), b.getDueDate());
+      availability.onOpened(b);
+    });
+    ticketRepo.saveAllAndFlush(accepted);
+    for (int i = 0; i < accepted.size(); i++) {
+      BorrowTicket t = accepted.get(i);
+      holdLedger.release(t.getBook().getId(), t.getAmount());
+      expiryScheduler.cancel(ExpiryScheduler.Kind.BORROW_TICKET, t.getId());
+      out.put(codeOf.get(t), ScanOutcome.ok(borrows.get(i)));
+    }
+    return out;
+  }
+
+  /**
+   * Cron lưới an toàn (mỗi 10 phút): hết hạn đúng giờ do ExpiryScheduler làm; ở đây chỉ dọn vé bị sót,
+   * từng vé có điều kiện để nhả đúng chỗ đã giữ.
+   */
   @Scheduled(cron = "0 */10 * * * *")
   @Transactional
   public void expireJob() {
-    ticketRepo.expireOldTickets();
+    for (Object[] r : ticketRepo.findExpiredPending()) {
+      Long id = (Long) r[0];
+      if (ticketRepo.updateStatusIf(id, BorrowTicket.TicketStatus.PENDING, BorrowTicket.TicketStatus.EXPIRED) == 1) {
+        holdLedger.release((Long) r[1], ((Number) r[2]).intValue());
+        holdQueue.promote((Long) r[1], ((Number) r[2]).intValue());
+      }
+    }
+  }
+
+  /** Vé theo mã quét: mã gọn -> kiểm chữ ký/hạn trong bộ nhớ rồi tra khoá chính; UUID cũ -> theo token. */
+  private Optional<BorrowTicket> findByScannedCode(String code) {
+    if (QrTokenService.isCompact(code)) {
+      return ticketRepo.findById(qrTokens.verify(code, QrTokenService.Kind.BORROW).ticketId());
+    }
+    return ticketRepo.findByToken(code);
+  }
+
+  /** Nạp vé cho lô mã quét: mã gọn lỗi ghi thẳng vào out; còn lại 1 truy vấn theo id + 1 theo token. */
+  private Map<String, BorrowTicket> loadByScannedCodes(List<String> codes, Map<String, ScanOutcome> out) {
+    Map<Long, List<String>> codesById = new HashMap<>();
+    List<String> legacy = new ArrayList<>();
+    for (String code : codes) {
+      if (!QrTokenService.isCompact(code)) {
+        legacy.add(code);
+        continue;
+      }
+      try {
+        long id = qrTokens.verify(code, QrTokenService.Kind.BORROW).ticketId();
+        codesById.computeIfAbsent(id, k -> new ArrayList<>()).add(code);
+      } catch (IllegalArgumentException | IllegalStateException e) {
+        out.put(code, ScanOutcome.fail(e.getMessage()));
+      }
+    }
+    Map<String, BorrowTicket> byCode = new HashMap<>();
+    if (!legacy.isEmpty()) {
+      for (BorrowTicket t : ticketRepo.findByTokenIn(legacy)) byCode.put(t.getToken(), t);
+    }
+    if (!codesById.isEmpty()) {
+      for (BorrowTicket t : ticketRepo.findByIdIn(codesById.keySet())) {
+        for (String code : codesById.get(t.getId())) byCode.put(code, t);
+      }
+    }
+    return byCode;
+  }
+
+  private String scanUrlOf(String token) {
+    return normalizeBaseUrl(baseUrl) + "/admin/ticket/scan?token=" + token;
   }
 
   private String normalizeBaseUrl(String url) {
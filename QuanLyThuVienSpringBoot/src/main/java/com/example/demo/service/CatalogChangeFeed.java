@@ -0,0 +1,256 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Category;
+import com.example.demo.repository.BookDescriptionRepository;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.CategoryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Đường ống cập nhật chỉ mục đọc (tìm kiếm, gợi ý, facet) theo thay đổi Book/mô tả/Category:
+ * - CatalogEntityListener ghi nhận insert/update/delete (kể cả đổi tồn kho khi mượn/trả);
+ *   thay đổi trong 1 transaction được gom lại và chỉ đẩy vào hàng đợi SAU KHI commit
+ *   (rollback -> bỏ), ngoài transaction thì đẩy ngay.
+ * - flush() chạy mỗi catalog.index.flush-ms: gộp theo id (thay đổi sau cùng thắng), rồi áp 1 lô
+ *   cho mỗi chỉ mục -> kết quả tìm kiếm/còn sách cập nhật trong < 1 giây, không cần nạp lại toàn bộ.
+ * - Sau khi áp xong thì huỷ các trang đã render liên quan trong PageCache.
+ * - catchUp() mỗi catalog.sync.ms: nhận thay đổi commit ở NODE KHÁC (listener chỉ thấy JVM này):
+ *   sách có updated_at > mốc (lùi catalog.sync.overlap-ms để không lỡ transaction commit muộn / lệch giờ,
+ *   áp lại là idempotent), xoá phát hiện bằng so số lượng rồi so id, danh mục so toàn bộ (bảng nhỏ).
+ * Khi chỉ mục chưa nạp xong (khởi động) thì giữ nguyên hàng đợi, tránh bị rebuild ghi đè.
+ */
+@Service
+public class CatalogChangeFeed {
+
+    enum Type { BOOK_SAVED, BOOK_DELETED, DESCRIPTION_SAVED, CATEGORY_SAVED, CATEGORY_DELETED }
+
+    /** 1 thay đổi; payload là bản sao tách khỏi persistence context (Book/Category), mô tả, hoặc null khi xoá. */
+    record Delta(Type type, Long id, Object payload) {}
+
+    private final SearchService searchService;
+    private final AutocompleteService autocompleteService;
+    private final FacetService facetService;
+    private final PageCache pageCache;
+    private final BookRepository bookRepo;
+    private final BookDescriptionRepository descriptionRepo;
+    private final CategoryRepository categoryRepo;
+
+    @Value("${catalog.sync.overlap-ms:5000}")
+    private long overlapMs = 5000;
+
+    private final ConcurrentLinkedQueue<Delta> queue = new ConcurrentLinkedQueue<>();
+    /** Mốc catch-up: lấy trước khi chỉ mục nạp từ DB nên không lỡ thay đổi nào trong lúc nạp. */
+    private LocalDateTime watermark = LocalDateTime.now();
+    private Map<Long, String> knownCategories;   // id -> tên, lần catch-up trước
+    /** bookId -> updatedAt đã áp (trong cửa sổ lùi mốc), để poll lặp lại không huỷ trang cache vô ích. */
+    private final Map<Long, LocalDateTime> applied = new HashMap<>();
+
+    public CatalogChangeFeed(SearchService searchService, AutocompleteService autocompleteService,
+                             FacetService facetService, PageCache pageCache, BookRepository bookRepo,
+                             BookDescriptionRepository descriptionRepo, CategoryRepository categoryRepo) {
+        this.searchService = searchService;
+        this.autocompleteService = autocompleteService;
+        this.facetService = facetService;
+        this.pageCache = pageCache;
+        this.bookRepo = bookRepo;
+        this.descriptionRepo = descriptionRepo;
+        this.categoryRepo = categoryRepo;
+    }
+
+    /* ===================== Ghi nhận (từ entity listener) ===================== */
+
+    public void bookSaved(Book book) {
+        if (book == null || book.getId() == null) return;
+        record(new Delta(Type.BOOK_SAVED, book.getId(), copyOf(book)));
+    }
+
+    public void bookDeleted(Long id) {
+        if (id == null) return;
+        record(new Delta(Type.BOOK_DELETED, id, null));
+    }
+
+    public void descriptionSaved(Long bookId, String body) {
+        if (bookId == null) return;
+        record(new Delta(Type.DESCRIPTION_SAVED, bookId, body));
+    }
+
+    public void categorySaved(Category category) {
+        if (category == null || category.getId() == null) return;
+        Category c = new Category();
+        c.setId(category.getId());
+        c.setName(category.getName());
+        record(new Delta(Type.CATEGORY_SAVED, c.getId(), c));
+    }
+
+    public void categoryDeleted(Long id) {
+        if (id == null) return;
+        record(new Delta(Type.CATEGORY_DELETED, id, null));
+    }
+
+    /** Số thay đổi đang chờ áp. */
+    public int pending() {
+        return queue.size();
+    }
+
+    /* ===================== Áp theo lô ===================== */
+
+    @Scheduled(fixedDelayString = "${catalog.index.flush-ms:250}")
+    public synchronized void flush() {
+        if (queue.isEmpty()) return;
+        if (!searchService.isReady() || !autocompleteService.isReady() || !facetService.isReady()) return;
+
+        Map<Long, Book> books = new LinkedHashMap<>();            // null = xoá
+        Map<Long, String> descriptions = new LinkedHashMap<>();  // null = không còn mô tả
+        Map<Long, Category> categories = new LinkedHashMap<>();
+        Delta d;
+        while ((d = queue.poll()) != null) {
+            switch (d.type()) {
+                case BOOK_SAVED -> books.put(d.id(), (Book) d.payload());
+                case BOOK_DELETED -> {
+                    books.put(d.id(), null);
+                    descriptions.remove(d.id());
+                }
+                case DESCRIPTION_SAVED -> descriptions.put(d.id(), (String) d.payload());
+                case CATEGORY_SAVED -> categories.put(d.id(), (Category) d.payload());
+                case CATEGORY_DELETED -> categories.put(d.id(), null);
+            }
+        }
+
+        for (Map.Entry<Long, Category> e : categories.entrySet()) {
+            if (e.getValue() == null) searchService.removeCategory(e.getKey());
+            else searchService.indexCategory(e.getValue());
+        }
+        if (!books.isEmpty()) {
+            List<Book> upserts = new ArrayList<>();
+            List<Long> deletes = new ArrayList<>();
+            for (Map.Entry<Long, Book> e : books.entrySet()) {
+                if (e.getValue() == null) {
+                    deletes.add(e.getKey());
+                    applied.remove(e.getKey());
+                } else {
+                    upserts.add(e.getValue());
+                    applied.put(e.getKey(), e.getValue().getUpdatedAt());
+                }
+            }
+            searchService.apply(upserts, deletes);
+            autocompleteService.apply(upserts, deletes);
+            facetService.apply(upserts, deletes);
+        }
+        if (!descriptions.isEmpty()) searchService.applyDescriptions(descriptions);   // sau sách mới thêm
+
+        if (!categories.isEmpty()) {
+            pageCache.invalidateAll();   // tên danh mục hiện trên mọi trang
+        } else {
+            Set<Long> changed = new HashSet<>(books.keySet());
+            changed.addAll(descriptions.keySet());
+            if (!changed.isEmpty()) pageCache.invalidateBooks(changed);
+        }
+    }
+
+    /* ===================== Đồng bộ giữa các node ===================== */
+
+    @Scheduled(fixedDelayString = "${catalog.sync.ms:1000}")
+    public synchronized void catchUp() {
+        if (!searchService.isReady() || !autocompleteService.isReady() || !facetService.isReady()) return;
+        LocalDateTime pollStart = LocalDateTime.now();
+
+        LocalDateTime since = watermark.minusNanos(overlapMs * 1_000_000);
+        applied.values().removeIf(t -> t == null || t.isBefore(since));
+        List<Book> changed = bookRepo.findUpdatedSince(since);
+        List<Long> ids = new ArrayList<>();
+        for (Book b : changed) {
+            if (Objects.equals(applied.get(b.getId()), b.getUpdatedAt())) continue;
+            queue.add(new Delta(Type.BOOK_SAVED, b.getId(), copyOf(b)));
+            ids.add(b.getId());
+        }
+        if (!ids.isEmpty()) {
+            Map<Long, String> bodies = new HashMap<>();
+            for (Object[] r : descriptionRepo.findBodies(ids)) bodies.put((Long) r[0], (String) r[1]);
+            for (Long id : ids) queue.add(new Delta(Type.DESCRIPTION_SAVED, id, bodies.get(id)));
+        }
+
+        Map<Long, String> categories = new HashMap<>();
+        for (Category c : categoryRepo.findAll()) categories.put(c.getId(), c.getName());
+        if (knownCategories != null) {
+            for (Map.Entry<Long, String> e : categories.entrySet()) {
+                if (!Objects.equals(knownCategories.get(e.getKey()), e.getValue())) {
+                    Category c = new Category();
+                    c.setId(e.getKey());
+                    c.setName(e.getValue());
+                    queue.add(new Delta(Type.CATEGORY_SAVED, c.getId(), c));
+                }
+            }
+            for (Long id : knownCategories.keySet()) {
+                if (!categories.containsKey(id)) queue.add(new Delta(Type.CATEGORY_DELETED, id, null));
+            }
+        }
+        knownCategories = categories;
+
+        flush();
+
+        // Xoá ở node khác: chỉ so id khi số lượng lệch (đếm rẻ hơn tải toàn bộ id mỗi giây)
+        if (bookRepo.count() != searchService.size()) {
+            Set<Long> gone = searchService.indexedIds();
+            gone.removeAll(bookRepo.findAllIds());
+            for (Long id : gone) queue.add(new Delta(Type.BOOK_DELETED, id, null));
+            if (!gone.isEmpty()) flush();
+        }
+        watermark = pollStart;
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private void record(Delta delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            queue.add(delta);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Delta> txDeltas = (List<Delta>) TransactionSynchronizationManager.getResource(this);
+        if (txDeltas == null) {
+            List<Delta> list = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, list);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queue.addAll(list);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CatalogChangeFeed.this);
+                }
+            });
+            txDeltas = list;
+        }
+        txDeltas.add(delta);
+    }
+
+    /** Bản sao các trường chỉ mục cần (không giữ entity đang được quản lý / lazy proxy). */
+    private static Book copyOf(Book b) {
+        Book c = new Book();
+        c.setId(b.getId());
+        c.setTitle(b.getTitle());
+        c.setAuthor(b.getAuthor());
+        c.setQuantity(b.getQuantity());
+        c.setAvailable(b.isAvailable());
+        c.setCreatedAt(b.getCreatedAt());
+        c.setUpdatedAt(b.getUpdatedAt());
+        if (b.getCategory() != null) {
+            Category cat = new Category();
+            cat.setId(b.getCategory().getId());
+            cat.setName(b.getCategory().getName());
+            c.setCategory(cat);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.BookDescription;
+import com.example.demo.model.Category;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * JPA listener gắn vào Book/BookDescription/Category: mỗi insert/update/delete được flush sẽ chuyển cho
+ * CatalogChangeFeed (áp vào chỉ mục sau commit). Hibernate lấy listener qua Spring bean container;
+ * feed được lấy trễ qua ObjectProvider vì listener được tạo cùng lúc với EntityManagerFactory.
+ */
+public class CatalogEntityListener {
+
+    private final ObjectProvider<CatalogChangeFeed> feed;
+
+    public CatalogEntityListener(ObjectProvider<CatalogChangeFeed> feed) {
+        this.feed = feed;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void saved(Object entity) {
+        CatalogChangeFeed f = feed.getIfAvailable();
+        if (f == null) return;
+        if (entity instanceof Book b) f.bookSaved(b);
+        else if (entity instanceof BookDescription d) f.descriptionSaved(d.getId(), d.getBody());
+        else if (entity instanceof Category c) f.categorySaved(c);
+    }
+
+    @PostRemove
+    public void removed(Object entity) {
+        CatalogChangeFeed f = feed.getIfAvailable();
+        if (f == null) return;
+        if (entity instanceof Book b) f.bookDeleted(b.getId());
+        else if (entity instanceof Category c) f.categoryDeleted(c.getId());
+    }
+}
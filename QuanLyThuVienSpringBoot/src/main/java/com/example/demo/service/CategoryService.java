@@ -23,7 +23,7 @@ public class CategoryService {
     }
 
     public Category save(Category category) {
-        return categoryRepository.save(category);
+        return categoryRepository.save(category);   // chỉ mục tên danh mục cập nhật qua CatalogChangeFeed
     }
 
     public void deleteById(Long id) {
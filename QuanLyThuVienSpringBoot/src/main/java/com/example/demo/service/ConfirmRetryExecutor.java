@@ -0,0 +1,62 @@
+package com.example.demo.service;
+
+import jakarta.persistence.OptimisticLockException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Chạy nghiệp vụ xác nhận mượn/trả trong transaction riêng cho mỗi lần thử; xung đột @Version
+ * (2 quầy cùng sửa 1 vé / phiếu mượn / sách) thì chạy lại với backoff có jitter, tối đa max-attempts.
+ * Lần thử sau đọc lại trạng thái mới, nên vé đã được quầy khác xác nhận sẽ báo "đã xử lý".
+ * Không được gọi từ bên trong 1 transaction đang mở (lần thử phải là transaction ngoài cùng).
+ */
+@Service
+public class ConfirmRetryExecutor {
+
+    private final TransactionTemplate tx;
+
+    @Value("${confirm.retry.max-attempts:5}")
+    private int maxAttempts = 5;
+    @Value("${confirm.retry.base-ms:10}")
+    private long baseMs = 10;
+    @Value("${confirm.retry.max-ms:200}")
+    private long maxMs = 200;
+
+    public ConfirmRetryExecutor(PlatformTransactionManager txManager) {
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tx.execute(status -> work.get());
+            } catch (ConcurrencyFailureException | OptimisticLockException e) {   // flush trực tiếp qua EntityManager không được dịch
+                if (attempt >= maxAttempts) {
+                    throw new IllegalStateException("Vé đang được xử lý ở quầy khác, vui lòng quét lại.", e);
+                }
+                sleep(backoffMs(attempt));
+            }
+        }
+    }
+
+    /** "Full jitter": ngẫu nhiên trong [0, min(max, base * 2^(attempt-1))]. */
+    long backoffMs(int attempt) {
+        long cap = Math.min(maxMs, baseMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bị ngắt khi chờ thử lại.", e);
+        }
+    }
+}
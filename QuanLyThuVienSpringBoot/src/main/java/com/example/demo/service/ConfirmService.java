@@ -1,12 +1,13 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ScanOutcome;
 import com.example.demo.model.Borrow;
 import com.example.demo.model.BorrowTicket;
 import com.example.demo.model.User;
 import com.example.demo.repository.BorrowRepository;
 import com.example.demo.repository.BorrowTicketRepository;
 import com.example.demo.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -16,7 +17,14 @@ import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 @Service
 public class ConfirmService {
@@ -28,17 +36,38 @@ public class ConfirmService {
   // ✅ thêm 2 repo để kiểm tra giới hạn & auto-cancel
   private final BorrowRepository borrowRepo;
   private final BorrowTicketRepository borrowTicketRepo;
+  private final ConfirmRetryExecutor retry;
+  private final StockHoldLedger holdLedger;
+  private final QrTokenService qrTokens;
+  private final BorrowEligibilityService eligibility;
+  private final HoldQueueService holdQueue;
+
+  /** Số mã mỗi transaction khi quét hàng loạt; tối đa số mã / request */
+  @Value("${confirm.batch.chunk-size:50}")
+  private int batchChunkSize = 50;
+  @Value("${confirm.batch.max-codes:500}")
+  private int batchMaxCodes = 500;
 
   public ConfirmService(BorrowTicketService borrowTicketService,
                         ReturnTicketService returnTicketService,
                         UserRepository userRepo,
                         BorrowRepository borrowRepo,
-                        BorrowTicketRepository borrowTicketRepo) {
+                        BorrowTicketRepository borrowTicketRepo,
+                        ConfirmRetryExecutor retry,
+                        StockHoldLedger holdLedger,
+                        QrTokenService qrTokens,
+                        BorrowEligibilityService eligibility,
+                        HoldQueueService holdQueue) {
     this.borrowTicketService = borrowTicketService;
     this.returnTicketService = returnTicketService;
     this.userRepo = userRepo;
     this.borrowRepo = borrowRepo;
     this.borrowTicketRepo = borrowTicketRepo;
+    this.retry = retry;
+    this.holdLedger = holdLedger;
+    this.qrTokens = qrTokens;
+    this.eligibility = eligibility;
+    this.holdQueue = holdQueue;
   }
 
   /** Kết quả trả về cho UI */
@@ -46,44 +75,158 @@ public class ConfirmService {
                               LocalDateTime dueDate, BigDecimal fineAmount) {}
 
   /* ===================== XÁC NHẬN CHO MƯỢN ===================== */
-  @Transactional
+  /** Mỗi lần thử 1 transaction (xung đột @Version giữa các quầy -> thử lại). */
   public ConfirmResult confirmLendByCode(String raw) {
     String token = normalizeCode(raw);
     if (token.isBlank()) {
       throw new IllegalArgumentException("Mã vé/QR rỗng.");
     }
+    // Mã gọn: chữ ký / loại / hạn kiểm trong bộ nhớ, mã rác không tốn truy vấn nào
+    if (QrTokenService.isCompact(token)) qrTokens.verify(token, QrTokenService.Kind.BORROW);
 
     User admin = currentUserOrThrow();
 
+    if (BorrowTicketService.isCartToken(token)) {
+      return retry.execute(() -> confirmCart(token, admin));
+    }
+    return retry.execute(() -> confirmLend(token, admin));
+  }
+
+  /** Vé giỏ: cả giỏ trong 1 transaction; kết quả gộp tên sách, hạn trả lấy của dòng đầu. */
+  private ConfirmResult confirmCart(String cartToken, User admin) {
+    List<Borrow> borrows = borrowTicketService.confirmCartByAdmin(cartToken, admin);
+    Borrow first = borrows.get(0);
+    autoCancelIfAtLimit(safeUserId(first));
+
+    String titles = String.join(", ", borrows.stream().map(ConfirmService::safeBookTitle).toList());
+    return new ConfirmResult(first.getId(), titles, getDueDate(first), null);
+  }
+
+  private ConfirmResult confirmLend(String token, User admin) {
     // Nghiệp vụ xác nhận & ràng buộc “không vượt giới hạn” đã nằm trong borrowTicketService
     Borrow b = borrowTicketService.confirmByAdmin(token, admin);
 
     // === Auto-cancel vé PENDING còn lại nếu đã đạt giới hạn ===
-    Long userId = safeUserId(b);         // lấy userId từ Borrow (an toàn với Lazy)
-    if (userId != null) {
-      int limit = resolveBorrowLimit(userId); // ví dụ: thành viên 5, thường 2
-      int usedNow = getCurrentUsed(userId);   // tổng đang mượn hiện tại
-      if (usedNow >= limit) {
-        autoCancelAllPendingOfUser(userId, limit);
-      }
-    }
+    autoCancelIfAtLimit(safeUserId(b));   // lấy userId từ Borrow (an toàn với Lazy)
 
     String title = safeBookTitle(b);
     LocalDateTime due = getDueDate(b);
     return new ConfirmResult(b.getId(), title, due, null);
   }
 
+  /* ===================== QUÉT HÀNG LOẠT ===================== */
+
+  /** Kết quả từng mã trong lô (theo đúng thứ tự gửi lên) */
+  public record BatchItem(String code, boolean ok, String message, ConfirmResult result) {}
+
+  public List<BatchItem> confirmLendBatch(List<String> rawCodes) {
+    return confirmBatch(rawCodes, true);
+  }
+
+  public List<BatchItem> confirmReturnBatch(List<String> rawCodes) {
+    return confirmBatch(rawCodes, false);
+  }
+
+  /**
+   * Pipeline: chuẩn hoá + loại mã trùng -> xác định ADMIN 1 lần -> chia lô batchChunkSize mã,
+   * mỗi lô 1 transaction (nạp vé bằng "token in", kho gộp theo đầu sách, flush 1 lần; xung đột -> thử lại cả lô).
+   * Lô lỗi ngoài dự kiến thì xử lý lại từng mã của lô đó theo đường đơn để không mất cả lô.
+   */
+  private List<BatchItem> confirmBatch(List<String> rawCodes, boolean lend) {
+    if (rawCodes == null || rawCodes.isEmpty()) {
+      throw new IllegalArgumentException("Danh sách mã rỗng.");
+    }
+    if (rawCodes.size() > batchMaxCodes) {
+      throw new IllegalArgumentException("Tối đa " + batchMaxCodes + " mã mỗi lần.");
+    }
+    User admin = currentUserOrThrow();
+
+    BatchItem[] items = new BatchItem[rawCodes.size()];
+    String[] tokens = new String[rawCodes.size()];
+    Set<String> seen = new HashSet<>();
+    Set<String> grouped = new LinkedHashSet<>();
+    for (int i = 0; i < rawCodes.size(); i++) {
+      String raw = rawCodes.get(i);
+      String token = normalizeCode(raw);
+      tokens[i] = token;
+      if (token.isBlank()) {
+        items[i] = new BatchItem(raw, false, "Mã vé/QR rỗng.", null);
+      } else if (!seen.add(token)) {
+        items[i] = new BatchItem(raw, false, "Mã trùng trong lô.", null);
+      } else if (lend && BorrowTicketService.isCartToken(token)) {
+        items[i] = single(raw, () -> confirmCart(token, admin));   // vé giỏ đã tự gộp
+      } else {
+        grouped.add(token);
+      }
+    }
+
+    List<String> pending = new ArrayList<>(grouped);
+    Map<String, BatchItem> done = new java.util.HashMap<>();
+    for (int from = 0; from < pending.size(); from += Math.max(1, batchChunkSize)) {
+      List<String> chunk = pending.subList(from, Math.min(pending.size(), from + Math.max(1, batchChunkSize)));
+      try {
+        Map<String, ScanOutcome> res = retry.execute(() -> lend ? lendChunk(chunk, admin)
+                                                                : returnTicketService.confirmBatchByAdmin(chunk, admin));
+        res.forEach((token, o) -> done.put(token, o.isOk()
+            ? new BatchItem(token, true, "OK", toResult(o.borrow(), !lend))
+            : new BatchItem(token, false, o.error(), null)));
+      } catch (RuntimeException e) {
+        System.err.println("[ConfirmService] Lô " + chunk.size() + " mã lỗi, xử lý từng mã: " + e.getMessage());
+        for (String token : chunk) {
+          done.put(token, single(token, lend
+              ? () -> confirmLend(token, admin)
+              : () -> toResult(returnTicketService.confirmByAdmin(token, admin), true)));
+        }
+      }
+    }
+
+    List<BatchItem> out = new ArrayList<>(items.length);
+    for (int i = 0; i < items.length; i++) {
+      BatchItem it = items[i];
+      if (it == null) {
+        BatchItem d = done.get(tokens[i]);
+        it = new BatchItem(rawCodes.get(i), d.ok(), d.message(), d.result());
+      }
+      out.add(it);
+    }
+    return out;
+  }
+
+  private Map<String, ScanOutcome> lendChunk(List<String> tokens, User admin) {
+    Map<String, ScanOutcome> res = borrowTicketService.confirmBatchByAdmin(tokens, admin);
+    // Auto-cancel như đường đơn, 1 lần / người mượn
+    res.values().stream()
+        .filter(ScanOutcome::isOk)
+        .map(o -> safeUserId(o.borrow()))
+        .distinct()
+        .forEach(this::autoCancelIfAtLimit);
+    return res;
+  }
+
+  private BatchItem single(String code, Supplier<ConfirmResult> work) {
+    try {
+      return new BatchItem(code, true, "OK", retry.execute(work));
+    } catch (RuntimeException e) {
+      return new BatchItem(code, false, e.getMessage(), null);
+    }
+  }
+
+  private static ConfirmResult toResult(Borrow b, boolean withFine) {
+    return new ConfirmResult(b.getId(), safeBookTitle(b), getDueDate(b), withFine ? getFineAmount(b) : null);
+  }
+
   /* ===================== XÁC NHẬN NHẬN LẠI (TRẢ) ===================== */
   public ConfirmResult confirmReturnByCode(String raw) {
     String token = normalizeCode(raw);
     if (token.isBlank()) {
       throw new IllegalArgumentException("Mã vé/QR rỗng.");
     }
+    if (QrTokenService.isCompact(token)) qrTokens.verify(token, QrTokenService.Kind.RETURN);
 
     User admin = currentUserOrThrow();
 
     // Nghiệp vụ trả nằm trong ReturnTicketService
-    Borrow b = returnTicketService.confirmByAdmin(token, admin);
+    Borrow b = retry.execute(() -> returnTicketService.confirmByAdmin(token, admin));
 
     String title = safeBookTitle(b);
     LocalDateTime due = getDueDate(b);
@@ -93,6 +236,17 @@ public class ConfirmService {
 
   /* ===================== Helpers ===================== */
 
+  private void autoCancelIfAtLimit(Long userId) {
+    if (userId == null) return;
+    User u = userRepo.findById(userId).orElse(null);
+    if (u == null) return;
+    int limit = eligibility.limitOf(u);                 // thành viên 5, thường 2
+    int usedNow = borrowRepo.sumActiveAmount(userId);   // đếm trong transaction: gồm cả phiếu vừa tạo
+    if (usedNow >= limit) {
+      autoCancelAllPendingOfUser(userId, limit);
+    }
+  }
+
   private User currentUserOrThrow() {
     Authentication auth = SecurityContextHolder.getContext().getAuthentication();
     if (auth == null) {
@@ -152,42 +306,10 @@ public class ConfirmService {
     }
   }
 
-  /**
-   * Suy ra giới hạn mượn của user. Ví dụ: thành viên = 5, thường = 2.
-   * Bạn có thể thay đổi tùy theo domain (vd. theo role, theo cấp bậc, v.v.)
-   */
-  private int resolveBorrowLimit(Long userId) {
-    User u = userRepo.findById(userId).orElse(null);
-    if (u != null) {
-      try {
-        // nếu User có isMember()
-        Boolean isMember = (Boolean) u.getClass().getMethod("isMember").invoke(u);
-        if (Boolean.TRUE.equals(isMember)) return 5;
-      } catch (Exception ignore) {}
-    }
-    return 2;
-  }
-
-  /**
-   * Tổng đang mượn hiện tại.
-   * - Nếu Borrow có field amount: dùng SUM(amount).
-   * - Nếu không: fallback dùng COUNT(record).
-   */
-  private int getCurrentUsed(Long userId) {
-    try {
-      Integer sum = borrowRepo.sumOpenAmountByUser(userId); // cần method trong BorrowRepository
-      if (sum != null && sum > 0) return sum;
-    } catch (Exception ignore) {}
-    Long cnt = 0L;
-    try {
-      cnt = borrowRepo.countOpenByUser(userId);
-    } catch (Exception ignore) {}
-    return (cnt == null) ? 0 : cnt.intValue();
-  }
-
   /**
    * Tự động hủy TẤT CẢ vé mượn đang PENDING của user (sau khi đã đạt limit).
    * Nếu entity có các trường cancelledAt/cancelledBy/cancelledReason thì sẽ set; nếu không có thì vẫn chỉ set status.
+   * Số cuốn nhả ra được chuyển cho người đang chờ đặt chỗ (như vé hết hạn / bị huỷ).
    */
   private void autoCancelAllPendingOfUser(Long userId, int limit) {
     List<BorrowTicket> pendings =
@@ -196,18 +318,23 @@ public class ConfirmService {
 
     if (pendings == null || pendings.isEmpty()) return;
 
+    Map<Long, Integer> freed = new LinkedHashMap<>();
     for (BorrowTicket t : pendings) {
       t.setStatus(BorrowTicket.TicketStatus.CANCELLED);
+      holdLedger.release(t.getBook().getId(), t.getAmount());
+      freed.merge(t.getBook().getId(), t.getAmount(), Integer::sum);
       try { t.getClass().getMethod("setCancelledAt", LocalDateTime.class).invoke(t, LocalDateTime.now()); } catch (Exception ignore) {}
       try { t.getClass().getMethod("setCancelledBy", String.class).invoke(t, "system"); } catch (Exception ignore) {}
       try { t.getClass().getMethod("setCancelledReason", String.class).invoke(t,
               "Tự hủy do tài khoản đã đạt giới hạn mượn (" + limit + ")."); } catch (Exception ignore) {}
     }
     borrowTicketRepo.saveAll(pendings);
+    freed.forEach(holdQueue::promote);   // cùng transaction; hàng đợi trong bộ nhớ đổi sau commit
   }
 
   /**
    * Lấy token từ QR/URL (?token=..., ?code=..., …) hoặc chuỗi thuần.
+   * Kết quả có thể là mã gọn có chữ ký (QrTokenService), token UUID cũ hoặc mã vé giỏ.
    */
   private static String normalizeCode(String raw) {
     if (raw == null) return "";
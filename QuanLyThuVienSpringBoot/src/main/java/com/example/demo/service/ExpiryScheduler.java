@@ -0,0 +1,155 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.BorrowTicketRepository;
+import com.example.demo.repository.ReservationRepository;
+import com.example.demo.repository.ReturnTicketRepository;
+import com.example.demo.util.TimingWheel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hết hạn đúng giờ cho vé mượn / vé trả PENDING và đặt chỗ READY bằng 1 TimingWheel trong bộ nhớ:
+ * - Khởi động: nạp mốc của mọi dòng còn chờ; tạo vé / promote READY thì đăng ký mốc mới.
+ * - Mỗi tick (expiry.wheel.tick-ms): các mốc đã tới -> UPDATE có điều kiện đúng 1 dòng
+ *   (vẫn PENDING/READY và đã quá hạn), mỗi dòng 1 transaction; vé mượn hết hạn thì nhả giữ chỗ.
+ * Dòng đã xử lý / đổi hạn trước đó chỉ làm UPDATE trả về 0. Cron 10 phút của từng service vẫn giữ
+ * làm lưới an toàn (mốc bị mất khi khởi động lại giữa chừng, dòng sửa trực tiếp trong DB...).
+ */
+@Service
+public class ExpiryScheduler {
+
+    public enum Kind { BORROW_TICKET, RETURN_TICKET, RESERVATION }
+
+    record Key(Kind kind, Long id) {}
+
+    /** 1 dòng vừa hết hạn; với vé mượn kèm sách + số cuốn vừa được nhả giữ chỗ (còn lại: null / 0). */
+    public record Expired(Kind kind, Long id, Long bookId, int amount) {}
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final BorrowTicketRepository borrowTicketRepo;
+    private final ReturnTicketRepository returnTicketRepo;
+    private final ReservationRepository reservationRepo;
+    private final StockHoldLedger holdLedger;
+    private final TransactionTemplate tx;
+
+    @Value("${expiry.wheel.tick-ms:1000}")
+    private long tickMs = 1000;
+    @Value("${expiry.wheel.size:512}")
+    private int wheelSize = 512;
+
+    private volatile TimingWheel<Key> wheel;
+    private final List<Consumer<Expired>> listeners = new CopyOnWriteArrayList<>();
+
+    public ExpiryScheduler(BorrowTicketRepository borrowTicketRepo,
+                           ReturnTicketRepository returnTicketRepo,
+                           ReservationRepository reservationRepo,
+                           StockHoldLedger holdLedger,
+                           PlatformTransactionManager txManager) {
+        this.borrowTicketRepo = borrowTicketRepo;
+        this.returnTicketRepo = returnTicketRepo;
+        this.reservationRepo = reservationRepo;
+        this.holdLedger = holdLedger;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        TimingWheel<Key> w = wheel();
+        scheduleAll(w, Kind.BORROW_TICKET, borrowTicketRepo.findPendingExpiries());
+        scheduleAll(w, Kind.RETURN_TICKET, returnTicketRepo.findPendingExpiries());
+        scheduleAll(w, Kind.RESERVATION, reservationRepo.findReadyExpiries());
+    }
+
+    /** Đăng ký (hoặc đổi) mốc hết hạn của 1 dòng. Dòng chưa commit / bị rollback thì lúc nổ chỉ là no-op. */
+    public void schedule(Kind kind, Long id, LocalDateTime expiresAt) {
+        if (id == null || expiresAt == null) return;
+        wheel().schedule(new Key(kind, id), toMillis(expiresAt));
+    }
+
+    public void cancel(Kind kind, Long id) {
+        if (id != null) wheel().cancel(new Key(kind, id));
+    }
+
+    /** Hết hạn ngay 1 dòng đã quá mốc (cron dọn sót): cùng đường với mốc đến hạn, gồm cả các listener. */
+    public void expireNow(Kind kind, Long id) {
+        cancel(kind, id);
+        expire(new Key(kind, id));
+    }
+
+    /** Gọi lại khi 1 dòng thực sự hết hạn (UPDATE trả về 1), trong cùng transaction với UPDATE đó. */
+    public void onExpired(Consumer<Expired> listener) {
+        listeners.add(listener);
+    }
+
+    /** Số mốc đang chờ. */
+    public int pending() {
+        return wheel().size();
+    }
+
+    @Scheduled(fixedDelayString = "${expiry.wheel.tick-ms:1000}")
+    public void tick() {
+        wheel().advance(System.currentTimeMillis(), this::expire);
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    void expire(Key key) {
+        try {
+            tx.executeWithoutResult(s -> {
+                LocalDateTime now = LocalDateTime.now();
+                Expired expired = switch (key.kind()) {
+                    case BORROW_TICKET -> {
+                        List<Object[]> rows = borrowTicketRepo.findBookAndAmount(key.id());
+                        if (borrowTicketRepo.expireIfDue(key.id(), now) != 1) yield null;
+                        if (rows.isEmpty()) yield new Expired(key.kind(), key.id(), null, 0);
+                        Long bookId = (Long) rows.get(0)[0];
+                        int amount = ((Number) rows.get(0)[1]).intValue();
+                        holdLedger.release(bookId, amount);
+                        yield new Expired(key.kind(), key.id(), bookId, amount);
+                    }
+                    case RETURN_TICKET -> returnTicketRepo.expireIfDue(key.id(), now) == 1
+                            ? new Expired(key.kind(), key.id(), null, 0) : null;
+                    case RESERVATION -> reservationRepo.expireReadyIfDue(key.id(), now) == 1
+                            ? new Expired(key.kind(), key.id(), null, 0) : null;
+                };
+                if (expired != null) listeners.forEach(l -> l.accept(expired));
+            });
+        } catch (RuntimeException e) {
+            // Lỗi 1 dòng không chặn các dòng khác; cron dọn sau
+            System.err.println("[ExpiryScheduler] Không hết hạn được " + key + ": " + e.getMessage());
+        }
+    }
+
+    private void scheduleAll(TimingWheel<Key> w, Kind kind, List<Object[]> rows) {
+        for (Object[] r : rows) {
+            w.schedule(new Key(kind, (Long) r[0]), toMillis((LocalDateTime) r[1]));
+        }
+    }
+
+    private TimingWheel<Key> wheel() {
+        TimingWheel<Key> w = wheel;
+        if (w == null) {
+            synchronized (this) {
+                if (wheel == null) wheel = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+                w = wheel;
+            }
+        }
+        return w;
+    }
+
+    private static long toMillis(LocalDateTime t) {
+        return t.atZone(ZONE).toInstant().toEpochMilli();
+    }
+}
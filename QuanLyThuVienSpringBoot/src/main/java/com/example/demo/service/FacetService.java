@@ -0,0 +1,259 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.util.RoaringBitmap;
+import com.example.demo.util.TextNormalizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lọc theo facet + đếm facet bằng bitmap nén trong bộ nhớ (không chạm DB):
+ * - 1 bitmap id sách cho mỗi danh mục, mỗi tác giả, và cho còn/hết sách (quantity > 0).
+ * - Trong 1 nhóm các giá trị kết hợp OR, giữa các nhóm kết hợp AND.
+ * - Số đếm của mỗi nhóm tính theo bộ lọc của CÁC NHÓM KHÁC (kiểu "disjunctive faceting")
+ *   để sidebar luôn hiển thị được các lựa chọn thay thế.
+ * Cập nhật theo lô từ CatalogChangeFeed (chỉ các thay đổi đã commit).
+ */
+@Service
+public class FacetService {
+
+    /** Bộ lọc facet; null/rỗng = không lọc nhóm đó. */
+    public record FacetQuery(Collection<Long> categoryIds, Boolean available, Collection<String> authors) {
+        public static FacetQuery of(Long categoryId, Boolean available) {
+            return new FacetQuery(categoryId == null ? null : List.of(categoryId), available, null);
+        }
+    }
+
+    public record AuthorCount(String key, String name, int count) {}
+
+    /** Kết quả 1 lần tính: tổng khớp + số đếm từng facet. */
+    public record FacetResult(int total,
+                              Map<Long, Integer> categories,
+                              int availableCount,
+                              int unavailableCount,
+                              List<AuthorCount> authors) {}
+
+    /** Trạng thái facet đã index của 1 sách. */
+    private record Facts(Long categoryId, boolean available, String authorKey) {}
+
+    private final BookRepository bookRepo;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final RoaringBitmap available = new RoaringBitmap();
+    private final RoaringBitmap unavailable = new RoaringBitmap();
+    private final Map<Long, RoaringBitmap> byCategory = new HashMap<>();
+    private final Map<String, RoaringBitmap> byAuthor = new HashMap<>();
+    private final Map<String, String> authorNames = new HashMap<>();
+    private final Map<Long, Facts> facts = new HashMap<>();
+
+    private volatile boolean ready;
+
+    public FacetService(BookRepository bookRepo) {
+        this.bookRepo = bookRepo;
+    }
+
+    /* ===================== Nạp / cập nhật ===================== */
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Object[]> rows = bookRepo.findAllFacetRows();
+        lock.writeLock().lock();
+        try {
+            for (Long id : new ArrayList<>(facts.keySet())) drop(id);
+            for (Object[] r : rows) {
+                String author = (String) r[3];
+                put((Long) r[0], new Facts((Long) r[1], ((Number) r[2]).intValue() > 0, authorKey(author)), author);
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Cập nhật 1 sách (danh mục/tác giả/tồn kho). */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) return;
+        apply(List.of(book), List.of());
+    }
+
+    public void remove(Long bookId) {
+        if (bookId == null) return;
+        apply(List.of(), List.of(bookId));
+    }
+
+    /** Áp 1 lô thay đổi dưới 1 lần giữ write lock. */
+    public void apply(Collection<Book> upserts, Collection<Long> deletes) {
+        lock.writeLock().lock();
+        try {
+            for (Long id : deletes) drop(id);
+            for (Book b : upserts) {
+                if (b.getId() == null) continue;
+                drop(b.getId());
+                put(b.getId(), factsOf(b), b.getAuthor());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /* ===================== Truy vấn ===================== */
+
+    /** Tổng khớp + số đếm cho mọi nhóm facet (tối đa authorLimit tác giả nhiều sách nhất). */
+    public FacetResult facets(FacetQuery q, int authorLimit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap cat = categorySet(q);
+            RoaringBitmap avail = availabilitySet(q);
+            RoaringBitmap auth = authorSet(q);
+
+            // Giao của 2 nhóm còn lại -> dùng chung để đếm nhóm thứ 3
+            RoaringBitmap availAuth = RoaringBitmap.and(avail, auth);
+            RoaringBitmap catAuth = RoaringBitmap.and(cat, auth);
+            RoaringBitmap catAvail = RoaringBitmap.and(cat, avail);
+
+            Map<Long, Integer> categories = new LinkedHashMap<>();
+            for (Map.Entry<Long, RoaringBitmap> e : byCategory.entrySet()) {
+                categories.put(e.getKey(), RoaringBitmap.andCardinality(e.getValue(), availAuth));
+            }
+            int availableCount = RoaringBitmap.andCardinality(available, catAuth);
+            int unavailableCount = RoaringBitmap.andCardinality(unavailable, catAuth);
+
+            List<AuthorCount> authors = new ArrayList<>();
+            if (authorLimit > 0) {
+                for (Map.Entry<String, RoaringBitmap> e : byAuthor.entrySet()) {
+                    int n = RoaringBitmap.andCardinality(e.getValue(), catAvail);
+                    if (n > 0) authors.add(new AuthorCount(e.getKey(), authorNames.get(e.getKey()), n));
+                }
+                authors.sort(Comparator.comparingInt(AuthorCount::count).reversed()
+                        .thenComparing(AuthorCount::key));
+                if (authors.size() > authorLimit) authors = new ArrayList<>(authors.subList(0, authorLimit));
+            }
+            int total = RoaringBitmap.andCardinality(catAvail, auth);
+            return new FacetResult(total, categories, availableCount, unavailableCount, authors);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Số sách khớp bộ lọc. */
+    public int count(FacetQuery q) {
+        lock.readLock().lock();
+        try {
+            return RoaringBitmap.andCardinality(RoaringBitmap.and(categorySet(q), availabilitySet(q)), authorSet(q));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Seek theo id trên bitmap: tối đa limit id khớp bộ lọc, nhỏ hơn cursorId (giảm dần) hoặc,
+     * khi backward, lớn hơn cursorId (tăng dần). cursorId null = từ đầu danh sách (id lớn nhất).
+     */
+    public List<Long> seekIds(FacetQuery q, Long cursorId, boolean backward, int limit) {
+        List<Long> out = new ArrayList<>(Math.max(limit, 0));
+        if (limit <= 0) return out;
+        lock.readLock().lock();
+        try {
+            RoaringBitmap m = RoaringBitmap.and(RoaringBitmap.and(categorySet(q), availabilitySet(q)), authorSet(q));
+            if (backward && cursorId != null) {
+                if (cursorId >= Integer.MAX_VALUE) return out;
+                m.forEachAscending(toInt(cursorId) + 1, v -> { out.add((long) v); return out.size() < limit; });
+            } else {
+                int from = (cursorId == null) ? Integer.MAX_VALUE : toInt(cursorId) - 1;
+                m.forEachDescending(from, v -> { out.add((long) v); return out.size() < limit; });
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Khoá tác giả: bỏ dấu, chữ thường, gộp khoảng trắng ("Nguyễn  Du" -> "nguyen du"). */
+    public static String authorKey(String author) {
+        return String.join(" ", TextNormalizer.tokenize(author));
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private RoaringBitmap categorySet(FacetQuery q) {
+        if (q == null || q.categoryIds() == null || q.categoryIds().isEmpty()) return all;
+        RoaringBitmap acc = new RoaringBitmap();
+        for (Long id : q.categoryIds()) {
+            RoaringBitmap b = byCategory.get(id);
+            if (b != null) acc = RoaringBitmap.or(acc, b);
+        }
+        return acc;
+    }
+
+    private RoaringBitmap availabilitySet(FacetQuery q) {
+        if (q == null || q.available() == null) return all;
+        return q.available() ? available : unavailable;
+    }
+
+    private RoaringBitmap authorSet(FacetQuery q) {
+        if (q == null || q.authors() == null || q.authors().isEmpty()) return all;
+        RoaringBitmap acc = new RoaringBitmap();
+        for (String a : q.authors()) {
+            RoaringBitmap b = byAuthor.get(authorKey(a));
+            if (b != null) acc = RoaringBitmap.or(acc, b);
+        }
+        return acc;
+    }
+
+    private static Facts factsOf(Book b) {
+        Long catId = (b.getCategory() != null) ? b.getCategory().getId() : null;
+        return new Facts(catId, b.getQuantity() > 0, authorKey(b.getAuthor()));
+    }
+
+    private void put(Long id, Facts f, String authorName) {
+        int x = toInt(id);
+        facts.put(id, f);
+        all.add(x);
+        (f.available() ? available : unavailable).add(x);
+        if (f.categoryId() != null) byCategory.computeIfAbsent(f.categoryId(), k -> new RoaringBitmap()).add(x);
+        if (!f.authorKey().isEmpty()) {
+            byAuthor.computeIfAbsent(f.authorKey(), k -> new RoaringBitmap()).add(x);
+            authorNames.putIfAbsent(f.authorKey(), authorName.trim());
+        }
+    }
+
+    private void drop(Long id) {
+        Facts f = facts.remove(id);
+        if (f == null) return;
+        int x = toInt(id);
+        all.remove(x);
+        available.remove(x);
+        unavailable.remove(x);
+        if (f.categoryId() != null) removeFrom(byCategory, f.categoryId(), x);
+        if (!f.authorKey().isEmpty() && removeFrom(byAuthor, f.authorKey(), x)) {
+            authorNames.remove(f.authorKey());
+        }
+    }
+
+    /** Bỏ x khỏi bitmap của key; trả true nếu bitmap rỗng và đã bị xoá. */
+    private static <K> boolean removeFrom(Map<K, RoaringBitmap> map, K key, int x) {
+        RoaringBitmap b = map.get(key);
+        if (b == null) return false;
+        b.remove(x);
+        if (!b.isEmpty()) return false;
+        map.remove(key);
+        return true;
+    }
+
+    private static int toInt(Long id) {
+        if (id < 0 || id > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Id sách ngoài phạm vi chỉ mục facet: " + id);
+        }
+        return id.intValue();
+    }
+}
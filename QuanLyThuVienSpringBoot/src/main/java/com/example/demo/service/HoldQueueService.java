@@ -0,0 +1,309 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Reservation;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.ReservationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hàng đợi giữ chỗ theo sách, trong bộ nhớ, nguồn bền vững là các dòng Reservation PENDING / READY:
+ * - Mỗi sách: danh sách chờ FIFO (createdAt, id) + các suất giữ READY còn hạn (mặc định 24h).
+ * - Promote theo sự kiện có thêm sách: xác nhận trả, admin tăng số lượng, vé mượn PENDING hết hạn / bị huỷ
+ *   (nhả giữ chỗ) -> promote(bookId, số cuốn): giành đầu hàng trên DB (FOR UPDATE SKIP LOCKED, nhiều node
+ *   chạy song song không chờ nhau, mỗi dòng chỉ 1 node promote), chuyển READY, đăng ký mốc hết hạn;
+ *   suất giữ hết hạn / bị huỷ thì chuyển cho người kế tiếp. Bộ nhớ chỉ đổi sau commit.
+ * - Thông báo READY theo người dùng (banner trang mượn) đọc thẳng từ chỉ mục readyByUser, không truy vấn.
+ * - check(): đường đọc không ghi gì. Sách không ai giữ -> trả lời ngay; đang có suất giữ của người khác
+ *   -> chỉ cho mượn khi tồn kho còn dư so với số suất giữ (1 lần đọc tồn kho theo khoá chính).
+ * Khởi động và định kỳ (reservation.sync-ms) nạp lại từ DB (1 truy vấn) vào bộ chỉ mục mới rồi thay cả bộ
+ * một lần: thấy đặt chỗ / promote / huỷ / hết hạn ở node khác sau tối đa 1 chu kỳ, người đọc không bao giờ
+ * thấy chỉ mục rỗng giữa chừng (thay đổi của node này commit đúng lúc đang nạp có thể trễ thêm 1 chu kỳ).
+ * Hàng rỗng được giữ lại (tối đa 1 / sách) để không phải
+ * đồng bộ việc xoá hàng với luồng đang thêm người.
+ */
+@Service
+public class HoldQueueService {
+
+    record Waiter(Long reservationId, Long userId, LocalDateTime createdAt, String bookTitle) {}
+
+    record Hold(Long reservationId, Long userId, Long bookId, String bookTitle, LocalDateTime expireAt) {
+        boolean liveAt(LocalDateTime now) {
+            return expireAt == null || expireAt.isAfter(now);
+        }
+    }
+
+    private static final Comparator<Waiter> FIFO =
+            Comparator.comparing(Waiter::createdAt).thenComparing(Waiter::reservationId);
+
+    static final class BookQueue {
+        final TreeSet<Waiter> waiting = new TreeSet<>(FIFO);
+        final Map<Long, Hold> ready = new HashMap<>();
+    }
+
+    /** Bộ chỉ mục trong bộ nhớ; rebuild() dựng bộ mới bên cạnh rồi thay tham chiếu. */
+    static final class Index {
+        final ConcurrentHashMap<Long, BookQueue> queues = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, Long> bookOf = new ConcurrentHashMap<>();   // reservationId -> bookId
+        final ConcurrentHashMap<Long, Map<Long, Hold>> readyByUser = new ConcurrentHashMap<>();
+    }
+
+    private final ReservationRepository reservationRepo;
+    private final BookRepository bookRepo;
+    private final ExpiryScheduler expiryScheduler;
+
+    @Value("${reservation.hold-hours:24}")
+    private long holdHours = 24;
+
+    private volatile Index index = new Index();
+
+    public HoldQueueService(ReservationRepository reservationRepo, BookRepository bookRepo,
+                            ExpiryScheduler expiryScheduler) {
+        this.reservationRepo = reservationRepo;
+        this.bookRepo = bookRepo;
+        this.expiryScheduler = expiryScheduler;
+        expiryScheduler.onExpired(e -> {
+            switch (e.kind()) {
+                case RESERVATION -> onHoldExpired(e.id());
+                case BORROW_TICKET -> { if (e.bookId() != null) promote(e.bookId(), e.amount()); }
+                default -> { }
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${reservation.sync-ms:5000}", initialDelayString = "${reservation.sync-ms:5000}")
+    public void rebuild() {
+        Index fresh = new Index();
+        for (Object[] r : reservationRepo.findOpenQueueRows()) {
+            Long id = (Long) r[0];
+            Long bookId = (Long) r[1];
+            Long userId = (Long) r[2];
+            if (r[3] == Reservation.Status.READY) {
+                putHold(fresh, bookId, new Hold(id, userId, bookId, (String) r[6], (LocalDateTime) r[5]));
+            } else {
+                putWaiter(fresh, bookId, new Waiter(id, userId, (LocalDateTime) r[4], (String) r[6]));
+            }
+        }
+        afterCommit(() -> index = fresh);
+    }
+
+    /* ===================== Đọc ===================== */
+
+    /** Người dùng có được tạo vé mượn sách này không (theo các suất giữ còn hạn). */
+    public ReservationService.CanBorrowResult check(Long bookId, Long userId) {
+        BookQueue q = index.queues.get(bookId);
+        if (q == null) return ReservationService.CanBorrowResult.ok();
+        LocalDateTime now = LocalDateTime.now();
+        int othersHolding = 0;
+        synchronized (q) {
+            for (Hold h : q.ready.values()) {
+                if (!h.liveAt(now)) continue;   // chờ ExpiryScheduler dọn
+                if (h.userId().equals(userId)) return ReservationService.CanBorrowResult.ok();
+                othersHolding++;
+            }
+        }
+        if (othersHolding == 0) return ReservationService.CanBorrowResult.ok();
+
+        int stock = bookRepo.findById(bookId).map(Book::getQuantity).orElse(0);
+        return stock > othersHolding
+                ? ReservationService.CanBorrowResult.ok()
+                : ReservationService.CanBorrowResult.block(
+                        "Cuốn này đang được giữ " + holdHours + " giờ cho người đã đặt chỗ trước. Vui lòng quay lại sau.");
+    }
+
+    /** Vị trí trong hàng chờ (1 = đầu hàng); 0 = đang giữ READY; -1 = không có trong hàng. */
+    public int position(Long bookId, Long reservationId) {
+        BookQueue q = index.queues.get(bookId);
+        if (q == null) return -1;
+        synchronized (q) {
+            if (q.ready.containsKey(reservationId)) return 0;
+            int i = 1;
+            for (Waiter w : q.waiting) {
+                if (w.reservationId().equals(reservationId)) return i;
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /** Như position() nhưng theo người dùng: đặt chỗ của userId cho sách này đang ở đâu. */
+    public int positionOfUser(Long bookId, Long userId) {
+        BookQueue q = index.queues.get(bookId);
+        if (q == null || userId == null) return -1;
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (q) {
+            for (Hold h : q.ready.values()) {
+                if (h.userId().equals(userId) && h.liveAt(now)) return 0;
+            }
+            int i = 1;
+            for (Waiter w : q.waiting) {
+                if (w.userId().equals(userId)) return i;
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /** Suất giữ READY còn hạn sớm hết hạn nhất của người dùng (banner), chỉ đọc bộ nhớ. */
+    public Optional<ReservationService.ReadyNotice> readyNotice(Long userId) {
+        Map<Long, Hold> mine = index.readyByUser.get(userId);
+        if (mine == null) return Optional.empty();
+        LocalDateTime now = LocalDateTime.now();
+        Hold best = null;
+        synchronized (mine) {
+            for (Hold h : mine.values()) {
+                if (!h.liveAt(now)) continue;
+                if (best == null || (h.expireAt() != null
+                        && (best.expireAt() == null || h.expireAt().isBefore(best.expireAt())))) {
+                    best = h;
+                }
+            }
+        }
+        return Optional.ofNullable(best).map(h ->
+                new ReservationService.ReadyNotice(h.reservationId(), h.bookId(), h.bookTitle(), h.expireAt()));
+    }
+
+    public int waitingCount(Long bookId) {
+        BookQueue q = index.queues.get(bookId);
+        if (q == null) return 0;
+        synchronized (q) {
+            return q.waiting.size();
+        }
+    }
+
+    /* ===================== Ghi (gọi trong transaction của nghiệp vụ) ===================== */
+
+    /** Đặt chỗ mới (PENDING) vào cuối hàng. */
+    public void enqueue(Reservation r) {
+        Waiter w = new Waiter(r.getId(), r.getUser().getId(), r.getCreatedAt(), r.getBook().getTitle());
+        Long bookId = r.getBook().getId();
+        afterCommit(() -> putWaiter(index, bookId, w));
+    }
+
+    /** Đặt chỗ rời hàng (huỷ / đã mượn). passOn = suất READY bị huỷ -> chuyển cho người kế tiếp. */
+    public void remove(Long bookId, Long reservationId, boolean passOn) {
+        if (passOn) promote(bookId, 1);
+        afterCommit(() -> drop(bookId, reservationId));
+    }
+
+    /**
+     * Có thêm copies cuốn sẵn sàng (trả sách, suất giữ hết hạn...): chuyển tối đa copies người đầu hàng
+     * sang READY. Đầu hàng đọc từ DB chứ không từ bộ nhớ (đặt chỗ có thể được tạo ở node khác); dòng đang
+     * bị transaction khác khoá thì bỏ qua, lấy người kế tiếp. Khoá giữ tới khi transaction gọi vào commit.
+     */
+    @Transactional
+    public List<Long> promote(Long bookId, int copies) {
+        if (bookId == null || copies < 1) return List.of();
+        List<Reservation> heads = reservationRepo.lockPendingHeads(bookId, PageRequest.of(0, copies));
+        if (heads.isEmpty()) return List.of();
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expireAt = now.plusHours(holdHours);
+        List<Hold> promoted = new ArrayList<>(heads.size());
+        for (Reservation r : heads) {
+            r.setStatus(Reservation.Status.READY);
+            r.setReadyAt(now);
+            r.setExpireAt(expireAt);
+            promoted.add(new Hold(r.getId(), r.getUser().getId(), bookId, r.getBook().getTitle(), expireAt));
+            expiryScheduler.schedule(ExpiryScheduler.Kind.RESERVATION, r.getId(), expireAt);
+        }
+
+        afterCommit(() -> {
+            Index idx = index;
+            BookQueue q = idx.queues.computeIfAbsent(bookId, k -> new BookQueue());
+            synchronized (q) {
+                for (Hold h : promoted) {
+                    q.waiting.removeIf(x -> x.reservationId().equals(h.reservationId()));
+                    q.ready.put(h.reservationId(), h);
+                }
+            }
+            promoted.forEach(h -> {
+                idx.bookOf.put(h.reservationId(), bookId);
+                indexReady(idx, h);
+            });
+        });
+        return promoted.stream().map(Hold::reservationId).toList();
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    /** ExpiryScheduler vừa chuyển 1 READY sang EXPIRED (cùng transaction): bỏ suất giữ, chuyển tiếp. */
+    void onHoldExpired(Long reservationId) {
+        Long bookId = index.bookOf.get(reservationId);
+        if (bookId == null) {   // được promote ở node khác
+            bookId = reservationRepo.findById(reservationId).map(r -> r.getBook().getId()).orElse(null);
+            if (bookId == null) return;
+        }
+        Long book = bookId;
+        promote(book, 1);
+        afterCommit(() -> drop(book, reservationId));
+    }
+
+    private static void putWaiter(Index idx, Long bookId, Waiter w) {
+        BookQueue q = idx.queues.computeIfAbsent(bookId, k -> new BookQueue());
+        synchronized (q) {
+            q.waiting.add(w);
+        }
+        idx.bookOf.put(w.reservationId(), bookId);
+    }
+
+    private static void putHold(Index idx, Long bookId, Hold h) {
+        BookQueue q = idx.queues.computeIfAbsent(bookId, k -> new BookQueue());
+        synchronized (q) {
+            q.ready.put(h.reservationId(), h);
+        }
+        idx.bookOf.put(h.reservationId(), bookId);
+        indexReady(idx, h);
+    }
+
+    private static void indexReady(Index idx, Hold h) {
+        Map<Long, Hold> mine = idx.readyByUser.computeIfAbsent(h.userId(), k -> new HashMap<>());
+        synchronized (mine) {
+            mine.put(h.reservationId(), h);
+        }
+    }
+
+    private void drop(Long bookId, Long reservationId) {
+        Index idx = index;
+        idx.bookOf.remove(reservationId);
+        BookQueue q = idx.queues.get(bookId);
+        if (q == null) return;
+        Hold h;
+        synchronized (q) {
+            h = q.ready.remove(reservationId);
+            q.waiting.removeIf(x -> x.reservationId().equals(reservationId));
+        }
+        Map<Long, Hold> mine = (h == null) ? null : idx.readyByUser.get(h.userId());
+        if (mine != null) {
+            synchronized (mine) {
+                mine.remove(reservationId);
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable r) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    r.run();
+                }
+            });
+        } else {
+            r.run();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.demo.service;
+
+import com.example.demo.model.IdempotencyRecord;
+import com.example.demo.repository.IdempotencyRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Kho phản hồi cho POST có khoá idempotency (IdempotencyFilter gọi):
+ * - begin(): khoá đã có phản hồi -> phát lại; đang chạy trên node này -> chờ tối đa idempotency.wait-ms;
+ *   chưa có -> giành khoá bằng INSERT dòng IN_PROGRESS (unique scope_key, đúng 1 node thắng).
+ * - complete(): lưu status + Location (chỉ lưu redirect), đánh dấu DONE, đưa vào LRU trong bộ nhớ.
+ * - release(): request lỗi / không phải redirect -> xoá dòng để client gửi lại được.
+ * Dòng sống idempotency.ttl-ms (mặc định 15 phút ~ hạn link VNPay), cron dọn dòng hết hạn.
+ */
+@Service
+public class IdempotencyService {
+
+    public enum Outcome { PROCEED, REPLAY, IN_PROGRESS, MISMATCH }
+
+    /** Phản hồi đã lưu. */
+    public record Stored(String fingerprint, int status, String location, long expiresAtMs) {}
+
+    public record Begin(Outcome outcome, Stored stored) {
+        static Begin of(Outcome o) { return new Begin(o, null); }
+    }
+
+    private final IdempotencyRecordRepository repo;
+
+    @Value("${idempotency.enabled:true}")
+    private boolean enabled = true;
+    @Value("${idempotency.ttl-ms:900000}")
+    private long ttlMs = 900_000;
+    @Value("${idempotency.cache.max-entries:10000}")
+    private int maxEntries = 10000;
+    @Value("${idempotency.wait-ms:5000}")
+    private long waitMs = 5000;
+
+    private final LinkedHashMap<String, Stored> done = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final ConcurrentHashMap<String, CompletableFuture<Stored>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyRecordRepository repo) {
+        this.repo = repo;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** PROCEED = request này giữ khoá, phải gọi complete() hoặc release() đúng 1 lần. */
+    public Begin begin(String scopeKey, String fingerprint) {
+        Stored hit = cached(scopeKey);
+        if (hit != null) return replay(hit, fingerprint);
+
+        CompletableFuture<Stored> mine = new CompletableFuture<>();
+        CompletableFuture<Stored> running = inFlight.putIfAbsent(scopeKey, mine);
+        if (running != null) {
+            try {
+                Stored s = running.get(waitMs, TimeUnit.MILLISECONDS);
+                return s != null ? replay(s, fingerprint) : Begin.of(Outcome.IN_PROGRESS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Begin.of(Outcome.IN_PROGRESS);
+            } catch (ExecutionException | TimeoutException e) {
+                return Begin.of(Outcome.IN_PROGRESS);
+            }
+        }
+
+        try {
+            Begin b = claim(scopeKey, fingerprint);
+            if (b.outcome() != Outcome.PROCEED) finish(scopeKey, b.stored());
+            return b;
+        } catch (RuntimeException e) {
+            finish(scopeKey, null);
+            throw e;
+        }
+    }
+
+    public void complete(String scopeKey, String fingerprint, int status, String location) {
+        try {
+            repo.complete(scopeKey, status, location);
+        } catch (RuntimeException e) {
+            System.err.println("[Idempotency] Không lưu được phản hồi: " + e.getMessage());
+        }
+        Stored s = new Stored(fingerprint, status, location, System.currentTimeMillis() + ttlMs);
+        synchronized (done) {
+            done.put(scopeKey, s);
+        }
+        finish(scopeKey, s);
+    }
+
+    public void release(String scopeKey) {
+        try {
+            repo.deleteByScopeKey(scopeKey);
+        } catch (RuntimeException e) {
+            System.err.println("[Idempotency] Không nhả được khoá: " + e.getMessage());
+        } finally {
+            finish(scopeKey, null);
+        }
+    }
+
+    @Scheduled(cron = "0 */10 * * * *")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (done) {
+            done.values().removeIf(s -> s.expiresAtMs() <= now);
+        }
+        repo.deleteByExpiresAtBefore(LocalDateTime.now());
+    }
+
+    /** SHA-256 hex của các phần nối bằng '\n'. */
+    public static String sha256(String... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String p : parts) {
+                md.update((p == null ? "" : p).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private Begin claim(String scopeKey, String fingerprint) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            LocalDateTime now = LocalDateTime.now();
+            IdempotencyRecord r = new IdempotencyRecord();
+            r.setScopeKey(scopeKey);
+            r.setFingerprint(fingerprint);
+            r.setState(IdempotencyRecord.State.IN_PROGRESS);
+            r.setCreatedAt(now);
+            r.setExpiresAt(now.plusNanos(ttlMs * 1_000_000));
+            try {
+                repo.saveAndFlush(r);
+                return Begin.of(Outcome.PROCEED);
+            } catch (DataIntegrityViolationException dup) {
+                IdempotencyRecord existing = repo.findByScopeKey(scopeKey).orElse(null);
+                if (existing == null) continue;                                // vừa bị xoá -> giành lại
+                if (existing.getExpiresAt().isBefore(now)) {
+                    repo.deleteByScopeKey(scopeKey);
+                    continue;
+                }
+                if (existing.getState() != IdempotencyRecord.State.DONE) return Begin.of(Outcome.IN_PROGRESS);
+                Stored s = new Stored(existing.getFingerprint(), existing.getStatus(), existing.getLocation(),
+                        System.currentTimeMillis() + ttlMs);
+                synchronized (done) {
+                    done.put(scopeKey, s);
+                }
+                return replay(s, fingerprint);
+            }
+        }
+        return Begin.of(Outcome.IN_PROGRESS);
+    }
+
+    private Stored cached(String scopeKey) {
+        synchronized (done) {
+            Stored s = done.get(scopeKey);
+            if (s != null && s.expiresAtMs() <= System.currentTimeMillis()) {
+                done.remove(scopeKey);
+                return null;
+            }
+            return s;
+        }
+    }
+
+    private static Begin replay(Stored s, String fingerprint) {
+        return s.fingerprint().equals(fingerprint) ? new Begin(Outcome.REPLAY, s) : Begin.of(Outcome.MISMATCH);
+    }
+
+    private void finish(String scopeKey, Stored s) {
+        CompletableFuture<Stored> f = inFlight.remove(scopeKey);
+        if (f != null) f.complete(s);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tăng/giảm tồn kho sách bằng 1 câu UPDATE có điều kiện (quantity >= n) thay vì đọc-kiểm-tra-ghi:
+ * nhiều quầy quét cùng 1 đầu sách không thể trừ quá số đang có, và khoá dòng chỉ giữ trong
+ * đúng câu lệnh đó (cộng phần còn lại của transaction gọi vào).
+ * UPDATE hàng loạt không qua entity listener nên sau khi đổi thành công sẽ nạp lại dòng
+ * (đang giữ khoá của transaction hiện tại -> số liệu đúng) và báo cho CatalogChangeFeed.
+ */
+@Service
+public class InventoryService {
+
+    private final BookRepository bookRepo;
+    private final EntityManager em;
+    private final CatalogChangeFeed changeFeed;
+
+    public InventoryService(BookRepository bookRepo, EntityManager em, CatalogChangeFeed changeFeed) {
+        this.bookRepo = bookRepo;
+        this.em = em;
+        this.changeFeed = changeFeed;
+    }
+
+    /** Trừ n cuốn nếu còn đủ; false = không đủ tồn kho (hoặc sách không tồn tại), không đổi gì. */
+    @Transactional
+    public boolean tryDecrement(Long bookId, int n) {
+        if (n < 1) throw new IllegalArgumentException("Số lượng phải >= 1.");
+        if (bookRepo.decrementStock(bookId, n, LocalDateTime.now()) == 0) return false;
+        publish(bookId);
+        return true;
+    }
+
+    /**
+     * Trừ kho cho nhiều đầu sách trong cùng transaction (vé giỏ): tất cả hoặc không gì cả.
+     * Chạy theo thứ tự bookId tăng dần để 2 giỏ chung sách luôn khoá dòng cùng thứ tự (không deadlock).
+     * Thiếu 1 dòng -> đánh dấu rollback transaction hiện tại (các dòng đã trừ được hoàn lại) và trả false.
+     */
+    @Transactional
+    public boolean tryDecrementAll(Map<Long, Integer> amountsByBook) {
+        Map<Long, Integer> sorted = new TreeMap<>(amountsByBook);
+        if (sorted.values().stream().anyMatch(n -> n == null || n < 1)) {
+            throw new IllegalArgumentException("Số lượng phải >= 1.");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, Integer> e : sorted.entrySet()) {
+            if (bookRepo.decrementStock(e.getKey(), e.getValue(), now) == 0) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return false;
+            }
+        }
+        sorted.keySet().forEach(this::publish);
+        return true;
+    }
+
+    /** Cộng lại n cuốn (trả sách / huỷ mượn); false = sách không tồn tại. */
+    @Transactional
+    public boolean increment(Long bookId, int n) {
+        if (n < 1) throw new IllegalArgumentException("Số lượng phải >= 1.");
+        if (bookRepo.incrementStock(bookId, n, LocalDateTime.now()) == 0) return false;
+        publish(bookId);
+        return true;
+    }
+
+    /** Đồng bộ bản Book trong persistence context với DB (nếu đang giữ bản cũ) rồi đẩy vào feed. */
+    private void publish(Long bookId) {
+        Book book = em.find(Book.class, bookId);
+        if (book == null) return;
+        em.refresh(book);
+        changeFeed.bookSaved(book);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Cache HTML đã render cho các trang catalog công khai (/home, /search, /books/{id}):
+ * - Khoá = biến thể (khách / đã đăng nhập) + đường dẫn + tham số đã chuẩn hoá (sắp xếp, bỏ rỗng).
+ * - LRU giới hạn theo cả số mục và tổng byte.
+ * - Single-flight: nhiều request cùng trượt 1 khoá thì chỉ request đầu render, các request
+ *   còn lại chờ kết quả (quá hạn chờ thì tự render, không cache).
+ * - Huỷ khi sách/danh mục đổi (CatalogChangeFeed gọi sau khi đã cập nhật chỉ mục): trang danh sách
+ *   + trang chi tiết của đúng các sách đổi; đổi danh mục thì xoá hết. Mỗi lần huỷ tăng "thế hệ",
+ *   kết quả render bắt đầu trước lúc huỷ sẽ không được lưu.
+ * - Mỗi mục sống tối đa page-cache.ttl-ms: chặn trên độ cũ nếu lần huỷ từ node khác bị lỡ / đến muộn.
+ */
+@Service
+public class PageCache {
+
+    /** 1 trang đã render; bookId != null = trang chi tiết sách. */
+    public record Page(byte[] body, String contentType, String etag, Long bookId) {}
+
+    /** Kết quả lấy trang: leader = request này đã tự render (đã ghi response của chính nó). */
+    public record Result(Page page, boolean leader) {}
+
+    private record Cached(Page page, long expiresAtMs) {}
+
+    @Value("${page-cache.enabled:true}")
+    private boolean enabled = true;
+    @Value("${page-cache.max-entries:1000}")
+    private int maxEntries = 1000;
+    @Value("${page-cache.max-bytes:33554432}")
+    private long maxBytes = 32L * 1024 * 1024;
+    @Value("${page-cache.wait-ms:5000}")
+    private long waitMs = 5000;
+    @Value("${page-cache.ttl-ms:60000}")
+    private long ttlMs = 60_000;
+
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(64, 0.75f, true);  // thứ tự truy cập
+    private final ConcurrentHashMap<String, CompletableFuture<Page>> inFlight = new ConcurrentHashMap<>();
+    private long bytes;
+    private long generation;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lấy trang từ cache, hoặc render qua loader (chỉ 1 luồng cho mỗi khoá).
+     * loader trả null = không cache được (redirect, lỗi...). Lỗi của loader ném lại cho leader;
+     * follower nhận Result(null, false) và tự render.
+     */
+    public Result getOrLoad(String key, Callable<Page> loader) throws Exception {
+        Page hit = get(key);
+        if (hit != null) return new Result(hit, false);
+
+        CompletableFuture<Page> mine = new CompletableFuture<>();
+        CompletableFuture<Page> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return new Result(running.get(waitMs, TimeUnit.MILLISECONDS), false);
+            } catch (ExecutionException | TimeoutException e) {
+                return new Result(null, false);
+            }
+        }
+
+        long gen = generation();
+        try {
+            Page page = loader.call();
+            if (page != null) put(key, page, gen);
+            mine.complete(page);
+            return new Result(page, true);
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public synchronized Page get(String key) {
+        Cached c = entries.get(key);
+        if (c == null) return null;
+        if (c.expiresAtMs() <= System.currentTimeMillis()) {
+            entries.remove(key);
+            bytes -= c.page().body().length;
+            return null;
+        }
+        return c.page();
+    }
+
+    /** Sách đổi: xoá mọi trang danh sách + trang chi tiết của các sách này. */
+    public synchronized void invalidateBooks(Collection<Long> bookIds) {
+        generation++;
+        Iterator<Cached> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Page p = it.next().page();
+            if (p.bookId() == null || bookIds.contains(p.bookId())) {
+                bytes -= p.body().length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Khoá cache: "variant|/path?a=1&b=x&b=y" (tham số sắp xếp theo tên rồi giá trị, bỏ giá trị rỗng). */
+    public static String key(String variant, String path, Map<String, String[]> params) {
+        StringBuilder sb = new StringBuilder(variant).append('|').append(path);
+        char sep = '?';
+        for (String name : new TreeSet<>(params.keySet())) {
+            String[] values = params.get(name).clone();
+            Arrays.sort(values);
+            for (String v : values) {
+                if (v == null || v.isBlank()) continue;
+                sb.append(sep).append(name).append('=').append(v.trim());
+                sep = '&';
+            }
+        }
+        return sb.toString();
+    }
+
+    /** ETag mạnh từ nội dung (CRC32 + độ dài). */
+    public static String etag(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void put(String key, Page page, long gen) {
+        if (gen != generation || page.body().length > maxBytes) return;   // đã bị huỷ trong lúc render
+        Cached old = entries.put(key, new Cached(page, System.currentTimeMillis() + ttlMs));
+        if (old != null) bytes -= old.page().body().length;
+        bytes += page.body().length;
+        Iterator<Cached> it = entries.values().iterator();   // cũ nhất (ít dùng gần đây nhất) trước
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().page().body().length;
+            it.remove();
+        }
+    }
+}
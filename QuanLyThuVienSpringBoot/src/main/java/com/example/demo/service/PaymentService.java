@@ -6,6 +6,7 @@ import com.example.demo.model.User;
 import com.example.demo.repository.BorrowRepository;
 import com.example.demo.repository.PaymentRepository;
 import com.example.demo.repository.UserRepository;
+import com.example.demo.util.FeeCalculator;
 import com.example.demo.util.VnPayUtil;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,7 +15,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -64,17 +64,8 @@ public class PaymentService {
     // =========================== FINE helper ============================
     /** Tính phí phạt tại thời điểm now (VND, BigDecimal) theo amount, freeDays hiện hành. */
     public BigDecimal computeFine(Borrow b, LocalDateTime now) {
-        if (b == null || b.getDueDate() == null) return BigDecimal.ZERO;
-
-        long rawLate = Duration.between(b.getDueDate(), now).toDays(); // có thể âm
-        if (rawLate <= 0) return BigDecimal.ZERO;
-
-        long lateDays = Math.max(0, rawLate - Math.max(0, freeDays));
-        if (lateDays == 0) return BigDecimal.ZERO;
-
-        long qty = (b.getAmount() == null ? 1 : b.getAmount());
-        long vnd = lateDays * Math.max(0, finePerDay) * Math.max(1, qty);
-        return (vnd <= 0) ? BigDecimal.ZERO : BigDecimal.valueOf(vnd);
+        if (b == null) return BigDecimal.ZERO;
+        return FeeCalculator.vnd(FeeCalculator.fine(b.getDueDate(), now, b.getAmount(), finePerDay, freeDays));
     }
 
     // ----------------------------- helpers -----------------------------
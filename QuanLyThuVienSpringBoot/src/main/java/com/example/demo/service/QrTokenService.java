@@ -0,0 +1,146 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Mã QR gọn, tự kiểm chứng: "Q" + base62( loại | id vé | hạn (phút) | HMAC-SHA256 cắt 8 byte ).
+ * Quầy kiểm tra chữ ký + hạn ngay trong bộ nhớ: mã rác / giả / hết hạn bị loại trước khi chạm DB,
+ * mã hợp lệ đi thẳng tới tra khoá chính. Ngắn hơn UUID 32 hex -> QR version thấp hơn, quét nhanh hơn.
+ * Dùng 1 lần vẫn do trạng thái vé (PENDING -> CONFIRMED) đảm bảo. Token UUID cũ vẫn được chấp nhận.
+ * qr.token.secret (biến môi trường QR_TOKEN_SECRET) là BẮT BUỘC và phải giống nhau trên mọi node:
+ * thiếu / trống -> không khởi động được (không có khoá ngẫu nhiên dự phòng — QR sẽ hỏng sau khi
+ * khởi động lại hoặc khi quét ở node khác).
+ */
+@Service
+public class QrTokenService {
+
+    public enum Kind { BORROW, RETURN }
+
+    public record Claims(Kind kind, long ticketId, Instant expiresAt) {}
+
+    public static final String PREFIX = "Q";
+
+    private static final int VERSION = 1;
+    private static final int PAYLOAD_BYTES = 1 + 6 + 4;          // loại | id (48 bit) | hạn (phút)
+    private static final int MAC_BYTES = 8;
+    private static final int RAW_BYTES = PAYLOAD_BYTES + MAC_BYTES;
+    private static final int BODY_CHARS = 26;                     // 62^26 > 2^152
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final BigInteger BASE = BigInteger.valueOf(62);
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final SecretKeySpec key;
+    private Clock clock = Clock.systemDefaultZone();
+
+    public QrTokenService(@Value("${qr.token.secret}") String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("Thiếu qr.token.secret: đặt biến môi trường QR_TOKEN_SECRET (giống nhau trên mọi node).");
+        }
+        this.key = new SecretKeySpec(secret.trim().getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    /** Có mang dạng mã gọn không (không kiểm chữ ký) — phân biệt với token UUID hex / vé giỏ. */
+    public static boolean isCompact(String token) {
+        return token != null && token.length() == PREFIX.length() + BODY_CHARS && token.startsWith(PREFIX);
+    }
+
+    public String issue(Kind kind, long ticketId, LocalDateTime expiresAt) {
+        if (ticketId < 0 || ticketId >= (1L << 48)) throw new IllegalArgumentException("Id vé ngoài phạm vi.");
+        long minutes = Math.floorDiv(expiresAt.atZone(ZONE).toEpochSecond() + 59, 60);   // làm tròn lên
+        ByteBuffer buf = ByteBuffer.allocate(RAW_BYTES);
+        buf.put((byte) (VERSION << 4 | kind.ordinal()));
+        buf.putShort((short) (ticketId >>> 32)).putInt((int) ticketId);
+        buf.putInt((int) minutes);
+        buf.put(mac(buf.array()), 0, MAC_BYTES);
+        return PREFIX + encode(buf.array());
+    }
+
+    /**
+     * Kiểm chữ ký, loại vé và hạn. Sai/giả -> IllegalArgumentException, hết hạn -> IllegalStateException
+     * (cùng loại lỗi như khi vé hết hạn trong DB).
+     */
+    public Claims verify(String token, Kind expected) {
+        byte[] raw = isCompact(token) ? decode(token.substring(PREFIX.length())) : null;
+        if (raw == null) throw new IllegalArgumentException("Mã QR không hợp lệ.");
+
+        byte[] sig = new byte[MAC_BYTES];
+        System.arraycopy(raw, PAYLOAD_BYTES, sig, 0, MAC_BYTES);
+        byte[] want = mac(raw);
+        if (!MessageDigest.isEqual(sig, java.util.Arrays.copyOf(want, MAC_BYTES))) {
+            throw new IllegalArgumentException("Mã QR không hợp lệ.");
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        int head = buf.get() & 0xFF;
+        long id = ((long) (buf.getShort() & 0xFFFF) << 32) | (buf.getInt() & 0xFFFFFFFFL);
+        Instant exp = Instant.ofEpochSecond((buf.getInt() & 0xFFFFFFFFL) * 60);
+        int kind = head & 0x0F;
+        if (head >>> 4 != VERSION || kind >= Kind.values().length) {
+            throw new IllegalArgumentException("Mã QR không hợp lệ.");
+        }
+        if (Kind.values()[kind] != expected) {
+            throw new IllegalArgumentException(expected == Kind.BORROW ? "Đây là mã trả sách." : "Đây là mã mượn sách.");
+        }
+        if (!clock.instant().isBefore(exp)) {
+            throw new IllegalStateException("Vé đã hết hạn.");
+        }
+        return new Claims(Kind.values()[kind], id, exp);
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    /** HMAC trên PAYLOAD_BYTES byte đầu. */
+    private byte[] mac(byte[] raw) {
+        try {
+            Mac m = Mac.getInstance("HmacSHA256");
+            m.init(key);
+            m.update(raw, 0, PAYLOAD_BYTES);
+            return m.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(byte[] raw) {
+        BigInteger n = new BigInteger(1, raw);
+        char[] out = new char[BODY_CHARS];
+        for (int i = BODY_CHARS - 1; i >= 0; i--) {
+            BigInteger[] qr = n.divideAndRemainder(BASE);
+            out[i] = ALPHABET.charAt(qr[1].intValue());
+            n = qr[0];
+        }
+        return new String(out);
+    }
+
+    /** null nếu có ký tự lạ hoặc vượt RAW_BYTES byte. */
+    private static byte[] decode(String body) {
+        BigInteger n = BigInteger.ZERO;
+        for (int i = 0; i < body.length(); i++) {
+            int d = ALPHABET.indexOf(body.charAt(i));
+            if (d < 0) return null;
+            n = n.multiply(BASE).add(BigInteger.valueOf(d));
+        }
+        byte[] b = n.toByteArray();
+        int skip = b.length - RAW_BYTES;
+        if (skip > 0) {
+            for (int i = 0; i < skip; i++) if (b[i] != 0) return null;
+            return java.util.Arrays.copyOfRange(b, skip, b.length);
+        }
+        byte[] raw = new byte[RAW_BYTES];
+        System.arraycopy(b, 0, raw, -skip, b.length);
+        return raw;
+    }
+}
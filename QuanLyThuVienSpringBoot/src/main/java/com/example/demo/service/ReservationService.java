@@ -7,6 +7,7 @@ import com.example.demo.repository.BookRepository;
 import com.example.demo.repository.BorrowRepository;
 import com.example.demo.repository.ReservationRepository;
 import jakarta.transaction.Transactional;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -16,8 +17,9 @@ import java.util.Optional;
 /**
  * Đặt chỗ:
  * - Chỉ cho phép tạo khi kho hết (available == 0).
- * - Khi có lại đúng 1 cuốn: giữ 24h cho người đã đặt chỗ theo FIFO.
- * - Khi có lại >= 2 cuốn: không chặn ai (chỉ thông báo).
+ * - Hàng chờ FIFO theo sách nằm ở HoldQueueService: sách được trả về thì người đầu hàng được giữ 24h;
+ *   chặn người khác chỉ khi tồn kho không dư ra so với số suất đang giữ.
+ * - READY hết hạn đúng mốc expireAt qua ExpiryScheduler (đường đọc không UPDATE nữa); cron 10 phút dọn sót.
  */
 @Service
 public class ReservationService {
@@ -25,13 +27,19 @@ public class ReservationService {
     private final ReservationRepository reservationRepo;
     private final BorrowRepository borrowRepo;
     private final BookRepository bookRepo;
+    private final ExpiryScheduler expiryScheduler;
+    private final HoldQueueService holdQueue;
 
     public ReservationService(ReservationRepository reservationRepo,
                               BorrowRepository borrowRepo,
-                              BookRepository bookRepo) {
+                              BookRepository bookRepo,
+                              ExpiryScheduler expiryScheduler,
+                              HoldQueueService holdQueue) {
         this.reservationRepo = reservationRepo;
         this.borrowRepo = borrowRepo;
         this.bookRepo = bookRepo;
+        this.expiryScheduler = expiryScheduler;
+        this.holdQueue = holdQueue;
     }
 
     /* ===================== TẠO ĐẶT CHỖ ===================== */
@@ -63,7 +71,9 @@ public class ReservationService {
         r.setBook(book);
         r.setStatus(Reservation.Status.PENDING);
         // KHÔNG gọi r.setCreatedAt(...): nếu entity dùng @CreationTimestamp thì DB sẽ tự set
-        return reservationRepo.save(r);
+        Reservation saved = reservationRepo.save(r);
+        holdQueue.enqueue(saved);
+        return saved;
     }
 
     /* ============== HỦY ĐẶT CHỖ BỞI CHÍNH CHỦ =============== */
@@ -81,69 +91,18 @@ public class ReservationService {
             return;
         }
 
+        boolean wasReady = r.getStatus() == Reservation.Status.READY;
         r.setStatus(Reservation.Status.CANCELLED);
         r.setCancelledAt(LocalDateTime.now());
         reservationRepo.save(r);
+        expiryScheduler.cancel(ExpiryScheduler.Kind.RESERVATION, r.getId());
+        holdQueue.remove(r.getBook().getId(), r.getId(), wasReady);   // nhả suất giữ -> người kế tiếp
     }
 
     /* ========== LUẬT ƯU TIÊN KHI TẠO MÃ MƯỢN ========== */
-    @Transactional
+    /** Chỉ đọc hàng giữ chỗ trong bộ nhớ; việc promote READY diễn ra lúc sách được trả về. */
     public CanBorrowResult assertBorrowAllowed(Long bookId, Long userId) {
-        // dọn các READY quá hạn
-        reservationRepo.expireReadyBefore(LocalDateTime.now());
-
-        Book book = bookRepo.findById(bookId)
-                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy sách id=" + bookId));
-
-        Integer qObj = book.getQuantity();
-        int totalQty = (qObj == null ? 0 : qObj.intValue());
-        long opened  = borrowRepo.countOpenByBookId(bookId);
-        long available = Math.max(0, (long) totalQty - opened);
-
-        if (available >= 2) {
-            // có >= 2 bản: không chặn ai
-            return CanBorrowResult.ok();
-        }
-
-        if (available == 1) {
-            // 1) Có ai đang READY hợp lệ chưa?
-            var readyList = reservationRepo.findByBook_IdAndStatusIn(
-                    bookId, List.of(Reservation.Status.READY)
-            );
-            readyList.removeIf(r -> r.getExpireAt() != null && r.getExpireAt().isBefore(LocalDateTime.now()));
-
-            if (!readyList.isEmpty()) {
-                boolean mine = readyList.stream().anyMatch(r -> r.getUser().getId().equals(userId));
-                return mine
-                        ? CanBorrowResult.ok()
-                        : CanBorrowResult.block("Cuốn này đang được giữ 24 giờ cho người đã đặt chỗ trước. Vui lòng quay lại sau.");
-            }
-
-            // 2) Chưa ai READY → promote người PENDING lâu nhất
-            var oldestPendingOpt = reservationRepo.findFirstByBook_IdAndStatusInOrderByCreatedAtAsc(
-                    bookId, List.of(Reservation.Status.PENDING)
-            );
-            if (oldestPendingOpt.isPresent()) {
-                var oldestPending = oldestPendingOpt.get();
-                oldestPending.setStatus(Reservation.Status.READY);
-                oldestPending.setReadyAt(LocalDateTime.now());
-                oldestPending.setExpireAt(LocalDateTime.now().plusDays(1)); // giữ 24h
-                reservationRepo.save(oldestPending);
-
-                // nếu người được promote không phải mình → chặn
-                if (!oldestPending.getUser().getId().equals(userId)) {
-                    return CanBorrowResult.block("Cuốn này vừa được giữ 24 giờ cho người đã đặt chỗ trước. Bạn sẽ mượn được khi hết thời gian giữ.");
-                }
-                // chính mình → cho mượn
-                return CanBorrowResult.ok();
-            }
-
-            // 3) Không có PENDING nào → cho mượn bình thường
-            return CanBorrowResult.ok();
-        }
-
-        // available == 0 → để luồng tạo vé xử lý riêng
-        return CanBorrowResult.ok();
+        return holdQueue.check(bookId, userId);
     }
 
     /* ========== Khi mượn thành công, đánh dấu FULFILLED nếu có ========== */
@@ -155,51 +114,23 @@ public class ReservationService {
             r.setStatus(Reservation.Status.FULFILLED);
             r.setFulfilledAt(LocalDateTime.now());
             reservationRepo.save(r);
+            expiryScheduler.cancel(ExpiryScheduler.Kind.RESERVATION, r.getId());
+            holdQueue.remove(bookId, r.getId(), false);
         });
     }
 
-    /* ========== Banner: trả về READY còn hiệu lực của user (nếu có) ========== */
-    @Transactional
-    public Optional<ReadyNotice> getOrPromoteReadyForUser(Long userId) {
-        reservationRepo.expireReadyBefore(LocalDateTime.now());
-
-        // Ưu tiên READY hiện có
-        var myReady = reservationRepo.findAllByUser_IdAndStatusIn(
-                userId, List.of(Reservation.Status.READY)
-        );
-        myReady.removeIf(r -> r.getExpireAt() != null && r.getExpireAt().isBefore(LocalDateTime.now()));
-        if (!myReady.isEmpty()) {
-            var r = myReady.get(0);
-            return Optional.of(new ReadyNotice(
-                    r.getId(),
-                    r.getBook().getId(),
-                    r.getBook().getTitle(),
-                    r.getExpireAt()
-            ));
+    /* ========== Cron lưới an toàn: READY quá hạn bị sót (mốc mất khi khởi động lại...) ========== */
+    /** Mỗi dòng 1 transaction riêng qua ExpiryScheduler: hết hạn rồi promote người kế tiếp như mốc đúng giờ. */
+    @Scheduled(cron = "0 */10 * * * *")
+    public void expireJob() {
+        for (Long id : reservationRepo.findReadyIdsExpiredBefore(LocalDateTime.now())) {
+            expiryScheduler.expireNow(ExpiryScheduler.Kind.RESERVATION, id);
         }
+    }
 
-        // Nếu chưa có, thử promote từ PENDING khi hiện tại sách chỉ còn 1
-        var myPendings = reservationRepo.findAllByUser_IdAndStatusIn(
-                userId, List.of(Reservation.Status.PENDING)
-        );
-        for (var p : myPendings) {
-            var gate = assertBorrowAllowed(p.getBook().getId(), userId);
-            if (gate.allowed()) {
-                var nowReady = reservationRepo.findByUser_IdAndBook_IdAndStatusIn(
-                        userId, p.getBook().getId(), List.of(Reservation.Status.READY)
-                );
-                if (nowReady.isPresent()) {
-                    var r = nowReady.get();
-                    return Optional.of(new ReadyNotice(
-                            r.getId(),
-                            r.getBook().getId(),
-                            r.getBook().getTitle(),
-                            r.getExpireAt()
-                    ));
-                }
-            }
-        }
-        return Optional.empty();
+    /* ========== Banner: READY còn hiệu lực của user (nếu có), đọc từ bộ nhớ ========== */
+    public Optional<ReadyNotice> findReadyNotice(Long userId) {
+        return holdQueue.readyNotice(userId);
     }
 
     /* ===== Helper records ===== */
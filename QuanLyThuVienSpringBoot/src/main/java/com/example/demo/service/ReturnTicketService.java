@@ -1,11 +1,13 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ScanOutcome;
 import com.example.demo.model.Borrow;
 import com.example.demo.model.ReturnTicket;
 import com.example.demo.model.User;
 import com.example.demo.repository.BookRepository;
 import com.example.demo.repository.BorrowRepository;
 import com.example.demo.repository.ReturnTicketRepository;
+import com.example.demo.util.FeeCalculator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -14,11 +16,16 @@ import org.springframework.transaction.annotation.Transactional;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 public class ReturnTicketService {
@@ -28,6 +35,12 @@ public class ReturnTicketService {
   private final BookRepository bookRepo;
   private final QrService qrService;
   private final BorrowService borrowService;
+  private final InventoryService inventoryService;
+  private final ExpiryScheduler expiryScheduler;
+  private final QrTokenService qrTokens;
+  private final BorrowEligibilityService eligibility;
+  private final HoldQueueService holdQueue;
+  private final AvailabilityEtaService availability;
 
   @Value("${APP_BASE_URL:}")
   private String baseUrl;
@@ -45,12 +58,24 @@ public class ReturnTicketService {
                              BorrowRepository borrowRepo,
                              BookRepository bookRepo,
                              QrService qrService,
-                             BorrowService borrowService) {
+                             BorrowService borrowService,
+                             InventoryService inventoryService,
+                             ExpiryScheduler expiryScheduler,
+                             QrTokenService qrTokens,
+                             BorrowEligibilityService eligibility,
+                             HoldQueueService holdQueue,
+                             AvailabilityEtaService availability) {
     this.repo = repo;
     this.borrowRepo = borrowRepo;
     this.bookRepo = bookRepo;
     this.qrService = qrService;
     this.borrowService = borrowService;
+    this.inventoryService = inventoryService;
+    this.expiryScheduler = expiryScheduler;
+    this.qrTokens = qrTokens;
+    this.eligibility = eligibility;
+    this.holdQueue = holdQueue;
+    this.availability = availability;
   }
 
   public record TicketView(ReturnTicket ticket, String qrDataUri) {}
@@ -74,17 +99,8 @@ public class ReturnTicketService {
 
   /** Tính phí phạt theo cấu hình tại thời điểm now (không dựa dữ liệu cũ). */
   private BigDecimal computeFineNow(Borrow b, LocalDateTime now) {
-    if (b == null || b.getDueDate() == null) return ZERO;
-
-    long rawLate = Duration.between(b.getDueDate(), now).toDays(); // có thể âm
-    if (rawLate <= 0) return ZERO;
-
-    long lateDays = Math.max(0, rawLate - Math.max(0, freeDays));
-    if (lateDays == 0) return ZERO;
-
-    long qty = (b.getAmount() == null ? 1 : b.getAmount());
-    long vnd = lateDays * Math.max(0, finePerDay) * Math.max(1, qty);
-    return (vnd <= 0) ? ZERO : BigDecimal.valueOf(vnd);
+    if (b == null) return ZERO;
+    return FeeCalculator.vnd(FeeCalculator.fine(b.getDueDate(), now, b.getAmount(), finePerDay, freeDays));
   }
 
   /** Đọc tổng tiền phạt đã thanh toán (nếu có) qua reflection để không phụ thuộc model. */
@@ -144,10 +160,15 @@ public class ReturnTicketService {
     t.setStatus(ReturnTicket.TicketStatus.PENDING);
     t.setToken(java.util.UUID.randomUUID().toString().replace("-", ""));
     repo.save(t);
+    expiryScheduler.schedule(ExpiryScheduler.Kind.RETURN_TICKET, t.getId(), t.getExpiresAt());
 
-    String scanUrl = normalizeBaseUrl(baseUrl) + "/admin/return/scan?token=" + t.getToken();
-    String qr = qrService.toDataUriPng(scanUrl, 280);
-    return new TicketView(t, qr);
+    return new TicketView(t, qrOf(t));
+  }
+
+  /** QR của vé trả: mã gọn có chữ ký (id + hạn), vẽ lại mỗi lần xem vé. */
+  public String qrOf(ReturnTicket t) {
+    String code = qrTokens.issue(QrTokenService.Kind.RETURN, t.getId(), t.getExpiresAt());
+    return qrService.toDataUriPng(normalizeBaseUrl(baseUrl) + "/admin/return/scan?token=" + code, 280);
   }
 
   /** User tự hủy vé trả khi còn PENDING */
@@ -174,7 +195,7 @@ public class ReturnTicketService {
    */
   @Transactional
   public Borrow confirmByAdmin(String token, User admin) {
-    ReturnTicket t = repo.findByToken(token)
+    ReturnTicket t = findByScannedCode(token)
         .orElseThrow(() -> new IllegalStateException("Vé không tồn tại."));
     if (t.getStatus() != ReturnTicket.TicketStatus.PENDING) {
       throw new IllegalStateException("Vé không còn hiệu lực.");
@@ -208,15 +229,12 @@ public class ReturnTicketService {
     // 2) Snapshot phạt/quá hạn theo policy nội bộ (giữ nguyên)
     borrowService.calculateOverdue(b);
     borrowRepo.save(b);
+    eligibility.onReturned(b.getUser().getId(), b.getAmount(), b.getDueDate());
+    availability.onClosed(b);
 
-    // 3) Trả sách về kho
-    var book = b.getBook();
-    book.setQuantity(book.getQuantity() + b.getAmount());
-    try {
-      var setAvailable = book.getClass().getMethod("setAvailable", boolean.class);
-      setAvailable.invoke(book, book.getQuantity() > 0);
-    } catch (Exception ignored) {}
-    bookRepo.save(book);
+    // 3) Trả sách về kho (cộng trực tiếp trên DB, không ghi đè số lượng đọc lúc trước)
+    inventoryService.increment(b.getBook().getId(), b.getAmount());
+    holdQueue.promote(b.getBook().getId(), b.getAmount());   // người đầu hàng chờ được giữ chỗ
 
     // 4) Chốt vé
     t.setStatus(ReturnTicket.TicketStatus.CONFIRMED);
@@ -227,7 +245,76 @@ public class ReturnTicketService {
     return b;
   }
 
-  /** Cron: tự hết hạn PENDING quá hạn (mỗi 10 phút) */
+  /**
+   * Quét hàng loạt (thùng trả sách cuối kỳ): cùng luật với confirmByAdmin nhưng gộp theo bước —
+   * 1 truy vấn nạp cả lô, kiểm tra trong bộ nhớ, saveAll phiếu mượn, 1 UPDATE kho / đầu sách, flush 1 lần.
+   * Mã lỗi chỉ ghi lý do, không đổi trạng thái vé (giống confirmByAdmin: lỗi thì rollback).
+   */
+  @Transactional
+  public Map<String, ScanOutcome> confirmBatchByAdmin(List<String> tokens, User admin) {
+    Map<String, ScanOutcome> out = new LinkedHashMap<>();
+    for (String token : tokens) out.put(token, null);
+    Map<String, ReturnTicket> byCode = loadByScannedCodes(tokens, out);
+
+    LocalDateTime now = LocalDateTime.now();
+    List<ReturnTicket> accepted = new ArrayList<>();
+    Map<ReturnTicket, String> codeOf = new IdentityHashMap<>();
+    for (String token : tokens) {
+      if (out.get(token) != null) continue;   // mã gọn sai / hết hạn: đã loại, không chạm DB
+      ReturnTicket t = byCode.get(token);
+      Borrow b = (t == null) ? null : t.getBorrow();
+      if (t == null) {
+        out.put(token, ScanOutcome.fail("Vé không tồn tại."));
+      } else if (codeOf.containsKey(t)) {
+        out.put(token, ScanOutcome.fail("Mã trùng trong lô."));
+      } else if (t.getStatus() != ReturnTicket.TicketStatus.PENDING) {
+        out.put(token, ScanOutcome.fail("Vé không còn hiệu lực."));
+      } else if (t.getExpiresAt() != null && t.getExpiresAt().isBefore(now)) {
+        out.put(token, ScanOutcome.fail("Vé đã hết hạn."));
+      } else if (b == null) {
+        out.put(token, ScanOutcome.fail("Phiếu mượn không hợp lệ."));
+      } else if (b.getReturnDate() != null) {
+        out.put(token, ScanOutcome.fail("Mục này đã trả."));
+      } else {
+        try {
+          enforceFinePaidBeforeConfirm(b);
+          accepted.add(t);
+          codeOf.put(t, token);
+        } catch (IllegalStateException e) {
+          out.put(token, ScanOutcome.fail(e.getMessage()));
+        }
+      }
+    }
+
+    List<Borrow> borrows = new ArrayList<>(accepted.size());
+    Map<Long, Integer> returnedByBook = new TreeMap<>();
+    for (ReturnTicket t : accepted) {
+      Borrow b = t.getBorrow();
+      b.setReturnDate(now);
+      borrowService.calculateOverdue(b);
+      borrows.add(b);
+      returnedByBook.merge(b.getBook().getId(), b.getAmount(), Integer::sum);
+
+      t.setStatus(ReturnTicket.TicketStatus.CONFIRMED);
+      t.setConfirmedBy(admin);
+      t.setConfirmedAt(now);
+    }
+    borrowRepo.saveAll(borrows);
+    borrows.forEach(b -> {
+      eligibility.onReturned(b.getUser().getId(), b.getAmount(), b.getDueDate());
+      availability.onClosed(b);
+    });
+    returnedByBook.forEach((bookId, n) -> {
+      inventoryService.increment(bookId, n);
+      holdQueue.promote(bookId, n);
+    });
+    repo.saveAllAndFlush(accepted);
+
+    for (ReturnTicket t : accepted) out.put(codeOf.get(t), ScanOutcome.ok(t.getBorrow()));
+    return out;
+  }
+
+  /** Cron lưới an toàn (mỗi 10 phút): hết hạn đúng giờ do ExpiryScheduler làm, ở đây dọn vé bị sót. */
   @Scheduled(cron = "0 */10 * * * *")
   @Transactional
   public void expireJob() {
@@ -236,6 +323,42 @@ public class ReturnTicketService {
 
   /* ================== Helpers ================== */
 
+  /** Vé theo mã quét: mã gọn -> kiểm chữ ký/hạn trong bộ nhớ rồi tra khoá chính; UUID cũ -> theo token. */
+  private Optional<ReturnTicket> findByScannedCode(String code) {
+    if (QrTokenService.isCompact(code)) {
+      return repo.findById(qrTokens.verify(code, QrTokenService.Kind.RETURN).ticketId());
+    }
+    return repo.findByToken(code);
+  }
+
+  /** Nạp vé cho lô mã quét: mã gọn lỗi ghi thẳng vào out; còn lại 1 truy vấn theo id + 1 theo token. */
+  private Map<String, ReturnTicket> loadByScannedCodes(List<String> codes, Map<String, ScanOutcome> out) {
+    Map<Long, List<String>> codesById = new HashMap<>();
+    List<String> legacy = new ArrayList<>();
+    for (String code : codes) {
+      if (!QrTokenService.isCompact(code)) {
+        legacy.add(code);
+        continue;
+      }
+      try {
+        long id = qrTokens.verify(code, QrTokenService.Kind.RETURN).ticketId();
+        codesById.computeIfAbsent(id, k -> new ArrayList<>()).add(code);
+      } catch (IllegalArgumentException | IllegalStateException e) {
+        out.put(code, ScanOutcome.fail(e.getMessage()));
+      }
+    }
+    Map<String, ReturnTicket> byCode = new HashMap<>();
+    if (!legacy.isEmpty()) {
+      for (ReturnTicket t : repo.findByTokenIn(legacy)) byCode.put(t.getToken(), t);
+    }
+    if (!codesById.isEmpty()) {
+      for (ReturnTicket t : repo.findByIdIn(codesById.keySet())) {
+        for (String code : codesById.get(t.getId())) byCode.put(code, t);
+      }
+    }
+    return byCode;
+  }
+
   private String normalizeBaseUrl(String url) {
     if (url == null || url.isBlank()) return "";
     return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
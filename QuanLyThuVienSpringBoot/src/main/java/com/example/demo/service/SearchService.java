@@ -0,0 +1,896 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Category;
+import com.example.demo.repository.BookDescriptionRepository;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.CategoryRepository;
+import com.example.demo.util.Bm25Scorer;
+import com.example.demo.util.IndexSnapshot;
+import com.example.demo.util.TextNormalizer;
+import com.example.demo.util.TrigramIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục tìm kiếm trong bộ nhớ cho danh mục sách:
+ * - Inverted index theo từ (đã bỏ dấu) của title + author, tìm theo tiền tố từ.
+ * - Chỉ mục full-text riêng cho mô tả (cột TEXT, nạp qua BookDescriptionRepository, không qua Book):
+ *   từ >= {@value #DESCRIPTION_PREFIX_MIN} ký tự khớp theo tiền tố, ngắn hơn thì khớp nguyên từ.
+ * - Tên danh mục được index riêng (category -> sách) để đổi tên danh mục không phải index lại sách.
+ * - Các từ trong truy vấn kết hợp AND; tập ứng viên được xếp hạng BM25F (title/author/mô tả/danh mục,
+ *   hệ số boost cấu hình được), chọn top-k bằng heap; hoà điểm hoặc từ khoá rỗng -> mới nhất trước.
+ * - Chế độ gần đúng (gõ sai chính tả): chỉ mục trigram trên từ vựng, xếp hạng theo độ giống;
+ *   gợi ý "Có phải bạn muốn tìm" dùng chung chỉ mục đó.
+ * - Snapshot nhị phân (xem {@link IndexSnapshot}) ghi định kỳ + khi tắt ứng dụng; lúc khởi động
+ *   đọc snapshot qua mmap rồi chỉ nạp lại từ DB các sách có updatedAt mới hơn snapshot (trừ lùi 1
+ *   khoảng an toàn), sách chưa có trong snapshot, và bỏ sách đã xoá -> không đọc lại cả bảng.
+ * Trước khi nạp xong (khởi động) thì rơi về truy vấn LIKE trên DB.
+ */
+@Service
+public class SearchService {
+
+    private final BookRepository bookRepo;
+    private final CategoryRepository categoryRepo;
+    private final BookDescriptionRepository descriptionRepo;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, BookDoc> docs = new HashMap<>();
+    private final TreeMap<String, PostingList> terms = new TreeMap<>();         // từ -> id sách
+    private final Map<Long, PostingList> booksByCategory = new HashMap<>();     // categoryId -> id sách
+    private final TreeMap<String, Set<Long>> categoryTerms = new TreeMap<>();   // từ -> categoryId
+    private final Map<Long, List<String>> categoryTokens = new HashMap<>();
+    private final TreeMap<String, PostingList> descTerms = new TreeMap<>();     // từ trong mô tả -> id sách
+    private final long[] fieldLengthSum = new long[3];                         // tổng độ dài title/author/mô tả
+    private final PostingList allIds = new PostingList();
+    private final TrigramIndex vocab = new TrigramIndex();                     // từ vựng (sách + danh mục) cho tìm gần đúng
+
+    /** Số từ gần đúng tối đa được mở rộng cho 1 từ truy vấn (giữ chi phí bị chặn). */
+    static final int FUZZY_TERMS_PER_TOKEN = 16;
+    /** Số từ khớp tiền tố tối đa được mở rộng ở chế độ gần đúng. */
+    static final int PREFIX_TERMS_PER_TOKEN = 64;
+    /** Từ truy vấn ngắn hơn thì chỉ khớp nguyên từ trong mô tả (tránh hợp hàng triệu posting). */
+    static final int DESCRIPTION_PREFIX_MIN = 3;
+
+    @Value("${search.bm25.k1:1.2}")
+    private double bm25K1 = 1.2;
+    @Value("${search.bm25.b:0.75}")
+    private double bm25B = 0.75;
+    @Value("${search.boost.title:3.0}")
+    private double titleBoost = 3.0;
+    @Value("${search.boost.author:2.0}")
+    private double authorBoost = 2.0;
+    @Value("${search.boost.description:1.0}")
+    private double descriptionBoost = 1.0;
+    @Value("${search.boost.category:0.5}")
+    private double categoryBoost = 0.5;
+
+    /** File snapshot; rỗng = tắt snapshot (luôn nạp đầy đủ từ DB). */
+    @Value("${search.snapshot.path:}")
+    private String snapshotPath = "";
+    /** Lùi mốc replay so với thời điểm chụp để bắt các transaction commit muộn / lệch đồng hồ giữa node. */
+    @Value("${search.snapshot.replay-margin-seconds:300}")
+    private long replayMarginSeconds = 300;
+
+    private volatile boolean ready;
+
+    public SearchService(BookRepository bookRepo, CategoryRepository categoryRepo,
+                         BookDescriptionRepository descriptionRepo) {
+        this.bookRepo = bookRepo;
+        this.categoryRepo = categoryRepo;
+        this.descriptionRepo = descriptionRepo;
+    }
+
+    /**
+     * Dữ liệu tối thiểu của 1 sách trong chỉ mục: title/author nguyên văn (cho snapshot),
+     * tokens = từ của title + author (để khớp), *Terms = tần suất từ theo trường (để chấm điểm).
+     */
+    record BookDoc(long id, Long categoryId, String title, String author, String[] tokens,
+                   FieldTerms titleTerms, FieldTerms authorTerms, FieldTerms descriptionTerms) {}
+
+    /* ===================== Nạp / cập nhật chỉ mục ===================== */
+
+    /** Nạp chỉ mục khi ứng dụng sẵn sàng: từ snapshot + phần thay đổi nếu có, không thì toàn bộ từ DB. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Category> categories = categoryRepo.findAll();
+        IndexSnapshot.Data snap = readSnapshot();
+        if (snap != null) {
+            restore(categories, snap);
+            return;
+        }
+        List<Book> books = bookRepo.findAll(Sort.by("id"));
+        Map<Long, String> bodies = toMap(descriptionRepo.findAllBodies());
+        lock.writeLock().lock();
+        try {
+            clearAll();
+            for (Category c : categories) putCategory(c);
+            for (Book b : books) putBook(b, descriptionTerms(bodies.get(b.getId())));
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Nạp từ snapshot: bỏ sách không còn trong DB, thay các sách đổi sau (mốc chụp - margin)
+     * và thêm sách chưa có trong snapshot bằng dữ liệu mới từ DB.
+     */
+    private void restore(List<Category> categories, IndexSnapshot.Data snap) {
+        Set<Long> live = new HashSet<>(bookRepo.findAllIds());
+        Map<Long, Book> replay = new HashMap<>();
+        for (Book b : bookRepo.findUpdatedSince(snap.takenAt().minusSeconds(replayMarginSeconds))) {
+            replay.put(b.getId(), b);
+        }
+        Set<Long> missing = new HashSet<>(live);
+        for (IndexSnapshot.Entry e : snap.entries()) missing.remove(e.id());
+        missing.removeAll(replay.keySet());
+        if (!missing.isEmpty()) {
+            for (Book b : bookRepo.findAllById(missing)) replay.put(b.getId(), b);
+        }
+        Map<Long, String> bodies = replay.isEmpty() ? Map.of() : toMap(descriptionRepo.findBodies(replay.keySet()));
+
+        lock.writeLock().lock();
+        try {
+            clearAll();
+            for (Category c : categories) putCategory(c);
+            for (IndexSnapshot.Entry e : snap.entries()) {
+                if (!live.contains(e.id()) || replay.containsKey(e.id())) continue;
+                putDoc(e.id(), e.categoryId(), e.title(), e.author(),
+                        FieldTerms.restore(e.descTerms(), e.descTf(), e.descLength()));
+            }
+            List<Long> ids = new ArrayList<>(replay.keySet());
+            Collections.sort(ids);
+            for (Long id : ids) putBook(replay.get(id), descriptionTerms(bodies.get(id)));
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Ghi snapshot định kỳ và khi tắt ứng dụng (rolling deploy: node mới khởi động từ file này). */
+    @Scheduled(fixedDelayString = "${search.snapshot.interval-ms:600000}",
+               initialDelayString = "${search.snapshot.interval-ms:600000}")
+    @PreDestroy
+    public void writeSnapshot() {
+        Path file = snapshotFile();
+        if (file == null || !ready) return;
+        LocalDateTime takenAt = LocalDateTime.now();
+        List<IndexSnapshot.Entry> entries;
+        lock.readLock().lock();
+        try {
+            entries = new ArrayList<>(docs.size());
+            for (int i = 0; i < allIds.size; i++) {
+                BookDoc d = docs.get(allIds.ids[i]);
+                FieldTerms desc = d.descriptionTerms();
+                entries.add(new IndexSnapshot.Entry(d.id(), d.categoryId(), d.title(), d.author(),
+                        desc.length, desc.terms, desc.tf));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            IndexSnapshot.write(file, new IndexSnapshot.Data(takenAt, entries));
+        } catch (IOException e) {
+            System.err.println("[SEARCH] Không ghi được snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    private IndexSnapshot.Data readSnapshot() {
+        Path file = snapshotFile();
+        if (file == null || !Files.isRegularFile(file)) return null;
+        try {
+            return IndexSnapshot.read(file);
+        } catch (IOException e) {
+            System.err.println("[SEARCH] Bỏ qua snapshot " + file + ", nạp lại toàn bộ: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Path snapshotFile() {
+        return (snapshotPath == null || snapshotPath.isBlank()) ? null : Path.of(snapshotPath.trim());
+    }
+
+    /** Thêm/cập nhật 1 sách (gọi sau khi đã lưu DB, id khác null). */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) return;
+        apply(List.of(book), List.of());
+    }
+
+    public void remove(Long bookId) {
+        if (bookId == null) return;
+        apply(List.of(), List.of(bookId));
+    }
+
+    /**
+     * Áp 1 lô thay đổi sách (xoá trước, rồi thêm/cập nhật) dưới 1 lần giữ write lock.
+     * Book không mang mô tả -> giữ nguyên chỉ mục mô tả đã có của sách.
+     */
+    public void apply(Collection<Book> upserts, Collection<Long> deletes) {
+        lock.writeLock().lock();
+        try {
+            for (Long id : deletes) removeBook(id);
+            for (Book b : upserts) {
+                if (b.getId() == null) continue;
+                BookDoc old = docs.get(b.getId());
+                removeBook(b.getId());
+                putBook(b, (old != null) ? old.descriptionTerms() : FieldTerms.EMPTY);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Cập nhật chỉ mục mô tả (bookId -> nội dung, null = xoá mô tả); bỏ qua sách chưa có trong chỉ mục. */
+    public void applyDescriptions(Map<Long, String> bodies) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Long, String> e : bodies.entrySet()) {
+                BookDoc old = docs.get(e.getKey());
+                if (old == null) continue;
+                removeBook(old.id());
+                putDoc(old.id(), old.categoryId(), old.title(), old.author(), descriptionTerms(e.getValue()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Thêm/đổi tên danh mục. */
+    public void indexCategory(Category category) {
+        if (category == null || category.getId() == null) return;
+        lock.writeLock().lock();
+        try {
+            removeCategoryTerms(category.getId());
+            putCategory(category);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeCategory(Long categoryId) {
+        if (categoryId == null) return;
+        lock.writeLock().lock();
+        try {
+            removeCategoryTerms(categoryId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ===================== Truy vấn ===================== */
+
+    /**
+     * Tìm theo từ khoá, trả về trang id sách xếp theo độ liên quan (BM25F), hoà điểm thì mới nhất trước.
+     * Từ khoá rỗng -> tất cả, mới nhất trước.
+     */
+    public Page<Long> searchIds(String keyword, Pageable pageable) {
+        if (!ready) {
+            return fallbackIds(keyword, pageable);
+        }
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(TextNormalizer.tokenize(keyword)));
+        lock.readLock().lock();
+        try {
+            long[] hits = match(queryTokens);
+            if (queryTokens.isEmpty() || hits.length == 0) {
+                return slice(hits, pageable);
+            }
+            int k = (int) Math.min((long) hits.length, pageable.getOffset() + pageable.getPageSize());
+            long[] top = rank(hits, queryTokens, k);
+            int from = (int) Math.min(pageable.getOffset(), top.length);
+            List<Long> content = new ArrayList<>(top.length - from);
+            for (int i = from; i < top.length; i++) content.add(top[i]);
+            return new PageImpl<>(content, pageable, hits.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Như searchIds nhưng nạp luôn Book từ DB (1 truy vấn theo id, giữ đúng thứ tự). */
+    public Page<Book> search(String keyword, Pageable pageable) {
+        return hydrate(searchIds(keyword, pageable));
+    }
+
+    /**
+     * Tìm gần đúng: mỗi từ truy vấn mở rộng thành các từ khớp tiền tố (độ giống 1.0) và các từ
+     * cách tối đa 1–2 lỗi gõ; điểm sách = tổng độ giống tốt nhất theo từng từ truy vấn.
+     * Sách phải khớp ít nhất một nửa số từ; xếp theo điểm giảm dần, rồi mới nhất trước.
+     */
+    public Page<Long> fuzzySearchIds(String keyword, Pageable pageable) {
+        if (!ready) {
+            return fallbackIds(keyword, pageable);
+        }
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(TextNormalizer.tokenize(keyword)));
+        if (queryTokens.isEmpty()) {
+            return searchIds(keyword, pageable);
+        }
+        Map<Long, Double> score = new HashMap<>();
+        Map<Long, Integer> matched = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String qt : queryTokens) {
+                Map<Long, Double> best = new HashMap<>();
+                for (Map.Entry<String, Double> e : expand(qt).entrySet()) {
+                    double sim = e.getValue();
+                    PostingList pl = terms.get(e.getKey());
+                    if (pl != null) {
+                        for (int i = 0; i < pl.size; i++) best.merge(pl.ids[i], sim, Math::max);
+                    }
+                    for (Long catId : categoryTerms.getOrDefault(e.getKey(), Set.of())) {
+                        PostingList cp = booksByCategory.get(catId);
+                        if (cp == null) continue;
+                        for (int i = 0; i < cp.size; i++) best.merge(cp.ids[i], sim, Math::max);
+                    }
+                }
+                for (Map.Entry<Long, Double> b : best.entrySet()) {
+                    score.merge(b.getKey(), b.getValue(), Double::sum);
+                    matched.merge(b.getKey(), 1, Integer::sum);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int need = (queryTokens.size() + 1) / 2;
+        List<Long> hits = new ArrayList<>();
+        for (Map.Entry<Long, Integer> m : matched.entrySet()) {
+            if (m.getValue() >= need) hits.add(m.getKey());
+        }
+        hits.sort((a, b) -> {
+            int c = Double.compare(score.get(b), score.get(a));
+            return c != 0 ? c : Long.compare(b, a);
+        });
+        int from = (int) Math.min(pageable.getOffset(), hits.size());
+        int to = Math.min(from + pageable.getPageSize(), hits.size());
+        return new PageImpl<>(new ArrayList<>(hits.subList(from, to)), pageable, hits.size());
+    }
+
+    /**
+     * Gợi ý "Có phải bạn muốn tìm": thay từ không có trong từ vựng bằng từ gần nhất (dạng có dấu).
+     * Trả null nếu không có gì để sửa.
+     */
+    public String suggest(String keyword) {
+        if (!ready || keyword == null) return null;
+        List<String> toks = TextNormalizer.tokenize(keyword);
+        List<String> words = TextNormalizer.words(keyword);
+        if (toks.isEmpty()) return null;
+        boolean changed = false;
+        List<String> out = new ArrayList<>(toks.size());
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < toks.size(); i++) {
+                String t = toks.get(i);
+                String shown = (words.size() == toks.size()) ? words.get(i) : t;
+                if (vocab.contains(t) || !prefixRange(terms, t).isEmpty() || !prefixRange(categoryTerms, t).isEmpty()) {
+                    out.add(shown);
+                    continue;
+                }
+                List<TrigramIndex.Match> m = vocab.lookup(t, TrigramIndex.maxEditsFor(t), 1);
+                if (m.isEmpty()) {
+                    out.add(shown);
+                } else {
+                    out.add(vocab.display(m.get(0).term()));
+                    changed = true;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return changed ? String.join(" ", out) : null;
+    }
+
+    public Page<Book> hydrate(Page<Long> ids) {
+        if (ids.isEmpty()) {
+            return new PageImpl<>(List.of(), ids.getPageable(), ids.getTotalElements());
+        }
+        Map<Long, Book> byId = new HashMap<>();
+        for (Book b : bookRepo.findAllById(ids.getContent())) byId.put(b.getId(), b);
+        List<Book> content = new ArrayList<>(ids.getNumberOfElements());
+        for (Long id : ids.getContent()) {
+            Book b = byId.get(id);
+            if (b != null) content.add(b);
+        }
+        return new PageImpl<>(content, ids.getPageable(), ids.getTotalElements());
+    }
+
+    /**
+     * Đếm (xấp xỉ) số sách khớp từ khoá trong 1 danh mục (null = mọi danh mục), không chạm DB.
+     * Dùng cho tổng số hiển thị ở phân trang keyset; trả -1 nếu chỉ mục chưa sẵn sàng.
+     */
+    public long count(String keyword, Long categoryId) {
+        if (!ready) return -1;
+        lock.readLock().lock();
+        try {
+            List<String> toks = TextNormalizer.tokenize(keyword);
+            if (toks.isEmpty()) {
+                if (categoryId == null) return allIds.size;
+                PostingList pl = booksByCategory.get(categoryId);
+                return (pl == null) ? 0 : pl.size;
+            }
+            long[] hits = match(toks);
+            if (categoryId == null) return hits.length;
+            PostingList pl = booksByCategory.get(categoryId);
+            return (pl == null) ? 0 : intersect(hits, pl.toArray()).length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bản sao tập id đang được index (CatalogChangeFeed so với DB để phát hiện xoá ở node khác). */
+    public Set<Long> indexedIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(docs.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ===================== Nội bộ (gọi khi đã giữ lock) ===================== */
+
+    private void clearAll() {
+        docs.clear();
+        terms.clear();
+        descTerms.clear();
+        Arrays.fill(fieldLengthSum, 0);
+        booksByCategory.clear();
+        categoryTerms.clear();
+        categoryTokens.clear();
+        allIds.clear();
+        vocab.clear();
+    }
+
+    private void putBook(Book b, FieldTerms description) {
+        Long catId = (b.getCategory() != null) ? b.getCategory().getId() : null;
+        putDoc(b.getId(), catId, b.getTitle(), b.getAuthor(), description);
+    }
+
+    private static FieldTerms descriptionTerms(String body) {
+        return FieldTerms.of(TextNormalizer.tokenize(body));
+    }
+
+    private static Map<Long, String> toMap(List<Object[]> rows) {
+        Map<Long, String> out = new HashMap<>(rows.size() * 2);
+        for (Object[] r : rows) out.put((Long) r[0], (String) r[1]);
+        return out;
+    }
+
+    private void putDoc(long id, Long catId, String title, String author, FieldTerms description) {
+        Map<String, String> toks = new LinkedHashMap<>();   // từ bỏ dấu -> dạng hiển thị
+        collectTokens(title, toks);
+        collectTokens(author, toks);
+
+        BookDoc doc = new BookDoc(id, catId, title, author, toks.keySet().toArray(new String[0]),
+                FieldTerms.of(TextNormalizer.tokenize(title)),
+                FieldTerms.of(TextNormalizer.tokenize(author)),
+                description);
+        docs.put(id, doc);
+        allIds.add(id);
+        fieldLengthSum[0] += doc.titleTerms().length;
+        fieldLengthSum[1] += doc.authorTerms().length;
+        fieldLengthSum[2] += doc.descriptionTerms().length;
+        for (String t : doc.descriptionTerms().terms) {
+            descTerms.computeIfAbsent(t, k -> new PostingList()).add(id);
+        }
+        for (Map.Entry<String, String> t : toks.entrySet()) {
+            PostingList pl = terms.get(t.getKey());
+            if (pl == null) {
+                pl = new PostingList();
+                terms.put(t.getKey(), pl);
+                vocab.add(t.getKey(), t.getValue());
+            }
+            pl.add(id);
+        }
+        if (catId != null) {
+            booksByCategory.computeIfAbsent(catId, k -> new PostingList()).add(id);
+        }
+    }
+
+    private void removeBook(long id) {
+        BookDoc old = docs.remove(id);
+        if (old == null) return;
+        allIds.remove(id);
+        fieldLengthSum[0] -= old.titleTerms().length;
+        fieldLengthSum[1] -= old.authorTerms().length;
+        fieldLengthSum[2] -= old.descriptionTerms().length;
+        for (String t : old.descriptionTerms().terms) {
+            PostingList pl = descTerms.get(t);
+            if (pl != null && pl.remove(id) && pl.size == 0) descTerms.remove(t);
+        }
+        for (String t : old.tokens()) {
+            PostingList pl = terms.get(t);
+            if (pl != null && pl.remove(id) && pl.size == 0) {
+                terms.remove(t);
+                vocab.remove(t);
+            }
+        }
+        if (old.categoryId() != null) {
+            PostingList pl = booksByCategory.get(old.categoryId());
+            if (pl != null && pl.remove(id) && pl.size == 0) booksByCategory.remove(old.categoryId());
+        }
+    }
+
+    private void putCategory(Category c) {
+        Map<String, String> toks = new LinkedHashMap<>();
+        collectTokens(c.getName(), toks);
+        categoryTokens.put(c.getId(), new ArrayList<>(toks.keySet()));
+        for (Map.Entry<String, String> t : toks.entrySet()) {
+            Set<Long> ids = categoryTerms.get(t.getKey());
+            if (ids == null) {
+                ids = new HashSet<>();
+                categoryTerms.put(t.getKey(), ids);
+                vocab.add(t.getKey(), t.getValue());
+            }
+            ids.add(c.getId());
+        }
+    }
+
+    private static void collectTokens(String text, Map<String, String> into) {
+        List<String> toks = TextNormalizer.tokenize(text);
+        List<String> words = TextNormalizer.words(text);
+        boolean aligned = words.size() == toks.size();
+        for (int i = 0; i < toks.size(); i++) {
+            into.putIfAbsent(toks.get(i), aligned ? words.get(i) : toks.get(i));
+        }
+    }
+
+    private void removeCategoryTerms(Long categoryId) {
+        List<String> old = categoryTokens.remove(categoryId);
+        if (old == null) return;
+        for (String t : old) {
+            Set<Long> ids = categoryTerms.get(t);
+            if (ids != null && ids.remove(categoryId) && ids.isEmpty()) {
+                categoryTerms.remove(t);
+                vocab.remove(t);
+            }
+        }
+    }
+
+    /** AND giữa các từ; mỗi từ khớp theo tiền tố với title/author/tên danh mục/mô tả. */
+    private long[] match(List<String> queryTokens) {
+        if (queryTokens.isEmpty()) return allIds.toArray();
+
+        List<long[]> perToken = new ArrayList<>(queryTokens.size());
+        for (String qt : new LinkedHashSet<>(queryTokens)) {
+            long[] ids = matchToken(qt);
+            if (ids.length == 0) return ids;
+            perToken.add(ids);
+        }
+        perToken.sort(Comparator.comparingInt(a -> a.length)); // giao từ tập nhỏ nhất
+        long[] acc = perToken.get(0);
+        for (int i = 1; i < perToken.size() && acc.length > 0; i++) {
+            acc = intersect(acc, perToken.get(i));
+        }
+        return acc;
+    }
+
+    private long[] matchToken(String prefix) {
+        List<PostingList> lists = new ArrayList<>();
+        for (PostingList pl : prefixRange(terms, prefix).values()) lists.add(pl);
+        if (prefix.length() >= DESCRIPTION_PREFIX_MIN) {
+            lists.addAll(prefixRange(descTerms, prefix).values());
+        } else {
+            PostingList pl = descTerms.get(prefix);
+            if (pl != null) lists.add(pl);
+        }
+        for (Set<Long> catIds : prefixRange(categoryTerms, prefix).values()) {
+            for (Long catId : catIds) {
+                PostingList pl = booksByCategory.get(catId);
+                if (pl != null) lists.add(pl);
+            }
+        }
+        if (lists.isEmpty()) return new long[0];
+        if (lists.size() == 1) return lists.get(0).toArray();
+
+        int total = 0;
+        for (PostingList pl : lists) total += pl.size;
+        long[] all = new long[total];
+        int n = 0;
+        for (PostingList pl : lists) {
+            System.arraycopy(pl.ids, 0, all, n, pl.size);
+            n += pl.size;
+        }
+        Arrays.sort(all);
+        int w = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (w == 0 || all[i] != all[w - 1]) all[w++] = all[i];
+        }
+        return Arrays.copyOf(all, w);
+    }
+
+    /**
+     * Chấm điểm BM25F cho các ứng viên và giữ k sách điểm cao nhất bằng min-heap (O(n log k)
+     * thay vì sắp xếp cả tập). df của 1 từ tiền tố = số sách khớp từ đó ở bất kỳ trường nào.
+     */
+    private long[] rank(long[] hits, List<String> queryTokens, int k) {
+        Bm25Scorer scorer = new Bm25Scorer(bm25K1, bm25B,
+                new double[]{titleBoost, authorBoost, descriptionBoost, categoryBoost});
+        long n = docs.size();
+        double[] avgLen = new double[Bm25Scorer.FIELDS];
+        for (int f = 0; f < fieldLengthSum.length; f++) avgLen[f] = (n == 0) ? 0 : (double) fieldLengthSum[f] / n;
+        avgLen[Bm25Scorer.Field.CATEGORY.ordinal()] = averageCategoryLength();
+
+        int q = queryTokens.size();
+        String[] qt = queryTokens.toArray(new String[0]);
+        double[] idf = new double[q];
+        for (int i = 0; i < q; i++) {
+            idf[i] = Bm25Scorer.idf(n, matchToken(qt[i]).length);
+        }
+
+        // tf/độ dài trường danh mục: tính 1 lần cho mỗi danh mục thay vì cho mỗi sách
+        Map<Long, int[]> categoryTf = new HashMap<>();
+        for (Map.Entry<Long, List<String>> e : categoryTokens.entrySet()) {
+            int[] ctf = new int[q + 1];
+            ctf[q] = e.getValue().size();
+            for (int i = 0; i < q; i++) {
+                for (String c : e.getValue()) if (c.startsWith(qt[i])) ctf[i]++;
+            }
+            categoryTf.put(e.getKey(), ctf);
+        }
+        int[] noCategory = new int[q + 1];
+
+        int[] tf = new int[Bm25Scorer.FIELDS];
+        int[] len = new int[Bm25Scorer.FIELDS];
+        TopK top = new TopK(k);
+        for (long id : hits) {
+            BookDoc d = docs.get(id);
+            if (d == null) continue;
+            int[] ctf = (d.categoryId() == null) ? noCategory : categoryTf.getOrDefault(d.categoryId(), noCategory);
+            len[0] = d.titleTerms().length;
+            len[1] = d.authorTerms().length;
+            len[2] = d.descriptionTerms().length;
+            len[3] = ctf[q];
+            double score = 0;
+            for (int i = 0; i < q; i++) {
+                tf[0] = d.titleTerms().prefixTf(qt[i]);
+                tf[1] = d.authorTerms().prefixTf(qt[i]);
+                tf[2] = (qt[i].length() >= DESCRIPTION_PREFIX_MIN) ? d.descriptionTerms().prefixTf(qt[i])
+                                                                   : d.descriptionTerms().exactTf(qt[i]);
+                tf[3] = ctf[i];
+                score += scorer.score(idf[i], tf, len, avgLen);
+            }
+            top.offer(score, id);
+        }
+        return top.drainDescending();
+    }
+
+    private double averageCategoryLength() {
+        if (categoryTokens.isEmpty()) return 0;
+        long sum = 0;
+        for (List<String> t : categoryTokens.values()) sum += t.size();
+        return (double) sum / categoryTokens.size();
+    }
+
+    /** Từ vựng mở rộng cho 1 từ truy vấn ở chế độ gần đúng: từ -> độ giống (0..1]. */
+    private Map<String, Double> expand(String qt) {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (String t : prefixRange(terms, qt).keySet()) {
+            if (out.size() >= PREFIX_TERMS_PER_TOKEN) break;
+            out.put(t, 1.0);
+        }
+        for (String t : prefixRange(categoryTerms, qt).keySet()) {
+            out.putIfAbsent(t, 1.0);
+        }
+        for (TrigramIndex.Match m : vocab.lookup(qt, TrigramIndex.maxEditsFor(qt), FUZZY_TERMS_PER_TOKEN)) {
+            out.putIfAbsent(m.term(), m.similarity());
+        }
+        return out;
+    }
+
+    private static <V> SortedMap<String, V> prefixRange(TreeMap<String, V> map, String prefix) {
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Cắt trang trên mảng id tăng dần, trả về theo thứ tự giảm dần (sách mới trước). */
+    private static Page<Long> slice(long[] ascIds, Pageable pageable) {
+        int total = ascIds.length;
+        int from = (int) Math.min(pageable.getOffset(), total);
+        int to = Math.min(from + pageable.getPageSize(), total);
+        List<Long> content = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) content.add(ascIds[total - 1 - i]);
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private Page<Long> fallbackIds(String keyword, Pageable pageable) {
+        String kw = (keyword == null) ? "" : keyword.trim();
+        Page<Book> page = kw.isEmpty()
+                ? bookRepo.findAll(pageable)
+                : bookRepo.findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(kw, kw, pageable);
+        return page.map(Book::getId);
+    }
+
+    /** Từ của 1 trường (sắp xếp, không trùng) + tần suất; length = tổng số từ của trường. */
+    static final class FieldTerms {
+        static final FieldTerms EMPTY = new FieldTerms(new String[0], new int[0], 0);
+
+        final String[] terms;
+        final int[] tf;
+        final int length;
+
+        private FieldTerms(String[] terms, int[] tf, int length) {
+            this.terms = terms;
+            this.tf = tf;
+            this.length = length;
+        }
+
+        static FieldTerms of(List<String> tokens) {
+            if (tokens.isEmpty()) return EMPTY;
+            TreeMap<String, Integer> counts = new TreeMap<>();
+            for (String t : tokens) counts.merge(t, 1, Integer::sum);
+            String[] terms = counts.keySet().toArray(new String[0]);
+            int[] tf = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) tf[i] = counts.get(terms[i]);
+            return new FieldTerms(terms, tf, tokens.size());
+        }
+
+        /** Dựng lại từ snapshot (terms đã sắp xếp, không trùng). */
+        static FieldTerms restore(String[] terms, int[] tf, int length) {
+            return (terms.length == 0) ? EMPTY : new FieldTerms(terms, tf, length);
+        }
+
+        int exactTf(String term) {
+            int i = Arrays.binarySearch(terms, term);
+            return (i < 0) ? 0 : tf[i];
+        }
+
+        /** Tổng tần suất các từ bắt đầu bằng prefix (tìm nhị phân rồi quét tiếp). */
+        int prefixTf(String prefix) {
+            int i = Arrays.binarySearch(terms, prefix);
+            if (i < 0) i = -i - 1;
+            int sum = 0;
+            while (i < terms.length && terms[i].startsWith(prefix)) sum += tf[i++];
+            return sum;
+        }
+    }
+
+    /** Min-heap giữ k cặp (điểm, id) tốt nhất; hoà điểm thì id lớn (mới hơn) tốt hơn. */
+    static final class TopK {
+        private final double[] scores;
+        private final long[] ids;
+        private int size;
+
+        TopK(int k) {
+            scores = new double[Math.max(k, 0)];
+            ids = new long[Math.max(k, 0)];
+        }
+
+        void offer(double score, long id) {
+            if (scores.length == 0) return;
+            if (size < scores.length) {
+                scores[size] = score;
+                ids[size] = id;
+                siftUp(size++);
+            } else if (worse(scores[0], ids[0], score, id)) {
+                scores[0] = score;
+                ids[0] = id;
+                siftDown(0);
+            }
+        }
+
+        /** Lấy hết phần tử, tốt nhất trước; heap rỗng sau khi gọi. */
+        long[] drainDescending() {
+            long[] out = new long[size];
+            for (int i = size - 1; i >= 0; i--) {
+                out[i] = ids[0];
+                size--;
+                scores[0] = scores[size];
+                ids[0] = ids[size];
+                siftDown(0);
+            }
+            return out;
+        }
+
+        /** (s1,id1) kém hơn (s2,id2)? */
+        private static boolean worse(double s1, long id1, double s2, long id2) {
+            int c = Double.compare(s1, s2);
+            return c < 0 || (c == 0 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (!worse(scores[i], ids[i], scores[p], ids[p])) break;
+                swap(i, p);
+                i = p;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, m = i;
+                if (l < size && worse(scores[l], ids[l], scores[m], ids[m])) m = l;
+                if (r < size && worse(scores[r], ids[r], scores[m], ids[m])) m = r;
+                if (m == i) return;
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        private void swap(int a, int c) {
+            double s = scores[a]; scores[a] = scores[c]; scores[c] = s;
+            long t = ids[a]; ids[a] = ids[c]; ids[c] = t;
+        }
+    }
+
+    /** Danh sách id tăng dần (mảng long, chèn bằng tìm nhị phân). */
+    static final class PostingList {
+        long[] ids = new long[4];
+        int size;
+
+        void add(long id) {
+            if (size == 0 || id > ids[size - 1]) {
+                grow();
+                ids[size++] = id;
+                return;
+            }
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            grow();
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return false;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        void clear() {
+            ids = new long[4];
+            size = 0;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        private void grow() {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        }
+    }
+}
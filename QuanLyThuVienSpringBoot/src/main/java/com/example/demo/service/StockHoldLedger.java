@@ -0,0 +1,128 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.BorrowTicketRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sổ giữ chỗ mềm theo sách: số cuốn đang được giữ bởi vé mượn PENDING.
+ * - Còn có thể hứa = tồn kho - đang giữ; tạo vé chỉ thành công khi giữ được đủ -> không phát QR
+ *   cho nhiều người hơn số sách (người đến sau được báo hết ngay, không phải xếp hàng ở quầy).
+ * - Mỗi sách 1 bộ đếm nguyên tử (ConcurrentHashMap theo bookId), giữ chỗ = vòng CAS, không khoá.
+ * - Bền vững: chính các vé PENDING trong DB (ghi cùng transaction tạo vé); khởi động và định kỳ
+ *   (stock-hold.reconcile-ms) đối soát lại từ DB: thấy vé tạo / nhả ở node khác, xoá giữ chỗ ảo.
+ *   Giữ chỗ chưa commit của node này được cộng thêm khi đối soát; lệch trong khoảng giữa 2 lần đối soát
+ *   chỉ có thể là giữ dư (phía an toàn), trừ vé node khác vừa tạo.
+ * - Nhả chỗ khi vé rời PENDING (huỷ / hết hạn / đã xác nhận -> đã trừ kho thật), sau khi commit;
+ *   giữ chỗ trong transaction bị rollback thì nhả lại.
+ */
+@Service
+public class StockHoldLedger {
+
+    private final BorrowTicketRepository ticketRepo;
+    private final ConcurrentHashMap<Long, AtomicInteger> held = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, AtomicInteger> inFlight = new ConcurrentHashMap<>();   // giữ chưa commit
+
+    public StockHoldLedger(BorrowTicketRepository ticketRepo) {
+        this.ticketRepo = ticketRepo;
+    }
+
+    /** Nạp lúc khởi động và đối soát định kỳ: đang giữ = vé PENDING trong DB + giữ chưa commit ở node này. */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${stock-hold.reconcile-ms:30000}", initialDelayString = "${stock-hold.reconcile-ms:30000}")
+    public void rebuild() {
+        Map<Long, Integer> pending = new HashMap<>();
+        for (Object[] r : ticketRepo.sumPendingAmountByBook()) {
+            pending.put((Long) r[0], ((Number) r[1]).intValue());
+        }
+        for (Long bookId : held.keySet()) pending.putIfAbsent(bookId, 0);
+        pending.forEach((bookId, amount) -> {
+            AtomicInteger c = counter(bookId);
+            AtomicInteger f = inFlight.get(bookId);
+            int cur, target;
+            do {   // CAS: giữ chỗ chen vào giữa thì đọc lại số chưa commit
+                cur = c.get();
+                target = Math.max(0, amount) + (f == null ? 0 : f.get());
+            } while (!c.compareAndSet(cur, target));
+        });
+    }
+
+    /**
+     * Giữ amount cuốn nếu stock - đang giữ còn đủ. Trong transaction: rollback thì tự nhả.
+     * @param stock tồn kho hiện tại của sách (đọc từ DB)
+     */
+    public boolean hold(Long bookId, int stock, int amount) {
+        if (amount < 1) throw new IllegalArgumentException("Số lượng phải >= 1.");
+        boolean inTx = TransactionSynchronizationManager.isSynchronizationActive();
+        // Ghi nhận "chưa commit" TRƯỚC khi CAS: đối soát chạy chen vào cũng không làm rơi chỗ vừa giữ
+        AtomicInteger f = inTx ? inFlight.computeIfAbsent(bookId, k -> new AtomicInteger()) : null;
+        if (f != null) f.addAndGet(amount);
+        AtomicInteger c = counter(bookId);
+        int cur;
+        do {
+            cur = c.get();
+            if (stock - cur < amount) {
+                if (f != null) f.addAndGet(-amount);
+                return false;
+            }
+        } while (!c.compareAndSet(cur, cur + amount));
+
+        if (f != null) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    f.addAndGet(-amount);
+                    if (status != STATUS_COMMITTED) decrement(bookId, amount);
+                }
+            });
+        }
+        return true;
+    }
+
+    /** Nhả amount cuốn (vé rời PENDING); trong transaction thì chỉ nhả sau khi commit. */
+    public void release(Long bookId, int amount) {
+        if (bookId == null || amount < 1) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            decrement(bookId, amount);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                decrement(bookId, amount);
+            }
+        });
+    }
+
+    /** Số cuốn đang được giữ. */
+    public int held(Long bookId) {
+        AtomicInteger c = held.get(bookId);
+        return c == null ? 0 : c.get();
+    }
+
+    /** Số cuốn còn có thể hứa cho vé mới. */
+    public int availableToPromise(Long bookId, int stock) {
+        return Math.max(0, stock - held(bookId));
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private AtomicInteger counter(Long bookId) {
+        return held.computeIfAbsent(bookId, k -> new AtomicInteger());
+    }
+
+    private void decrement(Long bookId, int amount) {
+        AtomicInteger c = held.get(bookId);
+        if (c == null) return;
+        c.updateAndGet(v -> Math.max(0, v - amount));
+    }
+}
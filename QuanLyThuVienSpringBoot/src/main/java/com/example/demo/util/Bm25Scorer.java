@@ -0,0 +1,45 @@
+package com.example.demo.util;
+
+/**
+ * Điểm liên quan BM25F (BM25 nhiều trường): tần suất từ của từng trường được chuẩn hoá theo độ dài
+ * trường, nhân hệ số boost rồi cộng lại trước khi bão hoà bằng k1.
+ *   tf~   = Σ_f boost_f * tf_f / (1 - b + b * len_f / avgLen_f)
+ *   score = idf * tf~ * (k1 + 1) / (k1 + tf~)
+ * Thứ tự trường theo {@link Field#ordinal()}.
+ */
+public final class Bm25Scorer {
+
+    public enum Field { TITLE, AUTHOR, DESCRIPTION, CATEGORY }
+
+    public static final int FIELDS = Field.values().length;
+
+    private final double k1;
+    private final double b;
+    private final double[] boosts;
+
+    public Bm25Scorer(double k1, double b, double[] boosts) {
+        if (boosts.length != FIELDS) {
+            throw new IllegalArgumentException("Cần " + FIELDS + " hệ số boost, nhận " + boosts.length);
+        }
+        this.k1 = k1;
+        this.b = b;
+        this.boosts = boosts.clone();
+    }
+
+    /** idf không âm (biến thể Lucene): ln(1 + (N - df + 0.5) / (df + 0.5)). */
+    public static double idf(long n, long df) {
+        df = Math.max(0, Math.min(df, n));
+        return Math.log(1.0 + (n - df + 0.5) / (df + 0.5));
+    }
+
+    /** Điểm của 1 từ truy vấn cho 1 tài liệu; tf/len/avgLen đánh chỉ số theo Field.ordinal(). */
+    public double score(double idf, int[] tf, int[] len, double[] avgLen) {
+        double t = 0;
+        for (int f = 0; f < FIELDS; f++) {
+            if (tf[f] == 0 || boosts[f] == 0) continue;
+            double norm = (avgLen[f] > 0) ? (1 - b + b * len[f] / avgLen[f]) : 1.0;
+            t += boosts[f] * tf[f] / norm;
+        }
+        return (t == 0) ? 0 : idf * t * (k1 + 1) / (k1 + t);
+    }
+}
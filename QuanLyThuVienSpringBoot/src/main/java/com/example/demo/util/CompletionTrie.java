@@ -0,0 +1,162 @@
+package com.example.demo.util;
+
+import java.util.*;
+
+/**
+ * Trie nén (radix trie) cho gợi ý theo tiền tố. Mỗi nút giữ sẵn top-K giá trị tốt nhất của
+ * cả nhánh con, nên truy vấn chỉ tốn O(độ dài tiền tố) và không phải duyệt cây.
+ * Thêm/xoá cập nhật lại top-K dọc theo đường đi (O(độ sâu * K * số nhánh)).
+ * Trọng số 1 giá trị = số lần được thêm với cùng khoá (vd số sách cùng tác giả).
+ * Không thread-safe: người gọi tự giữ lock.
+ */
+public final class CompletionTrie<V> {
+
+    private record Scored<V>(V value, int weight) {}
+
+    private static final class Node<V> {
+        String edge;
+        TreeMap<Character, Node<V>> kids;
+        Map<V, Integer> here;
+        List<Scored<V>> top = List.of();
+
+        Node(String edge) { this.edge = edge; }
+
+        boolean isEmpty() {
+            return (kids == null || kids.isEmpty()) && (here == null || here.isEmpty());
+        }
+    }
+
+    private final int topK;
+    private final Comparator<Scored<V>> order;
+    private Node<V> root = new Node<>("");
+
+    /** @param tieBreak thứ tự khi trùng trọng số (trọng số lớn luôn đứng trước) */
+    public CompletionTrie(int topK, Comparator<V> tieBreak) {
+        this(topK, (a, b) -> 0, tieBreak);
+    }
+
+    /**
+     * @param group    xếp trước cả trọng số (vd tên sách trước tác giả)
+     * @param tieBreak thứ tự khi cùng nhóm và trùng trọng số
+     */
+    public CompletionTrie(int topK, Comparator<V> group, Comparator<V> tieBreak) {
+        this.topK = topK;
+        Comparator<Scored<V>> byWeight = (a, b) -> Integer.compare(b.weight(), a.weight());
+        this.order = Comparator.comparing((Scored<V> s) -> s.value(), group)
+                .thenComparing(byWeight)
+                .thenComparing(Scored::value, tieBreak);
+    }
+
+    public void add(String key, V value) {
+        List<Node<V>> path = new ArrayList<>();
+        Node<V> node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            char c = key.charAt(i);
+            if (node.kids == null) node.kids = new TreeMap<>();
+            Node<V> child = node.kids.get(c);
+            if (child == null) {
+                child = new Node<>(key.substring(i));
+                node.kids.put(c, child);
+                node = child;
+                path.add(node);
+                break;
+            }
+            int common = commonPrefix(child.edge, key, i);
+            if (common < child.edge.length()) {
+                // tách cạnh: parent -> mid(phần chung) -> child(phần còn lại)
+                Node<V> mid = new Node<>(child.edge.substring(0, common));
+                child.edge = child.edge.substring(common);
+                mid.kids = new TreeMap<>();
+                mid.kids.put(child.edge.charAt(0), child);
+                mid.top = child.top;
+                node.kids.put(c, mid);
+                child = mid;
+            }
+            node = child;
+            path.add(node);
+            i += common;
+        }
+        if (node.here == null) node.here = new HashMap<>();
+        node.here.merge(value, 1, Integer::sum);
+        for (int p = path.size() - 1; p >= 0; p--) recompute(path.get(p));
+    }
+
+    /** Giảm trọng số của value tại khoá; về 0 thì bỏ, nút rỗng được tỉa. */
+    public void remove(String key, V value) {
+        List<Node<V>> path = new ArrayList<>();
+        Node<V> node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            Node<V> child = (node.kids == null) ? null : node.kids.get(key.charAt(i));
+            if (child == null || !key.startsWith(child.edge, i)) return;
+            node = child;
+            path.add(node);
+            i += child.edge.length();
+        }
+        if (node.here == null) return;
+        Integer w = node.here.get(value);
+        if (w == null) return;
+        if (w > 1) node.here.put(value, w - 1); else node.here.remove(value);
+
+        for (int p = path.size() - 1; p >= 1; p--) {
+            Node<V> n = path.get(p);
+            if (n.isEmpty()) {
+                path.get(p - 1).kids.remove(n.edge.charAt(0));
+            } else {
+                recompute(n);
+            }
+        }
+        recompute(root);
+    }
+
+    /** Tối đa {@code limit} (<= topK) giá trị tốt nhất có khoá bắt đầu bằng {@code prefix}. */
+    public List<V> top(String prefix, int limit) {
+        Node<V> node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            Node<V> child = (node.kids == null) ? null : node.kids.get(prefix.charAt(i));
+            if (child == null) return List.of();
+            int rest = prefix.length() - i;
+            if (rest <= child.edge.length()) {
+                if (!child.edge.startsWith(prefix.substring(i))) return List.of();
+                node = child;
+                break;
+            }
+            if (!prefix.startsWith(child.edge, i)) return List.of();
+            node = child;
+            i += child.edge.length();
+        }
+        int n = Math.min(Math.max(limit, 0), node.top.size());
+        List<V> out = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) out.add(node.top.get(k).value());
+        return out;
+    }
+
+    public void clear() {
+        root = new Node<>("");
+    }
+
+    private void recompute(Node<V> node) {
+        Map<V, Integer> best = new HashMap<>();
+        if (node.here != null) best.putAll(node.here);
+        if (node.kids != null) {
+            for (Node<V> k : node.kids.values()) {
+                for (Scored<V> s : k.top) best.merge(s.value(), s.weight(), Math::max);
+            }
+        }
+        List<Scored<V>> all = new ArrayList<>(best.size());
+        for (Map.Entry<V, Integer> e : best.entrySet()) all.add(new Scored<>(e.getKey(), e.getValue()));
+        all.sort(order);
+        node.top = all.size() > topK ? List.copyOf(all.subList(0, topK)) : List.copyOf(all);
+    }
+
+    private static int commonPrefix(String edge, String key, int from) {
+        int n = Math.min(edge.length(), key.length() - from);
+        int i = 0;
+        while (i < n && edge.charAt(i) == key.charAt(from + i)) i++;
+        return i;
+    }
+}
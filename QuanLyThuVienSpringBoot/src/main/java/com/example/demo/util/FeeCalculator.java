@@ -0,0 +1,69 @@
+package com.example.demo.util;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Bộ tính phí phạt trễ hạn dùng chung (phiếu mượn, thanh toán, vé trả, báo cáo):
+ * - Làm việc trên phút epoch kiểu long, không tạo đối tượng; BigDecimal chỉ tạo ở mép (vnd()).
+ * - Ngày trễ = floor( max(0, (end - due) - freeDays*24h) / 24h ): đủ 24h mới tính 1 ngày, không theo lịch.
+ * - Phí = ngày trễ × số cuốn (tối thiểu 1) × đơn giá/ngày.
+ * - fines(): bản theo lô trên mảng song song cho trang nhiều dòng (báo cáo, /borrow).
+ * Mốc thời gian làm tròn xuống theo phút nên ranh giới 24h có thể lệch dưới 1 phút so với tính theo giây.
+ */
+public final class FeeCalculator {
+    private FeeCalculator() {}
+
+    public static final long MINUTES_PER_DAY = 1440;
+
+    /** Phút epoch của giờ địa phương (coi như UTC — chỉ dùng để lấy hiệu giữa 2 mốc). */
+    public static long epochMinute(LocalDateTime t) {
+        return Math.floorDiv(t.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /** Số ngày trễ tính phạt; 0 nếu chưa trễ hoặc còn trong số ngày miễn phạt. */
+    public static int overdueDays(long dueMinute, long endMinute, int freeDays) {
+        long late = endMinute - dueMinute - Math.max(0, freeDays) * MINUTES_PER_DAY;
+        return late <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, late / MINUTES_PER_DAY);
+    }
+
+    /** Phí (VND) cho daysLate ngày trễ; daysLate âm là lỗi của nơi gọi. */
+    public static long fee(long daysLate, int qty, long perDay) {
+        if (daysLate < 0) throw new IllegalArgumentException("Số ngày trễ không được âm: " + daysLate);
+        if (daysLate == 0 || perDay <= 0) return 0;
+        return Math.multiplyExact(Math.multiplyExact(daysLate, (long) Math.max(1, qty)), perDay);
+    }
+
+    public static long fine(long dueMinute, long endMinute, int qty, long perDay, int freeDays) {
+        return fee(overdueDays(dueMinute, endMinute, freeDays), qty, perDay);
+    }
+
+    /** Bản tiện dụng cho 1 phiếu; due null -> 0. */
+    public static long fine(LocalDateTime due, LocalDateTime end, Integer qty, long perDay, int freeDays) {
+        if (due == null || end == null) return 0;
+        return fine(epochMinute(due), epochMinute(end), qty == null ? 1 : qty, perDay, freeDays);
+    }
+
+    /**
+     * Tính n phiếu một lượt: dueMinute[i], endMinute[i], qty[i] -> outDays[i], outFine[i]
+     * (mảng out có thể null nếu không cần). Trả về tổng phí của cả lô.
+     */
+    public static long fines(long[] dueMinute, long[] endMinute, int[] qty, int n,
+                             long perDay, int freeDays, int[] outDays, long[] outFine) {
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            int days = overdueDays(dueMinute[i], endMinute[i], freeDays);
+            long f = fee(days, qty[i], perDay);
+            if (outDays != null) outDays[i] = days;
+            if (outFine != null) outFine[i] = f;
+            total += f;
+        }
+        return total;
+    }
+
+    /** Mép ra ngoài: VND -> BigDecimal (0 dùng lại hằng ZERO). */
+    public static BigDecimal vnd(long amount) {
+        return amount == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(amount);
+    }
+}
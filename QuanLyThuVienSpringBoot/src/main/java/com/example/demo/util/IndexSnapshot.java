@@ -0,0 +1,142 @@
+package com.example.demo.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Định dạng nhị phân gọn cho snapshot chỉ mục tìm kiếm (big-endian):
+ * <pre>
+ *   int magic "LBX1" | int version | long takenAt (epoch micros, giờ local coi như UTC) | int count
+ *   count x { long id | long categoryId (-1 = null) | str title | str author
+ *             | int descLength | int n | n x { str term | int tf } }
+ *   long crc32 (của toàn bộ phần trước)
+ *   str = int độ dài byte (-1 = null) + UTF-8
+ * </pre>
+ * Ghi ra file tạm rồi đổi tên (atomic) để không bao giờ đọc phải file ghi dở; đọc bằng
+ * FileChannel.map (READ_ONLY), kiểm CRC trước khi parse.
+ */
+public final class IndexSnapshot {
+
+    private static final int MAGIC = 0x4C425831;
+    private static final int VERSION = 1;
+
+    /** 1 sách trong snapshot; description chỉ lưu từ + tần suất (không lưu nguyên văn). */
+    public record Entry(long id, Long categoryId, String title, String author,
+                        int descLength, String[] descTerms, int[] descTf) {}
+
+    public record Data(LocalDateTime takenAt, List<Entry> entries) {}
+
+    private IndexSnapshot() {}
+
+    public static void write(Path file, Data data) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream fos = Files.newOutputStream(tmp);
+             BufferedOutputStream bos = new BufferedOutputStream(fos, 1 << 16)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(bos, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(toMicros(data.takenAt()));
+            out.writeInt(data.entries().size());
+            for (Entry e : data.entries()) {
+                out.writeLong(e.id());
+                out.writeLong(e.categoryId() == null ? -1 : e.categoryId());
+                writeString(out, e.title());
+                writeString(out, e.author());
+                out.writeInt(e.descLength());
+                out.writeInt(e.descTerms().length);
+                for (int i = 0; i < e.descTerms().length; i++) {
+                    writeString(out, e.descTerms()[i]);
+                    out.writeInt(e.descTf()[i]);
+                }
+            }
+            out.flush();
+            // CRC ghi thẳng ra bos (không đi qua CheckedOutputStream)
+            new DataOutputStream(bos).writeLong(crc.getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Đọc snapshot qua mmap; file hỏng/sai định dạng -> IOException. */
+    public static Data read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 28 || size > Integer.MAX_VALUE) throw new IOException("Kích thước snapshot không hợp lệ: " + size);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().limit((int) size - 8));
+            if (crc.getValue() != buf.getLong((int) size - 8)) throw new IOException("Snapshot sai CRC");
+            buf.limit((int) size - 8);
+
+            if (buf.getInt() != MAGIC) throw new IOException("Không phải file snapshot");
+            int version = buf.getInt();
+            if (version != VERSION) throw new IOException("Phiên bản snapshot không hỗ trợ: " + version);
+            LocalDateTime takenAt = fromMicros(buf.getLong());
+            int count = buf.getInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int k = 0; k < count; k++) {
+                long id = buf.getLong();
+                long cat = buf.getLong();
+                String title = readString(buf);
+                String author = readString(buf);
+                int descLength = buf.getInt();
+                int n = buf.getInt();
+                String[] terms = new String[n];
+                int[] tf = new int[n];
+                for (int i = 0; i < n; i++) {
+                    terms[i] = readString(buf);
+                    tf[i] = buf.getInt();
+                }
+                entries.add(new Entry(id, cat < 0 ? null : cat, title, author, descLength, terms, tf));
+            }
+            return new Data(takenAt, entries);
+        } catch (RuntimeException e) {   // BufferUnderflow, độ dài âm... = file hỏng
+            throw new IOException("Snapshot hỏng: " + e, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(MappedByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static long toMicros(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + t.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.demo.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/** Dựng link Trước/Sau cho phân trang keyset: giữ nguyên bộ lọc hiện tại, chỉ thay con trỏ. */
+public final class PageLinks {
+    private PageLinks() {}
+
+    public static final String AFTER = "after";
+    public static final String BEFORE = "before";
+
+    /** Link tới trang sau con trỏ (null nếu không có trang sau). */
+    public static String next(HttpServletRequest req, String cursor) {
+        return cursor == null ? null : withCursor(req, AFTER, cursor);
+    }
+
+    /** Link tới trang trước con trỏ (null nếu đang ở trang đầu). */
+    public static String prev(HttpServletRequest req, String cursor) {
+        return cursor == null ? null : withCursor(req, BEFORE, cursor);
+    }
+
+    private static String withCursor(HttpServletRequest req, String name, String cursor) {
+        return UriComponentsBuilder.fromPath(req.getRequestURI())
+                .query(req.getQueryString())
+                .replaceQueryParam(AFTER)
+                .replaceQueryParam(BEFORE)
+                .replaceQueryParam("page")     // tham số phân trang OFFSET cũ
+                .queryParam(name, cursor)
+                .build().toUriString();
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.demo.util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Bitmap nén kiểu "roaring" cho tập số nguyên không âm (id sách):
+ * chia theo 16 bit cao thành các khối 65536 giá trị; khối thưa (<= 4096 phần tử) lưu mảng char
+ * đã sắp xếp, khối dày lưu bitmap 1024 long. AND/OR/đếm giao làm theo từng khối nên nhanh và gọn.
+ * Không thread-safe: người gọi tự giữ lock (kết quả AND/OR là bitmap mới, không chia sẻ khối).
+ */
+public final class RoaringBitmap {
+
+    static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /* ===================== Thao tác cơ bản ===================== */
+
+    public void add(int x) {
+        checkValue(x);
+        char hi = (char) (x >>> 16);
+        int i = indexOf(hi);
+        if (i < 0) {
+            i = -i - 1;
+            insertAt(i, hi, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) x);
+    }
+
+    public void remove(int x) {
+        if (x < 0) return;
+        int i = indexOf((char) (x >>> 16));
+        if (i < 0) return;
+        Container c = containers[i].remove((char) x);
+        if (c.cardinality() == 0) {
+            removeAt(i);
+        } else {
+            containers[i] = c;
+        }
+    }
+
+    public boolean contains(int x) {
+        if (x < 0) return false;
+        int i = indexOf((char) (x >>> 16));
+        return i >= 0 && containers[i].contains((char) x);
+    }
+
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++) n += containers[i].cardinality();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public RoaringBitmap copy() {
+        RoaringBitmap r = new RoaringBitmap();
+        r.keys = Arrays.copyOf(keys, Math.max(size, 4));
+        r.containers = new Container[Math.max(size, 4)];
+        for (int i = 0; i < size; i++) r.containers[i] = containers[i].copy();
+        r.size = size;
+        return r;
+    }
+
+    /* ===================== Phép toán tập hợp ===================== */
+
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap r = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) i++;
+            else if (a.keys[i] > b.keys[j]) j++;
+            else {
+                Container c = a.containers[i].and(b.containers[j]);
+                if (c.cardinality() > 0) r.append(a.keys[i], c);
+                i++; j++;
+            }
+        }
+        return r;
+    }
+
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap r = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                r.append(a.keys[i], a.containers[i].copy()); i++;
+            } else if (i >= a.size || a.keys[i] > b.keys[j]) {
+                r.append(b.keys[j], b.containers[j].copy()); j++;
+            } else {
+                r.append(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++; j++;
+            }
+        }
+        return r;
+    }
+
+    /** |a ∧ b| mà không tạo bitmap kết quả. */
+    public static int andCardinality(RoaringBitmap a, RoaringBitmap b) {
+        int n = 0, i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) i++;
+            else if (a.keys[i] > b.keys[j]) j++;
+            else { n += a.containers[i].andCardinality(b.containers[j]); i++; j++; }
+        }
+        return n;
+    }
+
+    /* ===================== Duyệt ===================== */
+
+    /** Duyệt tăng dần từ {@code from} (bao gồm); dừng khi consumer trả false. */
+    public void forEachAscending(int from, IntPredicate consumer) {
+        from = Math.max(from, 0);
+        char hiFrom = (char) (from >>> 16);
+        for (int i = 0; i < size; i++) {
+            if (keys[i] < hiFrom) continue;
+            int base = keys[i] << 16;
+            int lo = (keys[i] == hiFrom) ? (from & 0xFFFF) : 0;
+            if (!containers[i].forEachAscending(lo, base, consumer)) return;
+        }
+    }
+
+    /** Duyệt giảm dần từ {@code from} (bao gồm); dừng khi consumer trả false. */
+    public void forEachDescending(int from, IntPredicate consumer) {
+        if (from < 0) return;
+        char hiFrom = (char) (from >>> 16);
+        for (int i = size - 1; i >= 0; i--) {
+            if (keys[i] > hiFrom) continue;
+            int base = keys[i] << 16;
+            int lo = (keys[i] == hiFrom) ? (from & 0xFFFF) : 0xFFFF;
+            if (!containers[i].forEachDescending(lo, base, consumer)) return;
+        }
+    }
+
+    public int[] toArray() {
+        int[] out = new int[cardinality()];
+        int[] n = {0};
+        forEachAscending(0, v -> { out[n[0]++] = v; return true; });
+        return out;
+    }
+
+    /* ===================== Nội bộ ===================== */
+
+    private static void checkValue(int x) {
+        if (x < 0) throw new IllegalArgumentException("Giá trị phải không âm: " + x);
+    }
+
+    private int indexOf(char hi) {
+        return Arrays.binarySearch(keys, 0, size, hi);
+    }
+
+    private void insertAt(int i, char hi, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = hi;
+        containers[i] = c;
+        size++;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    private void append(char hi, Container c) {
+        insertAt(size, hi, c);
+    }
+
+    /** 1 khối 65536 giá trị (16 bit thấp). Thao tác có thể trả về khối kiểu khác (mảng <-> bitmap). */
+    private abstract static class Container {
+        abstract Container add(char x);
+        abstract Container remove(char x);
+        abstract boolean contains(char x);
+        abstract int cardinality();
+        abstract Container copy();
+        abstract Container and(Container o);
+        abstract Container or(Container o);
+        abstract int andCardinality(Container o);
+        abstract boolean forEachAscending(int lo, int base, IntPredicate c);
+        abstract boolean forEachDescending(int hi, int base, IntPredicate c);
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] v;
+        int n;
+
+        ArrayContainer() { this(new char[4], 0); }
+        ArrayContainer(char[] v, int n) { this.v = v; this.n = n; }
+
+        @Override Container add(char x) {
+            int p = Arrays.binarySearch(v, 0, n, x);
+            if (p >= 0) return this;
+            if (n >= ARRAY_MAX) return toBitmap().add(x);
+            p = -p - 1;
+            if (n == v.length) v = Arrays.copyOf(v, Math.min(n * 2, ARRAY_MAX));
+            System.arraycopy(v, p, v, p + 1, n - p);
+            v[p] = x;
+            n++;
+            return this;
+        }
+
+        @Override Container remove(char x) {
+            int p = Arrays.binarySearch(v, 0, n, x);
+            if (p < 0) return this;
+            System.arraycopy(v, p + 1, v, p, n - p - 1);
+            n--;
+            return this;
+        }
+
+        @Override boolean contains(char x) { return Arrays.binarySearch(v, 0, n, x) >= 0; }
+        @Override int cardinality() { return n; }
+        @Override Container copy() { return new ArrayContainer(Arrays.copyOf(v, Math.max(n, 4)), n); }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < n; i++) b.set(v[i]);
+            return b;
+        }
+
+        @Override Container and(Container o) {
+            if (o instanceof BitmapContainer b) {
+                char[] out = new char[n];
+                int k = 0;
+                for (int i = 0; i < n; i++) if (b.contains(v[i])) out[k++] = v[i];
+                return new ArrayContainer(out, k);
+            }
+            ArrayContainer a = (ArrayContainer) o;
+            char[] out = new char[Math.min(n, a.n)];
+            int i = 0, j = 0, k = 0;
+            while (i < n && j < a.n) {
+                if (v[i] < a.v[j]) i++;
+                else if (v[i] > a.v[j]) j++;
+                else { out[k++] = v[i]; i++; j++; }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        @Override Container or(Container o) {
+            if (o instanceof BitmapContainer b) return b.or(this);
+            ArrayContainer a = (ArrayContainer) o;
+            if (n + a.n > ARRAY_MAX) return toBitmap().or(a);
+            char[] out = new char[n + a.n];
+            int i = 0, j = 0, k = 0;
+            while (i < n || j < a.n) {
+                if (j >= a.n || (i < n && v[i] < a.v[j])) out[k++] = v[i++];
+                else if (i >= n || v[i] > a.v[j]) out[k++] = a.v[j++];
+                else { out[k++] = v[i]; i++; j++; }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        @Override int andCardinality(Container o) {
+            if (o instanceof BitmapContainer b) {
+                int k = 0;
+                for (int i = 0; i < n; i++) if (b.contains(v[i])) k++;
+                return k;
+            }
+            ArrayContainer a = (ArrayContainer) o;
+            int i = 0, j = 0, k = 0;
+            while (i < n && j < a.n) {
+                if (v[i] < a.v[j]) i++;
+                else if (v[i] > a.v[j]) j++;
+                else { k++; i++; j++; }
+            }
+            return k;
+        }
+
+        @Override boolean forEachAscending(int lo, int base, IntPredicate c) {
+            int p = Arrays.binarySearch(v, 0, n, (char) lo);
+            for (int i = (p >= 0) ? p : -p - 1; i < n; i++) {
+                if (!c.test(base | v[i])) return false;
+            }
+            return true;
+        }
+
+        @Override boolean forEachDescending(int hi, int base, IntPredicate c) {
+            int p = Arrays.binarySearch(v, 0, n, (char) hi);
+            for (int i = (p >= 0) ? p : -p - 2; i >= 0; i--) {
+                if (!c.test(base | v[i])) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] w;
+        int card;
+
+        BitmapContainer() { this(new long[1024], 0); }
+        BitmapContainer(long[] w, int card) { this.w = w; this.card = card; }
+
+        void set(char x) {
+            long before = w[x >>> 6];
+            w[x >>> 6] = before | (1L << x);
+            if (before != w[x >>> 6]) card++;
+        }
+
+        @Override Container add(char x) { set(x); return this; }
+
+        @Override Container remove(char x) {
+            long before = w[x >>> 6];
+            w[x >>> 6] = before & ~(1L << x);
+            if (before != w[x >>> 6] && --card <= ARRAY_MAX) return toArray();
+            return this;
+        }
+
+        @Override boolean contains(char x) { return (w[x >>> 6] & (1L << x)) != 0; }
+        @Override int cardinality() { return card; }
+        @Override Container copy() { return new BitmapContainer(w.clone(), card); }
+
+        ArrayContainer toArray() {
+            char[] out = new char[card];
+            int k = 0;
+            for (int i = 0; i < w.length; i++) {
+                long word = w[i];
+                while (word != 0) {
+                    out[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        @Override Container and(Container o) {
+            if (o instanceof ArrayContainer a) return a.and(this);
+            BitmapContainer b = (BitmapContainer) o;
+            long[] out = new long[1024];
+            int k = 0;
+            for (int i = 0; i < 1024; i++) { out[i] = w[i] & b.w[i]; k += Long.bitCount(out[i]); }
+            BitmapContainer r = new BitmapContainer(out, k);
+            return k <= ARRAY_MAX ? r.toArray() : r;
+        }
+
+        @Override Container or(Container o) {
+            BitmapContainer r = (BitmapContainer) copy();
+            if (o instanceof ArrayContainer a) {
+                for (int i = 0; i < a.n; i++) r.set(a.v[i]);
+                return r;
+            }
+            BitmapContainer b = (BitmapContainer) o;
+            int k = 0;
+            for (int i = 0; i < 1024; i++) { r.w[i] |= b.w[i]; k += Long.bitCount(r.w[i]); }
+            r.card = k;
+            return r;
+        }
+
+        @Override int andCardinality(Container o) {
+            if (o instanceof ArrayContainer a) return a.andCardinality(this);
+            BitmapContainer b = (BitmapContainer) o;
+            int k = 0;
+            for (int i = 0; i < 1024; i++) k += Long.bitCount(w[i] & b.w[i]);
+            return k;
+        }
+
+        @Override boolean forEachAscending(int lo, int base, IntPredicate c) {
+            for (int x = lo; x <= 0xFFFF; x++) {
+                long word = w[x >>> 6] >>> (x & 63);
+                if (word == 0) { x |= 63; continue; }
+                x += Long.numberOfTrailingZeros(word);
+                if (!c.test(base | x)) return false;
+            }
+            return true;
+        }
+
+        @Override boolean forEachDescending(int hi, int base, IntPredicate c) {
+            for (int x = hi; x >= 0; x--) {
+                long word = w[x >>> 6] << (63 - (x & 63));
+                if (word == 0) { x &= ~63; continue; }
+                x -= Long.numberOfLeadingZeros(word);
+                if (!c.test(base | x)) return false;
+            }
+            return true;
+        }
+    }
+}
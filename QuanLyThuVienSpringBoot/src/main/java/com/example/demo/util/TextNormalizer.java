@@ -0,0 +1,52 @@
+package com.example.demo.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** Chuẩn hoá chuỗi tiếng Việt cho tìm kiếm: bỏ dấu, về chữ thường, tách từ. */
+public final class TextNormalizer {
+    private TextNormalizer() {}
+
+    /** "Nguyễn Du" -> "nguyen du" (bỏ dấu thanh, dấu mũ; đ/Đ -> d). */
+    public static String fold(String s) {
+        if (s == null || s.isEmpty()) return "";
+        String nfd = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(nfd.length());
+        for (int i = 0; i < nfd.length(); i++) {
+            char c = nfd.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (c == 'đ' || c == 'Đ') c = 'd';
+            sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /** Bỏ dấu rồi tách theo ký tự không phải chữ/số; giữ nguyên thứ tự, có thể trùng. */
+    public static List<String> tokenize(String s) {
+        return split(fold(s));
+    }
+
+    /** Như tokenize nhưng GIỮ dấu (chỉ về chữ thường) – dùng làm dạng hiển thị cho gợi ý. */
+    public static List<String> words(String s) {
+        if (s == null || s.isEmpty()) return new ArrayList<>();
+        return split(Normalizer.normalize(s, Normalizer.Form.NFC).toLowerCase(Locale.ROOT));
+    }
+
+    private static List<String> split(String f) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < f.length(); i++) {
+            boolean word = Character.isLetterOrDigit(f.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(f.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) out.add(f.substring(start));
+        return out;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.demo.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: wheelSize ô, mỗi ô tickMs. Mốc hết hạn rơi vào ô (tick % wheelSize)
+ * kèm số vòng còn phải chờ -> schedule/cancel O(1), advance chỉ duyệt các ô đã tới lượt.
+ * Người gọi tự đẩy thời gian (advance(now)), lớp này không tạo luồng. Mỗi khoá chỉ có 1 mốc:
+ * schedule lại thì mốc cũ bị huỷ. Các phương thức đồng bộ trên chính đối tượng.
+ */
+public class TimingWheel<K> {
+
+    private static final class Entry<K> {
+        final K key;
+        long rounds;
+        boolean cancelled;
+
+        Entry(K key, long rounds) {
+            this.key = key;
+            this.rounds = rounds;
+        }
+    }
+
+    private final long tickMs;
+    private final long startMs;
+    private final ArrayDeque<Entry<K>>[] buckets;
+    private final Map<K, Entry<K>> index = new HashMap<>();
+    private long tick;   // tick kế tiếp cần xử lý; tick t phủ các mốc <= startMs + t * tickMs
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs < 1 || wheelSize < 1) throw new IllegalArgumentException("tickMs và wheelSize phải >= 1.");
+        this.tickMs = tickMs;
+        this.startMs = startMs;
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) buckets[i] = new ArrayDeque<>();
+    }
+
+    /** Đặt (hoặc đặt lại) mốc hết hạn cho key; mốc đã qua sẽ nổ ở lần advance kế tiếp. */
+    public synchronized void schedule(K key, long deadlineMs) {
+        cancel(key);
+        long due = Math.max(tick, ceilDiv(deadlineMs - startMs, tickMs));
+        Entry<K> e = new Entry<>(key, (due - tick) / buckets.length);
+        buckets[(int) (due % buckets.length)].add(e);
+        index.put(key, e);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Entry<K> e = index.remove(key);
+        if (e == null) return false;
+        e.cancelled = true;   // bỏ khỏi ô khi ô đó được duyệt
+        return true;
+    }
+
+    /** Xử lý mọi tick đã tới tính đến nowMs; gọi expired cho từng key hết hạn (theo thứ tự tick). */
+    public void advance(long nowMs, Consumer<K> expired) {
+        ArrayDeque<K> fired = new ArrayDeque<>();
+        synchronized (this) {
+            while (startMs + tick * tickMs <= nowMs) {
+                Iterator<Entry<K>> it = buckets[(int) (tick % buckets.length)].iterator();
+                while (it.hasNext()) {
+                    Entry<K> e = it.next();
+                    if (e.cancelled) {
+                        it.remove();
+                    } else if (e.rounds > 0) {
+                        e.rounds--;
+                    } else {
+                        it.remove();
+                        index.remove(e.key);
+                        fired.add(e.key);
+                    }
+                }
+                tick++;
+            }
+        }
+        fired.forEach(expired);   // ngoài khoá: callback có thể schedule lại
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo.util;
+
+import java.util.*;
+
+/**
+ * Chỉ mục trigram trên TỪ VỰNG (các từ đã bỏ dấu), không phải trên sách:
+ * chi phí tra cứu phụ thuộc độ dài từ + số từ gần giống, không phụ thuộc số sách.
+ * - Posting được chia theo (trigram, độ dài từ) nên chỉ quét các từ có độ dài trong [len-k, len+k].
+ * - Ứng viên được lọc theo bổ đề q-gram (mỗi phép sửa phá tối đa 3 trigram) rồi xác nhận
+ *   bằng khoảng cách Damerau–Levenshtein có ngưỡng (dừng sớm khi vượt k).
+ * Không thread-safe: người gọi tự giữ lock.
+ */
+public final class TrigramIndex {
+
+    /** Giới hạn số từ được xét cho 1 truy vấn (giữ chi phí bị chặn). */
+    static final int MAX_CANDIDATES = 2000;
+
+    /** 1 từ khớp gần đúng. */
+    public record Match(String term, int distance, double similarity) {}
+
+    private static final class Entry {
+        int refs;
+        String display;
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, List<String>> postings = new HashMap<>();   // trigram|len -> từ
+
+    /** Tăng tham chiếu của từ; lần đầu thì index trigram. display = dạng hiển thị (có dấu), có thể null. */
+    public void add(String term, String display) {
+        if (term == null || term.isEmpty()) return;
+        Entry e = entries.get(term);
+        if (e == null) {
+            e = new Entry();
+            entries.put(term, e);
+            for (String g : grams(term)) {
+                postings.computeIfAbsent(key(g, term.length()), k -> new ArrayList<>()).add(term);
+            }
+        }
+        e.refs++;
+        if (e.display == null && display != null && !display.isEmpty()) e.display = display;
+    }
+
+    /** Giảm tham chiếu; về 0 thì bỏ khỏi chỉ mục. */
+    public void remove(String term) {
+        Entry e = entries.get(term);
+        if (e == null || --e.refs > 0) return;
+        entries.remove(term);
+        for (String g : grams(term)) {
+            String k = key(g, term.length());
+            List<String> list = postings.get(k);
+            if (list != null && list.remove(term) && list.isEmpty()) postings.remove(k);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        postings.clear();
+    }
+
+    public boolean contains(String term) {
+        return entries.containsKey(term);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Dạng hiển thị của từ (vd "nguyễn" cho "nguyen"); không có thì trả lại chính từ. */
+    public String display(String term) {
+        Entry e = entries.get(term);
+        return (e == null || e.display == null) ? term : e.display;
+    }
+
+    /** Số lỗi cho phép theo độ dài từ: <=2 ký tự: 0, <=5: 1, còn lại: 2. */
+    public static int maxEditsFor(String term) {
+        int n = term.length();
+        return n <= 2 ? 0 : (n <= 5 ? 1 : 2);
+    }
+
+    /**
+     * Các từ cách {@code query} tối đa {@code maxEdits} phép sửa (chèn/xoá/thay/đảo 2 ký tự kề),
+     * xếp theo khoảng cách tăng dần rồi số trigram chung giảm dần; tối đa {@code limit} kết quả.
+     */
+    public List<Match> lookup(String query, int maxEdits, int limit) {
+        if (query == null || query.isEmpty() || limit <= 0) return List.of();
+        List<String> qGrams = grams(query);
+        int minShared = Math.max(1, qGrams.size() - 3 * maxEdits);
+        int len = query.length();
+
+        Map<String, Integer> shared = new HashMap<>();
+        int scanned = 0;
+        outer:
+        for (int l = Math.max(1, len - maxEdits); l <= len + maxEdits; l++) {
+            for (String g : qGrams) {
+                List<String> list = postings.get(key(g, l));
+                if (list == null) continue;
+                for (String t : list) {
+                    shared.merge(t, 1, Integer::sum);
+                    if (++scanned >= MAX_CANDIDATES) break outer;
+                }
+            }
+        }
+
+        List<Match> out = new ArrayList<>();
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(shared.entrySet());
+        ranked.sort((a, b) -> b.getValue() - a.getValue());
+        Map<String, Integer> sharedBy = new HashMap<>();
+        for (Map.Entry<String, Integer> c : ranked) {
+            if (c.getValue() < minShared) break;
+            int d = distance(query, c.getKey(), maxEdits);
+            if (d > maxEdits) continue;
+            double sim = 1.0 - (double) d / Math.max(len, c.getKey().length());
+            out.add(new Match(c.getKey(), d, sim));
+            sharedBy.put(c.getKey(), c.getValue());
+        }
+        out.sort(Comparator.comparingInt(Match::distance)
+                .thenComparing(m -> -sharedBy.get(m.term()))
+                .thenComparing(Match::term));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    /** Damerau–Levenshtein (optimal string alignment) có ngưỡng; trả max+1 khi vượt ngưỡng. */
+    public static int distance(String a, String b, int max) {
+        int n = a.length(), m = b.length();
+        if (Math.abs(n - m) > max) return max + 1;
+        int[] prev2 = new int[m + 1], prev = new int[m + 1], cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) prev[j] = j;
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    v = Math.min(v, prev2[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = prev2; prev2 = prev; prev = cur; cur = t;
+        }
+        return Math.min(prev[m], max + 1);
+    }
+
+    /** Trigram có đệm đầu/cuối: "kieu" -> $ki, kie, ieu, eu$. */
+    static List<String> grams(String term) {
+        String s = "$" + term + "$";
+        if (s.length() < 3) return List.of(s);
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) out.add(s.substring(i, i + 3));
+        return new ArrayList<>(out);
+    }
+
+    private static String key(String gram, int len) {
+        return gram + '|' + len;
+    }
+}
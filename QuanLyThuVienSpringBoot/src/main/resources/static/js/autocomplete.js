@@ -0,0 +1,35 @@
+// Gợi ý khi gõ cho ô tìm sách (#q): gọi /api/search/suggest, đổ vào <datalist>.
+(function () {
+  var input = document.getElementById('q');
+  if (!input) return;
+  var base = input.getAttribute('data-suggest-url') || '/api/search/suggest';
+
+  var list = document.createElement('datalist');
+  list.id = 'q-suggest';
+  input.setAttribute('list', list.id);
+  input.setAttribute('autocomplete', 'off');
+  input.parentNode.appendChild(list);
+
+  var timer = null, last = '';
+  input.addEventListener('input', function () {
+    clearTimeout(timer);
+    timer = setTimeout(function () {
+      var q = input.value;
+      if (q.trim().length < 2 || q === last) return;
+      last = q;
+      fetch(base + '?limit=8&q=' + encodeURIComponent(q), { headers: { 'Accept': 'application/json' } })
+        .then(function (r) { return r.ok ? r.json() : []; })
+        .then(function (items) {
+          if (q !== input.value) return; // người dùng đã gõ tiếp
+          list.innerHTML = '';
+          items.forEach(function (it) {
+            var opt = document.createElement('option');
+            opt.value = it.text;
+            opt.label = it.type === 'AUTHOR' ? 'Tác giả' : 'Tên sách';
+            list.appendChild(opt);
+          });
+        })
+        .catch(function () { /* bỏ qua: gợi ý chỉ là tiện ích */ });
+    }, 120);
+  });
+})();
@@ -0,0 +1,155 @@
+package com.example.demo.bench;
+
+import com.example.demo.model.Book;
+import com.example.demo.service.ConfirmRetryExecutor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Xác nhận đồng thời trên vài dòng "nóng" (H2 trong bộ nhớ, 8 luồng ~ 8 quầy):
+ * - pessimistic: SELECT ... FOR UPDATE rồi sửa (đường cũ với findByToken có @Lock).
+ * - optimistic: đọc thường, sửa, @Version kiểm tra lúc flush; xung đột -> ConfirmRetryExecutor thử lại.
+ * Mỗi thao tác có 1 truy vấn đọc phụ (giả lập kiểm tra hạn mức / tạo phiếu) trong transaction.
+ * Bộ đếm phụ: waitUs = thời gian chờ khoá (pessimistic) hoặc bỏ phí cho các lần thử lỗi + backoff
+ * (optimistic); retries = số lần thử lại; gaveUp = số thao tác hết lượt thử.
+ * Chạy: main() từ IDE, hoặc
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) com.example.demo.bench.ConfirmLockingBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Threads(8)
+@Fork(1)
+public class ConfirmLockingBenchmark {
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            TransactionAutoConfiguration.class})
+    @EntityScan("com.example.demo.model")
+    static class Config {}
+
+    /** Số dòng bị tranh chấp: 1 = mọi quầy cùng 1 vé/sách, 16 = phân tán hơn. */
+    @Param({"1", "16"})
+    int hotRows;
+
+    ConfigurableApplicationContext ctx;
+    EntityManager em;
+    TransactionTemplate tx;
+    ConfirmRetryExecutor retry;
+    List<Long> ids;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long waitUs;
+        public long retries;
+        public long gaveUp;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = new SpringApplicationBuilder(Config.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:confirm-bench;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=16",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.sql.init.mode=never",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.security=WARN",
+                        "--logging.level.org.thymeleaf=WARN");
+        em = SharedEntityManagerCreator.createSharedEntityManager(ctx.getBean(EntityManagerFactory.class));
+        PlatformTransactionManager txManager = ctx.getBean(PlatformTransactionManager.class);
+        tx = new TransactionTemplate(txManager);
+        retry = new ConfirmRetryExecutor(txManager);
+        ids = new ArrayList<>();
+        tx.executeWithoutResult(s -> {
+            for (int i = 0; i < hotRows; i++) {
+                Book b = new Book();
+                b.setTitle("Sách nóng " + i);
+                b.setQuantity(1_000_000);
+                em.persist(b);
+                ids.add(b.getId());
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public void pessimistic(Counters c, Blackhole bh) {
+        Long id = pick();
+        tx.executeWithoutResult(s -> {
+            long t0 = System.nanoTime();
+            Book b = em.find(Book.class, id, LockModeType.PESSIMISTIC_WRITE);
+            c.waitUs += (System.nanoTime() - t0) / 1_000;
+            work(b, bh);
+        });
+    }
+
+    @Benchmark
+    public void optimistic(Counters c, Blackhole bh) {
+        Long id = pick();
+        long first = System.nanoTime();
+        long[] lastStart = {first};
+        int[] attempts = {0};
+        try {
+            retry.execute(() -> {
+                attempts[0]++;
+                lastStart[0] = System.nanoTime();
+                work(em.find(Book.class, id), bh);
+                em.flush();
+                return null;
+            });
+        } catch (IllegalStateException e) {   // hết số lần thử -> quầy phải quét lại
+            c.gaveUp++;
+        }
+        c.waitUs += (lastStart[0] - first) / 1_000;
+        c.retries += attempts[0] - 1;
+    }
+
+    private Long pick() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private void work(Book b, Blackhole bh) {
+        bh.consume(em.createQuery("select count(b) from Book b where b.quantity > 0").getSingleResult());
+        b.setQuantity(b.getQuantity() - 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConfirmLockingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
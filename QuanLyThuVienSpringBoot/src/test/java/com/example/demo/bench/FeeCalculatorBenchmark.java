@@ -0,0 +1,108 @@
+package com.example.demo.bench;
+
+import com.example.demo.util.FeeCalculator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tính phạt cho 1 lô phiếu mượn (trang báo cáo / /borrow), đo thời gian và cấp phát mỗi lô:
+ * - legacy: cách cũ trên LocalDateTime + Duration + BigDecimal cho từng dòng.
+ * - single: FeeCalculator.fine() từng dòng trên phút epoch.
+ * - batch: FeeCalculator.fines() trên mảng song song, ghi vào mảng out dựng sẵn.
+ * Cột gc.alloc.rate.norm (GCProfiler) là số byte cấp phát mỗi lô: single / batch ~ 0.
+ * Chạy: main() từ IDE, hoặc
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) com.example.demo.bench.FeeCalculatorBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeeCalculatorBenchmark {
+
+    private static final long FINE_PER_DAY = 5000;
+    private static final int FREE_DAYS = 0;
+
+    @Param({"1000", "10000"})
+    int loans;
+
+    LocalDateTime now;
+    LocalDateTime[] dueDates;
+    Integer[] amounts;
+
+    long nowMinute;
+    long[] dueMinutes;
+    long[] endMinutes;
+    int[] qty;
+    int[] outDays;
+    long[] outFines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom rnd = new SplittableRandom(42);
+        now = LocalDateTime.of(2025, 6, 1, 12, 0);
+        nowMinute = FeeCalculator.epochMinute(now);
+        dueDates = new LocalDateTime[loans];
+        amounts = new Integer[loans];
+        dueMinutes = new long[loans];
+        endMinutes = new long[loans];
+        qty = new int[loans];
+        outDays = new int[loans];
+        outFines = new long[loans];
+        for (int i = 0; i < loans; i++) {
+            // hạn trả trong khoảng 30 ngày trước .. 14 ngày sau "bây giờ"
+            dueDates[i] = now.plusMinutes(rnd.nextLong(-30 * 1440, 14 * 1440));
+            amounts[i] = 1 + rnd.nextInt(3);
+            dueMinutes[i] = FeeCalculator.epochMinute(dueDates[i]);
+            endMinutes[i] = nowMinute;
+            qty[i] = amounts[i];
+        }
+    }
+
+    @Benchmark
+    public long legacy() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < loans; i++) {
+            long hoursLate = Math.max(0L, Duration.between(dueDates[i], now).toHours());
+            long effectiveHours = Math.max(0L, hoursLate - FREE_DAYS * 24L);
+            int overdue = (int) (effectiveHours / 24L);
+            BigDecimal fine = overdue > 0
+                    ? BigDecimal.valueOf((long) overdue * FINE_PER_DAY * amounts[i])
+                    : BigDecimal.ZERO;
+            total = total.add(fine);
+        }
+        return total.longValue();
+    }
+
+    @Benchmark
+    public long single() {
+        long total = 0;
+        for (int i = 0; i < loans; i++) {
+            total += FeeCalculator.fine(dueMinutes[i], nowMinute, qty[i], FINE_PER_DAY, FREE_DAYS);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long batch() {
+        return FeeCalculator.fines(dueMinutes, endMinutes, qty, loans, FINE_PER_DAY, FREE_DAYS, outDays, outFines);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FeeCalculatorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
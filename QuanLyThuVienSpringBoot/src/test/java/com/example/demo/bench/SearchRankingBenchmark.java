@@ -0,0 +1,113 @@
+package com.example.demo.bench;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Category;
+import com.example.demo.repository.BookDescriptionRepository;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.CategoryRepository;
+import com.example.demo.service.SearchService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chi phí xếp hạng BM25F + chọn top-k trên 100k sách giả lập (chỉ mục trong bộ nhớ, không DB).
+ * - common: 1 từ rất phổ biến -> tập ứng viên lớn, trang đầu (k = 6).
+ * - twoTerms: 2 từ, giao posting rồi chấm điểm.
+ * - deepPage: cùng truy vấn phổ biến nhưng trang 50 (k = 306).
+ * Chạy: main() từ IDE, hoặc
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) com.example.demo.bench.SearchRankingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchRankingBenchmark {
+
+    private static final String[] WORDS = {
+            "truyện", "lịch", "sử", "việt", "nam", "văn", "học", "khoa", "kinh", "tế", "tâm", "lý",
+            "kỹ", "năng", "sống", "thiếu", "nhi", "tiểu", "thuyết", "thơ", "triết", "nghệ", "thuật",
+            "đời", "người", "thế", "giới", "chiến", "tranh", "hoà", "bình", "tình", "yêu", "gia", "đình"};
+    private static final String[] AUTHORS = {
+            "Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Vũ", "Đặng", "Bùi", "Đỗ", "Hồ",
+            "Văn", "Thị", "Minh", "Hữu", "Anh", "Du", "Cao", "Hoài", "Phụng", "Tuân"};
+
+    @Param("100000")
+    int books;
+
+    SearchService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom rnd = new SplittableRandom(42);
+        List<Category> categories = new ArrayList<>();
+        for (long c = 1; c <= 20; c++) {
+            Category cat = new Category();
+            cat.setId(c);
+            cat.setName(WORDS[(int) c % WORDS.length] + " " + WORDS[(int) (c * 7) % WORDS.length]);
+            categories.add(cat);
+        }
+        List<Book> all = new ArrayList<>(books);
+        List<Object[]> bodies = new ArrayList<>(books);
+        for (long id = 1; id <= books; id++) {
+            Book b = new Book();
+            b.setId(id);
+            b.setTitle(phrase(rnd, WORDS, 2 + rnd.nextInt(5)));
+            b.setAuthor(phrase(rnd, AUTHORS, 2 + rnd.nextInt(2)));
+            bodies.add(new Object[]{id, phrase(rnd, WORDS, 20 + rnd.nextInt(40))});
+            b.setCategory(categories.get(rnd.nextInt(categories.size())));
+            all.add(b);
+        }
+        BookRepository bookRepo = mock(BookRepository.class);
+        CategoryRepository categoryRepo = mock(CategoryRepository.class);
+        when(categoryRepo.findAll()).thenReturn(categories);
+        BookDescriptionRepository descriptionRepo = mock(BookDescriptionRepository.class);
+        when(bookRepo.findAll(any(Sort.class))).thenReturn(all);
+        when(descriptionRepo.findAllBodies()).thenReturn(bodies);
+        service = new SearchService(bookRepo, categoryRepo, descriptionRepo);
+        service.rebuild();
+    }
+
+    @Benchmark
+    public Object common() {
+        return service.searchIds("nguyen", PageRequest.of(0, 6));
+    }
+
+    @Benchmark
+    public Object twoTerms() {
+        return service.searchIds("lich su", PageRequest.of(0, 6));
+    }
+
+    @Benchmark
+    public Object deepPage() {
+        return service.searchIds("nguyen", PageRequest.of(50, 6));
+    }
+
+    private static String phrase(SplittableRandom rnd, String[] words, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(words[rnd.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SearchRankingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.filter;
+
+import com.example.demo.repository.IdempotencyRecordRepository;
+import com.example.demo.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/** Tests for IdempotencyFilter (only successful outcomes are replayed). */
+@Tag("unit")
+class IdempotencyFilterTest {
+
+    IdempotencyFilter filter;
+    AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        filter = new IdempotencyFilter(new IdempotencyService(mock(IdempotencyRecordRepository.class)));
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "reader", "x", List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("failed submit (redirect back with error) is not stored; retry runs again, success is then replayed")
+    void failureReleased_successReplayed() throws Exception {
+        MockHttpServletResponse first = post(chain(false, "/borrow"));
+        assertThat(first.getRedirectedUrl()).isEqualTo("/borrow");
+
+        MockHttpServletResponse retry = post(chain(true, "/ticket/borrow/7?back=/borrow"));
+        assertThat(retry.getHeader("Idempotent-Replayed")).isNull();
+        assertThat(runs.get()).isEqualTo(2);
+
+        MockHttpServletResponse dup = post(chain(true, "/ticket/borrow/8?back=/borrow"));
+        assertThat(dup.getHeader("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(dup.getHeader("Location")).isEqualTo("/ticket/borrow/7?back=/borrow");
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    private MockHttpServletResponse post(FilterChain chain) throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("POST", "/ticket/borrow/create/5");
+        req.addParameter("amount", "1");
+        req.addParameter(IdempotencyFilter.FORM_FIELD, "k-12345678");
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        filter.doFilter(req, res, chain);
+        return res;
+    }
+
+    private FilterChain chain(boolean succeed, String location) {
+        return (req, res) -> {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes((MockHttpServletRequest) req));
+            runs.incrementAndGet();
+            if (succeed) IdempotencyFilter.markSucceeded();
+            ((HttpServletResponse) res).sendRedirect(location);
+        };
+    }
+}
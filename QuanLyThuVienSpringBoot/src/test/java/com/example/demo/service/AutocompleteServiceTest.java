@@ -0,0 +1,75 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.service.AutocompleteService.Completion;
+import com.example.demo.service.AutocompleteService.Kind;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests for AutocompleteService (prefix trie, incremental updates). */
+@Tag("unit")
+class AutocompleteServiceTest {
+
+    AutocompleteService service;
+
+    @BeforeEach
+    void setUp() {
+        BookRepository bookRepo = mock(BookRepository.class);
+        when(bookRepo.findAllTitleAuthor()).thenReturn(List.of(
+                new Object[]{1L, "Truyện Kiều", "Nguyễn Du"},
+                new Object[]{2L, "Truyện ngắn Nam Cao", "Nam Cao"},
+                new Object[]{3L, "Chí Phèo", "Nam Cao"}));
+        service = new AutocompleteService(bookRepo);
+        service.rebuild();
+    }
+
+    @Test
+    @DisplayName("prefix without accents completes titles first, then authors by popularity")
+    void prefix_completes() {
+        assertThat(service.complete("truy", 10)).containsExactly(
+                new Completion("Truyện Kiều", Kind.TITLE),
+                new Completion("Truyện ngắn Nam Cao", Kind.TITLE));
+
+        assertThat(service.complete("Nam", 10)).containsExactly(
+                new Completion("Truyện ngắn Nam Cao", Kind.TITLE),
+                new Completion("Nam Cao", Kind.AUTHOR));
+        // trong nhóm tác giả: Nam Cao (2 sách) trước Nguyễn Du (1 sách)
+        assertThat(service.complete("n", 10)).containsExactly(
+                new Completion("Truyện ngắn Nam Cao", Kind.TITLE),
+                new Completion("Nam Cao", Kind.AUTHOR),
+                new Completion("Nguyễn Du", Kind.AUTHOR));
+    }
+
+    @Test
+    @DisplayName("matches from any word start; trailing space means next word")
+    void wordStart_andTrailingSpace() {
+        assertThat(service.complete("kieu", 5)).containsExactly(new Completion("Truyện Kiều", Kind.TITLE));
+        assertThat(service.complete("truyen n", 5)).containsExactly(new Completion("Truyện ngắn Nam Cao", Kind.TITLE));
+        assertThat(service.complete("  ", 5)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("save/delete update the trie incrementally")
+    void incrementalUpdates() {
+        Book b = new Book();
+        b.setId(3L);
+        b.setTitle("Lão Hạc");
+        b.setAuthor("Nam Cao");
+        service.index(b);
+        assertThat(service.complete("chi ph", 5)).isEmpty();
+        assertThat(service.complete("lao", 5)).containsExactly(new Completion("Lão Hạc", Kind.TITLE));
+
+        service.remove(2L);
+        service.remove(3L);
+        assertThat(service.complete("nam", 5)).isEmpty();
+    }
+}
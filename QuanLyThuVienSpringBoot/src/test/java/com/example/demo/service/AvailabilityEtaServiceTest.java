@@ -0,0 +1,119 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Borrow;
+import com.example.demo.repository.BorrowRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.*;
+
+/** Tests for AvailabilityEtaService (ETA theo hạn trả của phiếu đang mở). */
+@Tag("unit")
+class AvailabilityEtaServiceTest {
+
+    private static final Long BOOK = 10L;
+    private static final LocalDateTime NOW = LocalDateTime.now();
+
+    BorrowRepository borrowRepo;
+    AvailabilityEtaService eta;
+
+    @BeforeEach
+    void setUp() {
+        borrowRepo = mock(BorrowRepository.class);
+        eta = new AvailabilityEtaService(borrowRepo);
+    }
+
+    @Test
+    @DisplayName("k-th waiter gets the due date of the k-th copy, counting loan amounts")
+    void eta_accumulatesCopiesByDueDate() {
+        when(borrowRepo.findOpenDueRows()).thenReturn(List.of(
+                new Object[]{1L, BOOK, NOW.plusDays(5), 1},
+                new Object[]{2L, BOOK, NOW.plusDays(2), 2},
+                new Object[]{3L, BOOK, NOW.plusDays(9), 1}));
+        eta.rebuild();
+
+        assertThat(eta.eta(BOOK, 1)).isEqualTo(NOW.plusDays(2));
+        assertThat(eta.eta(BOOK, 2)).isEqualTo(NOW.plusDays(2));
+        assertThat(eta.eta(BOOK, 3)).isEqualTo(NOW.plusDays(5));
+        assertThat(eta.eta(BOOK, 4)).isEqualTo(NOW.plusDays(9));
+        assertThat(eta.eta(BOOK, 5)).isNull();
+        assertThat(eta.eta(77L, 1)).isNull();
+        assertThat(eta.onLoan(BOOK)).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("overdue loan -> ETA is now, not a date in the past")
+    void overdue_clampedToNow() {
+        when(borrowRepo.findOpenDueRows()).thenReturn(List.<Object[]>of(new Object[]{1L, BOOK, NOW.minusDays(3), 1}));
+        eta.rebuild();
+
+        assertThat(eta.eta(BOOK, 1)).isCloseTo(LocalDateTime.now(), within(5, ChronoUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("periodic rebuild picks up loans opened / returned on other nodes")
+    void rebuild_catchesUpRemoteChanges() {
+        when(borrowRepo.findOpenDueRows())
+                .thenReturn(List.<Object[]>of(new Object[]{1L, BOOK, NOW.plusDays(5), 1}))
+                .thenReturn(List.<Object[]>of(new Object[]{2L, BOOK, NOW.plusDays(1), 1}));
+        eta.rebuild();
+        assertThat(eta.eta(BOOK, 1)).isEqualTo(NOW.plusDays(5));
+
+        eta.rebuild();                                      // phiếu 1 trả, phiếu 2 mở ở node khác
+        assertThat(eta.eta(BOOK, 1)).isEqualTo(NOW.plusDays(1));
+        assertThat(eta.onLoan(BOOK)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("confirm / extend / return update the heap, only after commit")
+    void hooks_appliedAfterCommit() {
+        Borrow a = borrow(1L, NOW.plusDays(3));
+        Borrow b = borrow(2L, NOW.plusDays(6));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            eta.onOpened(a);
+            eta.onOpened(b);
+            assertThat(eta.eta(BOOK, 1)).isNull();          // chưa commit
+            commit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertThat(eta.eta(BOOK, 1)).isEqualTo(NOW.plusDays(3));
+
+        a.setDueDate(NOW.plusDays(10));                      // gia hạn: phiếu lùi xuống sau
+        eta.onOpened(a);
+        assertThat(eta.eta(BOOK, 1)).isEqualTo(NOW.plusDays(6));
+        assertThat(eta.eta(BOOK, 2)).isEqualTo(NOW.plusDays(10));
+
+        eta.onClosed(b);                                     // trả
+        assertThat(eta.eta(BOOK, 1)).isEqualTo(NOW.plusDays(10));
+        assertThat(eta.onLoan(BOOK)).isEqualTo(1);
+    }
+
+    private static void commit() {
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private static Borrow borrow(Long id, LocalDateTime due) {
+        Book book = new Book();
+        book.setId(BOOK);
+        Borrow b = new Borrow();
+        b.setId(id);
+        b.setBook(book);
+        b.setAmount(1);
+        b.setDueDate(due);
+        return b;
+    }
+}
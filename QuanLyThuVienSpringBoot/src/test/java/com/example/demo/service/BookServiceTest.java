@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookDescriptionRepository;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.BookRepositoryCustom.BookFilter;
+import com.example.demo.repository.BookRepositoryCustom.Keyset;
+import com.example.demo.repository.BookRepositoryCustom.KeysetOrder;
+import com.example.demo.repository.BorrowRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests for keyset (seek) pagination in BookService. */
+@Tag("unit")
+class BookServiceTest {
+
+    BookRepository bookRepo;
+    BookService service;
+
+    @BeforeEach
+    void setUp() {
+        bookRepo = mock(BookRepository.class);
+        service = new BookService(bookRepo, mock(BorrowRepository.class), mock(BookDescriptionRepository.class),
+                mock(SearchService.class), mock(FacetService.class));
+    }
+
+    @Test
+    @DisplayName("cursor round-trip keeps createdAt (micros) and id")
+    void cursor_roundTrip() {
+        Book b = book(42L, LocalDateTime.of(2025, 3, 1, 8, 30, 15, 123_456_000));
+        String c = BookService.encodeCursor(KeysetOrder.CREATED_AT, b);
+        Keyset k = BookService.decodeCursor(KeysetOrder.CREATED_AT, c, false);
+        assertThat(k.id()).isEqualTo(42L);
+        assertThat(k.createdAt()).isEqualTo(b.getCreatedAt());
+
+        assertThat(BookService.decodeCursor(KeysetOrder.ID, "abc", false)).isNull();
+    }
+
+    @Test
+    @DisplayName("first page: fetches size+1, exposes next cursor only")
+    void firstPage_hasNextOnly() {
+        when(bookRepo.seek(any(), eq(KeysetOrder.ID), isNull(), eq(3)))
+                .thenReturn(List.of(book(9L, null), book(8L, null), book(7L, null)));
+
+        BookService.KeysetPage p = service.keysetPage(BookFilter.none(), KeysetOrder.ID, null, null, 2, false);
+
+        assertThat(p.content()).extracting(Book::getId).containsExactly(9L, 8L);
+        assertThat(p.hasPrev()).isFalse();
+        assertThat(p.nextCursor()).isEqualTo("8");
+    }
+
+    @Test
+    @DisplayName("backward page is reversed back to display order")
+    void backwardPage_reversed() {
+        when(bookRepo.seek(any(), eq(KeysetOrder.ID), eq(new Keyset(null, 6L, true)), eq(3)))
+                .thenReturn(List.of(book(7L, null), book(8L, null)));   // asc, không còn trang trước
+
+        BookService.KeysetPage p = service.keysetPage(BookFilter.none(), KeysetOrder.ID, null, "6", 2, false);
+
+        assertThat(p.content()).extracting(Book::getId).containsExactly(8L, 7L);
+        assertThat(p.hasPrev()).isFalse();
+        assertThat(p.nextCursor()).isEqualTo("7");
+    }
+
+    private static Book book(Long id, LocalDateTime createdAt) {
+        Book b = new Book();
+        b.setId(id);
+        b.setCreatedAt(createdAt);
+        return b;
+    }
+}
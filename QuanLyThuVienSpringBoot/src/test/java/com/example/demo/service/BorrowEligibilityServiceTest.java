@@ -1,28 +1,135 @@
 package com.example.demo.service;
 
+import com.example.demo.model.Book;
+import com.example.demo.model.User;
+import com.example.demo.repository.BorrowRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-/** Skeleton tests for BorrowEligibilityService (limit, debt-lock, hold coverage). */
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/** Tests for BorrowEligibilityService (limit, debt-lock, hold coverage, cached quota state). */
 @Tag("unit")
 class BorrowEligibilityServiceTest {
 
+    BorrowRepository borrowRepo;
+    StockHoldLedger holdLedger;
+    BorrowEligibilityService service;
+    User member;
+    Book book;
+
+    @BeforeEach
+    void setUp() {
+        borrowRepo = mock(BorrowRepository.class);
+        holdLedger = mock(StockHoldLedger.class);
+        service = new BorrowEligibilityService(borrowRepo, holdLedger);
+
+        member = new User();
+        member.setId(1L);
+        member.setMemberUntil(LocalDateTime.now().plusDays(30));
+        book = new Book();
+        book.setId(10L);
+        book.setQuantity(3);
+        when(holdLedger.availableToPromise(10L, 3)).thenReturn(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
     @Test
     @DisplayName("member within limit & no debt & no hold coverage -> allowed")
     void allowed_whenWithinRules() {
-        // TODO
+        when(borrowRepo.sumActiveAmount(1L)).thenReturn(3);
+        when(borrowRepo.findEarliestOpenDue(1L)).thenReturn(LocalDateTime.now().plusDays(2));
+
+        assertThat(service.check(member, book, 2).allowed()).isTrue();
+        assertThat(service.check(member, book, 3).reason()).contains("Giới hạn tối đa là 5");
+        assertThat(service.checkQuota(member, 1).allowed()).isTrue();
+        // 3 lần kiểm tra, chỉ nạp 1 lần
+        verify(borrowRepo, times(1)).sumActiveAmount(1L);
+        verify(borrowRepo, times(1)).findEarliestOpenDue(1L);
     }
 
     @Test
     @DisplayName("locked by debt -> denied with reason")
     void lockedByDebt_denied() {
-        // TODO
+        when(borrowRepo.sumActiveAmount(1L)).thenReturn(1);
+        when(borrowRepo.findEarliestOpenDue(1L)).thenReturn(LocalDateTime.now().minusHours(1));
+
+        var d = service.check(member, book, 1);
+        assertThat(d.allowed()).isFalse();
+        assertThat(d.reason()).contains("quá hạn");
     }
 
     @Test
     @DisplayName("copy covered by other's hold window -> denied")
     void holdCoverage_denied() {
-        // TODO
+        when(borrowRepo.sumActiveAmount(1L)).thenReturn(0);
+        when(holdLedger.availableToPromise(10L, 3)).thenReturn(1);
+
+        assertThat(service.check(member, book, 1).allowed()).isTrue();
+        var d = service.check(member, book, 2);
+        assertThat(d.allowed()).isFalse();
+        assertThat(d.reason()).contains("Sách đã hết");
+    }
+
+    @Test
+    @DisplayName("confirm/return/extend update the cached state only after commit")
+    void updates_appliedAfterCommit() {
+        LocalDateTime due = LocalDateTime.now().plusDays(5);
+        when(borrowRepo.sumActiveAmount(1L)).thenReturn(1);
+        when(borrowRepo.findEarliestOpenDue(1L)).thenReturn(due);
+        assertThat(service.activeAmount(1L)).isEqualTo(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        service.onBorrowed(1L, 2, due.plusDays(3));
+        assertThat(service.activeAmount(1L)).isEqualTo(1);          // chưa commit
+        commit();
+        assertThat(service.activeAmount(1L)).isEqualTo(3);
+
+        service.onReturned(1L, 2, due.plusDays(3));                  // không phải hạn sớm nhất -> cộng trừ tại chỗ
+        assertThat(service.activeAmount(1L)).isEqualTo(1);
+        verify(borrowRepo, times(1)).sumActiveAmount(1L);
+
+        service.onExtended(1L, due);                                 // đổi hạn sớm nhất -> nạp lại
+        assertThat(service.activeAmount(1L)).isEqualTo(1);
+        verify(borrowRepo, times(2)).sumActiveAmount(1L);
+    }
+
+    @Test
+    @DisplayName("LRU keeps at most max-users entries")
+    void lruBounded() {
+        ReflectionTestUtils.setField(service, "maxUsers", 2);
+        when(borrowRepo.sumActiveAmount(anyLong())).thenReturn(0);
+        service.activeAmount(1L);
+        service.activeAmount(2L);
+        service.activeAmount(1L);   // 1 mới dùng -> 2 bị đẩy ra
+        service.activeAmount(3L);
+        service.activeAmount(1L);
+        service.activeAmount(2L);
+
+        verify(borrowRepo, times(1)).sumActiveAmount(eq(1L));
+        verify(borrowRepo, times(2)).sumActiveAmount(eq(2L));
+    }
+
+    private static void commit() {
+        var syncs = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        syncs.forEach(TransactionSynchronization::afterCommit);
     }
 }
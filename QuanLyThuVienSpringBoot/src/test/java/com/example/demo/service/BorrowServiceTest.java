@@ -0,0 +1,70 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Borrow;
+import com.example.demo.repository.BorrowRepository;
+import com.example.demo.repository.ReservationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/** Tests for BorrowService.annotateExtendability (one reservation query per page, direct flags). */
+@Tag("unit")
+class BorrowServiceTest {
+
+    ReservationRepository reservationRepo;
+    BorrowService service;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepo = mock(ReservationRepository.class);
+        service = new BorrowService(mock(BorrowRepository.class), reservationRepo, mock(BorrowEligibilityService.class),
+                mock(AvailabilityEtaService.class));
+        ReflectionTestUtils.setField(service, "extendThresholdDays", 2);
+        ReflectionTestUtils.setField(service, "memberExtendMax", 7);
+        ReflectionTestUtils.setField(service, "normalExtendMax", 3);
+    }
+
+    @Test
+    @DisplayName("five loans -> one reservation query; blocked only when reserved and out of stock")
+    void batch_singleQuery() {
+        Borrow reservedOut = borrow(1L, 0, 1);
+        Borrow reservedIn = borrow(2L, 3, 1);
+        Borrow free = borrow(3L, 0, 1);
+        Borrow notDueYet = borrow(4L, 5, 10);
+        Borrow free2 = borrow(5L, 1, 0);
+        when(reservationRepo.findBookIdsWithStatusIn(anyCollection(), any())).thenReturn(List.of(1L, 2L));
+
+        service.annotateExtendability(List.of(reservedOut, reservedIn, free, notDueYet, free2), true);
+
+        verify(reservationRepo, times(1)).findBookIdsWithStatusIn(anyCollection(), any());
+        verify(reservationRepo, never()).existsByBook_IdAndStatusIn(any(), any());
+        assertThat(reservedOut.isCanExtend()).isFalse();
+        assertThat(reservedIn.isCanExtend()).isTrue();
+        assertThat(free.isCanExtend()).isTrue();
+        assertThat(notDueYet.isCanExtend()).isFalse();
+        assertThat(free2.isCanExtend()).isTrue();
+        assertThat(free.getMaxExtendDays()).isEqualTo(7);
+        assertThat(free.getDefaultExtendDays()).isEqualTo(3);
+    }
+
+    private static Borrow borrow(Long bookId, int quantity, int daysLeft) {
+        Book book = new Book();
+        book.setId(bookId);
+        book.setQuantity(quantity);
+        Borrow b = new Borrow();
+        b.setBook(book);
+        b.setDueDate(LocalDateTime.now().plusDays(daysLeft));
+        return b;
+    }
+}
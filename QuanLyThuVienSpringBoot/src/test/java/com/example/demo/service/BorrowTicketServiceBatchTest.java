@@ -0,0 +1,139 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ScanOutcome;
+import com.example.demo.model.Book;
+import com.example.demo.model.BorrowTicket;
+import com.example.demo.model.User;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.BorrowRepository;
+import com.example.demo.repository.BorrowTicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/** Tests for BorrowTicketService confirmation (one-time QR scan, batch: grouped checks, per-code outcomes, stock fallback). */
+@Tag("unit")
+class BorrowTicketServiceBatchTest {
+
+    BorrowTicketRepository ticketRepo;
+    BorrowRepository borrowRepo;
+    InventoryService inventory;
+    StockHoldLedger holdLedger;
+    QrTokenService qrTokens;
+    BorrowTicketService service;
+
+    User reader;
+    Book kieu, tatDen;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepo = mock(BorrowTicketRepository.class);
+        borrowRepo = mock(BorrowRepository.class);
+        inventory = mock(InventoryService.class);
+        holdLedger = mock(StockHoldLedger.class);
+        qrTokens = new QrTokenService("test-secret");
+        service = new BorrowTicketService(ticketRepo, borrowRepo, mock(BookRepository.class), mock(QrService.class),
+                mock(BorrowService.class), inventory, holdLedger, mock(ExpiryScheduler.class),
+                qrTokens, new BorrowEligibilityService(borrowRepo, holdLedger),
+                mock(HoldQueueService.class), mock(AvailabilityEtaService.class));
+
+        reader = new User();
+        reader.setId(7L);                       // tài khoản thường: tối đa 2 cuốn
+        kieu = book(1L);
+        tatDen = book(2L);
+    }
+
+    @Test
+    @DisplayName("a confirmed ticket's QR scanned again -> 'already processed', stock untouched")
+    void confirm_secondScanRejected() {
+        BorrowTicket t = ticket("a", kieu, 1, BorrowTicket.TicketStatus.PENDING);
+        t.setId(42L);
+        when(ticketRepo.findById(42L)).thenReturn(Optional.of(t));
+        when(inventory.tryDecrement(1L, 1)).thenReturn(true);
+        String code = qrTokens.issue(QrTokenService.Kind.BORROW, 42L, t.getExpiresAt());
+
+        assertThat(service.confirmByAdmin(code, new User()).getAmount()).isEqualTo(1);
+        assertThat(t.getStatus()).isEqualTo(BorrowTicket.TicketStatus.CONFIRMED);
+
+        assertThatThrownBy(() -> service.confirmByAdmin(code, new User()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("đã được xử lý");
+        verify(inventory, times(1)).tryDecrement(1L, 1);
+        verify(holdLedger, times(1)).release(1L, 1);
+    }
+
+    @Test
+    @DisplayName("one fetch for the batch; bad codes fail alone, quota is filled in scan order")
+    void batch_perCodeOutcomes() {
+        when(ticketRepo.findByTokenIn(anyList())).thenReturn(List.of(
+                ticket("a", kieu, 1, BorrowTicket.TicketStatus.PENDING),
+                ticket("b", kieu, 1, BorrowTicket.TicketStatus.PENDING),
+                ticket("c", tatDen, 1, BorrowTicket.TicketStatus.PENDING),
+                ticket("d", tatDen, 1, BorrowTicket.TicketStatus.CONFIRMED)));
+        when(borrowRepo.sumActiveAmount(7L)).thenReturn(0);
+        when(inventory.tryDecrement(1L, 2)).thenReturn(true);
+
+        Map<String, ScanOutcome> out = service.confirmBatchByAdmin(List.of("a", "b", "c", "d", "zz"), new User());
+
+        assertThat(out.keySet()).containsExactly("a", "b", "c", "d", "zz");
+        assertThat(out.get("a").isOk()).isTrue();
+        assertThat(out.get("b").isOk()).isTrue();
+        assertThat(out.get("c").error()).contains("giới hạn");
+        assertThat(out.get("d").error()).contains("đã được xử lý");
+        assertThat(out.get("zz").error()).isEqualTo("Vé không tồn tại");
+        verify(ticketRepo, times(1)).findByTokenIn(anyList());
+        verify(borrowRepo, times(1)).sumActiveAmount(7L);
+        verify(inventory, times(1)).tryDecrement(1L, 2);       // 1 UPDATE cho cả đầu sách
+        verify(inventory, never()).tryDecrement(eq(2L), anyInt());
+        verify(holdLedger, times(2)).release(1L, 1);
+    }
+
+    @Test
+    @DisplayName("not enough stock for the whole group -> falls back to per-ticket decrements")
+    void batch_stockFallback() {
+        reader.setMemberUntil(LocalDateTime.now().plusDays(30));
+        when(ticketRepo.findByTokenIn(anyList())).thenReturn(List.of(
+                ticket("a", kieu, 2, BorrowTicket.TicketStatus.PENDING),
+                ticket("b", kieu, 1, BorrowTicket.TicketStatus.PENDING)));
+        when(inventory.tryDecrement(1L, 3)).thenReturn(false);
+        when(inventory.tryDecrement(1L, 2)).thenReturn(true);
+        when(inventory.tryDecrement(1L, 1)).thenReturn(false);
+
+        Map<String, ScanOutcome> out = service.confirmBatchByAdmin(List.of("a", "b"), new User());
+
+        assertThat(out.get("a").isOk()).isTrue();
+        assertThat(out.get("b").error()).isEqualTo("Sách đã hết.");
+        verify(holdLedger).release(1L, 2);
+        verify(holdLedger, never()).release(1L, 1);
+    }
+
+    private static Book book(Long id) {
+        Book b = new Book();
+        b.setId(id);
+        b.setTitle("Sách " + id);
+        return b;
+    }
+
+    private BorrowTicket ticket(String token, Book book, int amount, BorrowTicket.TicketStatus status) {
+        BorrowTicket t = new BorrowTicket();
+        t.setToken(token);
+        t.setUser(reader);
+        t.setBook(book);
+        t.setAmount(amount);
+        t.setDays(7);
+        t.setStatus(status);
+        t.setExpiresAt(LocalDateTime.now().plusHours(1));
+        return t;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Category;
+import com.example.demo.repository.BookDescriptionRepository;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.CategoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/** Tests for CatalogChangeFeed (after-commit capture, coalescing, batched apply). */
+@Tag("unit")
+class CatalogChangeFeedTest {
+
+    SearchService search;
+    AutocompleteService autocomplete;
+    FacetService facet;
+    PageCache pageCache;
+    BookRepository bookRepo;
+    BookDescriptionRepository descriptionRepo;
+    CategoryRepository categoryRepo;
+    CatalogChangeFeed feed;
+
+    @BeforeEach
+    void setUp() {
+        search = mock(SearchService.class);
+        autocomplete = mock(AutocompleteService.class);
+        facet = mock(FacetService.class);
+        when(search.isReady()).thenReturn(true);
+        when(autocomplete.isReady()).thenReturn(true);
+        when(facet.isReady()).thenReturn(true);
+        pageCache = mock(PageCache.class);
+        bookRepo = mock(BookRepository.class);
+        descriptionRepo = mock(BookDescriptionRepository.class);
+        categoryRepo = mock(CategoryRepository.class);
+        feed = new CatalogChangeFeed(search, autocomplete, facet, pageCache, bookRepo, descriptionRepo, categoryRepo);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("changes inside a transaction are queued only after commit; rollback drops them")
+    void deferredUntilCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        feed.bookSaved(book(1L, "Truyện Kiều", 3));
+        feed.bookDeleted(2L);
+        assertThat(feed.pending()).isZero();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(feed.pending()).isEqualTo(2);
+
+        TransactionSynchronizationManager.initSynchronization();
+        feed.bookSaved(book(3L, "Số đỏ", 1));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(feed.pending()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("flush coalesces by id (last change wins) and applies one batch per index")
+    @SuppressWarnings("unchecked")
+    void flush_coalescesAndBatches() {
+        feed.bookSaved(book(1L, "Truyện Kiều", 3));
+        feed.bookSaved(book(1L, "Truyện Kiều", 0));   // mượn hết
+        feed.bookSaved(book(2L, "Số đỏ", 1));
+        feed.bookDeleted(2L);
+        Category c = new Category();
+        c.setId(7L);
+        c.setName("Văn học");
+        feed.categorySaved(c);
+
+        feed.flush();
+
+        ArgumentCaptor<Collection<Book>> upserts = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection<Long>> deletes = ArgumentCaptor.forClass(Collection.class);
+        verify(search).apply(upserts.capture(), deletes.capture());
+        assertThat(upserts.getValue()).singleElement().satisfies(b -> {
+            assertThat(b.getId()).isEqualTo(1L);
+            assertThat(b.getQuantity()).isZero();
+        });
+        assertThat(deletes.getValue()).containsExactly(2L);
+        verify(autocomplete).apply(anyCollection(), anyCollection());
+        verify(facet).apply(anyCollection(), anyCollection());
+        verify(search).indexCategory(any(Category.class));
+        verify(pageCache).invalidateAll();
+        assertThat(feed.pending()).isZero();
+    }
+
+    @Test
+    @DisplayName("queue is held while indexes are still loading")
+    void flush_waitsForReadyIndexes() {
+        when(facet.isReady()).thenReturn(false);
+        feed.bookDeleted(5L);
+        feed.flush();
+        verify(search, never()).apply(anyCollection(), anyCollection());
+        assertThat(feed.pending()).isEqualTo(1);
+
+        when(facet.isReady()).thenReturn(true);
+        feed.flush();
+        verify(search).apply(List.of(), List.of(5L));
+        verify(pageCache).invalidateBooks(java.util.Set.of(5L));
+    }
+
+    @Test
+    @DisplayName("catch-up applies books changed and deleted on another node, once per version")
+    @SuppressWarnings("unchecked")
+    void catchUp_appliesRemoteChanges() {
+        Book remote = book(1L, "Truyện Kiều", 0);
+        remote.setUpdatedAt(LocalDateTime.now());
+        when(bookRepo.findUpdatedSince(any())).thenReturn(List.of(remote));
+        when(descriptionRepo.findBodies(anyCollection())).thenReturn(List.<Object[]>of(new Object[]{1L, "Thơ lục bát"}));
+        when(bookRepo.count()).thenReturn(1L);
+        when(search.size()).thenReturn(2);                                  // 2 bị xoá ở node khác
+        when(search.indexedIds()).thenReturn(new HashSet<>(Set.of(1L, 2L)));
+        when(bookRepo.findAllIds()).thenReturn(List.of(1L));
+
+        feed.catchUp();
+
+        ArgumentCaptor<Collection<Book>> upserts = ArgumentCaptor.forClass(Collection.class);
+        verify(search).apply(upserts.capture(), eq(List.of()));
+        assertThat(upserts.getValue()).singleElement().satisfies(b -> assertThat(b.getQuantity()).isZero());
+        verify(search).applyDescriptions(Map.of(1L, "Thơ lục bát"));
+        verify(search).apply(List.of(), List.of(2L));
+        verify(pageCache).invalidateBooks(Set.of(1L));
+        verify(pageCache).invalidateBooks(Set.of(2L));
+
+        when(search.size()).thenReturn(1);
+        feed.catchUp();                                                     // cùng bản trong cửa sổ lùi mốc: bỏ qua
+        verify(search, times(2)).apply(anyCollection(), anyCollection());
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) syncs.forEach(TransactionSynchronization::afterCommit);
+        syncs.forEach(s -> s.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static Book book(Long id, String title, int quantity) {
+        Book b = new Book();
+        b.setId(id);
+        b.setTitle(title);
+        b.setQuantity(quantity);
+        return b;
+    }
+}
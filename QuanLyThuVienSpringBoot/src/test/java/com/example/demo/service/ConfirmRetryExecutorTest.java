@@ -0,0 +1,78 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/** Tests for ConfirmRetryExecutor (retry on version conflicts, bounded attempts, jittered backoff). */
+@Tag("unit")
+class ConfirmRetryExecutorTest {
+
+    PlatformTransactionManager txManager;
+    ConfirmRetryExecutor retry;
+
+    @BeforeEach
+    void setUp() {
+        txManager = mock(PlatformTransactionManager.class);
+        retry = new ConfirmRetryExecutor(txManager);
+        ReflectionTestUtils.setField(retry, "baseMs", 1L);
+        ReflectionTestUtils.setField(retry, "maxMs", 4L);
+    }
+
+    @Test
+    @DisplayName("version conflict -> new transaction per attempt until success")
+    void retriesOptimisticConflicts() {
+        AtomicInteger calls = new AtomicInteger();
+        String result = retry.execute(() -> {
+            if (calls.incrementAndGet() < 3) throw conflict();
+            return "ok";
+        });
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(3);
+        verify(txManager, times(3)).getTransaction(any());
+        verify(txManager, times(2)).rollback(any());
+    }
+
+    @Test
+    @DisplayName("gives up after max attempts; business errors are not retried")
+    void boundedAndSelective() {
+        AtomicInteger calls = new AtomicInteger();
+        assertThatThrownBy(() -> retry.execute(() -> {
+            calls.incrementAndGet();
+            throw conflict();
+        })).isInstanceOf(IllegalStateException.class).hasCauseInstanceOf(ObjectOptimisticLockingFailureException.class);
+        assertThat(calls.get()).isEqualTo(5);
+
+        calls.set(0);
+        assertThatThrownBy(() -> retry.execute(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Vé đã hết hạn.");
+        })).hasMessage("Vé đã hết hạn.");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("backoff stays within [0, min(max, base * 2^(n-1))]")
+    void backoffBounds() {
+        for (int i = 0; i < 200; i++) {
+            assertThat(retry.backoffMs(1)).isBetween(0L, 1L);
+            assertThat(retry.backoffMs(3)).isBetween(0L, 4L);
+            assertThat(retry.backoffMs(40)).isBetween(0L, 4L);
+        }
+    }
+
+    private static ObjectOptimisticLockingFailureException conflict() {
+        return new ObjectOptimisticLockingFailureException(Object.class, 1L);
+    }
+}
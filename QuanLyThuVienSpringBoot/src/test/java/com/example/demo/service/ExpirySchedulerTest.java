@@ -0,0 +1,93 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.BorrowTicketRepository;
+import com.example.demo.repository.ReservationRepository;
+import com.example.demo.repository.ReturnTicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/** Tests for ExpiryScheduler (startup load, targeted single-row expiry, hold release). */
+@Tag("unit")
+class ExpirySchedulerTest {
+
+    BorrowTicketRepository borrowTicketRepo;
+    ReturnTicketRepository returnTicketRepo;
+    ReservationRepository reservationRepo;
+    StockHoldLedger holdLedger;
+    ExpiryScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        borrowTicketRepo = mock(BorrowTicketRepository.class);
+        returnTicketRepo = mock(ReturnTicketRepository.class);
+        reservationRepo = mock(ReservationRepository.class);
+        holdLedger = mock(StockHoldLedger.class);
+        scheduler = new ExpiryScheduler(borrowTicketRepo, returnTicketRepo, reservationRepo, holdLedger,
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    @DisplayName("startup loads pending rows; only due ones are expired, one row at a time")
+    void load_thenTickExpiresDueRows() {
+        LocalDateTime past = LocalDateTime.now().minusMinutes(1);
+        LocalDateTime future = LocalDateTime.now().plusHours(1);
+        when(borrowTicketRepo.findPendingExpiries()).thenReturn(List.of(new Object[]{1L, past}, new Object[]{2L, future}));
+        when(returnTicketRepo.findPendingExpiries()).thenReturn(List.<Object[]>of(new Object[]{3L, past}));
+        when(reservationRepo.findReadyExpiries()).thenReturn(List.<Object[]>of(new Object[]{4L, past}));
+        when(borrowTicketRepo.findBookAndAmount(1L)).thenReturn(List.<Object[]>of(new Object[]{9L, 2}));
+        when(borrowTicketRepo.expireIfDue(eq(1L), any())).thenReturn(1);
+
+        scheduler.load();
+        assertThat(scheduler.pending()).isEqualTo(4);
+        scheduler.tick();
+
+        verify(borrowTicketRepo).expireIfDue(eq(1L), any());
+        verify(borrowTicketRepo, never()).expireIfDue(eq(2L), any());
+        verify(returnTicketRepo).expireIfDue(eq(3L), any());
+        verify(reservationRepo).expireReadyIfDue(eq(4L), any());
+        verify(holdLedger).release(9L, 2);
+        assertThat(scheduler.pending()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("row already handled elsewhere -> update is a no-op and no hold is released")
+    void alreadyHandled_noRelease() {
+        when(borrowTicketRepo.findBookAndAmount(5L)).thenReturn(List.<Object[]>of(new Object[]{9L, 1}));
+        when(borrowTicketRepo.expireIfDue(eq(5L), any())).thenReturn(0);
+
+        scheduler.schedule(ExpiryScheduler.Kind.BORROW_TICKET, 5L, LocalDateTime.now().minusSeconds(1));
+        scheduler.schedule(ExpiryScheduler.Kind.RESERVATION, 6L, LocalDateTime.now().minusSeconds(1));
+        scheduler.cancel(ExpiryScheduler.Kind.RESERVATION, 6L);
+        scheduler.tick();
+
+        verify(borrowTicketRepo).expireIfDue(eq(5L), any());
+        verifyNoInteractions(holdLedger);
+        verify(reservationRepo, never()).expireReadyIfDue(any(), any());
+    }
+
+    @Test
+    @DisplayName("sweep expireNow -> same single-row update and listeners, wheel entry dropped")
+    void expireNow_runsListeners() {
+        List<ExpiryScheduler.Expired> seen = new java.util.ArrayList<>();
+        scheduler.onExpired(seen::add);
+        when(reservationRepo.expireReadyIfDue(eq(7L), any())).thenReturn(1);
+        scheduler.schedule(ExpiryScheduler.Kind.RESERVATION, 7L, LocalDateTime.now().plusHours(1));
+
+        scheduler.expireNow(ExpiryScheduler.Kind.RESERVATION, 7L);
+
+        verify(reservationRepo).expireReadyIfDue(eq(7L), any());
+        assertThat(seen).extracting(ExpiryScheduler.Expired::id).containsExactly(7L);
+        assertThat(scheduler.pending()).isZero();
+    }
+}
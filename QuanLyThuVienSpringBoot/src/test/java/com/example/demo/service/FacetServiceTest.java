@@ -0,0 +1,70 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.service.FacetService.FacetQuery;
+import com.example.demo.service.FacetService.FacetResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests for FacetService (bitmap filters & disjunctive facet counts). */
+@Tag("unit")
+class FacetServiceTest {
+
+    FacetService service;
+
+    @BeforeEach
+    void setUp() {
+        BookRepository bookRepo = mock(BookRepository.class);
+        // id, categoryId, quantity, author
+        when(bookRepo.findAllFacetRows()).thenReturn(List.of(
+                new Object[]{1L, 10L, 3, "Nam Cao"},
+                new Object[]{2L, 10L, 0, "Nam Cao"},
+                new Object[]{3L, 20L, 1, "Nguyễn Du"},
+                new Object[]{4L, null, 2, "Tô Hoài"}));
+        service = new FacetService(bookRepo);
+        service.rebuild();
+    }
+
+    @Test
+    @DisplayName("category counts follow the availability filter; availability counts follow the category")
+    void disjunctiveCounts() {
+        FacetResult r = service.facets(FacetQuery.of(10L, true), 5);
+        assertThat(r.total()).isEqualTo(1);
+        assertThat(r.categories()).containsEntry(10L, 1).containsEntry(20L, 1);
+        assertThat(r.availableCount()).isEqualTo(1);
+        assertThat(r.unavailableCount()).isEqualTo(1);
+        assertThat(r.authors()).extracting(FacetService.AuthorCount::name).containsExactly("Nam Cao");
+    }
+
+    @Test
+    @DisplayName("OR within a group, AND across groups; seek pages ids newest first")
+    void filtersAndSeek() {
+        FacetQuery q = new FacetQuery(List.of(10L, 20L), null, List.of("nguyen du", "NAM CAO"));
+        assertThat(service.count(q)).isEqualTo(3);
+        assertThat(service.seekIds(q, null, false, 2)).containsExactly(3L, 2L);
+        assertThat(service.seekIds(q, 2L, false, 2)).containsExactly(1L);
+        assertThat(service.seekIds(q, 1L, true, 2)).containsExactly(2L, 3L);
+    }
+
+    @Test
+    @DisplayName("index() moves a book between facets when it runs out of stock")
+    void index_updatesAvailability() {
+        Book b = new Book();
+        b.setId(3L);
+        b.setAuthor("Nguyễn Du");
+        b.setQuantity(0);
+        service.index(b);   // không có danh mục -> rời khỏi danh mục 20
+        FacetResult r = service.facets(FacetQuery.of(null, false), 0);
+        assertThat(r.total()).isEqualTo(2);
+        assertThat(r.categories()).doesNotContainKey(20L);
+    }
+}
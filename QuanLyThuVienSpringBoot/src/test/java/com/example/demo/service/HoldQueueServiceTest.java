@@ -1,31 +1,187 @@
 package com.example.demo.service;
 
+import com.example.demo.model.Book;
+import com.example.demo.model.Reservation;
+import com.example.demo.model.User;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.ReservationRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
-/** Skeleton tests for HoldQueueService (FIFO + reservation window). */
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/** Tests for HoldQueueService (FIFO + reservation window). */
 @ExtendWith(MockitoExtension.class)
 @Tag("unit")
 class HoldQueueServiceTest {
 
+    private static final Long BOOK = 10L;
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 8, 0);
+
+    @Mock ReservationRepository reservationRepo;
+    @Mock BookRepository bookRepo;
+    @Mock ExpiryScheduler expiryScheduler;
+    HoldQueueService queue;
+
+    @BeforeEach
+    void setUp() {
+        queue = new HoldQueueService(reservationRepo, bookRepo, expiryScheduler);
+    }
+
     @Test
     @DisplayName("Create holds -> preserves FIFO order")
     void createHolds_fifoOrder() {
-        // TODO
+        queue.enqueue(reservation(3L, 300L, T0.plusMinutes(2)));
+        queue.enqueue(reservation(1L, 100L, T0));
+        queue.enqueue(reservation(2L, 200L, T0.plusMinutes(1)));
+
+        assertThat(queue.waitingCount(BOOK)).isEqualTo(3);
+        assertThat(queue.position(BOOK, 1L)).isEqualTo(1);
+        assertThat(queue.position(BOOK, 2L)).isEqualTo(2);
+        assertThat(queue.position(BOOK, 3L)).isEqualTo(3);
+
+        queue.remove(BOOK, 1L, false);   // PENDING rời hàng: không promote ai
+        assertThat(queue.position(BOOK, 2L)).isEqualTo(1);
+        verifyNoInteractions(reservationRepo);
     }
 
     @Test
     @DisplayName("When copy available -> NOTIFY head-of-line with window")
     void notifyHead_withWindow() {
-        // TODO
+        queue.enqueue(reservation(1L, 100L, T0));
+        Reservation second = reservation(2L, 200L, T0.plusMinutes(1));
+        queue.enqueue(second);
+        queue.enqueue(reservation(3L, 300L, T0.plusMinutes(2)));
+        // 1 đang bị node khác khoá -> SKIP LOCKED trả về người kế tiếp
+        when(reservationRepo.lockPendingHeads(eq(BOOK), any())).thenReturn(List.of(second));
+
+        assertThat(queue.promote(BOOK, 1)).containsExactly(2L);
+        assertThat(second.getStatus()).isEqualTo(Reservation.Status.READY);
+
+        ArgumentCaptor<LocalDateTime> expireAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(expiryScheduler).schedule(eq(ExpiryScheduler.Kind.RESERVATION), eq(2L), expireAt.capture());
+        assertThat(expireAt.getValue()).isCloseTo(LocalDateTime.now().plusHours(24), within(1, ChronoUnit.MINUTES));
+        assertThat(queue.position(BOOK, 2L)).isZero();
+        assertThat(queue.position(BOOK, 1L)).isEqualTo(1);
+        assertThat(queue.position(BOOK, 3L)).isEqualTo(2);
     }
 
     @Test
     @DisplayName("During window -> only hold owner isAllowedToBorrow")
     void duringWindow_onlyOwnerCanBorrow() {
-        // TODO
+        Reservation head = reservation(1L, 100L, T0);
+        queue.enqueue(head);
+        when(reservationRepo.lockPendingHeads(eq(BOOK), any())).thenReturn(List.of(head));
+        queue.promote(BOOK, 1);
+
+        Book book = new Book();
+        book.setId(BOOK);
+        book.setQuantity(1);
+        when(bookRepo.findById(BOOK)).thenReturn(Optional.of(book));
+
+        assertThat(queue.check(BOOK, 100L).allowed()).isTrue();
+        assertThat(queue.check(BOOK, 999L).allowed()).isFalse();
+        assertThat(queue.check(77L, 999L).allowed()).isTrue();      // sách không ai giữ: không đọc DB
+
+        book.setQuantity(2);                                        // còn dư 1 cuốn ngoài suất giữ
+        assertThat(queue.check(BOOK, 999L).allowed()).isTrue();
+        verify(bookRepo, times(2)).findById(BOOK);
+    }
+
+    @Test
+    @DisplayName("Expired borrow ticket frees copies -> head promoted, READY notice served from memory")
+    void ticketExpiry_promotesAndNotifies() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<ExpiryScheduler.Expired>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(expiryScheduler).onExpired(listener.capture());
+        Reservation head = reservation(1L, 100L, T0);
+        queue.enqueue(head);
+        when(reservationRepo.lockPendingHeads(eq(BOOK), any())).thenReturn(List.of(head));
+
+        assertThat(queue.readyNotice(100L)).isEmpty();
+        listener.getValue().accept(new ExpiryScheduler.Expired(ExpiryScheduler.Kind.BORROW_TICKET, 55L, BOOK, 1));
+
+        var notice = queue.readyNotice(100L).orElseThrow();
+        assertThat(notice.reservationId()).isEqualTo(1L);
+        assertThat(notice.bookTitle()).isEqualTo("Sách 10");
+        assertThat(queue.readyNotice(200L)).isEmpty();
+
+        queue.remove(BOOK, 1L, false);   // đã mượn: bỏ thông báo, không chuyển tiếp
+        assertThat(queue.readyNotice(100L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Expired READY hold -> next waiter promoted, rebuild swaps in a fresh index")
+    void holdExpiry_passesOn_andRebuildSwaps() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<ExpiryScheduler.Expired>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(expiryScheduler).onExpired(listener.capture());
+        Reservation head = reservation(1L, 100L, T0);
+        Reservation next = reservation(2L, 200L, T0.plusMinutes(1));
+        queue.enqueue(head);
+        queue.enqueue(next);
+        when(reservationRepo.lockPendingHeads(eq(BOOK), any())).thenReturn(List.of(head)).thenReturn(List.of(next));
+        queue.promote(BOOK, 1);
+
+        listener.getValue().accept(new ExpiryScheduler.Expired(ExpiryScheduler.Kind.RESERVATION, 1L, null, 0));
+        assertThat(queue.position(BOOK, 1L)).isEqualTo(-1);
+        assertThat(queue.position(BOOK, 2L)).isZero();
+        assertThat(queue.readyNotice(200L)).isPresent();
+
+        when(reservationRepo.findOpenQueueRows()).thenReturn(List.<Object[]>of(
+                new Object[]{3L, 11L, 300L, Reservation.Status.PENDING, T0, null, "Sách 11"}));
+        queue.rebuild();
+        assertThat(queue.position(BOOK, 2L)).isEqualTo(-1);
+        assertThat(queue.position(11L, 3L)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Periodic catch-up -> hold promoted on another node blocks others and shows the banner, no per-call query")
+    void catchUp_seesRemotePromotion() {
+        LocalDateTime expireAt = LocalDateTime.now().plusHours(3);
+        when(reservationRepo.findOpenQueueRows()).thenReturn(List.<Object[]>of(
+                new Object[]{5L, BOOK, 100L, Reservation.Status.READY, T0, expireAt, "Sách 10"}));
+        Book book = new Book();
+        book.setId(BOOK);
+        book.setQuantity(1);
+        when(bookRepo.findById(BOOK)).thenReturn(Optional.of(book));
+
+        assertThat(queue.check(BOOK, 999L).allowed()).isTrue();     // node này chưa biết
+        queue.rebuild();
+        assertThat(queue.check(BOOK, 999L).allowed()).isFalse();
+        assertThat(queue.readyNotice(100L).orElseThrow().expireAt()).isEqualTo(expireAt);
+        verify(reservationRepo, times(1)).findOpenQueueRows();
+        verifyNoMoreInteractions(reservationRepo);
+    }
+
+    private static Reservation reservation(Long id, Long userId, LocalDateTime createdAt) {
+        User u = new User();
+        u.setId(userId);
+        Book b = new Book();
+        b.setId(BOOK);
+        b.setTitle("Sách " + BOOK);
+        Reservation r = new Reservation();
+        ReflectionTestUtils.setField(r, "id", id);
+        ReflectionTestUtils.setField(r, "createdAt", createdAt);
+        r.setUser(u);
+        r.setBook(b);
+        return r;
     }
 }
@@ -0,0 +1,94 @@
+package com.example.demo.service;
+
+import com.example.demo.model.IdempotencyRecord;
+import com.example.demo.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/** Tests for IdempotencyService (claim, replay from memory / DB, in-flight followers). */
+@Tag("unit")
+class IdempotencyServiceTest {
+
+    IdempotencyRecordRepository repo;
+    IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(IdempotencyRecordRepository.class);
+        service = new IdempotencyService(repo);
+    }
+
+    @Test
+    @DisplayName("first request proceeds; replays come from memory; other payload -> mismatch")
+    void proceedThenReplay() {
+        assertThat(service.begin("s1", "fp").outcome()).isEqualTo(IdempotencyService.Outcome.PROCEED);
+        service.complete("s1", "fp", 302, "/ticket/borrow/7");
+
+        var again = service.begin("s1", "fp");
+        assertThat(again.outcome()).isEqualTo(IdempotencyService.Outcome.REPLAY);
+        assertThat(again.stored().location()).isEqualTo("/ticket/borrow/7");
+        assertThat(service.begin("s1", "other").outcome()).isEqualTo(IdempotencyService.Outcome.MISMATCH);
+        verify(repo, times(1)).saveAndFlush(any());
+
+        service.release("s2");
+        assertThat(service.begin("s2", "fp").outcome()).isEqualTo(IdempotencyService.Outcome.PROCEED);
+    }
+
+    @Test
+    @DisplayName("key already claimed by another node -> replay DONE row, 409 while IN_PROGRESS")
+    void claimedElsewhere() {
+        when(repo.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("dup"));
+        IdempotencyRecord done = row("s1", IdempotencyRecord.State.DONE);
+        done.setStatus(302);
+        done.setLocation("https://sandbox.vnpayment.vn/pay?x=1");
+        when(repo.findByScopeKey("s1")).thenReturn(Optional.of(done));
+        when(repo.findByScopeKey("s2")).thenReturn(Optional.of(row("s2", IdempotencyRecord.State.IN_PROGRESS)));
+
+        var r = service.begin("s1", "fp");
+        assertThat(r.outcome()).isEqualTo(IdempotencyService.Outcome.REPLAY);
+        assertThat(r.stored().location()).contains("vnpayment");
+        assertThat(service.begin("s2", "fp").outcome()).isEqualTo(IdempotencyService.Outcome.IN_PROGRESS);
+    }
+
+    @Test
+    @DisplayName("concurrent duplicate waits for the first request and replays its result")
+    void followerWaitsForLeader() throws Exception {
+        assertThat(service.begin("s1", "fp").outcome()).isEqualTo(IdempotencyService.Outcome.PROCEED);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<IdempotencyService.Begin> follower = CompletableFuture.supplyAsync(() -> {
+            started.countDown();
+            return service.begin("s1", "fp");
+        });
+        started.await();
+        Thread.sleep(50);
+        service.complete("s1", "fp", 302, "/borrow");
+
+        var r = follower.get(5, TimeUnit.SECONDS);
+        assertThat(r.outcome()).isEqualTo(IdempotencyService.Outcome.REPLAY);
+        assertThat(r.stored().status()).isEqualTo(302);
+        verify(repo, times(1)).saveAndFlush(any());
+    }
+
+    private static IdempotencyRecord row(String scope, IdempotencyRecord.State state) {
+        IdempotencyRecord r = new IdempotencyRecord();
+        r.setScopeKey(scope);
+        r.setFingerprint("fp");
+        r.setState(state);
+        r.setCreatedAt(LocalDateTime.now());
+        r.setExpiresAt(LocalDateTime.now().plusMinutes(10));
+        return r;
+    }
+}
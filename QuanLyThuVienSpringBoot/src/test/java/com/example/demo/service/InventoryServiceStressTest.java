@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.repository.BookRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tranh chấp tồn kho trên CSDL thật (H2): nhiều luồng cùng trừ 1 đầu sách, mỗi luồng 1 transaction.
+ * Không transaction bao ngoài (NOT_SUPPORTED) để mỗi lần trừ commit thật như ở quầy.
+ */
+@DataJpaTest(properties = {"spring.sql.init.mode=never", "spring.jpa.show-sql=false"})
+@Import(InventoryService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Tag("integration")
+class InventoryServiceStressTest {
+
+    /** Cấu hình riêng cho test (dự án có 2 lớp @SpringBootApplication nên không tự dò được). */
+    @SpringBootConfiguration
+    @EntityScan("com.example.demo.model")
+    @EnableJpaRepositories("com.example.demo.repository")
+    static class Config {}
+
+    @Autowired InventoryService inventory;
+    @Autowired BookRepository bookRepo;
+    @MockitoBean CatalogChangeFeed changeFeed;
+
+    @Test
+    @DisplayName("64 threads x 20 attempts on 100 copies -> exactly 100 succeed, stock never negative")
+    void concurrentDecrement_neverOversells() throws Exception {
+        Long id = saveBook(100);
+        int threads = 64, attempts = 20;
+        AtomicInteger ok = new AtomicInteger();
+
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < attempts; i++) {
+                if (inventory.tryDecrement(id, 1)) ok.incrementAndGet();
+            }
+        });
+
+        Book book = bookRepo.findById(id).orElseThrow();
+        assertThat(ok.get()).isEqualTo(100);
+        assertThat(book.getQuantity()).isZero();
+        assertThat(book.isAvailable()).isFalse();
+    }
+
+    @Test
+    @DisplayName("mixed borrow/return traffic keeps stock = initial - successes + returns")
+    void concurrentMixed_balances() throws Exception {
+        Long id = saveBook(10);
+        AtomicInteger taken = new AtomicInteger();
+        AtomicInteger returned = new AtomicInteger();
+
+        runConcurrently(32, () -> {
+            for (int i = 0; i < 40; i++) {
+                if (inventory.tryDecrement(id, 2)) {
+                    taken.addAndGet(2);
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        inventory.increment(id, 2);
+                        returned.addAndGet(2);
+                    }
+                }
+            }
+        });
+
+        Book book = bookRepo.findById(id).orElseThrow();
+        assertThat(book.getQuantity()).isEqualTo(10 - taken.get() + returned.get()).isGreaterThanOrEqualTo(0);
+        assertThat(book.isAvailable()).isEqualTo(book.getQuantity() > 0);
+    }
+
+    @Test
+    @DisplayName("request larger than stock fails without changing it")
+    void decrementMoreThanStock_rejected() {
+        Long id = saveBook(3);
+        assertThat(inventory.tryDecrement(id, 4)).isFalse();
+        assertThat(inventory.tryDecrement(id, 3)).isTrue();
+        assertThat(bookRepo.findById(id).orElseThrow().getQuantity()).isZero();
+        assertThat(inventory.tryDecrement(-1L, 1)).isFalse();
+    }
+
+    @Test
+    @DisplayName("cart batch is all-or-nothing; overlapping carts in opposite order never oversell")
+    void decrementAll_atomicAndDeadlockFree() throws Exception {
+        Long a = saveBook(5), b = saveBook(1);
+        assertThat(inventory.tryDecrementAll(Map.of(a, 2, b, 2))).isFalse();
+        assertThat(bookRepo.findById(a).orElseThrow().getQuantity()).isEqualTo(5);   // dòng a đã trừ được hoàn lại
+
+        Long x = saveBook(50), y = saveBook(50);
+        AtomicInteger ok = new AtomicInteger();
+        runConcurrently(16, () -> {
+            for (int i = 0; i < 10; i++) {
+                boolean flip = ThreadLocalRandom.current().nextBoolean();
+                Map<Long, Integer> cart = new java.util.LinkedHashMap<>();
+                cart.put(flip ? x : y, 1);
+                cart.put(flip ? y : x, 1);
+                if (inventory.tryDecrementAll(cart)) ok.incrementAndGet();
+            }
+        });
+        assertThat(ok.get()).isEqualTo(50);
+        assertThat(bookRepo.findById(x).orElseThrow().getQuantity()).isZero();
+        assertThat(bookRepo.findById(y).orElseThrow().getQuantity()).isZero();
+    }
+
+    private Long saveBook(int quantity) {
+        Book b = new Book();
+        b.setTitle("Truyện Kiều");
+        b.setAuthor("Nguyễn Du");
+        b.setQuantity(quantity);
+        return bookRepo.save(b).getId();
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
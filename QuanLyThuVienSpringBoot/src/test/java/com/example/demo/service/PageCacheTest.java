@@ -0,0 +1,98 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for PageCache (key normalization, LRU bound, single-flight, invalidation). */
+@Tag("unit")
+class PageCacheTest {
+
+    @Test
+    @DisplayName("key sorts params, drops empty values and separates variants")
+    void key_normalized() {
+        String a = PageCache.key("anon", "/search", Map.of("q", new String[]{"kieu "}, "page", new String[]{"1"},
+                "categoryId", new String[]{""}));
+        String b = PageCache.key("anon", "/search", Map.of("page", new String[]{"1"}, "q", new String[]{"kieu"}));
+        assertThat(a).isEqualTo(b).isEqualTo("anon|/search?page=1&q=kieu");
+        assertThat(PageCache.key("user", "/search", Map.of())).isNotEqualTo(PageCache.key("anon", "/search", Map.of()));
+    }
+
+    @Test
+    @DisplayName("least recently used entry is evicted when the size bound is hit")
+    void lru_evicts() throws Exception {
+        PageCache cache = new PageCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        cache.getOrLoad("a", () -> page("A", null));
+        cache.getOrLoad("b", () -> page("B", null));
+        cache.get("a");                                   // a dùng gần đây hơn b
+        cache.getOrLoad("c", () -> page("C", null));
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("entries older than ttl-ms are dropped on read and re-rendered")
+    void ttl_expires() throws Exception {
+        PageCache cache = new PageCache();
+        ReflectionTestUtils.setField(cache, "ttlMs", 20L);
+        cache.getOrLoad("a", () -> page("A", null));
+        assertThat(cache.get("a")).isNotNull();
+        Thread.sleep(40);
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getOrLoad("a", () -> page("A2", null)).leader()).isTrue();
+    }
+
+    @Test
+    @DisplayName("concurrent misses on one key render once; book changes drop list pages and that book only")
+    void singleFlight_andInvalidation() throws Exception {
+        PageCache cache = new PageCache();
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Callable<PageCache.Result> call = () -> cache.getOrLoad("anon|/home", () -> {
+                renders.incrementAndGet();
+                started.countDown();
+                release.await();
+                return page("home", null);
+            });
+            Future<PageCache.Result> leader = pool.submit(call);
+            started.await();
+            List<Future<PageCache.Result>> followers = List.of(pool.submit(call), pool.submit(call), pool.submit(call));
+            Thread.sleep(50);
+            release.countDown();
+            assertThat(leader.get().leader()).isTrue();
+            for (Future<PageCache.Result> f : followers) {
+                assertThat(f.get().page().body()).isEqualTo(leader.get().page().body());
+            }
+            assertThat(renders.get()).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        cache.getOrLoad("anon|/books/1", () -> page("b1", 1L));
+        cache.getOrLoad("anon|/books/2", () -> page("b2", 2L));
+        cache.invalidateBooks(List.of(1L));
+        assertThat(cache.get("anon|/home")).isNull();
+        assertThat(cache.get("anon|/books/1")).isNull();
+        assertThat(cache.get("anon|/books/2")).isNotNull();
+    }
+
+    private static PageCache.Page page(String html, Long bookId) {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        return new PageCache.Page(body, "text/html;charset=UTF-8", PageCache.etag(body), bookId);
+    }
+}
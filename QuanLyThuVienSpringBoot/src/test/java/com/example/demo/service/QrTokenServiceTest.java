@@ -1,28 +1,74 @@
 package com.example.demo.service;
 
 import com.example.demo.TestFixtures;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Clock;
 import java.time.Duration;
+import java.time.LocalDateTime;
 
-/** Skeleton tests for QrTokenService (one-time, TTL). */
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests for QrTokenService (compact signed codes, tamper/kind checks, TTL, required secret). */
 @Tag("unit")
 class QrTokenServiceTest {
 
     final Clock fixed = TestFixtures.fixedClock();
+    QrTokenService tokens;
+    LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        tokens = new QrTokenService("secret-1");
+        ReflectionTestUtils.setField(tokens, "clock", fixed);
+        now = LocalDateTime.now(fixed.withZone(java.time.ZoneId.systemDefault()));
+    }
 
     @Test
-    @DisplayName("issue -> validate -> consume -> validate fails (one-time use)")
-    void oneTimeUse_flow() {
-        // TODO
+    @DisplayName("issue -> verify round-trips id/kind; shorter than a UUID; tampered or foreign-key codes rejected")
+    void issueVerify_roundTripAndRejectsTampered() {
+        String code = tokens.issue(QrTokenService.Kind.BORROW, 123_456_789L, now.plusDays(1));
+
+        assertThat(QrTokenService.isCompact(code)).isTrue();
+        assertThat(code.length()).isLessThan(32);
+        var claims = tokens.verify(code, QrTokenService.Kind.BORROW);
+        assertThat(claims.ticketId()).isEqualTo(123_456_789L);
+        assertThat(claims.kind()).isEqualTo(QrTokenService.Kind.BORROW);
+
+        char last = code.charAt(code.length() - 1);
+        String tampered = code.substring(0, code.length() - 1) + (last == 'a' ? 'b' : 'a');
+        assertThatThrownBy(() -> tokens.verify(tampered, QrTokenService.Kind.BORROW))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> tokens.verify(code, QrTokenService.Kind.RETURN))
+                .hasMessageContaining("mã mượn");
+        assertThatThrownBy(() -> new QrTokenService("secret-2").verify(code, QrTokenService.Kind.BORROW))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(QrTokenService.isCompact("0123456789abcdef0123456789abcdef")).isFalse();   // token UUID cũ
+    }
+
+    @Test
+    @DisplayName("blank secret -> fails at construction (no random fallback key)")
+    void blankSecret_throws() {
+        assertThatThrownBy(() -> new QrTokenService(" "))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("QR_TOKEN_SECRET");
+        assertThatThrownBy(() -> new QrTokenService(null)).isInstanceOf(IllegalStateException.class);
     }
 
     @Test
     @DisplayName("expired token -> throws")
     void expired_throws() {
-        // TODO
+        String code = tokens.issue(QrTokenService.Kind.RETURN, 5L, now.plusMinutes(30));
+        assertThat(tokens.verify(code, QrTokenService.Kind.RETURN).ticketId()).isEqualTo(5L);
+
+        ReflectionTestUtils.setField(tokens, "clock", Clock.offset(fixed, Duration.ofMinutes(31)));
+        assertThatThrownBy(() -> tokens.verify(code, QrTokenService.Kind.RETURN))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("hết hạn");
     }
 }
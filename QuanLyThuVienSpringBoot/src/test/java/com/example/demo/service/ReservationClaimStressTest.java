@@ -0,0 +1,167 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.Reservation;
+import com.example.demo.model.User;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.ReservationRepository;
+import com.example.demo.repository.UserRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Giành đầu hàng đặt chỗ trên CSDL thật (H2): nhiều luồng (~ nhiều node) cùng promote 1 sách,
+ * mỗi luồng 1 transaction. Mỗi đặt chỗ chỉ được promote 1 lần và đúng thứ tự FIFO.
+ */
+@DataJpaTest(properties = {"spring.sql.init.mode=never", "spring.jpa.show-sql=false"})
+@Import(HoldQueueService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Tag("integration")
+class ReservationClaimStressTest {
+
+    @SpringBootConfiguration
+    @EntityScan("com.example.demo.model")
+    @EnableJpaRepositories("com.example.demo.repository")
+    static class Config {}
+
+    @Autowired HoldQueueService holdQueue;
+    @Autowired ReservationRepository reservationRepo;
+    @Autowired BookRepository bookRepo;
+    @Autowired UserRepository userRepo;
+    @Autowired PlatformTransactionManager txManager;
+    @MockitoBean ExpiryScheduler expiryScheduler;
+
+    @Test
+    @DisplayName("32 parallel single-copy claims on 20 waiters -> 20 promoted once each, in FIFO order")
+    void parallelClaims_eachHeadPromotedOnce() throws Exception {
+        Long bookId = saveBook();
+        List<Long> fifo = saveWaiters(bookId, 20);
+        ConcurrentLinkedQueue<Long> promoted = new ConcurrentLinkedQueue<>();
+
+        runConcurrently(32, () -> promoted.addAll(holdQueue.promote(bookId, 1)));
+
+        assertThat(promoted).hasSize(20).doesNotHaveDuplicates();
+        assertThat(statusOf(fifo)).containsOnly(Reservation.Status.READY);
+        assertThat(holdQueue.promote(bookId, 1)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("multi-copy claims racing -> exactly the first N waiters become READY")
+    void racingMultiCopyClaims_takeFifoPrefix() throws Exception {
+        Long bookId = saveBook();
+        List<Long> fifo = saveWaiters(bookId, 30);
+
+        runConcurrently(8, () -> holdQueue.promote(bookId, 2));
+
+        List<Reservation.Status> st = statusOf(fifo);
+        assertThat(st.subList(0, 16)).containsOnly(Reservation.Status.READY);
+        assertThat(st.subList(16, 30)).containsOnly(Reservation.Status.PENDING);
+    }
+
+    @Test
+    @DisplayName("head locked by an open transaction -> contender claims the next waiter, head stays with its owner")
+    void lockedHead_contenderTakesNext() throws Exception {
+        Long bookId = saveBook();
+        List<Long> fifo = saveWaiters(bookId, 3);
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<List<Long>> first = pool.submit(() -> tx.execute(s -> {
+            List<Long> ids = holdQueue.promote(bookId, 1);
+            locked.countDown();
+            await(release);   // giữ khoá dòng đầu hàng tới khi luồng kia giành xong
+            return ids;
+        }));
+        locked.await();
+        Future<List<Long>> second = CompletableFuture.supplyAsync(() -> holdQueue.promote(bookId, 1));
+        // SKIP LOCKED (MySQL 8) trả về ngay; H2 chỉ có FOR UPDATE nên chờ dòng đầu được nhả
+        Thread.sleep(200);
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS)).containsExactly(fifo.get(0));
+        assertThat(second.get(10, TimeUnit.SECONDS)).containsExactly(fifo.get(1));
+        assertThat(statusOf(fifo)).containsExactly(
+                Reservation.Status.READY, Reservation.Status.READY, Reservation.Status.PENDING);
+        pool.shutdown();
+    }
+
+    private Long saveBook() {
+        Book b = new Book();
+        b.setTitle("Số đỏ");
+        b.setAuthor("Vũ Trọng Phụng");
+        b.setQuantity(0);
+        return bookRepo.save(b).getId();
+    }
+
+    /** n người chờ, createdAt tăng dần; trả về id theo thứ tự FIFO. */
+    private List<Long> saveWaiters(Long bookId, int n) {
+        Book book = bookRepo.findById(bookId).orElseThrow();
+        LocalDateTime t0 = LocalDateTime.now().minusHours(1);
+        String run = UUID.randomUUID().toString().substring(0, 8);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            User u = new User();
+            u.setUsername("u" + i + "-" + run + "@test.local");
+            u.setEmail("u" + i + "-" + run + "@test.local");
+            u.setPassword("x");
+            u = userRepo.save(u);
+            Reservation r = new Reservation();
+            r.setUser(u);
+            r.setBook(book);
+            ReflectionTestUtils.setField(r, "createdAt", t0.plusSeconds(i));
+            ids.add(reservationRepo.save(r).getId());
+        }
+        return ids;
+    }
+
+    private List<Reservation.Status> statusOf(List<Long> ids) {
+        Map<Long, Reservation.Status> byId = new HashMap<>();
+        reservationRepo.findAllById(ids).forEach(r -> byId.put(r.getId(), r.getStatus()));
+        return ids.stream().map(byId::get).toList();
+    }
+
+    private static void await(CountDownLatch l) {
+        try {
+            l.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+    }
+}
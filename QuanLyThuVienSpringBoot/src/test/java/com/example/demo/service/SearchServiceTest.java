@@ -1,22 +1,172 @@
 package com.example.demo.service;
 
+import com.example.demo.model.Book;
+import com.example.demo.model.Category;
+import com.example.demo.repository.BookDescriptionRepository;
+import com.example.demo.repository.BookRepository;
+import com.example.demo.repository.CategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
 
-/** Skeleton tests for SearchService (query normalization & empty -> all). */
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for SearchService (query normalization & empty -> all). */
 @Tag("unit")
 class SearchServiceTest {
 
+    SearchService service;
+    BookRepository bookRepo;
+    CategoryRepository categoryRepo;
+    BookDescriptionRepository descriptionRepo;
+
+    @BeforeEach
+    void setUp() {
+        bookRepo = mock(BookRepository.class);
+        categoryRepo = mock(CategoryRepository.class);
+        descriptionRepo = mock(BookDescriptionRepository.class);
+        Category novel = category(7L, "Tiểu thuyết");
+        when(categoryRepo.findAll()).thenReturn(List.of(novel));
+        when(bookRepo.findAll(any(Sort.class))).thenReturn(List.of(
+                book(1L, "Truyện Kiều", "Nguyễn Du", novel),
+                book(2L, "Dế Mèn phiêu lưu ký", "Tô Hoài", null),
+                book(3L, "Số đỏ", "Vũ Trọng Phụng", novel)));
+        when(descriptionRepo.findAllBodies()).thenReturn(List.<Object[]>of(
+                new Object[]{3L, "Trào phúng, giễu nhại xã hội thành thị"}));
+        service = new SearchService(bookRepo, categoryRepo, descriptionRepo);
+        service.rebuild();
+    }
+
     @Test
     @DisplayName("empty query -> returns all")
     void emptyQuery_returnsAll() {
-        // TODO
+        var page = service.searchIds("  ", PageRequest.of(0, 10));
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(page.getContent()).containsExactly(3L, 2L, 1L);
     }
 
     @Test
     @DisplayName("case-insensitive & diacritic-insensitive search (if enabled)")
     void insensitiveSearch_ok() {
-        // TODO
+        assertThat(service.searchIds("nguyen", PageRequest.of(0, 10)).getContent()).containsExactly(1L);
+        assertThat(service.searchIds("DE MEN", PageRequest.of(0, 10)).getContent()).containsExactly(2L);
+        assertThat(service.searchIds("so do", PageRequest.of(0, 10)).getContent()).containsExactly(3L);
+    }
+
+    @Test
+    @DisplayName("category name matches; renaming a category re-targets its books")
+    void categoryName_matches() {
+        assertThat(service.searchIds("tieu thuyet", PageRequest.of(0, 10)).getContent()).containsExactly(3L, 1L);
+
+        service.indexCategory(category(7L, "Văn học"));
+        assertThat(service.searchIds("tieu thuyet", PageRequest.of(0, 10)).getTotalElements()).isZero();
+        assertThat(service.searchIds("van hoc kieu", PageRequest.of(0, 10)).getContent()).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("BM25F ranking: description adds relevance, ties fall back to newest first")
+    void relevance_rankedBeforeRecency() {
+        service.index(book(4L, "Truyện ngắn", "Khuyết danh", null));
+        service.index(book(5L, "Truyện dài", "Khuyết danh", null));
+        service.applyDescriptions(Map.of(4L, "Tuyển chọn truyện ngắn hay"));
+
+        // Cùng độ dài title, sách 4 có thêm mô tả khớp -> đứng đầu; 5 và 1 hoà điểm -> mới nhất trước
+        assertThat(service.searchIds("truyen", PageRequest.of(0, 10)).getContent()).containsExactly(4L, 5L, 1L);
+        assertThat(service.searchIds("truyen", PageRequest.of(1, 2)).getContent()).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("descriptions are searchable and survive book updates that do not carry them")
+    void description_fullText() {
+        assertThat(service.searchIds("trao phung", PageRequest.of(0, 10)).getContent()).containsExactly(3L);
+        // Lưu sách (đổi tồn kho...) không mang mô tả -> chỉ mục mô tả giữ nguyên
+        service.index(book(3L, "Số đỏ", "Vũ Trọng Phụng", null));
+        assertThat(service.searchIds("xa hoi", PageRequest.of(0, 10)).getContent()).containsExactly(3L);
+        // Từ ngắn chỉ khớp nguyên từ trong mô tả
+        assertThat(service.searchIds("gi", PageRequest.of(0, 10)).getTotalElements()).isZero();
+
+        service.applyDescriptions(java.util.Collections.singletonMap(3L, null));
+        assertThat(service.searchIds("trao phung", PageRequest.of(0, 10)).getTotalElements()).isZero();
+    }
+
+    @Test
+    @DisplayName("fuzzy search tolerates typos and ranks closer matches first")
+    void fuzzySearch_toleratesTypos() {
+        assertThat(service.searchIds("nguyn du", PageRequest.of(0, 10)).getTotalElements()).isZero();
+        assertThat(service.fuzzySearchIds("nguyn du", PageRequest.of(0, 10)).getContent()).containsExactly(1L);
+        assertThat(service.fuzzySearchIds("phieu luw", PageRequest.of(0, 10)).getContent()).containsExactly(2L);
+        // "truyen kieu" khớp đúng cả hai từ -> xếp trên sách chỉ khớp gần đúng
+        assertThat(service.fuzzySearchIds("truyen kieu", PageRequest.of(0, 10)).getContent().get(0)).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("did-you-mean suggestion restores the accented form")
+    void suggest_correctsMisspelledWords() {
+        assertThat(service.suggest("Truyen Kieeu")).isEqualTo("truyen kiều");
+        assertThat(service.suggest("so do")).isNull();
+        assertThat(service.suggest("xyzxyz")).isNull();
+    }
+
+    @Test
+    @DisplayName("startup from snapshot replays only changed/new books and drops deleted ones")
+    void snapshot_restoreReplaysDelta(@TempDir Path dir) {
+        Path file = dir.resolve("search.snap");
+        service.applyDescriptions(Map.of(2L, "Truyện đồng thoại"));
+        ReflectionTestUtils.setField(service, "snapshotPath", file.toString());
+        service.writeSnapshot();
+
+        // Sau snapshot: sách 3 bị xoá, sách 1 đổi tên, sách 4 được thêm (updatedAt cũ nhưng chưa có trong snapshot)
+        BookRepository repo2 = mock(BookRepository.class);
+        when(repo2.findAllIds()).thenReturn(List.of(1L, 2L, 4L));
+        when(repo2.findUpdatedSince(any(LocalDateTime.class)))
+                .thenReturn(List.of(book(1L, "Truyện Kiều (tái bản)", "Nguyễn Du", null)));
+        when(repo2.findAllById(any())).thenReturn(List.of(book(4L, "Lão Hạc", "Nam Cao", null)));
+        BookDescriptionRepository descRepo2 = mock(BookDescriptionRepository.class);
+        when(descRepo2.findBodies(any())).thenReturn(List.<Object[]>of(new Object[]{1L, "Bản chú giải mới"}));
+        SearchService restarted = new SearchService(repo2, categoryRepo, descRepo2);
+        ReflectionTestUtils.setField(restarted, "snapshotPath", file.toString());
+        restarted.rebuild();
+
+        verify(repo2, never()).findAll(any(Sort.class));
+        verify(descRepo2, never()).findAllBodies();
+        assertThat(restarted.size()).isEqualTo(3);
+        assertThat(restarted.searchIds("tai ban", PageRequest.of(0, 10)).getContent()).containsExactly(1L);
+        assertThat(restarted.searchIds("lao hac", PageRequest.of(0, 10)).getContent()).containsExactly(4L);
+        assertThat(restarted.searchIds("dong thoai", PageRequest.of(0, 10)).getContent()).containsExactly(2L);  // từ snapshot
+        assertThat(restarted.searchIds("chu giai", PageRequest.of(0, 10)).getContent()).containsExactly(1L);    // từ replay
+        assertThat(restarted.searchIds("so do", PageRequest.of(0, 10)).getTotalElements()).isZero();
+        // Khôi phục đủ danh sách id (mới nhất trước)
+        assertThat(restarted.searchIds("", PageRequest.of(0, 10)).getContent()).containsExactly(4L, 2L, 1L);
+    }
+
+    private static Category category(Long id, String name) {
+        Category c = new Category();
+        c.setId(id);
+        c.setName(name);
+        return c;
+    }
+
+    private static Book book(Long id, String title, String author, Category category) {
+        Book b = new Book();
+        b.setId(id);
+        b.setTitle(title);
+        b.setAuthor(author);
+        b.setCategory(category);
+        return b;
     }
 }
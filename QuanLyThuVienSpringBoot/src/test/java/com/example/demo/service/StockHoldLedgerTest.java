@@ -0,0 +1,117 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.BorrowTicketRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests for StockHoldLedger (lock-free holds, after-commit release, periodic reconcile from pending tickets). */
+@Tag("unit")
+class StockHoldLedgerTest {
+
+    BorrowTicketRepository ticketRepo;
+    StockHoldLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepo = mock(BorrowTicketRepository.class);
+        ledger = new StockHoldLedger(ticketRepo);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("50 concurrent holds on the last copy -> exactly one succeeds")
+    void concurrentHolds_lastCopy() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger ok = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                if (ledger.hold(1L, 1, 1)) ok.incrementAndGet();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertThat(ok.get()).isEqualTo(1);
+        assertThat(ledger.held(1L)).isEqualTo(1);
+        assertThat(ledger.availableToPromise(1L, 1)).isZero();
+    }
+
+    @Test
+    @DisplayName("hold is undone on rollback; release waits for commit")
+    void transactionBoundaries() {
+        TransactionSynchronizationManager.initSynchronization();
+        assertThat(ledger.hold(2L, 3, 2)).isTrue();
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(ledger.held(2L)).isZero();
+
+        assertThat(ledger.hold(2L, 3, 2)).isTrue();
+        assertThat(ledger.hold(2L, 3, 2)).isFalse();   // chỉ còn 1 cuốn có thể hứa
+
+        TransactionSynchronizationManager.initSynchronization();
+        ledger.release(2L, 2);
+        assertThat(ledger.held(2L)).isEqualTo(2);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(ledger.held(2L)).isZero();
+    }
+
+    @Test
+    @DisplayName("rebuild adds pending ticket amounts per book")
+    void rebuild_fromPendingTickets() {
+        when(ticketRepo.sumPendingAmountByBook()).thenReturn(List.of(new Object[]{3L, 4L}, new Object[]{4L, 0L}));
+        ledger.rebuild();
+        assertThat(ledger.held(3L)).isEqualTo(4);
+        assertThat(ledger.availableToPromise(3L, 5)).isEqualTo(1);
+        assertThat(ledger.held(4L)).isZero();
+    }
+
+    @Test
+    @DisplayName("reconcile replaces counters from the DB, drops phantom holds, keeps uncommitted local holds")
+    void reconcile_dropsPhantoms_keepsInFlight() {
+        assertThat(ledger.hold(5L, 2, 2)).isTrue();                 // vé đã huỷ ở node khác -> giữ ảo
+        TransactionSynchronizationManager.initSynchronization();
+        assertThat(ledger.hold(6L, 3, 1)).isTrue();                 // đang trong transaction, chưa commit
+
+        when(ticketRepo.sumPendingAmountByBook()).thenReturn(List.<Object[]>of(new Object[]{7L, 2L}));
+        ledger.rebuild();
+        assertThat(ledger.held(5L)).isZero();
+        assertThat(ledger.held(6L)).isEqualTo(1);
+        assertThat(ledger.held(7L)).isEqualTo(2);                   // vé tạo ở node khác
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        when(ticketRepo.sumPendingAmountByBook()).thenReturn(List.<Object[]>of(new Object[]{6L, 1L}, new Object[]{7L, 2L}));
+        ledger.rebuild();
+        assertThat(ledger.held(6L)).isEqualTo(1);                   // không đếm 2 lần sau commit
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) syncs.forEach(TransactionSynchronization::afterCommit);
+        syncs.forEach(s -> s.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
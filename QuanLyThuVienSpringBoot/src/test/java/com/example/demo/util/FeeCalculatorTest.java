@@ -4,25 +4,67 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
-/** Skeleton tests for FeeCalculator (late fee computation). */
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests for FeeCalculator (late fee computation). */
 @Tag("unit")
 class FeeCalculatorTest {
 
+    private static final LocalDateTime DUE = LocalDateTime.of(2025, 3, 1, 10, 0);
+
     @Test
     @DisplayName("fee: daysLate = 0 -> 0")
     void fee_zeroDays_returnsZero() {
-        // TODO: Arrange/Act/Assert using your FeeCalculator
+        assertThat(FeeCalculator.fee(0, 3, 5000)).isZero();
+        assertThat(FeeCalculator.fine(DUE, DUE.plusHours(23).plusMinutes(59), 1, 5000, 0)).isZero();
+        assertThat(FeeCalculator.fine(DUE, DUE.minusDays(2), 1, 5000, 0)).isZero();   // trả sớm
+        assertThat(FeeCalculator.vnd(0)).isSameAs(BigDecimal.ZERO);
     }
 
     @Test
     @DisplayName("fee: negative days -> throws")
     void fee_negativeDays_throws() {
-        // TODO
+        assertThatThrownBy(() -> FeeCalculator.fee(-1, 1, 5000))
+                .isInstanceOf(IllegalArgumentException.class);
     }
 
     @Test
     @DisplayName("fee: positive days -> expected amount (rounding)")
     void fee_positiveDays_ok() {
-        // TODO
+        // đủ 24h mới tính 1 ngày: 47h59m -> 1 ngày, 48h -> 2 ngày
+        assertThat(FeeCalculator.fine(DUE, DUE.plusHours(47).plusMinutes(59), 1, 5000, 0)).isEqualTo(5000);
+        assertThat(FeeCalculator.fine(DUE, DUE.plusHours(48), 1, 5000, 0)).isEqualTo(10000);
+        // nhân số cuốn; amount null / 0 coi như 1
+        assertThat(FeeCalculator.fine(DUE, DUE.plusDays(3), 2, 5000, 0)).isEqualTo(30000);
+        assertThat(FeeCalculator.fine(DUE, DUE.plusDays(3), null, 5000, 0)).isEqualTo(15000);
+        assertThat(FeeCalculator.fee(3, 0, 5000)).isEqualTo(15000);
+        // ngày miễn phạt trừ trước khi chia 24h
+        assertThat(FeeCalculator.fine(DUE, DUE.plusDays(3), 1, 5000, 1)).isEqualTo(10000);
+        assertThat(FeeCalculator.fine(DUE, DUE.plusDays(1), 1, 5000, 1)).isZero();
+        assertThat(FeeCalculator.fine(null, DUE, 1, 5000, 0)).isZero();
+    }
+
+    @Test
+    @DisplayName("batch: per-row days and fines match the single-loan path, total returned")
+    void fines_batchMatchesSingle() {
+        long due = FeeCalculator.epochMinute(DUE);
+        long[] dues = {due, due, due, due};
+        long[] ends = {due - 60, due + 1439, due + 2 * 1440, due + 5 * 1440 + 30};
+        int[] qty = {1, 1, 3, 2};
+        int[] days = new int[4];
+        long[] fines = new long[4];
+
+        long total = FeeCalculator.fines(dues, ends, qty, 4, 5000, 0, days, fines);
+
+        assertThat(days).containsExactly(0, 0, 2, 5);
+        assertThat(fines).containsExactly(0, 0, 30000, 50000);
+        assertThat(total).isEqualTo(80000);
+        for (int i = 0; i < 4; i++) {
+            assertThat(FeeCalculator.fine(dues[i], ends[i], qty[i], 5000, 0)).isEqualTo(fines[i]);
+        }
     }
 }
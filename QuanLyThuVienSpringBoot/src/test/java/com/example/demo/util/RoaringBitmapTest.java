@@ -0,0 +1,72 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for RoaringBitmap against java.util.BitSet (array & bitmap containers). */
+@Tag("unit")
+class RoaringBitmapTest {
+
+    @Test
+    @DisplayName("and/or/andCardinality match BitSet across sparse and dense blocks")
+    void setOps_matchBitSet() {
+        Random rnd = new Random(42);
+        RoaringBitmap a = new RoaringBitmap(), b = new RoaringBitmap();
+        BitSet sa = new BitSet(), sb = new BitSet();
+        for (int i = 0; i < 20_000; i++) {             // khối 0: dày (-> bitmap container)
+            int x = rnd.nextInt(30_000);
+            a.add(x); sa.set(x);
+        }
+        for (int i = 0; i < 300; i++) {                // khối 1-2: thưa (-> array container)
+            int x = 65_536 + rnd.nextInt(131_072);
+            a.add(x); sa.set(x);
+            int y = rnd.nextInt(200_000);
+            b.add(y); sb.set(y);
+        }
+        for (int i = 0; i < 6_000; i++) {
+            int y = rnd.nextInt(30_000);
+            b.add(y); sb.set(y);
+        }
+
+        BitSet and = (BitSet) sa.clone(); and.and(sb);
+        BitSet or = (BitSet) sa.clone(); or.or(sb);
+        assertThat(RoaringBitmap.and(a, b).toArray()).isEqualTo(and.stream().toArray());
+        assertThat(RoaringBitmap.or(a, b).toArray()).isEqualTo(or.stream().toArray());
+        assertThat(RoaringBitmap.andCardinality(a, b)).isEqualTo(and.cardinality());
+        assertThat(a.cardinality()).isEqualTo(sa.cardinality());
+    }
+
+    @Test
+    @DisplayName("remove shrinks dense blocks back and drops empty ones")
+    void remove_convertsAndDrops() {
+        RoaringBitmap r = new RoaringBitmap();
+        for (int i = 0; i < 5_000; i++) r.add(i);
+        for (int i = 0; i < 4_990; i++) r.remove(i);
+        assertThat(r.toArray()).containsExactly(4990, 4991, 4992, 4993, 4994, 4995, 4996, 4997, 4998, 4999);
+        for (int i = 4990; i < 5_000; i++) r.remove(i);
+        assertThat(r.isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("descending/ascending iteration start at the given value and can stop early")
+    void iteration_seek() {
+        RoaringBitmap r = new RoaringBitmap();
+        for (int x : new int[]{3, 70, 64, 65_540, 200_000}) r.add(x);
+
+        List<Integer> desc = new ArrayList<>();
+        r.forEachDescending(65_539, v -> { desc.add(v); return desc.size() < 2; });
+        assertThat(desc).containsExactly(70, 64);
+
+        List<Integer> asc = new ArrayList<>();
+        r.forEachAscending(71, v -> { asc.add(v); return true; });
+        assertThat(asc).containsExactly(65_540, 200_000);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for TimingWheel (deadline ticks, multi-round entries, cancel/reschedule). */
+@Tag("unit")
+class TimingWheelTest {
+
+    private static final long T0 = 1_000_000L;
+
+    @Test
+    @DisplayName("fires at the first tick at or after the deadline, not before")
+    void firesAtDeadline() {
+        TimingWheel<String> w = new TimingWheel<>(100, 8, T0);
+        w.schedule("a", T0 + 250);
+        w.schedule("b", T0 + 300);
+
+        assertThat(advance(w, T0 + 299)).isEmpty();                 // mốc 250 -> tick biên 300
+        assertThat(advance(w, T0 + 300)).containsExactlyInAnyOrder("a", "b");
+        assertThat(w.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("deadlines beyond one revolution wait the right number of rounds")
+    void multipleRounds() {
+        TimingWheel<String> w = new TimingWheel<>(10, 4, T0);   // 1 vòng = 40 ms
+        w.schedule("far", T0 + 125);
+        w.schedule("near", T0 + 5);
+
+        assertThat(advance(w, T0 + 10)).containsExactly("near");
+        assertThat(advance(w, T0 + 120)).isEmpty();
+        assertThat(advance(w, T0 + 130)).containsExactly("far");
+    }
+
+    @Test
+    @DisplayName("cancel and reschedule; past deadlines fire on the next tick")
+    void cancelAndReschedule() {
+        TimingWheel<String> w = new TimingWheel<>(100, 8, T0);
+        w.schedule("x", T0 + 100);
+        w.schedule("y", T0 + 100);
+        assertThat(w.cancel("x")).isTrue();
+        w.schedule("y", T0 + 500);   // dời mốc: mốc cũ không nổ
+
+        assertThat(advance(w, T0 + 400)).isEmpty();
+        w.schedule("late", T0 - 5_000);
+        assertThat(advance(w, T0 + 450)).isEmpty();
+        assertThat(advance(w, T0 + 500)).containsExactlyInAnyOrder("late", "y");
+        assertThat(w.cancel("y")).isFalse();
+    }
+
+    private static List<String> advance(TimingWheel<String> w, long now) {
+        List<String> out = new ArrayList<>();
+        w.advance(now, out::add);
+        return out;
+    }
+}